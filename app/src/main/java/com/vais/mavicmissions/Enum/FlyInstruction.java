@@ -10,5 +10,6 @@ public enum FlyInstruction {
     TAKEOFF_LAND,
     GO_TOWARDS,
     GO_UP,
-    GO_DOWN
+    GO_DOWN,
+    NONE
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package com.vais.mavicmissions.Enum;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Enum des directions de la ligne verte détectées lors du suivi de ligne.
+ */
+public enum LineDirection {
+    FRONT,
+    RIGHT,
+    LEFT,
+    NONE
+}
@@ -1,6 +1,7 @@
 package com.vais.mavicmissions;
 
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
@@ -28,9 +29,18 @@ import com.vais.mavicmissions.objectives.FollowLine;
 import com.vais.mavicmissions.services.drone.AircraftController;
 import com.vais.mavicmissions.services.drone.CameraController;
 import com.vais.mavicmissions.objectives.DynamicParkour;
+import com.vais.mavicmissions.services.PreviewSink;
 import com.vais.mavicmissions.services.VisionHelper;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import com.vais.mavicmissions.services.metrics.Tracer;
+import com.vais.mavicmissions.services.recorder.FlightRecorder;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.atomic.AtomicBoolean;
 import dji.common.error.DJIError;
 import dji.common.error.DJISDKError;
@@ -93,6 +103,10 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
      * Source: DJI Developper.
      */
     private static final int REQUEST_PERMISSION_CODE = 12345;
+    /**
+     * Int, nombre maximum d'images de la vision du drone affichées par seconde.
+     */
+    private static final int PREVIEW_RATE = 10;
 
     /**
      * Handler, gestionnaire de thread.
@@ -168,6 +182,10 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
      * ImageView, conteneur de l'images.
      */
     public ImageView ivResult;
+    /**
+     * PreviewSink, affichage de la vision du drone dans ivResult, limité à PREVIEW_RATE images par seconde.
+     */
+    public PreviewSink preview;
 
     /**
      * Boolean, indique si le conteneur du flux vidéo est disponible.
@@ -213,6 +231,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         btnBallRescue = findViewById(R.id.btnBallRescue);
         cameraSurface = findViewById(R.id.cameraPreviewSurface);
         ivResult = findViewById(R.id.iv_result);
+        preview = new PreviewSink(ivResult, PREVIEW_RATE);
 
         btnDynamicParkour.setOnClickListener(this);
         btnFollowLine.setOnClickListener(this);
@@ -220,9 +239,42 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         cameraSurface.setSurfaceTextureListener(this);
         btn_retryConnection.setOnClickListener(this);
 
+        // Afficher les mesures lors d'un appui long sur la vision du drone.
+        ivResult.setOnLongClickListener(view -> {
+            showMetrics();
+            return true;
+        });
+
         // Instancier le module de traitement d'image.
         visionHelper = new VisionHelper(this);
         self = this;
+
+        // Charger le profil de vision calibré pour le lieu, puis le recharger à chaque modification du fichier.
+        try {
+            visionHelper.loadProfile();
+        }
+        catch (IOException e) {
+            showToast(e.getMessage());
+        }
+
+        visionHelper.startWatchingProfile(new VisionHelper.ProfileListener() {
+            /**
+             * Méthode appelée lorsque le nouveau profil est utilisé.
+             */
+            @Override
+            public void onProfileReloaded() {
+                showToast("Profil de vision rechargé");
+            }
+
+            /**
+             * Méthode appelée lorsque le nouveau fichier ne peut pas être lu.
+             * @param e IOException, erreur de lecture.
+             */
+            @Override
+            public void onProfileError(IOException e) {
+                showToast(e.getMessage());
+            }
+        });
     }
 
     /**
@@ -232,6 +284,10 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     protected void onDestroy() {
         super.onDestroy();
 
+        // Arrêter la surveillance du profil de vision et l'affichage de la vision.
+        visionHelper.stopWatchingProfile();
+        preview.release();
+
         // Détruire le controlleur du drone.
         if (controller != null)
             controller.destroy();
@@ -351,6 +407,46 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             // Désactiver les virtuals sticks.
             controller.loseControl();
             setUIState(true);
+            saveMetrics();
+        });
+    }
+
+    /**
+     * Méthode qui affiche le résumé des mesures de l'application.
+     */
+    public void showMetrics() {
+        String report = Metrics.report();
+
+        new Handler(Looper.getMainLooper()).post(() -> new AlertDialog.Builder(this)
+                .setTitle(R.string.metrics)
+                .setMessage(report)
+                .setPositiveButton(android.R.string.ok, null)
+                .show());
+    }
+
+    /**
+     * Méthode qui enregistre les mesures et la trace de l'application dans des fichiers, par exemple après un vol.
+     * Termine aussi l'enregistrement du vol et du flux vidéo en cours.
+     * Les fichiers sont écrits dans le dossier de l'application sur le stockage externe.
+     */
+    public void saveMetrics() {
+        String date = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(getExternalFilesDir(null), "metrics-" + date + ".csv");
+        File trace = new File(getExternalFilesDir(null), "trace-" + date + ".json");
+
+        // Écrire les fichiers en dehors du thread d'affichage.
+        AsyncTask.execute(() -> {
+            try {
+                FlightRecorder.stop();
+                if (cameraController != null)
+                    cameraController.stopVideoTap();
+                Metrics.dump(file);
+                Tracer.export(trace);
+                showToast(getResources().getString(R.string.metricsSaved, file.getParent()));
+            }
+            catch (IOException e) {
+                showToast(getResources().getString(R.string.metricsError));
+            }
         });
     }
 
@@ -408,7 +504,11 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
      * @param surfaceTexture SurfaceTexture, texture à donner au conteneur du flux vidéo.
      */
     @Override
-    public void onSurfaceTextureUpdated(@NonNull SurfaceTexture surfaceTexture) { }
+    public void onSurfaceTextureUpdated(@NonNull SurfaceTexture surfaceTexture) {
+        // Fournir la nouvelle image au flux d'images.
+        if (cameraController != null)
+            cameraController.onFrameUpdated();
+    }
 
     /**
      * Méthode qui notifie si la connection au produit change.
@@ -588,6 +688,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         controller = new AircraftController(aircraft, app, () -> new Handler(Looper.getMainLooper()).post(() -> {
             // Instancier le controlleur de caméra.
             cameraController = new CameraController(controller.getAircraft());
+            cameraController.setFrameGrabber(pool -> cameraSurface.isAvailable() ? cameraSurface.getBitmap(pool.acquire(cameraSurface.getWidth(), cameraSurface.getHeight())) : null);
             if (textureAvailable)
                 onSurfaceTextureAvailable(texture, textureWidth, textureHeight);
 
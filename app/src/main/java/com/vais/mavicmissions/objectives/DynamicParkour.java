@@ -1,8 +1,6 @@
 package com.vais.mavicmissions.objectives;
 
-import android.os.Handler;
 import com.vais.mavicmissions.Enum.FlyInstruction;
-import com.vais.mavicmissions.Enum.Shape;
 import com.vais.mavicmissions.MainActivity;
 import com.vais.mavicmissions.R;
 import com.vais.mavicmissions.services.drone.AircraftController;
@@ -10,12 +8,16 @@ import com.vais.mavicmissions.services.drone.AircraftInstruction;
 import com.vais.mavicmissions.services.drone.CameraController;
 import com.vais.mavicmissions.services.Detector;
 import com.vais.mavicmissions.services.VisionHelper;
+import com.vais.mavicmissions.services.mission.ParkourMission;
+import com.vais.mavicmissions.services.vision.ChangeDetector;
+import com.vais.mavicmissions.services.vision.Frame;
+import com.vais.mavicmissions.services.vision.VisionStreams;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.Point;
 import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Simon-Olivier Vaillancourt
@@ -23,16 +25,26 @@ import java.util.List;
  * DJI Mavic 2 Entreprise
  * Classe qui gère le suivi d'un parcours dynamique.
  */
-public class DynamicParkour extends Objectif {
+public class DynamicParkour extends Objectif implements ParkourMission.Vision {
     /**
-     * Int, nombre de maximum de détection non-reconnue permis.
+     * Int, temps en ms entre deux tentatives de détection.
      */
-    private final static int MAX_UNKNOWN_DETECTION = 25;
+    private final static int DETECTION_PERIOD = 250;
+    /**
+     * ForkJoinPool, thread qui estime l'orientation des flèches pendant la reconnaissance des pancartes.
+     */
+    private final static ForkJoinPool ARROWS = new ForkJoinPool(1);
 
     /**
-     * AircraftInstruction, dernière instruction détectée par le drone.
+     * ParkourMission, logique du parcours.
      */
-    private AircraftInstruction lastInstruction;
+    private final ParkourMission parkour;
+    /**
+     * ChangeDetector<AircraftInstruction>, dernière lecture sans instruction, réutilisée tant que la scène ne change pas.
+     * Les instructions lues ne sont jamais réutilisées: ParkourMission exige deux lectures concordantes avant d'agir, et le drone
+     * immobile après un désaccord confirmerait sinon une mauvaise lecture sans analyser de nouvelle image.
+     */
+    private final ChangeDetector<AircraftInstruction> signs;
 
     /**
      * String, message affiché lors de l'arrêt du parcours.
@@ -40,9 +52,34 @@ public class DynamicParkour extends Objectif {
     private String parkourEnded;
 
     /**
-     * Int, nombre actuelle de détection non-reconnue.
+     * Classe qui représente une pancarte potentielle isolée dans une image.
      */
-    private int unknownDetectionCount;
+    private static class SignCandidate {
+        /**
+         * Frame, image du flux vidéo.
+         */
+        private final Frame frame;
+        /**
+         * MatOfPoint, plus gros contour de l'image, null si aucun contour n'a été trouvé.
+         */
+        private final MatOfPoint contour;
+        /**
+         * AircraftInstruction, instruction de la dernière image analysée si la scène n'a pas changé, sinon null.
+         */
+        private final AircraftInstruction reused;
+
+        /**
+         * Constructeur de la classe SignCandidate, créé l'objet et initialise ses données membres.
+         * @param frame Frame, image du flux vidéo.
+         * @param contour MatOfPoint, plus gros contour de l'image.
+         * @param reused AircraftInstruction, instruction réutilisée, null si l'image doit être lue.
+         */
+        private SignCandidate(Frame frame, MatOfPoint contour, AircraftInstruction reused) {
+            this.frame = frame;
+            this.contour = contour;
+            this.reused = reused;
+        }
+    }
 
     /**
      * Constructeur de la classe DynamicParkour, créé l'objet et initialise ses données membres.
@@ -52,10 +89,12 @@ public class DynamicParkour extends Objectif {
      * @param visionHelper VisionHelper, service de traitement d'images.
      */
     public DynamicParkour(MainActivity caller, AircraftController controller, CameraController cameraController, VisionHelper visionHelper) {
-        super(caller, controller, cameraController, visionHelper);
+        super(caller, controller, cameraController, visionHelper, "dynamicParkour");
 
         parkourEnded = caller.getResources().getString(R.string.dynamicParourEnded);
-        lastInstruction = null;
+        parkour = new ParkourMission(drone, this, this);
+        signs = new ChangeDetector<>(visionHelper, "dynamicParkour");
+        mission = parkour;
     }
 
     /**
@@ -85,184 +124,102 @@ public class DynamicParkour extends Objectif {
 
         // Désactiver les boutons, excepté le bouton d'arrêt.
         setStopButton(caller.btnDynamicParkour);
-
-        // Changer la vitesse du drone.
-        controller.setCurrentSpeed(AircraftController.AIRCRAFT_SEEKING_MODE_SPEED);
         caller.showToast(caller.getResources().getString(R.string.dynamicParcourStart));
 
-        unknownDetectionCount = 0;
-
-        // Commencer l'objectif.
-        startObjectif(djiError -> {
-            // Commencer la recherche de pancartes.
-            controller.goForward(1000, () -> {
-                controller.setCurrentSpeed(AircraftController.AIRCRAFT_SEEKING_MODE_SPEED);
-                seekInstructions();
-            });
-        });
+        // Commencer l'objectif, puis la recherche de pancartes.
+        startObjectif(djiError -> startMission());
     }
 
     /**
-     * Méthode qui recherche une pancarte du parcours.
+     * Méthode qui s'abonne au flux de détection des pancartes du parcours.
+     * Le drone s'est déplacé depuis la dernière recherche, l'instruction gardée est donc oubliée.
      */
-    private void seekInstructions() {
-        if (!objectifStarted)
-            return;
-
-        Shape detectedShape;
-        boolean seek = true;
-        boolean stop = false;
+    @Override
+    public void startSeeking() {
+        signs.reset();
+        startDetection(VisionStreams.sample(usableFrames(), DETECTION_PERIOD)
+                .compose(VisionStreams.preprocess(this::findSign))
+                .compose(VisionStreams.detect(candidate -> toDetection(candidate.frame, readInstruction(candidate)))), parkour::onInstruction);
+    }
 
-        // Capturer le flux vidéo.
-        Mat matSource = getFrame();
+    /**
+     * Méthode qui arrête la détection des pancartes.
+     */
+    @Override
+    public void stopSeeking() {
+        stopDetection();
+    }
 
-        // Effectuer une détection de contours et isoler le plus gros.
-        Mat filteredMat = visionHelper.prepareContourDetection(matSource);
-        List<MatOfPoint> contours = visionHelper.contoursDetection(filteredMat);
-        MatOfPoint biggerContour = visionHelper.getBiggerContour(matSource, contours);
+    /**
+     * Méthode appelée lorsque le drone a attéri à la fin du parcours.
+     */
+    @Override
+    public void onEnded() {
+        controller.loseControl();
+        caller.showToast(parkourEnded);
+        super.onEnded();
+    }
 
-        // Détecter l'instruction.
-        if (biggerContour != null) {
-            detectedShape = Detector.detectShape(matSource, visionHelper, biggerContour, this);
+    /**
+     * Fonction qui isole le contour de la pancarte dans une image. Rien n'est cherché si la scène n'a pas changé depuis la dernière
+     * lecture sans instruction.
+     * @param frame Frame, image du flux vidéo.
+     * @return SignCandidate, pancarte potentielle.
+     */
+    private SignCandidate findSign(Frame frame) {
+        AircraftInstruction reused = signs.getCached(frame);
+        if (reused != null)
+            return new SignCandidate(frame, null, reused);
 
-            // Exécuter l'action selon l'instruction.
+        return new SignCandidate(frame, Detector.findSign(visionHelper, frame.getContext()), null);
+    }
 
-            // Flèche.
-            if (detectedShape == Shape.ARROW) {
-                // Détecter les coins de la flèche.
-                double angle = 0;
-                Mat arr = visionHelper.prepareCornerDetection(matSource);
-                MatOfPoint corners = visionHelper.detectCorners(arr, 3, 90);
+    /**
+     * Fonction qui lit l'instruction d'une pancarte.
+     * La reconnaissance des pancartes U, D, H et l'estimation de la flèche s'exécutent en parallèle, une pancarte reconnue a priorité sur la flèche.
+     * @param candidate SignCandidate, pancarte potentielle.
+     * @return AircraftInstruction, instruction détectée, FlyInstruction.NONE si aucune instruction n'est détectée.
+     */
+    private AircraftInstruction readInstruction(SignCandidate candidate) throws InterruptedException {
+        if (candidate.reused != null)
+            return candidate.reused;
 
-                Mat arrow = Detector.detectArrow(matSource, corners.toArray(), visionHelper);
-                if (arrow != null) {
-                    Point[] croppedCorners = visionHelper.detectCorners(arrow, 3, 0.6f, 150).toArray();
-                    Point head = Detector.findArrowHead(Detector.findCenterMass(arrow), croppedCorners);
+        AircraftInstruction instruction = new AircraftInstruction(FlyInstruction.NONE);
 
-                    if (head != null) {
-                        angle = Detector.detectAngle(new Point((int)(arrow.width() / 2), (int)(arrow.height() / 2)), head);
-                        Imgproc.circle(arrow, head, 2, new Scalar(255, 0, 0, 255), 10);
-                    }
+        if (candidate.contour == null) {
+            ParkourMission.remember(signs, candidate.frame, instruction);
+            return instruction;
+        }
 
-                    // Afficher le résultat.
-                    showFrame(arrow);
+        instruction = ParkourMission.readInstruction(visionHelper, visionHelper.getSignTemplates(), candidate.contour, ARROWS);
+        show(candidate, instruction);
 
-                    if (lastInstruction == null)
-                        lastInstruction = new AircraftInstruction(FlyInstruction.GO_TOWARDS, angle);
-                    else if (new AircraftInstruction(FlyInstruction.GO_TOWARDS, angle).compare(lastInstruction)) {
-                        seek = false;
-                        executeInstruction(lastInstruction);
-                        lastInstruction = null;
-                    }
-                    else {
-                        lastInstruction = null;
-                        stop = true;
-                    }
-                }
-            }
-            else if (detectedShape == Shape.U) {
-                if (lastInstruction == null)
-                    lastInstruction = new AircraftInstruction(FlyInstruction.GO_UP);
-                else if (new AircraftInstruction(FlyInstruction.GO_UP).compare(lastInstruction)) {
-                    seek = false;
-                    executeInstruction(lastInstruction);
-                    lastInstruction = null;
-                }
-                else {
-                    lastInstruction = null;
-                    stop = true;
-                }
-            }
-            // Down.
-            else if (detectedShape == Shape.D) {
-                if (lastInstruction == null)
-                    lastInstruction = new AircraftInstruction(FlyInstruction.GO_DOWN);
-                else if (new AircraftInstruction(FlyInstruction.GO_DOWN).compare(lastInstruction)) {
-                    seek = false;
-                    executeInstruction(lastInstruction);
-                    lastInstruction = null;
-                }
-                else {
-                    lastInstruction = null;
-                    stop = true;
-                }
-            }
-            // Attérir.
-            else if (detectedShape == Shape.H) {
-                if (lastInstruction == null)
-                    lastInstruction = new AircraftInstruction(FlyInstruction.TAKEOFF_LAND);
-                else if (new AircraftInstruction(FlyInstruction.TAKEOFF_LAND).compare(lastInstruction)) {
-                    seek = false;
-                    executeInstruction(lastInstruction);
-                    lastInstruction = null;
-                }
-                else {
-                    lastInstruction = null;
-                    stop = true;
-                }
-            }
-        }
+        // Garder seulement l'absence d'instruction pour les prochaines images semblables.
+        ParkourMission.remember(signs, candidate.frame, instruction);
 
-        // Continuer la recherche si rien n'a été trouvé.
-        if (seek) {
-            if (++unknownDetectionCount > MAX_UNKNOWN_DETECTION)
-                controller.land(() -> {
-                    objectifStarted = false;
-                    cameraController.lookDown();
-                    controller.loseControl();
-                    caller.showToast(parkourEnded);
-                    caller.setUIState(true);
-                });
-            else if (stop)
-                controller.stop(null);
-            else
-                controller.goForward(2500, null);
-            new Handler().postDelayed(this::seekInstructions, 250);
-        }
+        return instruction;
     }
 
     /**
-     * Méthode qui exécute l'instruction détecté par le drone.
-     * @param instruction AircraftInstruction, instruction détecté par le drone.
+     * Méthode qui affiche l'instruction lue: le contour de la pancarte, et la direction pour une flèche.
+     * @param candidate SignCandidate, pancarte lue.
+     * @param instruction AircraftInstruction, instruction lue.
      */
-    private void executeInstruction(AircraftInstruction instruction) {
-        // Arrêter le drone.
-        controller.stop(() -> {
-            // Aller en direction de la flèche.
-            if (instruction.getInstruction() == FlyInstruction.GO_TOWARDS) {
-                controller.faceAngle((int)instruction.getAngle(), () -> {
-                    controller.goForward(2500, null);
-                    new Handler().postDelayed(this::seekInstructions, 2000);
-                });
-            }
-            // Monter l'altitude.
-            else if (instruction.getInstruction() == FlyInstruction.GO_UP) {
-                controller.stop(() -> controller.goUp(2000, () -> {
-                    cameraController.setZoom(CameraController.ZOOM_3X, djiError -> {
-                        controller.goForward(2500, null);
-                        new Handler().postDelayed(this::seekInstructions, 2000);
-                    });
-                }));
-            }
-            // Descendre l'altitude.
-            else if (instruction.getInstruction() == FlyInstruction.GO_DOWN) {
-                controller.stop(() -> controller.goDown(1000, () -> {
-                    cameraController.setZoom(CameraController.ZOOM_2_2X, djiError -> {
-                        controller.goForward(2500, null);
-                        new Handler().postDelayed(this::seekInstructions, 2000);
-                    });
-                }));
-            }
-            // Attérir.
-            else if (instruction.getInstruction() == FlyInstruction.TAKEOFF_LAND) {
-                controller.land(() -> {
-                    controller.loseControl();
-                    objectifStarted = false;
-                    caller.showToast(parkourEnded);
-                    cameraController.lookDown();
-                    caller.setUIState(true);
-                });
-            }
-        });
+    private void show(SignCandidate candidate, AircraftInstruction instruction) {
+        if (instruction.getInstruction() == FlyInstruction.NONE || !canShowFrame())
+            return;
+
+        MatOfPoint contour = candidate.frame.toFull(candidate.contour);
+        Mat sign = visionHelper.drawContour(candidate.frame.getMat().clone(), contour);
+
+        // Afficher la direction de la flèche.
+        if (instruction.getInstruction() == FlyInstruction.GO_TOWARDS) {
+            Point center = Detector.findCenterMass(contour);
+            double heading = Math.toRadians(instruction.getAngle());
+            Point head = new Point(center.x + Math.sin(heading) * 100, center.y - Math.cos(heading) * 100);
+            Imgproc.arrowedLine(sign, center, head, new Scalar(255, 0, 0, 255), 10);
+        }
+
+        showFrame(sign);
     }
-}
\ No newline at end of file
+}
@@ -1,23 +1,55 @@
 package com.vais.mavicmissions.objectives;
 
-import android.os.Handler;
-import android.os.Looper;
 import android.widget.Button;
 import com.vais.mavicmissions.MainActivity;
 import com.vais.mavicmissions.R;
 import com.vais.mavicmissions.services.drone.AircraftController;
 import com.vais.mavicmissions.services.drone.CameraController;
+import com.vais.mavicmissions.services.drone.ControllerBackend;
 import com.vais.mavicmissions.services.VisionHelper;
+import com.vais.mavicmissions.services.metrics.LatencyBudget;
+import com.vais.mavicmissions.services.metrics.LatencyHistogram;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import com.vais.mavicmissions.services.metrics.Tracer;
+import com.vais.mavicmissions.services.mission.DroneBackend;
+import com.vais.mavicmissions.services.mission.Mission;
+import com.vais.mavicmissions.services.recorder.FlightRecord;
+import com.vais.mavicmissions.services.recorder.FlightRecorder;
+import com.vais.mavicmissions.services.vision.Detection;
+import com.vais.mavicmissions.services.vision.Frame;
+import com.vais.mavicmissions.services.vision.FrameQualityGate;
+import com.vais.mavicmissions.services.vision.VisionStage;
+import com.vais.mavicmissions.services.vision.VisionStreams;
 import org.opencv.core.Mat;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
 import dji.common.util.CommonCallbacks.CompletionCallback;
+import io.reactivex.Flowable;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
 
 /**
  * Simon-Olivier Vaillancourt
  * 2022-05-20
  * DJI Mavic 2 Entreprise
  * Classe qui gère un objectif.
+ * La logique de l'objectif est dans une Mission, l'objectif lui fournit la détection et le drone.
  */
-public abstract class Objectif {
+public abstract class Objectif implements Mission.Listener {
+    /**
+     * VisionStage, étape de décision du pipeline de traitement d'image, exécutée dans le thread d'affichage.
+     */
+    private static final VisionStage DECISION = new VisionStage("décision", AndroidSchedulers.mainThread(), 1);
+    /**
+     * LatencyHistogram, temps entre la capture d'une image et la fin de sa détection.
+     */
+    private static final LatencyHistogram FRAME_DETECTION = Metrics.histogram("frame.detection");
+
     /**
      * MainActivity, instance de l'activité de l'application.
      */
@@ -34,26 +66,62 @@ public abstract class Objectif {
      * VisionHelper, service de traitement d'image.
      */
     protected VisionHelper visionHelper;
+    /**
+     * DroneBackend, drone commandé par la logique de l'objectif.
+     */
+    protected final DroneBackend drone;
+    /**
+     * Mission, logique de l'objectif.
+     */
+    protected Mission mission;
+
+    /**
+     * FrameQualityGate, filtre des images floues ou prises pendant une rotation du drone.
+     */
+    protected final FrameQualityGate quality;
 
     /**
      * Boolean, indique si l'objectif est démarré.
      */
     protected boolean objectifStarted;
 
+    /**
+     * String, nom de l'objectif dans les mesures et les enregistrements de vol.
+     */
+    private final String name;
+    /**
+     * LatencyBudget, âge des commandes de l'objectif, de l'arrivée de l'image jusqu'à l'envoi de la commande.
+     */
+    private final LatencyBudget latency;
+    /**
+     * Long, moment en ns de l'arrivée de l'image du résultat en cours de décision, 0 si inconnu.
+     */
+    private long decisionSource;
+
+    /**
+     * Disposable, abonnement actuel au flux de détection.
+     */
+    private Disposable detection;
+
     /**
      * Constructeur de la classe Objectif, créé l'objet et initialise ses données membres.
      * @param caller MainActivity, instance de l'activité de l'application.
      * @param controller AircraftController, controlleur du drone.
      * @param cameraController CameraController, controlleur de la caméra du drone.
      * @param visionHelper VisionHelper, service de traitement d'image.
+     * @param name String, nom de l'objectif dans les mesures.
      */
-    public Objectif(MainActivity caller, AircraftController controller, CameraController cameraController, VisionHelper visionHelper) {
+    public Objectif(MainActivity caller, AircraftController controller, CameraController cameraController, VisionHelper visionHelper, String name) {
         this.caller = caller;
         this.controller = controller;
         this.cameraController = cameraController;
         this.visionHelper = visionHelper;
+        drone = new ControllerBackend(controller, cameraController);
+        quality = new FrameQualityGate(visionHelper, controller::getAngularRate);
 
         objectifStarted = false;
+        this.name = name;
+        latency = new LatencyBudget(name);
     }
 
     /**
@@ -65,6 +133,7 @@ public abstract class Objectif {
         caller.setUIState(false, button);
         button.setText(caller.getResources().getString(R.string.stop));
         objectifStarted = true;
+        Tracer.instant(Tracer.OBJECTIVE, "objectif.start");
     }
 
     /**
@@ -72,20 +141,163 @@ public abstract class Objectif {
      * @param onReady CommonCallbacks.CompletionCallback, callback à appeler lorsque l'objectif est prêt.
      */
     protected void startObjectif(CompletionCallback onReady) {
+        // Mesurer chaque vol séparément.
+        Metrics.reset();
+        Tracer.reset();
+        cameraController.getResolution().reset(mission.getMaxProcessingLevel());
+        quality.reset();
+        controller.setLatencyBudget(latency);
+        startRecorder();
+        FlightRecorder.recordState(FlightRecord.STATE_START, 0, 0);
+        long trace = Tracer.beginAsync(Tracer.OBJECTIVE, "objectif.startObjectif");
+
         // Vérifier l'état du drone.
         controller.checkVirtualStick(() -> {
             cameraController.lookDown();
             // Décoller le drone.
-            controller.takeOff(() -> cameraController.setZoom(getRightZoom(), djiError -> onReady.onResult(null)));
+            controller.takeOff(() -> cameraController.setZoom(getRightZoom(), djiError -> {
+                Tracer.endAsync(Tracer.OBJECTIVE, "objectif.startObjectif", trace);
+                onReady.onResult(null);
+            }));
+        });
+    }
+
+    /**
+     * Méthode qui commence la logique de l'objectif, si l'objectif n'a pas été arrêté pendant le décollage.
+     */
+    protected void startMission() {
+        if (objectifStarted)
+            mission.start();
+    }
+
+    /**
+     * Méthode qui commence l'enregistrement du vol, et du flux vidéo si le profil de vision le demande, dans le dossier de l'application
+     * sur le stockage externe.
+     * Le vol n'est pas enregistré si le fichier ne peut pas être créé.
+     */
+    private void startRecorder() {
+        String date = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File directory = caller.getExternalFilesDir(null);
+
+        try {
+            FlightRecorder.start(new File(directory, "flight-" + name + "-" + date + ".bin"));
+
+            if (visionHelper.getProfile().isRecordVideo())
+                cameraController.startVideoTap(new File(directory, "video-" + name + "-" + date + ".h264v"));
+        }
+        catch (IOException e) {
+            caller.showToast(e.getMessage());
+        }
+    }
+
+    /**
+     * Fonction qui permet d'obtenir le flux des images du flux vidéo.
+     * @return Flowable<Frame>, flux des images.
+     */
+    protected Flowable<Frame> frames() {
+        return cameraController.getFrames();
+    }
+
+    /**
+     * Fonction qui permet d'obtenir le flux des images utilisables par la détection. Les images floues ou prises pendant une
+     * rotation du drone sont abandonnées avant d'arriver à la détection.
+     * @return Flowable<Frame>, flux des images utilisables.
+     */
+    protected Flowable<Frame> usableFrames() {
+        return frames().filter(quality::accept);
+    }
+
+    /**
+     * Méthode qui s'abonne à un flux de détection. Chaque résultat est traité dans le thread d'affichage.
+     * Les commandes données par la décision sont associées à l'image détectée, pour mesurer leur âge.
+     * @param detections Flowable<Detection<T>>, flux des résultats de détection.
+     * @param decision Consumer<T>, décision à prendre pour chaque résultat.
+     */
+    protected <T> void startDetection(Flowable<Detection<T>> detections, Consumer<T> decision) {
+        stopDetection();
+
+        detection = detections
+                .compose(DECISION.apply(result -> {
+                    if (objectifStarted) {
+                        long decided = System.nanoTime();
+                        latency.recordDecision(result.getArrival(), result.getCapture(), result.getDetected(), decided);
+                        decisionSource = result.getSource();
+                        controller.onDecision(decisionSource);
+
+                        decision.accept(result.getResult());
+                    }
+                    return result;
+                }))
+                .subscribe(result -> { }, error -> caller.showToast(error.getMessage()));
+    }
+
+    /**
+     * Méthode qui effectue une détection sur la prochaine image utilisable du flux vidéo.
+     * @param detector Function<Frame, T>, détection à effectuer.
+     * @param decision Consumer<T>, décision à prendre selon le résultat.
+     */
+    protected <T> void detectOnce(Function<Frame, T> detector, Consumer<T> decision) {
+        long trace = Tracer.beginAsync(Tracer.OBJECTIVE, "objectif.detectOnce");
+
+        startDetection(usableFrames().take(1).compose(VisionStreams.detect(frame -> toDetection(frame, detector.apply(frame)))), result -> {
+            Tracer.endAsync(Tracer.OBJECTIVE, "objectif.detectOnce", trace);
+            decision.accept(result);
         });
     }
 
     /**
-     * Fonction qui permet d'obtenir un frame du flux vidéo.
-     * @return Mat, matrice du flux vidéo.
+     * Méthode qui enregistre un résultat de détection utilisé par la logique de l'objectif dans l'enregistrement du vol.
+     * L'âge est mesuré depuis l'arrivée de l'image du résultat en cours de décision.
+     * @param code Int, résultat de la détection, propre à l'objectif.
+     * @param value1 Double, première valeur propre à l'objectif.
+     * @param value2 Double, deuxième valeur propre à l'objectif.
+     * @param value3 Double, troisième valeur propre à l'objectif.
+     */
+    @Override
+    public void onDetection(int code, double value1, double value2, double value3) {
+        double age = decisionSource != 0 ? (System.nanoTime() - decisionSource) / 1e6 : -1;
+        FlightRecorder.recordDetection(code, age, value1, value2, value3);
+    }
+
+    /**
+     * Méthode appelée lorsque le drone a attéri à la fin de l'objectif. Réactive les boutons et sauvegarde les mesures du vol.
      */
-    public Mat getFrame() {
-        return visionHelper.bitmapToMap(caller.cameraSurface.getBitmap());
+    @Override
+    public void onEnded() {
+        objectifStarted = false;
+        caller.setUIState(true);
+        caller.saveMetrics();
+    }
+
+    /**
+     * Fonction qui associe le résultat d'une détection à son image et note le temps écoulé depuis la capture de l'image.
+     * Ce temps ajuste aussi la résolution de traitement des prochaines images.
+     * @param frame Frame, image analysée.
+     * @param result T, résultat de la détection.
+     * @return Detection<T>, résultat associé à son image.
+     */
+    protected <T> Detection<T> toDetection(Frame frame, T result) {
+        FRAME_DETECTION.recordSince(frame.getTimestamp());
+        cameraController.getResolution().record(frame.getLevel(), System.nanoTime() - frame.getTimestamp());
+        return new Detection<>(frame, result);
+    }
+
+    /**
+     * Fonction qui retourne l'étape de décision du pipeline de traitement d'image.
+     * @return VisionStage, étape de décision.
+     */
+    public static VisionStage getDecisionStage() {
+        return DECISION;
+    }
+
+    /**
+     * Méthode qui arrête l'abonnement au flux de détection.
+     */
+    protected void stopDetection() {
+        if (detection != null) {
+            detection.dispose();
+            detection = null;
+        }
     }
 
     /**
@@ -110,11 +322,20 @@ public abstract class Objectif {
     }
 
     /**
-     * Méthode qui affiche une matrice dans l'activité de l'application.
+     * Méthode qui affiche une matrice dans l'activité de l'application, si le rythme d'affichage le permet.
+     * La matrice est copiée, elle peut donc être modifiée aussitôt.
      * @param frame Mat, matrice à afficher.
      */
     public void showFrame(Mat frame) {
-        new Handler(Looper.getMainLooper()).post(() -> caller.ivResult.setImageBitmap(visionHelper.matToBitmap(frame)));
+        caller.preview.show(frame);
+    }
+
+    /**
+     * Fonction qui indique si une image serait affichée maintenant, pour ne pas dessiner une image qui serait abandonnée.
+     * @return Boolean, vrai si showFrame afficherait une image.
+     */
+    protected boolean canShowFrame() {
+        return caller.preview.isReady();
     }
 
     /**
@@ -131,5 +352,14 @@ public abstract class Objectif {
      */
     public void setObjectifStarted(boolean objectifStarted) {
         this.objectifStarted = objectifStarted;
+
+        if (!objectifStarted) {
+            Tracer.instant(Tracer.OBJECTIVE, "objectif.stop");
+            FlightRecorder.recordState(FlightRecord.STATE_STOP, 0, 0);
+            stopDetection();
+
+            if (mission != null)
+                mission.stop();
+        }
     }
 }
\ No newline at end of file
@@ -1,18 +1,27 @@
 package com.vais.mavicmissions.services;
 
+import com.vais.mavicmissions.Enum.Color;
+import com.vais.mavicmissions.Enum.LineDirection;
 import com.vais.mavicmissions.Enum.Shape;
-import com.vais.mavicmissions.R;
-import com.vais.mavicmissions.objectives.Objectif;
+import com.vais.mavicmissions.services.metrics.Counter;
+import com.vais.mavicmissions.services.metrics.LatencyHistogram;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import com.vais.mavicmissions.services.vision.ArrowOrientation;
+import com.vais.mavicmissions.services.vision.ContourMatch;
+import com.vais.mavicmissions.services.vision.ContourQuery;
+import com.vais.mavicmissions.services.vision.FrameContext;
+import com.vais.mavicmissions.services.vision.ImageProcessor;
+import com.vais.mavicmissions.services.vision.IntPointBuffer;
+import com.vais.mavicmissions.services.vision.MaskTiles;
+import com.vais.mavicmissions.services.vision.SignTemplates;
+import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
-import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.imgproc.Moments;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -28,84 +37,348 @@ public class Detector {
     private static final double DEFAULT_EPSILON = 0.04;
 
     /**
-     * Int, limite maximum pour la comparaison de contours.
+     * Double, asymétrie d'une flèche typique, donne une confiance de 1.
      */
-    private static final float MATCH_SHAPE_TRESH = 1.3f;
+    private static final double ARROW_SKEWNESS_REFERENCE = 0.5;
+    /**
+     * Double, confiance minimum pour que l'orientation d'une flèche soit acceptée.
+     */
+    public static final double MIN_ARROW_CONFIDENCE = 0.3;
+
+    /**
+     * ContourQuery, recherche du contour de la balle.
+     * Les points du contour ne sont pas compressés puisque la taille minimum de la balle du profil porte sur leur nombre.
+     */
+    private static final ContourQuery BALL_QUERY = new ContourQuery().approximation(Imgproc.CHAIN_APPROX_NONE).excludeFrame().top(1);
+    /**
+     * Int, côté en pixels des tuiles du masque de la balle.
+     */
+    private static final int BALL_TILE_SIZE = 32;
+    /**
+     * Int, nombre minimum de pixels d'une tuile pour y chercher la balle, en pleine résolution. Divisé par 4 à chaque niveau de pyramide.
+     */
+    private static final int BALL_TILE_PIXELS = 16;
+
+    /**
+     * LatencyHistogram, temps d'exécution de la recherche de la pancarte.
+     */
+    private static final LatencyHistogram FIND_SIGN = Metrics.histogram("detector.findSign");
+    /**
+     * LatencyHistogram, temps d'exécution de la détection d'une forme.
+     */
+    private static final LatencyHistogram DETECT_SHAPE = Metrics.histogram("detector.detectShape");
+    /**
+     * LatencyHistogram, temps d'exécution de la reconnaissance des pancartes U, D et H.
+     */
+    private static final LatencyHistogram DETECT_SIGN = Metrics.histogram("detector.detectSign");
+    /**
+     * LatencyHistogram, temps d'exécution de l'estimation de l'orientation d'une flèche.
+     */
+    private static final LatencyHistogram ESTIMATE_ARROW = Metrics.histogram("detector.estimateArrowOrientation");
+    /**
+     * LatencyHistogram, temps d'exécution du filtre des couleurs de la balle.
+     */
+    private static final LatencyHistogram FILTER_BALL = Metrics.histogram("detector.filterBall");
+    /**
+     * LatencyHistogram, temps d'exécution de la recherche du contour de la balle.
+     */
+    private static final LatencyHistogram DETECT_BALL = Metrics.histogram("detector.detectBall");
+    /**
+     * LatencyHistogram, temps d'exécution de la détection des coins de la ligne.
+     */
+    private static final LatencyHistogram DETECT_LINE = Metrics.histogram("detector.detectLine");
+    /**
+     * LatencyHistogram, temps d'exécution de la vérification de la forme circulaire d'un contour.
+     */
+    private static final LatencyHistogram DETECT_CIRCLE = Metrics.histogram("detector.detectCircle");
+    /**
+     * Counter, nombre de masques de la balle abandonnés parce qu'ils n'ont pas assez de pixels.
+     */
+    private static final Counter BALL_EARLY_EXITS = Metrics.counter("detector.detectBall.empty");
+    /**
+     * Counter, nombre de masques de la ligne abandonnés parce qu'ils sont vides.
+     */
+    private static final Counter LINE_EARLY_EXITS = Metrics.counter("detector.detectLine.empty");
+
+    /**
+     * ThreadLocal<IntPointBuffer>, tableau de points réutilisé par chaque thread de détection.
+     */
+    private static final ThreadLocal<IntPointBuffer> CONTOUR_POINTS = new ThreadLocal<IntPointBuffer>() {
+        @Override
+        protected IntPointBuffer initialValue() {
+            return new IntPointBuffer();
+        }
+    };
+
+    /**
+     * Fonction qui trouve la pancarte potentielle d'une image: le plus gros contour qui n'est pas le cadre de l'image.
+     * @param processor ImageProcessor, service de traitement d'image.
+     * @param context FrameContext, résultats intermédiaires de l'image.
+     * @return MatOfPoint, contour de la pancarte potentielle, null si aucun contour n'a été trouvé.
+     */
+    public static MatOfPoint findSign(ImageProcessor processor, FrameContext context) {
+        // Effectuer une détection de contours et isoler le plus gros.
+        long start = System.nanoTime();
+        Mat filteredMat = processor.prepareContourDetection(context);
+        MatOfPoint contour = processor.findSignContour(filteredMat);
+
+        FIND_SIGN.recordSince(start);
+        return contour;
+    }
 
     /**
      * Fonction qui permet de détecter une forme à la caméra.
-     * @param source Mat, matrice à analyzer.
-     * @param visionHelper VisionHelper, service de traitement d'image.
+     * @param processor ImageProcessor, service de traitement d'image.
+     * @param templates SignTemplates, contours des patrons des pancartes.
      * @param contour MatOfPoint, contour détecté.
-     * @param m Objectif, gestionnaire de l'objectif.
      * @return Shape, forme détectée.
      */
-    public static Shape detectShape(Mat source, VisionHelper visionHelper, MatOfPoint contour, Objectif m) {
-        Shape detectedShape = Shape.UNKNOWN;
+    public static Shape detectShape(ImageProcessor processor, SignTemplates templates, MatOfPoint contour) {
+        long start = System.nanoTime();
+        Shape detectedShape = detectSign(processor, templates, contour);
 
-        // Détecter les côtés du contour.
-        MatOfPoint2f c2f = new MatOfPoint2f(contour.toArray());
-        double perimeter = Imgproc.arcLength(c2f, true);
-        MatOfPoint2f approx = new MatOfPoint2f();
-        Imgproc.approxPolyDP(c2f, approx, DEFAULT_EPSILON * perimeter, true);
+        if (detectedShape == Shape.UNKNOWN && isArrowShape(contour))
+            detectedShape = Shape.ARROW;
 
-        int sidesCount = approx.toArray().length;
+        DETECT_SHAPE.recordSince(start);
+        return detectedShape;
+    }
 
-        double[] similarities = new double[3];
-        similarities[0] = visionHelper.matchShape(contour, R.mipmap.ic_d_foreground);
-        similarities[1] = visionHelper.matchShape(contour, R.mipmap.ic_u_foreground);
-        similarities[2] = visionHelper.matchShape(contour, R.mipmap.ic_h_foreground);
+    /**
+     * Fonction qui permet de reconnaître une pancarte U, D ou H. Le patron le plus semblable est gardé, puisqu'un contour peut
+     * être sous la limite pour plusieurs patrons.
+     * @param processor ImageProcessor, service de traitement d'image.
+     * @param templates SignTemplates, contours des patrons des pancartes.
+     * @param contour MatOfPoint, contour détecté.
+     * @return Shape, pancarte reconnue, Shape.UNKNOWN si aucune pancarte n'est reconnue.
+     */
+    public static Shape detectSign(ImageProcessor processor, SignTemplates templates, MatOfPoint contour) {
+        long start = System.nanoTime();
+        Shape detectedShape = Shape.UNKNOWN;
+        double threshold = processor.getProfile().getMatchShapeThreshold();
 
-        boolean isCircle = detectCircle(contour);
+        double[] similarities = new double[3];
+        similarities[0] = processor.matchShape(contour, templates.getD());
+        similarities[1] = processor.matchShape(contour, templates.getU());
+        similarities[2] = processor.matchShape(contour, templates.getH());
 
-        // Déterminer la forme selon les paramètres obtenus.
-        if (similarities[1] < MATCH_SHAPE_TRESH)
+        // Garder le patron le plus semblable sous la limite, le H doit aussi être entouré d'un cercle.
+        double best = threshold;
+        if (similarities[1] < best) {
             detectedShape = Shape.U;
-        else if (similarities[0] < MATCH_SHAPE_TRESH)
+            best = similarities[1];
+        }
+        if (similarities[0] < best) {
             detectedShape = Shape.D;
-        else if (similarities[2] < MATCH_SHAPE_TRESH && isCircle)
+            best = similarities[0];
+        }
+        if (similarities[2] < best && detectCircle(contour))
             detectedShape = Shape.H;
-        else if (sidesCount <= 8 && sidesCount >= 2)
-            detectedShape = Shape.ARROW;
-
-        if (detectedShape != Shape.ARROW)
-            m.showFrame(visionHelper.drawContour(source.clone(), contour));
 
+        DETECT_SIGN.recordSince(start);
         return detectedShape;
     }
 
     /**
-     * Fonction qui permet de détecter une flèche.
-     * @param source Mat, matrice à analyzer.
-     * @param corners Point[], coins de la flèche.
-     * @param visionHelper VisionHelper, service de traitement d'image.
-     * @return Mat, matrice filtré.
+     * Fonction qui isole les couleurs de la balle.
+     * @param processor ImageProcessor, service de traitement d'image.
+     * @param context FrameContext, résultats intermédiaires de l'image.
+     * @return Mat, masque des pixels jaunes ou verts.
+     */
+    public static Mat filterBall(ImageProcessor processor, FrameContext context) {
+        // Filter les couleurs de la balle.
+        long start = System.nanoTime();
+        Mat yellow = processor.filterColor(context, Color.YELLOW);
+        Mat green = processor.filterColor(context, Color.BALL_GREEN);
+
+        // Combiner les filtres de couleurs.
+        Mat combination = new Mat();
+        Core.add(yellow, green, combination);
+
+        FILTER_BALL.recordSince(start);
+        return combination;
+    }
+
+    /**
+     * Fonction qui trouve le contour de la balle dans le masque de ses couleurs, à la pleine résolution.
+     * @param processor ImageProcessor, service de traitement d'image.
+     * @param ballMask Mat, masque des couleurs de la balle.
+     * @return Point[], points du contour de la balle, vide si aucun contour n'a été trouvé.
+     */
+    public static Point[] detectBall(ImageProcessor processor, Mat ballMask) {
+        return detectBall(processor, ballMask, 0);
+    }
+
+    /**
+     * Fonction qui trouve le contour de la balle dans le masque de ses couleurs.
+     * Un contour de n points entoure au moins n / 2 pixels, le masque est donc abandonné sans chercher de contour s'il n'a pas
+     * assez de pixels pour le contour minimum de la balle. Sinon, la recherche se limite aux tuiles du masque qui contiennent des pixels,
+     * ou couvre tout le masque si ses pixels sont trop dispersés pour qu'une tuile en contienne assez.
+     * @param processor ImageProcessor, service de traitement d'image.
+     * @param ballMask Mat, masque des couleurs de la balle.
+     * @param level Int, niveau de pyramide du masque, dont chaque point du contour vaudra 2^level points à la pleine résolution.
+     * @return Point[], points du contour de la balle, vide si aucun contour n'a été trouvé.
      */
-    public static Mat detectArrow(Mat source, Point[] corners, VisionHelper visionHelper) {
-        if (corners.length != 3) return null;
+    public static Point[] detectBall(ImageProcessor processor, Mat ballMask, int level) {
+        long start = System.nanoTime();
+
+        // Abandonner si la balle ne peut pas être dans le masque.
+        if (Core.countNonZero(ballMask) <= processor.getProfile().getBallDetectionThreshold() >> (level + 1)) {
+            BALL_EARLY_EXITS.increment();
+            DETECT_BALL.recordSince(start);
+            return new Point[] {};
+        }
 
-        // Redimensionner l'image pour y avoir la flèche seulement.
-        List<Integer> x = new ArrayList<>();
-        List<Integer> y = new ArrayList<>();
+        // Trouver le plus gros contour, seulement autour des tuiles qui contiennent des pixels.
+        List<Rect> regions = new MaskTiles(ballMask, BALL_TILE_SIZE).getRegions(Math.max(1, BALL_TILE_PIXELS >> (2 * level)));
+        List<ContourMatch> contours = regions.isEmpty() ? processor.findContours(ballMask, BALL_QUERY) : processor.findContours(ballMask, BALL_QUERY, regions);
 
-        for (Point corner : corners) {
-            x.add((int) corner.x);
-            y.add((int) corner.y);
+        Point[] detectedPoints = contours.isEmpty() ? new Point[] {} : contours.get(0).getContour().toArray();
+        DETECT_BALL.recordSince(start);
+        return detectedPoints.length == 4 ? new Point[] {} : detectedPoints;
+    }
+
+    /**
+     * Fonction qui permet d'obtenir la coordonnée de la balle.
+     * @param processor ImageProcessor, service de traitement d'image.
+     * @param points Point[], points du contour de la balle.
+     * @return Point, coordonnée du milieu de la balle, null si le contour est trop petit pour être la balle.
+     */
+    public static Point locateBall(ImageProcessor processor, Point[] points) {
+        return points.length > processor.getProfile().getBallDetectionThreshold() ? getAveragePoint(points) : null;
+    }
+
+    /**
+     * Fonction qui trouve les points de la ligne verte.
+     * @param processor ImageProcessor, service de traitement d'image.
+     * @param context FrameContext, résultats intermédiaires de l'image.
+     * @param maxCorners Int, nombre de coins maximum à trouver.
+     * @param minDistance Int, distance minimum entre les coins.
+     * @return Point[], coins détectés sur la ligne.
+     */
+    public static Point[] detectLine(ImageProcessor processor, FrameContext context, int maxCorners, int minDistance) {
+        // Isoler le vert.
+        long start = System.nanoTime();
+        Mat green = processor.filterColor(context, Color.LINE_GREEN);
+
+        // Aucun coin ne peut être trouvé sans vert.
+        if (Core.countNonZero(green) == 0) {
+            LINE_EARLY_EXITS.increment();
+            DETECT_LINE.recordSince(start);
+            return new Point[] {};
         }
-        Collections.sort(x);
-        Collections.sort(y);
 
-        int newWidth = (x.get(x.size() - 1) - x.get(0)) + 50;
-        int newHeight = (y.get(y.size() - 1) - y.get(0)) + 50;
+        // Détecter les coins.
+        MatOfPoint corners = processor.detectCorners(green, maxCorners, 0.5f, minDistance);
+        Point[] points = corners.toArray();
+
+        DETECT_LINE.recordSince(start);
+        return points;
+    }
+
+    /**
+     * Fonction qui détermine la direction de la ligne verte à partir des coins détectés.
+     * @param points Point[], coins détectés sur la ligne.
+     * @param center Point, centre de l'image.
+     * @return LineDirection, direction générale de la ligne, LineDirection.NONE si aucun coin n'indique de direction.
+     */
+    public static LineDirection detectLineDirection(Point[] points, Point center) {
+        int up = 0, right = 0, left = 0;
 
-        Rect crop = new Rect(x.get(0) - 25, y.get(0) - 25, newWidth, newHeight);
-        Mat cropped;
-        try { cropped = new Mat(source, crop); }
-        catch (Exception e) {
-            cropped = new Mat(source, new Rect(x.get(0), y.get(0), (x.get(x.size() - 1) - x.get(0)), (y.get(y.size() - 1) - y.get(0))));
+        // Pour chaque coins détectés.
+        for (Point p : points) {
+            // Déterminer la direction du point.
+            if (p.y < center.y && p.x > center.x - 75 && p.x < center.x + 75)
+                up++;
+            else if (p.x > center.x && p.y > center.y - 25 && p.y < center.y + 25)
+                right++;
+            else if (p.x < center.x && p.y > center.y - 25 && p.y < center.y + 25)
+                left++;
         }
 
-        return visionHelper.toGrayscale(cropped);
+        // Déterminer la direction générale.
+        if (right > left && right > up)
+            return LineDirection.RIGHT;
+        else if (left > right && left > up)
+            return LineDirection.LEFT;
+        else if (left == 0 && right == 0 && up == 0)
+            return LineDirection.NONE;
+
+        return LineDirection.FRONT;
+    }
+
+    /**
+     * Fonction qui détermine si un contour a le nombre de côtés d'une flèche.
+     * @param contour MatOfPoint, contour détecté.
+     * @return Boolean, vrai si le contour peut être une flèche.
+     */
+    public static boolean isArrowShape(MatOfPoint contour) {
+        // Détecter les côtés du contour.
+        MatOfPoint2f c2f = new MatOfPoint2f(contour.toArray());
+        double perimeter = Imgproc.arcLength(c2f, true);
+        MatOfPoint2f approx = new MatOfPoint2f();
+        Imgproc.approxPolyDP(c2f, approx, DEFAULT_EPSILON * perimeter, true);
+
+        int sidesCount = approx.toArray().length;
+        return sidesCount <= 8 && sidesCount >= 2;
+    }
+
+    /**
+     * Fonction qui estime l'orientation d'une flèche à partir des moments de son contour.
+     * L'axe principal donne la direction de la flèche et l'asymétrie (skewness) le long de cet axe donne son sens:
+     * la pointe est du côté où la masse est concentrée, le corps forme la queue de la distribution.
+     * @param contour MatOfPoint, contour de la flèche.
+     * @return ArrowOrientation, angle de la flèche et confiance de l'estimation.
+     */
+    public static ArrowOrientation estimateArrowOrientation(MatOfPoint contour) {
+        long start = System.nanoTime();
+        try {
+            return arrowOrientation(contour);
+        }
+        finally {
+            ESTIMATE_ARROW.recordSince(start);
+        }
+    }
+
+    /**
+     * Fonction qui calcule l'orientation d'une flèche à partir des moments de son contour.
+     * @param contour MatOfPoint, contour de la flèche.
+     * @return ArrowOrientation, angle de la flèche et confiance de l'estimation.
+     */
+    private static ArrowOrientation arrowOrientation(MatOfPoint contour) {
+        Moments moments = Imgproc.moments(contour);
+        double area = moments.get_m00();
+
+        if (area <= 0)
+            return new ArrowOrientation(0, 0);
+
+        // Trouver l'axe principal.
+        double theta = 0.5 * Math.atan2(2 * moments.get_mu11(), moments.get_mu20() - moments.get_mu02());
+        double c = Math.cos(theta);
+        double s = Math.sin(theta);
+
+        // Variances le long de l'axe principal et de l'axe secondaire.
+        double major = c * c * moments.get_mu20() + 2 * c * s * moments.get_mu11() + s * s * moments.get_mu02();
+        double minor = s * s * moments.get_mu20() - 2 * c * s * moments.get_mu11() + c * c * moments.get_mu02();
+
+        if (major <= 0)
+            return new ArrowOrientation(0, 0);
+
+        // Asymétrie le long de l'axe principal.
+        double third = c * c * c * moments.get_mu30() + 3 * c * c * s * moments.get_mu21()
+                + 3 * c * s * s * moments.get_mu12() + s * s * s * moments.get_mu03();
+        double skewness = (third / area) / Math.pow(major / area, 1.5);
+
+        // La pointe est à l'opposé de la queue de la distribution.
+        double headX = -Math.signum(skewness) * c;
+        double headY = -Math.signum(skewness) * s;
+        double angle = Math.toDegrees(Math.atan2(headX, -headY));
+
+        // Une forme peu allongée ou symétrique n'a pas d'orientation fiable.
+        double elongation = 1 - minor / major;
+        double confidence = Math.min(1, Math.abs(skewness) / ARROW_SKEWNESS_REFERENCE) * elongation;
+
+        return new ArrowOrientation(angle, confidence);
     }
 
     /**
@@ -120,28 +393,6 @@ public class Detector {
         return new Point(cX, cY);
     }
 
-    /**
-     * Fonction qui permet d'obtenir la pointe d'une flèche.
-     * @param massCenter Point, centre de masse de la matrice.
-     * @param corners Point[], coins de la flèche.
-     * @return Point, point de la pointe de la flèche.
-     */
-    public static Point findArrowHead(Point massCenter, Point[] corners) {
-        // Calculer la distance entre chaque point et le centre de masse.
-        double smallestDistance = Double.MAX_VALUE;
-        int cornerID = 0;
-        for (int i = 0; i < corners.length; i++) {
-            double currentDistance = getLength(corners[i], massCenter);
-
-            if (currentDistance < smallestDistance) {
-                smallestDistance = currentDistance;
-                cornerID = i;
-            }
-        }
-
-        return corners.length > cornerID ? corners[cornerID] : null;
-    }
-
     /**
      * Fonction qui permet de trouver l'angle entre deux points.
      * @param base Point, premier point.
@@ -166,7 +417,7 @@ public class Detector {
             if (head.x == base.x)
                 angle = head.y > base.y ? -180 : 0;
             else if (head.y == base.y)
-                angle = head.x > base.y ? 90 : -90;
+                angle = head.x > base.x ? 90 : -90;
         }
         else {
             // Trouver l'hypoténuse avec le théorem de pythagore.
@@ -264,13 +515,41 @@ public class Detector {
         return new Point((int)(source.width() / 2), (int)(source.height() / 2));
     }
 
+    /**
+     * Fonction qui détermine si un contour est un cercle.
+     * Les points du contour sont lus dans un tableau d'entiers propre au thread, sans créer d'objets Point.
+     * @param contour MatOfPoint, contour à analyzer.
+     * @return Boolean, vrai si tous les points sont à la même distance du centre, à 10 pixels près.
+     */
     public static boolean detectCircle(MatOfPoint contour) {
+        long start = System.nanoTime();
+        try {
+            return isCircle(contour);
+        }
+        finally {
+            DETECT_CIRCLE.recordSince(start);
+        }
+    }
+
+    /**
+     * Fonction qui vérifie si tous les points d'un contour sont à la même distance de son centre.
+     * @param contour MatOfPoint, contour à analyzer.
+     * @return Boolean, vrai si le contour est circulaire.
+     */
+    private static boolean isCircle(MatOfPoint contour) {
+        IntPointBuffer points = CONTOUR_POINTS.get().load(contour);
+
+        if (points.size() == 0)
+            return true;
+
+        // Trouver le point moyen du contour.
+        int centerX = (int)points.averageX();
+        int centerY = (int)points.averageY();
+
         double radius = -1;
         double actualRadius;
-        Point center = getAveragePoint(contour.toArray());
-
-        for (Point p : contour.toArray()) {
-            actualRadius = getLength(center, p);
+        for (int i = 0; i < points.size(); i++) {
+            actualRadius = Math.round(IntPointBuffer.distance(centerX, centerY, points.getX(i), points.getY(i)));
 
             if (radius == -1)
                 radius = actualRadius;
@@ -0,0 +1,177 @@
+package com.vais.mavicmissions.services;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.ImageView;
+import com.vais.mavicmissions.services.metrics.Counter;
+import com.vais.mavicmissions.services.metrics.LatencyHistogram;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import org.opencv.android.Utils;
+import org.opencv.core.Mat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui affiche la vision du drone dans un ImageView sans ralentir le traitement d'image.
+ * Les images arrivées trop tôt après la précédente, ou pendant qu'une image est en cours de conversion, sont abandonnées plutôt
+ * qu'empilées. La conversion en Bitmap se fait dans un thread dédié, dans celui des deux Bitmaps qui n'est pas affiché: aucun
+ * Bitmap n'est alloué tant que les dimensions des images ne changent pas.
+ */
+public class PreviewSink {
+    /**
+     * Counter, nombre d'images affichées.
+     */
+    private static final Counter SHOWN = Metrics.counter("preview.shown");
+    /**
+     * Counter, nombre d'images abandonnées.
+     */
+    private static final Counter DROPPED = Metrics.counter("preview.dropped");
+    /**
+     * LatencyHistogram, temps de conversion d'une image en Bitmap.
+     */
+    private static final LatencyHistogram CONVERT = Metrics.histogram("preview.convert");
+
+    /**
+     * ImageView, conteneur où les images sont affichées.
+     */
+    private final ImageView view;
+    /**
+     * Long, temps minimum en ns entre deux images affichées.
+     */
+    private final long interval;
+    /**
+     * Handler, thread d'affichage.
+     */
+    private final Handler ui;
+    /**
+     * ExecutorService, thread de conversion des images.
+     */
+    private final ExecutorService converter;
+
+    /**
+     * Bitmap[], les deux Bitmaps réutilisés, l'un affiché pendant que l'autre est rempli.
+     */
+    private final Bitmap[] bitmaps;
+    /**
+     * Mat, copie de l'image en cours de conversion, réutilisée d'une image à l'autre.
+     */
+    private final Mat staging;
+    /**
+     * Int, index du Bitmap affiché, -1 si aucun.
+     */
+    private int displayed;
+    /**
+     * Boolean, indique si une image est en cours de conversion ou d'affichage.
+     */
+    private boolean busy;
+    /**
+     * Long, moment en ns de la dernière image acceptée.
+     */
+    private long lastAccepted;
+    /**
+     * Boolean, indique si l'affichage est arrêté.
+     */
+    private boolean released;
+
+    /**
+     * Constructeur de la classe PreviewSink, créé l'objet et démarre le thread de conversion.
+     * @param view ImageView, conteneur où les images sont affichées.
+     * @param maxRate Int, nombre maximum d'images affichées par seconde.
+     */
+    public PreviewSink(ImageView view, int maxRate) {
+        this.view = view;
+        interval = 1000000000L / maxRate;
+        ui = new Handler(Looper.getMainLooper());
+        converter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "preview");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        bitmaps = new Bitmap[2];
+        staging = new Mat();
+        displayed = -1;
+    }
+
+    /**
+     * Méthode qui affiche une image, si le rythme d'affichage le permet. Peut être appelée de n'importe quel thread.
+     * L'image est copiée avant de revenir, elle peut donc être modifiée ou libérée aussitôt.
+     * @param frame Mat, image à afficher (RGBA, RGB ou nuances de gris).
+     */
+    public void show(Mat frame) {
+        long now = System.nanoTime();
+
+        synchronized (this) {
+            if (released || busy || now - lastAccepted < interval) {
+                DROPPED.increment();
+                return;
+            }
+
+            busy = true;
+            lastAccepted = now;
+            frame.copyTo(staging);
+        }
+
+        converter.execute(this::convert);
+    }
+
+    /**
+     * Fonction qui indique si une image serait affichée maintenant, pour éviter de préparer une image qui serait abandonnée.
+     * @return Boolean, vrai si show accepterait une image.
+     */
+    public synchronized boolean isReady() {
+        return !released && !busy && System.nanoTime() - lastAccepted >= interval;
+    }
+
+    /**
+     * Méthode qui convertit l'image copiée dans le Bitmap qui n'est pas affiché, puis l'affiche. Exécutée dans le thread de conversion.
+     * Tant que busy est vrai, la copie et ce Bitmap ne sont utilisés par aucun autre thread: la conversion se fait donc sans verrou,
+     * et show ne bloque jamais le traitement d'image.
+     */
+    private void convert() {
+        long start = System.nanoTime();
+        int target;
+
+        synchronized (this) {
+            target = displayed == 0 ? 1 : 0;
+        }
+
+        // Allouer le Bitmap au premier besoin ou lorsque les dimensions changent.
+        Bitmap bitmap = bitmaps[target];
+        if (bitmap == null || bitmap.getWidth() != staging.cols() || bitmap.getHeight() != staging.rows()) {
+            if (bitmap != null)
+                bitmap.recycle();
+
+            bitmap = Bitmap.createBitmap(staging.cols(), staging.rows(), Bitmap.Config.ARGB_8888);
+            bitmaps[target] = bitmap;
+        }
+
+        Utils.matToBitmap(staging, bitmap);
+        CONVERT.recordSince(start);
+
+        Bitmap converted = bitmap;
+        ui.post(() -> {
+            synchronized (this) {
+                if (!released) {
+                    view.setImageBitmap(converted);
+                    displayed = target;
+                    SHOWN.increment();
+                }
+
+                busy = false;
+            }
+        });
+    }
+
+    /**
+     * Méthode qui arrête l'affichage et le thread de conversion. Les Bitmaps restent à la charge de l'ImageView.
+     */
+    public synchronized void release() {
+        released = true;
+        converter.shutdown();
+    }
+}
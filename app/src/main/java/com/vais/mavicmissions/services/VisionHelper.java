@@ -4,38 +4,34 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.FileObserver;
 import androidx.core.content.ContextCompat;
-import com.vais.mavicmissions.Enum.Color;
 import com.vais.mavicmissions.R;
+import com.vais.mavicmissions.services.vision.FrameContext;
+import com.vais.mavicmissions.services.vision.ImageProcessor;
+import com.vais.mavicmissions.services.vision.SignTemplates;
+import com.vais.mavicmissions.services.vision.VisionProfile;
 
 import org.opencv.android.BaseLoaderCallback;
 import org.opencv.android.LoaderCallbackInterface;
 import org.opencv.android.OpenCVLoader;
-import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.android.Utils;
-import org.opencv.core.Point;
-import org.opencv.core.Rect;
-import org.opencv.core.Scalar;
-import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Simon-Olivier Vaillancourt
  * 2022-05-20
  * DJI Mavic 2 Entreprise
  * Classe qui permet d'effectuer des opérations de traitement d'image.
+ * Ajoute à ImageProcessor le chargement d'OpenCV, les conversions de bitmaps et les patrons tirés des ressources de l'application.
+ * Le profil de vision est lu dans le dossier de l'application au démarrage, puis rechargé dès que le fichier est remplacé, même pendant une mission.
  */
-public class VisionHelper {
-    /**
-     * Int, theshold de la détection de contours.
-     */
-    private static final int CONTOURS_THRESHOLD = 150;
-
+public class VisionHelper extends ImageProcessor {
     /**
      * Context, contexte de l'activité principale.
      */
@@ -44,42 +40,26 @@ public class VisionHelper {
      * BaseLoaderCallback, callback appelé lorsque OpenCV est chargé.
      */
     private BaseLoaderCallback cvLoaderCallback;
-
-    /**
-     * Scaler, valeur de vert la plus basse acceptée.
-     */
-    private Scalar lowerGreen;
-    /**
-     * Scaler, valeur de vert la plus haute acceptée.
-     */
-    private Scalar upperGreen;
-
-    /**
-     * Scaler, valeur de jaune la plus basse acceptée.
-     */
-    private Scalar lowerYellow;
     /**
-     * Scaler, valeur de jaune la plus basse acceptée.
+     * FileObserver, surveillance du fichier du profil de vision, null si le fichier n'est pas surveillé.
      */
-    private Scalar upperYellow;
+    private FileObserver profileObserver;
 
     /**
-     * Scaler, valeur de vert de la balle la plus basse acceptée.
-     */
-    private Scalar lowerBallGreen;
-    /**
-     * Scaler, valeur de vert de la balle la plus basse acceptée.
+     * Interface qui reçoit le résultat du rechargement du profil de vision.
      */
-    private Scalar upperBallGreen;
+    public interface ProfileListener {
+        /**
+         * Méthode appelée lorsque le nouveau profil est utilisé.
+         */
+        void onProfileReloaded();
 
-    /**
-     * Scaler, valeur de noir la plus basse acceptée.
-     */
-    private Scalar lowerBlack;
-    /**
-     * Scaler, valeur de noir la plus basse acceptée.
-     */
-    private Scalar upperBlack;
+        /**
+         * Méthode appelée lorsque le nouveau fichier ne peut pas être lu. L'ancien profil est gardé.
+         * @param e IOException, erreur de lecture.
+         */
+        void onProfileError(IOException e);
+    }
 
     /**
      * Contructeur de la classe VisionHelper, créé l'objet et initialise ses données membres.
@@ -97,22 +77,6 @@ public class VisionHelper {
                     super.onManagerConnected(status);
             }
         };
-
-        // Définir les limites du vert.
-        lowerGreen = new Scalar(32, 40, 40);
-        upperGreen = new Scalar(82, 240, 240);
-
-        // Définir les limites du jaune.
-        // Source: https://stackoverflow.com/questions/9179189/detect-yellow-color-in-opencv
-        lowerYellow = new Scalar(22, 100, 100);
-        upperYellow = new Scalar(28, 255, 255);
-
-        // Définir les limites du vert de la balle.
-        lowerBallGreen = new Scalar(32, 100, 100);
-        upperBallGreen = new Scalar(82, 255, 255);
-
-        lowerBlack = new Scalar(0, 0, 0);
-        upperBlack = new Scalar(155, 255, 35);
     }
 
     /**
@@ -127,310 +91,152 @@ public class VisionHelper {
     }
 
     /**
-     * Fonction qui permet de transformer une matrice en bitmap.
-     * @param src Mat, matrice à transformer.
-     * @return Bitmap, bitmap résultant.
+     * Méthode qui charge le profil de vision calibré pour le lieu, à partir du dossier de l'application sur le stockage externe.
+     * Le profil par défaut est gardé si le fichier n'existe pas. OpenCV n'est pas encore chargé au démarrage,
+     * les patrons des pancartes seront donc construits au premier besoin.
+     * @throws IOException si le fichier existe mais ne peut pas être lu.
      */
-    public Bitmap matToBitmap(Mat src) {
-        Bitmap result = Bitmap.createBitmap(src.cols(), src.rows(), Bitmap.Config.ARGB_8888);
-        Utils.matToBitmap(src, result);
-        return result;
-    }
+    public void loadProfile() throws IOException {
+        VisionProfile profile = readProfile();
 
-    /**
-     * Fonction qui permet de transformer un bitmap en matrice.
-     * @param src Bitmap, bitmap à transformer.
-     * @return Mat, matrice résultante.
-     */
-    public Mat bitmapToMap(Bitmap src) {
-        Mat result = new Mat();
-        Utils.bitmapToMat(src, result);
-        return result;
+        if (profile != null)
+            setProfile(profile);
     }
 
     /**
-     * Fonction qui permet de transformer une matrice en nuances de gris.
-     * @param src Mat, mat à transformer.
-     * @return Mat, matrice résultante.
+     * Méthode qui commence à surveiller le fichier du profil de vision. Chaque nouvelle version est lue et ses patrons sont construits
+     * dans le thread de la surveillance, puis le profil est remplacé d'un seul coup. Le traitement des images n'attend donc jamais.
+     * @param listener ProfileListener, objet qui reçoit le résultat de chaque rechargement.
      */
-    public Mat toGrayscale(Mat src) {
-        Mat result = new Mat();
-        Imgproc.cvtColor(src, result, Imgproc.COLOR_RGB2GRAY);
+    public void startWatchingProfile(ProfileListener listener) {
+        stopWatchingProfile();
 
-        return result;
+        profileObserver = new FileObserver(context.getExternalFilesDir(null).getPath(), FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO) {
+            @Override
+            public void onEvent(int event, String path) {
+                if (!VisionProfile.FILE_NAME.equals(path))
+                    return;
+
+                try {
+                    reloadProfile();
+                    listener.onProfileReloaded();
+                }
+                catch (IOException e) {
+                    listener.onProfileError(e);
+                }
+            }
+        };
+        profileObserver.startWatching();
     }
 
     /**
-     * Fonction qui applique une convolution sur une matrice.
-     * @param src Mat, matrice à transformer.
-     * @param maskSize Int, dimensions du masque à appliquer.
-     * @return Mat, matrice résultante.
+     * Méthode qui arrête de surveiller le fichier du profil de vision.
      */
-    public Mat smooth(Mat src, int maskSize) {
-        Mat result = new Mat();
-        Imgproc.GaussianBlur(src, result, new Size(maskSize, maskSize), 0, 0);
-
-        return result;
+    public void stopWatchingProfile() {
+        if (profileObserver != null) {
+            profileObserver.stopWatching();
+            profileObserver = null;
+        }
     }
 
     /**
-     * Fonction qui applique une érosion sur une matrice.
-     * @param src Mat, matrice à transformer.
-     * @param maskSize Int, dimension du masque à appliquer.
-     * @return Mat, matrice résultante.
+     * Méthode qui lit le nouveau profil, construit ses objets dérivés, puis remplace le profil actuel.
+     * @throws IOException si le fichier ne peut pas être lu.
      */
-    public Mat erode(Mat src, int maskSize) {
-        Mat result = new Mat();
-        Imgproc.erode(src, result, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(maskSize, maskSize)));
+    private void reloadProfile() throws IOException {
+        VisionProfile profile = readProfile();
+        if (profile == null)
+            return;
 
-        return result;
+        // Les patrons dépendent des paramètres de la détection de contours, ils sont donc obtenus avec le nouveau profil.
+        profile = profile.withTemplates(buildSignTemplates(new ImageProcessor(profile)));
+
+        synchronized (this) {
+            setProfile(profile);
+        }
     }
 
     /**
-     * Fonction qui applique une dilattion sur une matrice.
-     * @param src Mat, matrice à transformer.
-     * @param maskSize Int, dimensions du masque à appliquer.
-     * @return Mat, matrice résultante.
+     * Fonction qui lit le fichier du profil de vision.
+     * @return VisionProfile, profil lu, null si le fichier n'existe pas.
+     * @throws IOException si le fichier existe mais ne peut pas être lu.
      */
-    public Mat dilate(Mat src, int maskSize) {
-        Mat result = new Mat();
-        Imgproc.dilate(src, result, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(maskSize, maskSize)));
+    private VisionProfile readProfile() throws IOException {
+        File file = new File(context.getExternalFilesDir(null), VisionProfile.FILE_NAME);
+        if (!file.isFile())
+            return null;
 
-        return result;
+        try (InputStream in = new FileInputStream(file)) {
+            return VisionProfile.load(in);
+        }
     }
 
     /**
-     * Fonction qui prépare une matrice pour effectuer une détection de contours.
-     * Source: https://www.tutorialspoint.com/opencv/opencv_canny_edge_detection.htm
+     * Fonction qui permet de transformer une matrice en bitmap.
      * @param src Mat, matrice à transformer.
-     * @return Mat, matrice résultante.
+     * @return Bitmap, bitmap résultant.
      */
-    public Mat prepareContourDetection(Mat src) {
-        // Préparer l'image.
-        src = toGrayscale(src);
-        src = smooth(src, 25);
-
-        Imgproc.Canny(src, src, 60, 60 * 3);
-        src = dilate(src, 5);
-        return src;
+    public Bitmap matToBitmap(Mat src) {
+        Bitmap result = Bitmap.createBitmap(src.cols(), src.rows(), Bitmap.Config.ARGB_8888);
+        Utils.matToBitmap(src, result);
+        return result;
     }
 
     /**
-     * Fonction qui prépare une matrice pour effectuer une détection de coins.
-     * @param src Mat, matrice à transformer.
+     * Fonction qui permet de transformer un bitmap en matrice.
+     * @param src Bitmap, bitmap à transformer.
      * @return Mat, matrice résultante.
      */
-    public Mat prepareCornerDetection(Mat src) {
-        Mat result = toGrayscale(src);
-        result = smooth(result, 15);
-
+    public Mat bitmapToMap(Bitmap src) {
+        Mat result = new Mat();
+        Utils.bitmapToMat(src, result);
         return result;
     }
 
     /**
-     * Fonction qui effectue une détection de coins.
-     * @param src Mat, matrice à analyzer.
-     * @param maxCorner Int, nombre de coins maximum à trouver.
-     * @param minDistance Int, distance maximum entre les coins.
-     * @return MatOfPoint, matrice contenant les points trouvés.
-     */
-    public MatOfPoint detectCorners(Mat src, int maxCorner, int minDistance) {
-        // Détecter les coins.
-        MatOfPoint corners = new MatOfPoint();
-        Imgproc.goodFeaturesToTrack(src, corners, maxCorner, 0.01, minDistance);
-
-        return corners;
-    }
-
-    /**
-     * Fonction qui effectue une détection de coins.
-     * @param src Mat, matrice à analyzer.
-     * @param maxCorner Int, nombre de coins maximum à trouver.
-     * @param quality Int, qualité minimum des coins.
-     * @param minDistance Int, distance maximum entre les coins.
-     * @return MatOfPoint, matrice contenant les points trouvés.
-     */
-    public MatOfPoint detectCorners(Mat src, int maxCorner, float quality, int minDistance) {
-        // Détecter les coins.
-        MatOfPoint corners = new MatOfPoint();
-        Imgproc.goodFeaturesToTrack(src, corners, maxCorner, quality, minDistance);
-
-        return corners;
-    }
-
-    /**
-     * Fonction qui effectue une détection de contours.
-     * @param src Mat, matrice à analyzer.
-     * @return List<MatOfPoint>, liste des contours trouvés.
-     */
-    public List<MatOfPoint> contoursDetection(Mat src) {
-        // Trouver les contours.
-        List<MatOfPoint> contours = new ArrayList<>();
-        Mat hierarchy = new Mat();
-        Mat binary = new Mat();
-        Imgproc.threshold(src, binary, CONTOURS_THRESHOLD, CONTOURS_THRESHOLD, Imgproc.THRESH_BINARY_INV);
-        Imgproc.findContours(binary, contours, hierarchy, Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_NONE);
-
-        return contours;
-    }
-
-    /**
-     * Fonction qui trouve le contours le plus grand d'une liste.
-     * @param contours List<MatOfPoint>, liste de contours à analyzer.
-     * @return MatOfPoint, contour le plus grand.
+     * Fonction qui charge une ressource en matrice.
+     * @param res Int, ID de la ressource.
+     * @return Mat, matrice de la ressource (RGBA).
      */
-    public MatOfPoint getBiggerContour(Mat source, List<MatOfPoint> contours) {
-        MatOfPoint biggerContour = null;
-        double biggestArea = 0;
-        double area;
-        Rect bounds;
-
-        // Parcourir les contours et noter le plus grand.
-        for (MatOfPoint contour : contours) {
-            bounds = Imgproc.boundingRect(contour);
-            area = Imgproc.contourArea(contour);
-
-            if (area > biggestArea && (bounds.width < source.width() && bounds.height < source.height())) {
-                biggestArea  = area;
-                biggerContour = contour;
-            }
-        }
-
-        return biggerContour;
+    private Mat loadResource(int res) {
+        Drawable drawable = ContextCompat.getDrawable(context, res);
+        return bitmapToMap(((BitmapDrawable)drawable).getBitmap());
     }
 
     /**
-     * Source: https://stackoverflow.com/questions/44501723/how-to-merge-contours-in-opencv
-     * @param source
-     * @param contours
-     * @return
+     * Fonction qui retourne les contours des patrons des pancartes U, D et H, obtenus avec le profil actuel.
+     * Les patrons ne sont chargés et analysés qu'une seule fois par profil.
+     * @return SignTemplates, contours des patrons.
      */
-    public MatOfPoint combineContours(Mat source, List<MatOfPoint> contours) {
-        List<Point> finalPoints = new ArrayList<>();
-        MatOfPoint finalContour = new MatOfPoint();
-        Rect bounds;
-
-        for (MatOfPoint c : contours) {
-            bounds = Imgproc.boundingRect(c);
-
-            // Si le contour n'est pas le contour de la matrice au complet.
-            if (bounds.width < source.width() && bounds.height < source.height())
-                finalPoints.addAll(c.toList());
-        }
-
-        finalContour.fromList(finalPoints);
-        return finalContour;
+    public SignTemplates getSignTemplates() {
+        SignTemplates templates = getProfile().getTemplates();
+        return templates != null ? templates : loadSignTemplates();
     }
 
     /**
-     * Fonction qui filtre une matrice selon une couleur.
-     * @param src Matrice à transformer.
-     * @param color Color, couleur à filtrer.
-     * @return Mat, masque résultant.
+     * Fonction qui construit les patrons du profil actuel et les ajoute au profil.
+     * Le verrou empêche un rechargement de remplacer le profil entre la construction et l'ajout.
+     * @return SignTemplates, contours des patrons.
      */
-    public Mat filterColor(Mat src, Color color) {
-        Mat colorMask = new Mat();
-
-        src = smooth(src, 3);
-
-        // Transformer en HSV.
-        Mat hsv = new Mat();
-        Imgproc.cvtColor(src, hsv, Imgproc.COLOR_RGB2HSV);
-
-        // Définir les limites de couleurs.
-        Scalar lower = null, upper = null;
-
-        if (color == Color.YELLOW) {
-            lower = lowerYellow;
-            upper = upperYellow;
-        }
-        else if (color == Color.LINE_GREEN) {
-            lower = lowerGreen;
-            upper = upperGreen;
-        }
-        else if (color == Color.BALL_GREEN) {
-            lower = lowerBallGreen;
-            upper = upperBallGreen;
-        }
-        else if (color == Color.BLACK) {
-            lower = lowerBlack;
-            upper = upperBlack;
-        }
-        else {
-            lower = lowerBlack;
-            upper = upperBlack;
-        }
-
-        Core.inRange(hsv, lower, upper, colorMask);
-
-        return colorMask;
-    }
+    private synchronized SignTemplates loadSignTemplates() {
+        VisionProfile profile = getProfile();
 
-    /**
-     * Fonction qui rétressit une matrice par rapport à un ROI.
-     * @param source Mat, matrice à transformer.
-     * @param contour MatOfPoint, contour à délimiter.
-     * @return Mat, matrice résultante.
-     */
-    public Mat cropToContour(Mat source, MatOfPoint contour) {
-        Rect bounds = Imgproc.boundingRect(contour);
-        return new Mat(source, bounds);
-    }
+        if (profile.getTemplates() == null)
+            setProfile(profile = profile.withTemplates(buildSignTemplates(this)));
 
-    /**
-     * Fonction qui affiche des contours sur un fond noir.
-     * @param source Mat, matrice à transformer.
-     * @param contours List<MatOfPoint>, liste des contours à afficher.
-     * @return Mat, matrice résultante.
-     */
-    public Mat drawContour(Mat source, List<MatOfPoint> contours) {
-        // Remplir le fond de la matrice.
-        List<Point> points = new ArrayList<>();
-        points.add(new Point(0, 0));
-        points.add(new Point(source.width(), 0));
-        points.add(new Point(source.width(), source.height()));
-        points.add(new Point(0, source.height()));
-        MatOfPoint collection = new MatOfPoint();
-        collection.fromList(points);
-        List<MatOfPoint> pointMats = new ArrayList<>();
-        pointMats.add(collection);
-
-        Imgproc.fillPoly(source, pointMats, new Scalar(0, 0, 0, 255));
-        Random r = new Random();
-
-        for (int i = 0; i < contours.size(); i++)
-            Imgproc.drawContours(source, contours, i, new Scalar(r.nextInt(255), r.nextInt(255), r.nextInt(255), 255), 5);
-
-        return source;
+        return profile.getTemplates();
     }
 
     /**
-     * Fonction qui affiche des contours sur un fond noir.
-     * @param source Mat, matrice à transformer.
-     * @param contour MatOfPoint, contour à afficher.
-     * @return Mat, matrice résultante.
+     * Fonction qui analyse les patrons des pancartes.
+     * @param processor ImageProcessor, service de traitement d'image, avec le profil des patrons.
+     * @return SignTemplates, contours des patrons.
      */
-    public Mat drawContour(Mat source, MatOfPoint contour) {
-        // Remplir le fond de la matrice.
-        List<Point> points = new ArrayList<>();
-        points.add(new Point(0, 0));
-        points.add(new Point(source.width(), 0));
-        points.add(new Point(source.width(), source.height()));
-        points.add(new Point(0, source.height()));
-        MatOfPoint collection = new MatOfPoint();
-        collection.fromList(points);
-        List<MatOfPoint> pointMats = new ArrayList<>();
-        pointMats.add(collection);
-
-        Imgproc.fillPoly(source, pointMats, new Scalar(0, 0, 0, 255));
-        Random r = new Random();
-
-        List<MatOfPoint> contours = new ArrayList<>();
-        contours.add(contour);
-        for (int i = 0; i < contours.size(); i++)
-            Imgproc.drawContours(source, contours, i, new Scalar(r.nextInt(255), r.nextInt(255), r.nextInt(255), 255), 5);
-
-        return source;
+    private SignTemplates buildSignTemplates(ImageProcessor processor) {
+        return new SignTemplates(
+                processor.getTemplateContour(loadResource(R.mipmap.ic_d_foreground)),
+                processor.getTemplateContour(loadResource(R.mipmap.ic_u_foreground)),
+                processor.getTemplateContour(loadResource(R.mipmap.ic_h_foreground)));
     }
 
     /**
@@ -441,17 +247,17 @@ public class VisionHelper {
      * @return Double, valeur de comparaison maximum détectée.
      */
     public double matchTemplate(Mat src, int templateRes) {
-        // Convertir la ressource en matrice.
-        Drawable tSource = ContextCompat.getDrawable(context, templateRes);
-        Mat template = bitmapToMap(((BitmapDrawable)tSource).getBitmap());
-        template = toGrayscale(template);
-        src = toGrayscale(src);
-
-        Mat result = new Mat();
-        Imgproc.matchTemplate(src, template, result, Imgproc.TM_CCORR);
-        Core.MinMaxLocResult locResult = Core.minMaxLoc(result);
+        return matchTemplate(toGrayscale(src), toGrayscale(loadResource(templateRes)));
+    }
 
-        return locResult.maxVal;
+    /**
+     * Fonction qui permet de comparer une image à un patron, à partir de ses résultats intermédiaires.
+     * @param context FrameContext, résultats intermédiaires de l'image.
+     * @param templateRes Int, ID de la ressource du patron.
+     * @return Double, valeur de comparaison maximum détectée.
+     */
+    public double matchTemplate(FrameContext context, int templateRes) {
+        return matchTemplate(context.getGray(), toGrayscale(loadResource(templateRes)));
     }
 
     /**
@@ -461,20 +267,18 @@ public class VisionHelper {
      * @return Double, valeur de comparaison des formes.
      */
     public double matchShape(MatOfPoint srcContour, int templateRes) {
-        // Convertir la ressource en matrice.
-        Drawable tSource = ContextCompat.getDrawable(context, templateRes);
-        Mat template = bitmapToMap(((BitmapDrawable)tSource).getBitmap());
-
-        // Prendre le contour du template.
-        Mat filteredTemplate = prepareContourDetection(template);
-        List<MatOfPoint> templateContours = contoursDetection(filteredTemplate);
+        SignTemplates templates = getSignTemplates();
         MatOfPoint templateContour;
 
-        if (templateRes == R.mipmap.ic_d_foreground || templateRes == R.mipmap.ic_u_foreground || templateRes == R.mipmap.ic_h_foreground)
-            templateContour = templateContours.get(3);
+        if (templateRes == R.mipmap.ic_d_foreground)
+            templateContour = templates.getD();
+        else if (templateRes == R.mipmap.ic_u_foreground)
+            templateContour = templates.getU();
+        else if (templateRes == R.mipmap.ic_h_foreground)
+            templateContour = templates.getH();
         else
             templateContour = null;
 
-        return Imgproc.matchShapes(templateContour, srcContour, Imgproc.TM_CCORR, 0);
+        return matchShape(srcContour, templateContour);
     }
 }
\ No newline at end of file
@@ -5,9 +5,18 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.vais.mavicmissions.application.MavicMissionApp;
 import com.vais.mavicmissions.services.VerificationUnit;
+import com.vais.mavicmissions.services.metrics.Counter;
+import com.vais.mavicmissions.services.metrics.LatencyBudget;
+import com.vais.mavicmissions.services.metrics.LatencyHistogram;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import com.vais.mavicmissions.services.metrics.Tracer;
+import com.vais.mavicmissions.services.recorder.FlightRecord;
+import com.vais.mavicmissions.services.recorder.FlightRecorder;
 import java.util.Timer;
 import java.util.TimerTask;
 import dji.common.error.DJIError;
+import dji.common.flightcontroller.Attitude;
+import dji.common.flightcontroller.FlightControllerState;
 import dji.common.flightcontroller.FlightOrientationMode;
 import dji.common.flightcontroller.virtualstick.FlightControlData;
 import dji.common.flightcontroller.virtualstick.FlightCoordinateSystem;
@@ -85,6 +94,55 @@ public class AircraftController {
      */
     public static final int ROTATION_BACK = -180;
 
+    /**
+     * LatencyHistogram, duré du décollage, de la commande jusqu'à ce que le drone soit prêt.
+     */
+    private static final LatencyHistogram TAKE_OFF = Metrics.histogram("drone.takeOff");
+    /**
+     * LatencyHistogram, duré de l'attérissage, de la commande jusqu'à ce que le drone soit prêt.
+     */
+    private static final LatencyHistogram LAND = Metrics.histogram("drone.land");
+    /**
+     * LatencyHistogram, duré d'un déplacement vers le haut, de la commande jusqu'à la fin du déplacement.
+     */
+    private static final LatencyHistogram GO_UP = Metrics.histogram("drone.goUp");
+    /**
+     * LatencyHistogram, duré d'un déplacement vers le bas, de la commande jusqu'à la fin du déplacement.
+     */
+    private static final LatencyHistogram GO_DOWN = Metrics.histogram("drone.goDown");
+    /**
+     * LatencyHistogram, duré d'un déplacement vers la gauche, de la commande jusqu'à la fin du déplacement.
+     */
+    private static final LatencyHistogram GO_LEFT = Metrics.histogram("drone.goLeft");
+    /**
+     * LatencyHistogram, duré d'un déplacement vers la droite, de la commande jusqu'à la fin du déplacement.
+     */
+    private static final LatencyHistogram GO_RIGHT = Metrics.histogram("drone.goRight");
+    /**
+     * LatencyHistogram, duré d'un déplacement vers l'avant, de la commande jusqu'à la fin du déplacement.
+     */
+    private static final LatencyHistogram GO_FORWARD = Metrics.histogram("drone.goForward");
+    /**
+     * LatencyHistogram, duré d'un déplacement vers l'arrière, de la commande jusqu'à la fin du déplacement.
+     */
+    private static final LatencyHistogram GO_BACK = Metrics.histogram("drone.goBack");
+    /**
+     * LatencyHistogram, duré d'une rotation, de la commande jusqu'à ce que le drone soit prêt, mesurée si un listener l'attend.
+     */
+    private static final LatencyHistogram FACE_ANGLE = Metrics.histogram("drone.faceAngle");
+    /**
+     * LatencyHistogram, duré d'un arrêt, de la commande jusqu'à ce que le drone soit prêt, mesurée si un listener l'attend.
+     */
+    private static final LatencyHistogram STOP = Metrics.histogram("drone.stop");
+    /**
+     * LatencyHistogram, temps d'exécution de l'envoi d'une commande des virtuals sticks.
+     */
+    private static final LatencyHistogram VIRTUAL_STICK_SEND = Metrics.histogram("drone.virtualStick.send");
+    /**
+     * Counter, nombre de commandes des virtuals sticks refusées par le drone.
+     */
+    private static final Counter VIRTUAL_STICK_ERRORS = Metrics.counter("drone.virtualStick.errors");
+
     /**
      * Aircraft, instance du drone.
      */
@@ -130,6 +188,40 @@ public class AircraftController {
      */
     private boolean velocityMode;
 
+    /**
+     * LatencyBudget, mesure de l'âge des commandes envoyées, null si les commandes ne sont pas mesurées.
+     */
+    private volatile LatencyBudget latencyBudget;
+    /**
+     * Long, moment en ns (System.nanoTime) de l'arrivée de l'image à l'origine de la dernière décision, 0 si aucune.
+     */
+    private volatile long decisionSource;
+    /**
+     * Long, moment en ns de la dernière décision.
+     */
+    private volatile long decisionTime;
+    /**
+     * Long, moment en ns de l'arrivée de l'image à l'origine de la commande actuelle, 0 si aucune.
+     */
+    private volatile long setpointSource;
+    /**
+     * Long, moment en ns de la décision à l'origine de la commande actuelle.
+     */
+    private volatile long setpointDecision;
+
+    /**
+     * Float, vitesse de rotation du drone en degrés par seconde sur l'axe le plus rapide, calculée avec les deux derniers états reçus.
+     */
+    private volatile float angularRate;
+    /**
+     * Attitude, orientation du drone au dernier état reçu, null si aucun état n'a été reçu.
+     */
+    private Attitude lastAttitude;
+    /**
+     * Long, moment en ns du dernier état reçu.
+     */
+    private long lastStateTime;
+
     /**
      * Classe qui gère l'envoie de commandes au drone.
      */
@@ -140,7 +232,21 @@ public class AircraftController {
         @Override
         public void run() {
             if (VerificationUnit.isFlightControllerAvailable()) {
-                flightController.sendVirtualStickFlightControlData(new FlightControlData(pitch, roll, yaw, throttle), djiError -> { });
+                long source = setpointSource;
+                long decision = setpointDecision;
+
+                long start = System.nanoTime();
+                flightController.sendVirtualStickFlightControlData(new FlightControlData(pitch, roll, yaw, throttle), djiError -> {
+                    if (djiError != null)
+                        VIRTUAL_STICK_ERRORS.increment();
+                });
+                VIRTUAL_STICK_SEND.recordSince(start);
+                FlightRecorder.recordSetpoint(pitch, roll, yaw, throttle, source != 0 ? (start - source) / 1e6 : -1);
+
+                // Noter l'âge de la commande par rapport à l'image qui l'a causée.
+                LatencyBudget budget = latencyBudget;
+                if (budget != null && source != 0)
+                    budget.recordPacket(source, decision, start);
             }
         }
     }
@@ -177,6 +283,9 @@ public class AircraftController {
 
             }, COMMAND_TIMEOUT);
 
+            // Enregistrer l'état du drone, envoyé par le SDK à 10 Hz, pendant les vols enregistrés.
+            flightController.setStateCallback(this::onState);
+
             // Paramètrer le drone.
             setFlightControllerParams();
             velocityMode = true;
@@ -186,6 +295,45 @@ public class AircraftController {
         }
     }
 
+    /**
+     * Méthode appelée à chaque état envoyé par le SDK. Enregistre l'état et calcule la vitesse de rotation du drone.
+     * @param state FlightControllerState, état du drone.
+     */
+    private void onState(FlightControllerState state) {
+        Attitude attitude = state.getAttitude();
+        long now = System.nanoTime();
+
+        FlightRecorder.recordTelemetry(state.getAircraftLocation().getAltitude(),
+                state.getVelocityX(), state.getVelocityY(), state.getVelocityZ(), attitude.yaw, state.isFlying());
+
+        // Vitesse de rotation sur l'axe qui a le plus changé depuis le dernier état.
+        if (lastAttitude != null && now > lastStateTime) {
+            double change = Math.max(Math.abs(angleChange(lastAttitude.yaw, attitude.yaw)),
+                    Math.max(Math.abs(attitude.pitch - lastAttitude.pitch), Math.abs(attitude.roll - lastAttitude.roll)));
+            angularRate = (float)(change * 1e9 / (now - lastStateTime));
+        }
+
+        lastAttitude = attitude;
+        lastStateTime = now;
+    }
+
+    /**
+     * Fonction qui calcule le changement d'un angle entre -180 et 180 degrées, en passant par le plus court chemin.
+     * @param from Double, angle de départ.
+     * @param to Double, angle d'arrivée.
+     * @return Double, changement entre -180 et 180 degrées.
+     */
+    private static double angleChange(double from, double to) {
+        double change = (to - from) % 360;
+
+        if (change > 180)
+            change -= 360;
+        else if (change < -180)
+            change += 360;
+
+        return change;
+    }
+
     /**
      * Méthode qui modifie certains paramètres du drone.
      */
@@ -202,6 +350,8 @@ public class AircraftController {
      * @param listener ControllerListener, méthode à appeler lorsque le drone est prêt.
      */
     public void checkVirtualStick(ControllerListener listener) {
+        long trace = Tracer.beginAsync(Tracer.COMMAND, "drone.checkVirtualStick");
+
         // Vérifier les virtuals sticks.
         flightController.getVirtualStickModeEnabled(new CommonCallbacks.CompletionCallbackWith<Boolean>() {
             @Override
@@ -211,16 +361,20 @@ public class AircraftController {
                     // Activer les virtuals sticks.
                     flightController.setVirtualStickModeEnabled(true, djiError -> {
                         setFlightControllerParams();
+                        Tracer.endAsync(Tracer.COMMAND, "drone.checkVirtualStick", trace);
                         listener.onControllerReady();
                     });
                 else {
                     // Reparamètrer le drone.
                     setFlightControllerParams();
+                    Tracer.endAsync(Tracer.COMMAND, "drone.checkVirtualStick", trace);
                     listener.onControllerReady();
                 }
             }
             @Override
-            public void onFailure(DJIError djiError) { }
+            public void onFailure(DJIError djiError) {
+                Tracer.endAsync(Tracer.COMMAND, "drone.checkVirtualStick", trace);
+            }
         });
     }
 
@@ -253,6 +407,12 @@ public class AircraftController {
         return flightController.getState().getAircraftLocation().getAltitude();
     }
 
+    /**
+     * Fonction qui retourne la vitesse de rotation du drone, mesurée par sa télémétrie.
+     * @return Float, vitesse de rotation en degrés par seconde sur l'axe le plus rapide, 0 si aucun état n'a été reçu.
+     */
+    public float getAngularRate() { return angularRate; }
+
     /**
      * Méthode qui permet de désactiver les virtuals sticks.
      */
@@ -267,12 +427,16 @@ public class AircraftController {
     public void takeOff(@NonNull ControllerListener listener) {
         // Si le drone n'a pas déjà décollé.
         if (flightController != null && !hasTakenOff) {
+            long start = System.nanoTime();
+            long trace = Tracer.beginAsync(Tracer.COMMAND, TAKE_OFF.getName());
             controllerReady = false;
+            FlightRecorder.recordState(FlightRecord.STATE_TAKEOFF, getHeight(), 0);
             // Décoller le drone.
             flightController.startTakeoff(djiError ->
                     new Handler().postDelayed(() -> {
                         controllerReady = true;
                         hasTakenOff = true;
+                        endCommand(TAKE_OFF, start, trace);
                         listener.onControllerReady();
                     }, TAKEOFF_TIMEOUT)
             );
@@ -286,9 +450,12 @@ public class AircraftController {
     public void land(@NonNull ControllerListener listener) {
         // Si le drone est en vol.
         if (flightController != null && hasTakenOff) {
+            long start = System.nanoTime();
+            long trace = Tracer.beginAsync(Tracer.COMMAND, LAND.getName());
             resetAxis();
 
             controllerReady = false;
+            FlightRecorder.recordState(FlightRecord.STATE_LANDING, getHeight(), 0);
 
             // Commencer l'attérissage.
             flightController.startLanding(djiError -> {
@@ -298,6 +465,8 @@ public class AircraftController {
                         new Handler().postDelayed(() -> {
                             controllerReady = true;
                             hasTakenOff = false;
+                            FlightRecorder.recordState(FlightRecord.STATE_LANDED, getHeight(), 0);
+                            endCommand(LAND, start, trace);
                             listener.onControllerReady();
                         }, COMMAND_TIMEOUT);
                     });
@@ -306,10 +475,35 @@ public class AircraftController {
         }
     }
 
+    /**
+     * Méthode qui définit la mesure de l'âge des commandes et oublie la dernière décision.
+     * @param latencyBudget LatencyBudget, mesure de l'âge des commandes, null pour ne plus les mesurer.
+     */
+    public void setLatencyBudget(@Nullable LatencyBudget latencyBudget) {
+        this.latencyBudget = latencyBudget;
+        decisionSource = 0;
+        setpointSource = 0;
+    }
+
+    /**
+     * Méthode qui note qu'une décision est prise à partir d'une image.
+     * Les commandes données ensuite sont associées à cette image jusqu'à la prochaine décision.
+     * Doit être appelée avant les commandes causées par la décision.
+     * @param source Long, moment en ns (System.nanoTime) de l'arrivée de l'image.
+     */
+    public void onDecision(long source) {
+        decisionTime = System.nanoTime();
+        decisionSource = source;
+    }
+
     /**
      * Méthode qui permet d'envoyer une commande au drone.
      */
     private void sendTask() {
+        // Associer la commande à l'image de la dernière décision.
+        setpointDecision = decisionTime;
+        setpointSource = decisionSource;
+
         // Si le drone est prêt.
         if (flightController != null && controllerReady && hasTakenOff) {
             // Préparer la commande.
@@ -321,37 +515,63 @@ public class AircraftController {
     }
 
     /**
-     * Méthode qui attend la duré d'une commande.
+     * Méthode qui note la duré d'une commande et termine sa trace. Appelée dans le callback que la commande prévoit déjà,
+     * pour que la mesure n'alloue rien de plus. La trace n'est commencée que si la commande se termine à coup sûr.
+     * @param histogram LatencyHistogram, mesure de la commande, son nom est aussi celui de la trace.
+     * @param start Long, moment en ns (System.nanoTime) de l'envoi de la commande.
+     * @param trace Long, identifiant de la trace donné par Tracer.beginAsync.
+     */
+    private static void endCommand(LatencyHistogram histogram, long start, long trace) {
+        histogram.recordSince(start);
+        Tracer.endAsync(Tracer.COMMAND, histogram.getName(), trace);
+    }
+
+    /**
+     * Méthode qui attend la duré d'une commande, mesurée jusqu'à la remise à zéro des axes.
+     * @param histogram LatencyHistogram, mesure de la commande.
      * @param time Int, temps à attendre en ms.
      * @param listener ControllerListener, méthode à appeler lorsque le drone est prêt.
      */
-    private void waitCommandDuration(int time, ControllerListener listener) {
+    private void waitCommandDuration(LatencyHistogram histogram, int time, ControllerListener listener) {
         // Si le temps à attendre est valide.
-        if (time >= MINIMUM_COMMAND_DURATION)
-            // Exécuter l'action après le temps requis.
-            new Handler().postDelayed(() -> {
-                resetAxis();
+        if (time < MINIMUM_COMMAND_DURATION)
+            return;
 
-                if (listener != null)
-                    new Handler().postDelayed(listener::onControllerReady, COMMAND_RESET);
-            }, time);
+        long start = System.nanoTime();
+        long trace = Tracer.beginAsync(Tracer.COMMAND, histogram.getName());
+
+        // Exécuter l'action après le temps requis.
+        new Handler().postDelayed(() -> {
+            resetAxis();
+            endCommand(histogram, start, trace);
+
+            if (listener != null)
+                new Handler().postDelayed(listener::onControllerReady, COMMAND_RESET);
+        }, time);
     }
 
     /**
-     * Méthode qui attent la duré d'un déplacement verticale.
+     * Méthode qui attent la duré d'un déplacement verticale, mesurée jusqu'à l'arrêt de la montée ou de la descente.
+     * @param histogram LatencyHistogram, mesure de la commande.
      * @param time Int, temps à attendre en ms.
      * @param listener ControllerListener, méthode à appeler lorsque le drone est prêt.
      */
-    private void waitThrottleDuration(int time, ControllerListener listener) {
+    private void waitThrottleDuration(LatencyHistogram histogram, int time, ControllerListener listener) {
         // Si le temps à attendre est valide.
-        if (time >= MINIMUM_COMMAND_DURATION)
-            // Exécuter l'action après le temps requis.
-            new Handler().postDelayed(() -> {
-                throttle = 0;
+        if (time < MINIMUM_COMMAND_DURATION)
+            return;
 
-                if (listener != null)
-                    new Handler().postDelayed(listener::onControllerReady, COMMAND_RESET);
-            }, time);
+        long start = System.nanoTime();
+        long trace = Tracer.beginAsync(Tracer.COMMAND, histogram.getName());
+
+        // Exécuter l'action après le temps requis.
+        new Handler().postDelayed(() -> {
+            throttle = 0;
+            endCommand(histogram, start, trace);
+
+            if (listener != null)
+                new Handler().postDelayed(listener::onControllerReady, COMMAND_RESET);
+        }, time);
     }
 
     /**
@@ -366,7 +586,7 @@ public class AircraftController {
 
         // Attendre la commande.
         time = time == INFINITE_COMMAND ? 500 : time;
-        waitThrottleDuration(time, listener);
+        waitThrottleDuration(GO_UP, time, listener);
     }
 
     /**
@@ -381,7 +601,7 @@ public class AircraftController {
 
         // Attendre la commande.
         time = time == INFINITE_COMMAND ? 500 : time;
-        waitThrottleDuration(time, listener);
+        waitThrottleDuration(GO_DOWN, time, listener);
     }
 
     /**
@@ -396,7 +616,7 @@ public class AircraftController {
 
         // Attendre la commande.
         sendTask();
-        waitCommandDuration(time, listener);
+        waitCommandDuration(GO_LEFT, time, listener);
     }
 
     /**
@@ -411,7 +631,7 @@ public class AircraftController {
 
         // Attendre la commande.
         sendTask();
-        waitCommandDuration(time, listener);
+        waitCommandDuration(GO_RIGHT, time, listener);
     }
 
     /**
@@ -426,7 +646,7 @@ public class AircraftController {
 
         // Attendre la commande.
         sendTask();
-        waitCommandDuration(time, listener);
+        waitCommandDuration(GO_FORWARD, time, listener);
     }
 
     /**
@@ -441,7 +661,7 @@ public class AircraftController {
 
         // Attendre la commande.
         sendTask();
-        waitCommandDuration(time, listener);
+        waitCommandDuration(GO_BACK, time, listener);
     }
 
     /**
@@ -456,8 +676,14 @@ public class AircraftController {
 
         // Attendre la commande.
         sendTask();
-        if (listener != null)
-            new Handler().postDelayed(listener::onControllerReady, ROTATION_DURATION);
+        if (listener != null) {
+            long start = System.nanoTime();
+            long trace = Tracer.beginAsync(Tracer.COMMAND, FACE_ANGLE.getName());
+            new Handler().postDelayed(() -> {
+                endCommand(FACE_ANGLE, start, trace);
+                listener.onControllerReady();
+            }, ROTATION_DURATION);
+        }
     }
 
     /**
@@ -494,8 +720,14 @@ public class AircraftController {
         sendTask();
 
         // Attendre la commande.
-        if (listener != null)
-            new Handler().postDelayed(listener::onControllerReady, COMMAND_RESET);
+        if (listener != null) {
+            long start = System.nanoTime();
+            long trace = Tracer.beginAsync(Tracer.COMMAND, STOP.getName());
+            new Handler().postDelayed(() -> {
+                endCommand(STOP, start, trace);
+                listener.onControllerReady();
+            }, COMMAND_RESET);
+        }
     }
 
     /**
@@ -1,7 +1,20 @@
 package com.vais.mavicmissions.services.drone;
 
+import android.graphics.Bitmap;
 import android.os.Handler;
 import androidx.annotation.NonNull;
+import com.vais.mavicmissions.services.metrics.Tracer;
+import com.vais.mavicmissions.services.recorder.VideoTap;
+import com.vais.mavicmissions.services.vision.Frame;
+import com.vais.mavicmissions.services.vision.ResolutionController;
+import com.vais.mavicmissions.services.vision.VisionStreams;
+import org.opencv.android.Utils;
+import org.opencv.core.Mat;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import dji.common.camera.SettingsDefinitions;
 import dji.common.error.DJIError;
 import dji.common.gimbal.Rotation;
@@ -12,6 +25,9 @@ import dji.sdk.camera.VideoFeeder;
 import dji.sdk.codec.DJICodecManager;
 import dji.sdk.gimbal.Gimbal;
 import dji.sdk.products.Aircraft;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
 
 /**
  * Simon-Olivier Vaillancourt
@@ -37,6 +53,14 @@ public class CameraController {
      * Int, temps en ms à attendre après le zoom de la caméra.
      */
     private static final int ZOOM_OPERATION_DELAY = 2500;
+    /**
+     * Long, temps de traitement visé en ms par image, de la capture jusqu'à la fin de la détection.
+     */
+    private static final long FRAME_BUDGET = 150;
+    /**
+     * Int, nombre de Bitmaps de capture réutilisés: un en capture, un en attente de conversion et un en conversion.
+     */
+    private static final int CAPTURE_POOL_SIZE = 3;
 
     /**
      * Int, valeur qui représente un zoom 1X.
@@ -97,6 +121,94 @@ public class CameraController {
      * VideoDataListener, objet qui recoit le flux vidéo de la caméra.
      */
     protected VideoFeeder.VideoDataListener videoReceiver;
+    /**
+     * VideoTap, enregistrement du flux vidéo brut, null si le flux n'est pas enregistré.
+     */
+    private volatile VideoTap videoTap;
+
+    /**
+     * FrameGrabber, objet qui capture l'image affichée du flux vidéo.
+     */
+    private FrameGrabber frameGrabber;
+    /**
+     * CapturePool, Bitmaps réutilisés pour les captures.
+     */
+    private final CapturePool capturePool;
+    /**
+     * FlowableEmitter<Capture>, émetteur des captures, null si personne n'écoute le flux d'images.
+     */
+    private volatile FlowableEmitter<Capture> captureEmitter;
+    /**
+     * List<Capture>, captures émises qui n'ont pas encore été converties. Protégée par sa propre synchronisation.
+     */
+    private final List<Capture> pendingCaptures;
+    /**
+     * AtomicLong, numéro de la dernière image capturée.
+     */
+    private final AtomicLong frameCount;
+    /**
+     * ResolutionController, choix de la résolution de traitement des images.
+     */
+    private final ResolutionController resolution;
+    /**
+     * AtomicLong, moment en ns (System.nanoTime) de l'arrivée des premières données vidéo reçues depuis la dernière image affichée, 0 si aucune.
+     */
+    private final AtomicLong pendingArrival;
+    /**
+     * Long, moment en ns de l'arrivée des données vidéo de la dernière image affichée, 0 si inconnu.
+     * Modifié seulement dans le thread d'affichage.
+     */
+    private long displayedArrival;
+    /**
+     * Flowable<Frame>, flux des images du flux vidéo. Seule la dernière image est gardée lorsque les abonnés sont occupés.
+     */
+    private final Flowable<Frame> frames;
+
+    /**
+     * Interface qui permet de capturer l'image affichée du flux vidéo.
+     */
+    public interface FrameGrabber {
+        /**
+         * Fonction qui capture l'image affichée dans un Bitmap du réservoir.
+         * @param pool CapturePool, réservoir où prendre le Bitmap à remplir.
+         * @return Bitmap, image capturée, null si aucune image n'est affichée.
+         */
+        Bitmap grab(CapturePool pool);
+    }
+
+    /**
+     * Classe qui représente une capture du flux vidéo avant sa conversion en matrice.
+     */
+    private static class Capture {
+        /**
+         * Bitmap, image capturée.
+         */
+        private final Bitmap bitmap;
+        /**
+         * Long, moment en ns de l'arrivée des données vidéo de l'image, 0 si inconnu.
+         */
+        private final long arrival;
+        /**
+         * Long, moment en ns de la capture.
+         */
+        private final long timestamp;
+        /**
+         * Boolean, indique si la capture a été convertie. Lu et modifié seulement dans le thread de conversion.
+         */
+        private boolean converted;
+
+        /**
+         * Constructeur de la classe Capture, créé l'objet et initialise ses données membres.
+         * @param bitmap Bitmap, image capturée.
+         * @param arrival Long, moment en ns de l'arrivée des données vidéo de l'image.
+         * @param timestamp Long, moment en ns de la capture.
+         */
+        private Capture(Bitmap bitmap, long arrival, long timestamp) {
+            this.bitmap = bitmap;
+            this.arrival = arrival;
+            this.timestamp = timestamp;
+        }
+    }
 
     /**
      * Constructeur de la classe CameraController, créé l'objet et initialise ses données membres.
@@ -109,14 +221,38 @@ public class CameraController {
 
         // Paramétrer le flux vidéo.
         codecManager = null;
+        pendingArrival = new AtomicLong();
         videoReceiver = new VideoFeeder.VideoDataListener() {
             @Override
             public void onReceive(byte[] bytes, int size) {
+                // Noter l'arrivée des premières données de la prochaine image affichée.
+                pendingArrival.compareAndSet(0, System.nanoTime());
+
+                VideoTap tap = videoTap;
+                if (tap != null)
+                    tap.write(bytes, size);
+
                 if (codecManager != null)
                     codecManager.sendDataToDecoder(bytes, size);
             }
         };
 
+        // Paramétrer le flux d'images. Une image n'est capturée que si un abonné est prêt à la recevoir.
+        frameCount = new AtomicLong();
+        capturePool = new CapturePool(CAPTURE_POOL_SIZE);
+        resolution = new ResolutionController(FRAME_BUDGET);
+        pendingCaptures = new ArrayList<>();
+        // Aucune capture n'est gardée à la source: onFrameUpdated n'émet que si une capture est demandée.
+        frames = Flowable.<Capture>create(emitter -> {
+                    captureEmitter = emitter;
+                    emitter.setCancellable(() -> {
+                        captureEmitter = null;
+                        reclaimCaptures();
+                    });
+                }, BackpressureStrategy.MISSING)
+                .compose(VisionStreams.decode(this::toFrame))
+                .share();
+
         setParameters();
         lookDown();
     }
@@ -136,10 +272,15 @@ public class CameraController {
      * @param callback CompletionCallback, action à effectuer lorsque le zoom est complété.
      */
     public void setZoom(final int zoom, CommonCallbacks.CompletionCallback callback) {
+        long trace = Tracer.beginAsync(Tracer.CAMERA, "camera.setZoom");
+        long specTrace = Tracer.beginAsync(Tracer.CAMERA, "camera.getOpticalZoomSpec");
+
         // Obtenir les informations du zoom optique.
         camera.getOpticalZoomSpec(new CommonCallbacks.CompletionCallbackWith<SettingsDefinitions.OpticalZoomSpec>() {
             @Override
             public void onSuccess(SettingsDefinitions.OpticalZoomSpec opticalZoomSpec) {
+                Tracer.endAsync(Tracer.CAMERA, "camera.getOpticalZoomSpec", specTrace);
+
                 // Optenir les minimum et maximum du zoom optique.
                 int minZoom = opticalZoomSpec.getMinFocalLength();
                 int maxZoom = opticalZoomSpec.getMaxFocalLength();
@@ -148,10 +289,16 @@ public class CameraController {
                 camera.setOpticalZoomFocalLength(zoom >= minZoom && zoom <= maxZoom && (zoom % opticalZoomSpec.getFocalLengthStep() == 0) ? zoom : minZoom, null);
 
                 // Attendre la fin du zoom et exécuter le callback.
-                new Handler().postDelayed(() -> callback.onResult(null), ZOOM_OPERATION_DELAY);
+                new Handler().postDelayed(() -> {
+                    Tracer.endAsync(Tracer.CAMERA, "camera.setZoom", trace);
+                    callback.onResult(null);
+                }, ZOOM_OPERATION_DELAY);
             }
             @Override
-            public void onFailure(DJIError djiError) { }
+            public void onFailure(DJIError djiError) {
+                Tracer.endAsync(Tracer.CAMERA, "camera.getOpticalZoomSpec", specTrace);
+                Tracer.endAsync(Tracer.CAMERA, "camera.setZoom", trace);
+            }
         });
     }
 
@@ -174,7 +321,11 @@ public class CameraController {
         builder.mode(RotationMode.ABSOLUTE_ANGLE);
         builder.pitch(0);
 
-        gimbal.rotate(builder.build(), DJIError -> lookingDown = false);
+        long trace = Tracer.beginAsync(Tracer.CAMERA, "camera.lookForward");
+        gimbal.rotate(builder.build(), DJIError -> {
+            lookingDown = false;
+            Tracer.endAsync(Tracer.CAMERA, "camera.lookForward", trace);
+        });
     }
 
     /**
@@ -187,7 +338,8 @@ public class CameraController {
         builder.mode(RotationMode.ABSOLUTE_ANGLE);
         builder.pitch(angle);
 
-        gimbal.rotate(builder.build(), null);
+        long trace = Tracer.beginAsync(Tracer.CAMERA, "camera.lookAtAngle");
+        gimbal.rotate(builder.build(), DJIError -> Tracer.endAsync(Tracer.CAMERA, "camera.lookAtAngle", trace));
     }
 
     /**
@@ -199,7 +351,11 @@ public class CameraController {
         builder.mode(RotationMode.ABSOLUTE_ANGLE);
         builder.pitch(GIMBAL_DOWN_ANGLE);
 
-        gimbal.rotate(builder.build(), DJIError -> lookingDown = true);
+        long trace = Tracer.beginAsync(Tracer.CAMERA, "camera.lookDown");
+        gimbal.rotate(builder.build(), DJIError -> {
+            lookingDown = true;
+            Tracer.endAsync(Tracer.CAMERA, "camera.lookDown", trace);
+        });
     }
 
     /**
@@ -209,6 +365,30 @@ public class CameraController {
         VideoFeeder.getInstance().getPrimaryVideoFeed().addVideoDataListener(videoReceiver);
     }
 
+    /**
+     * Méthode qui commence l'enregistrement du flux vidéo brut, pour le rejouer ensuite sur un ordinateur.
+     * L'enregistrement en cours est terminé.
+     * @param file File, fichier à écrire.
+     * @throws IOException si le fichier ne peut pas être ouvert.
+     */
+    public synchronized void startVideoTap(File file) throws IOException {
+        stopVideoTap();
+        videoTap = new VideoTap(file);
+    }
+
+    /**
+     * Méthode qui termine l'enregistrement du flux vidéo brut. Ne fait rien si le flux n'est pas enregistré.
+     * @throws IOException si le fichier ne peut pas être écrit.
+     */
+    public synchronized void stopVideoTap() throws IOException {
+        VideoTap tap = videoTap;
+
+        if (tap != null) {
+            videoTap = null;
+            tap.close();
+        }
+    }
+
     /**
      * Fonction qui permet d'obtenir le gestionnaire du flux vidéo.
      * @return DJICodecManager, gestionnaire du flux vidéo.
@@ -225,6 +405,100 @@ public class CameraController {
         this.codecManager = codecManager;
     }
 
+    /**
+     * Méthode qui permet de changer l'objet qui capture l'image affichée du flux vidéo.
+     * @param frameGrabber FrameGrabber, objet qui capture l'image affichée.
+     */
+    public void setFrameGrabber(FrameGrabber frameGrabber) {
+        this.frameGrabber = frameGrabber;
+    }
+
+    /**
+     * Méthode appelée lorsqu'une nouvelle image du flux vidéo est affichée.
+     * Doit être appelée dans le thread d'affichage.
+     */
+    public void onFrameUpdated() {
+        // L'image affichée provient des données arrivées depuis l'image précédente.
+        // Le décodeur peut garder quelques images en attente, l'âge de l'image est donc légèrement sous-estimé.
+        long arrival = pendingArrival.getAndSet(0);
+        if (arrival != 0)
+            displayedArrival = arrival;
+
+        FlowableEmitter<Capture> emitter = captureEmitter;
+
+        // Capturer l'image seulement si un abonné l'attend.
+        if (emitter == null || frameGrabber == null || emitter.requested() == 0)
+            return;
+
+        Bitmap bitmap = frameGrabber.grab(capturePool);
+        if (bitmap == null)
+            return;
+
+        Capture capture = new Capture(bitmap, displayedArrival, System.nanoTime());
+        synchronized (pendingCaptures) {
+            pendingCaptures.add(capture);
+        }
+        emitter.onNext(capture);
+    }
+
+    /**
+     * Méthode qui rend au réservoir les Bitmaps des captures abandonnées par l'annulation du flux d'images, encore dans la file
+     * de conversion. Ils sont rendus dans le thread de conversion, après la conversion en cours, qui rend elle-même son Bitmap.
+     * Une capture émise pendant l'annulation est rendue à l'annulation suivante.
+     */
+    private void reclaimCaptures() {
+        List<Capture> abandoned;
+        synchronized (pendingCaptures) {
+            abandoned = new ArrayList<>(pendingCaptures);
+            pendingCaptures.clear();
+        }
+
+        if (abandoned.isEmpty())
+            return;
+
+        VisionStreams.onDecodeThread(() -> {
+            for (Capture capture : abandoned)
+                if (!capture.converted)
+                    capturePool.release(capture.bitmap);
+        });
+    }
+
+    /**
+     * Fonction qui convertit une capture en image du flux vidéo, réduite à la résolution de traitement actuelle.
+     * Le Bitmap de la capture est rendu au réservoir une fois copié, ou par reclaimCaptures si la capture est abandonnée avant.
+     * La matrice, elle, appartient à l'image: les objectifs la gardent pour l'affichage après la détection.
+     * @param capture Capture, capture à convertir.
+     * @return Frame, image du flux vidéo.
+     */
+    private Frame toFrame(Capture capture) {
+        synchronized (pendingCaptures) {
+            pendingCaptures.remove(capture);
+        }
+        capture.converted = true;
+
+        Mat mat = new Mat();
+        Utils.bitmapToMat(capture.bitmap, mat);
+        capturePool.release(capture.bitmap);
+
+        return new Frame(frameCount.incrementAndGet(), capture.arrival, capture.timestamp, mat, resolution.getLevel());
+    }
+
+    /**
+     * Fonction qui permet d'obtenir le flux des images du flux vidéo.
+     * @return Flowable<Frame>, flux des images.
+     */
+    public Flowable<Frame> getFrames() {
+        return frames;
+    }
+
+    /**
+     * Fonction qui retourne le choix de la résolution de traitement des images.
+     * @return ResolutionController, choix de la résolution.
+     */
+    public ResolutionController getResolution() {
+        return resolution;
+    }
+
     /**
      * Fonction qui indique si le drone regarde vers le bas.
      * @return Boolean, vrai si le drone regarde vers le bas.
@@ -0,0 +1,82 @@
+package com.vais.mavicmissions.services.drone;
+
+import android.graphics.Bitmap;
+import com.vais.mavicmissions.services.metrics.Counter;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import java.util.ArrayDeque;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui garde les Bitmaps des captures du flux vidéo pour les réutiliser d'une image à l'autre.
+ * TextureView.getBitmap() alloue un Bitmap de la taille de l'écran à chaque appel, ce qui déclenche le ramasse-miettes plusieurs fois
+ * par seconde pendant la détection. Avec getBitmap(Bitmap), la capture est dessinée dans un Bitmap du réservoir, rendu après sa conversion,
+ * ou à l'annulation du flux d'images si la capture n'a pas été convertie.
+ * Une capture n'est demandée que lorsque le pipeline peut la recevoir, il y a donc au plus une capture en conversion et une en attente:
+ * quelques Bitmaps suffisent.
+ */
+public class CapturePool {
+    /**
+     * Counter, nombre de Bitmaps alloués pour une capture.
+     */
+    private static final Counter ALLOCATED = Metrics.counter("capture.allocated");
+    /**
+     * Counter, nombre de captures faites dans un Bitmap réutilisé.
+     */
+    private static final Counter REUSED = Metrics.counter("capture.reused");
+
+    /**
+     * Int, nombre maximum de Bitmaps gardés.
+     */
+    private final int capacity;
+    /**
+     * ArrayDeque<Bitmap>, Bitmaps libres.
+     */
+    private final ArrayDeque<Bitmap> free;
+
+    /**
+     * Constructeur de la classe CapturePool, créé l'objet et initialise ses données membres.
+     * @param capacity Int, nombre maximum de Bitmaps gardés.
+     */
+    public CapturePool(int capacity) {
+        this.capacity = capacity;
+        free = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Fonction qui retourne un Bitmap libre des dimensions demandées, alloué seulement si aucun ne peut être réutilisé.
+     * Les Bitmaps libres d'autres dimensions, gardés avant un changement de taille de l'affichage, sont libérés.
+     * @param width Int, largeur du Bitmap en pixels.
+     * @param height Int, hauteur du Bitmap en pixels.
+     * @return Bitmap, Bitmap ARGB_8888 à remplir, à rendre avec release.
+     */
+    public synchronized Bitmap acquire(int width, int height) {
+        Bitmap bitmap;
+        while ((bitmap = free.poll()) != null) {
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                REUSED.increment();
+                return bitmap;
+            }
+
+            bitmap.recycle();
+        }
+
+        ALLOCATED.increment();
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Méthode qui rend un Bitmap au réservoir une fois son contenu copié. Il est libéré si le réservoir est plein.
+     * @param bitmap Bitmap, Bitmap obtenu avec acquire.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap.isRecycled())
+            return;
+
+        if (free.size() < capacity)
+            free.push(bitmap);
+        else
+            bitmap.recycle();
+    }
+}
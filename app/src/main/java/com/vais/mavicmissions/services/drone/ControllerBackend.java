@@ -0,0 +1,186 @@
+package com.vais.mavicmissions.services.drone;
+
+import android.os.Handler;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.vais.mavicmissions.services.metrics.Tracer;
+import com.vais.mavicmissions.services.mission.DroneBackend;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui envoie les commandes de la logique des objectifs au drone, à travers ses contrôleurs.
+ */
+public class ControllerBackend implements DroneBackend {
+    /**
+     * AircraftController, controlleur du drone.
+     */
+    private final AircraftController controller;
+    /**
+     * CameraController, controlleur de la caméra du drone.
+     */
+    private final CameraController cameraController;
+
+    /**
+     * Constructeur de la classe ControllerBackend, créé l'objet et initialise ses données membres.
+     * @param controller AircraftController, controlleur du drone.
+     * @param cameraController CameraController, controlleur de la caméra du drone.
+     */
+    public ControllerBackend(@NonNull AircraftController controller, @NonNull CameraController cameraController) {
+        this.controller = controller;
+        this.cameraController = cameraController;
+    }
+
+    /**
+     * Méthode qui déplace le drone vers l'avant.
+     * @param time Int, duré en ms du déplacement.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    @Override
+    public void goForward(int time, @Nullable Runnable done) {
+        controller.goForward(time, listener(done));
+    }
+
+    /**
+     * Méthode qui déplace le drone vers sa gauche.
+     * @param time Int, duré en ms du déplacement.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    @Override
+    public void goLeft(int time, @Nullable Runnable done) {
+        controller.goLeft(time, listener(done));
+    }
+
+    /**
+     * Méthode qui déplace le drone vers sa droite.
+     * @param time Int, duré en ms du déplacement.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    @Override
+    public void goRight(int time, @Nullable Runnable done) {
+        controller.goRight(time, listener(done));
+    }
+
+    /**
+     * Méthode qui déplace le drone vers le haut.
+     * @param time Int, duré en ms du déplacement.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    @Override
+    public void goUp(int time, @Nullable Runnable done) {
+        controller.goUp(time, listener(done));
+    }
+
+    /**
+     * Méthode qui déplace le drone vers le bas.
+     * @param time Int, duré en ms du déplacement.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    @Override
+    public void goDown(int time, @Nullable Runnable done) {
+        controller.goDown(time, listener(done));
+    }
+
+    /**
+     * Méthode qui tourne le drone d'un angle par rapport à sa direction actuelle.
+     * @param angle Int, angle en degrés.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    @Override
+    public void faceAngle(int angle, @Nullable Runnable done) {
+        controller.faceAngle(angle, listener(done));
+    }
+
+    /**
+     * Méthode qui arrête les mouvements du drone.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    @Override
+    public void stop(@Nullable Runnable done) {
+        controller.stop(listener(done));
+    }
+
+    /**
+     * Méthode qui fait attérir le drone.
+     * @param done Runnable, action à effectuer lorsque le drone a attéri.
+     */
+    @Override
+    public void land(@Nullable Runnable done) {
+        controller.land(listener(done));
+    }
+
+    /**
+     * Méthode qui change la vitesse des déplacements du drone.
+     * @param speed Float, vitesse en m/s.
+     */
+    @Override
+    public void setSpeed(float speed) {
+        controller.setCurrentSpeed(speed);
+    }
+
+    /**
+     * Méthode qui oriente le gimbal de la caméra.
+     * @param angle Int, angle en degrés.
+     */
+    @Override
+    public void lookAtAngle(int angle) {
+        cameraController.lookAtAngle(angle);
+    }
+
+    /**
+     * Méthode qui oriente le gimbal de la caméra directement vers le bas.
+     */
+    @Override
+    public void lookDown() {
+        cameraController.lookDown();
+    }
+
+    /**
+     * Fonction qui indique si la caméra regarde directement vers le bas.
+     * @return Boolean, vrai si la caméra regarde vers le bas.
+     */
+    @Override
+    public boolean isLookingDown() {
+        return cameraController.isLookingDown();
+    }
+
+    /**
+     * Méthode qui change le zoom optique de la caméra.
+     * @param factor Double, facteur du zoom.
+     * @param done Runnable, action à effectuer lorsque le zoom est terminé.
+     */
+    @Override
+    public void setZoom(double factor, @Nullable Runnable done) {
+        cameraController.setZoom((int)(CameraController.MIN_OPTICAL_ZOOM * factor), djiError -> {
+            if (done != null)
+                done.run();
+        });
+    }
+
+    /**
+     * Méthode qui exécute une étape de l'objectif après un délai. L'attente est tracée.
+     * @param name String, nom de l'attente dans la trace.
+     * @param step Runnable, étape à exécuter.
+     * @param delay Long, délai en ms.
+     */
+    @Override
+    public void schedule(String name, Runnable step, long delay) {
+        long trace = Tracer.beginAsync(Tracer.OBJECTIVE, name);
+
+        new Handler().postDelayed(() -> {
+            Tracer.endAsync(Tracer.OBJECTIVE, name, trace);
+            step.run();
+        }, delay);
+    }
+
+    /**
+     * Fonction qui convertit une action de fin de commande en ControllerListener.
+     * @param done Runnable, action à effectuer, peut être null.
+     * @return ControllerListener, méthode à appeler lorsque le drone est prêt, null si aucune action.
+     */
+    @Nullable
+    private static AircraftController.ControllerListener listener(@Nullable Runnable done) {
+        return done != null ? done::run : null;
+    }
+}
@@ -0,0 +1,72 @@
+package com.vais.mavicmissions.services.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui compte des événements sans bloquer.
+ */
+public class Counter {
+    /**
+     * String, nom du compteur.
+     */
+    private final String name;
+    /**
+     * AtomicLong, valeur du compteur.
+     */
+    private final AtomicLong value;
+
+    /**
+     * Constructeur de la classe Counter, créé l'objet et initialise ses données membres.
+     * @param name String, nom du compteur.
+     */
+    public Counter(String name) {
+        this.name = name;
+        value = new AtomicLong();
+    }
+
+    /**
+     * Méthode qui ajoute un événement au compteur.
+     */
+    public void increment() {
+        value.incrementAndGet();
+    }
+
+    /**
+     * Méthode qui ajoute plusieurs événements au compteur.
+     * @param delta Long, nombre d'événements.
+     */
+    public void add(long delta) {
+        value.addAndGet(delta);
+    }
+
+    /**
+     * Méthode qui remet le compteur à zéro.
+     */
+    public void reset() {
+        value.set(0);
+    }
+
+    /**
+     * Fonction qui retourne le nom du compteur.
+     * @return String, nom du compteur.
+     */
+    public String getName() { return name; }
+
+    /**
+     * Fonction qui retourne la valeur du compteur.
+     * @return Long, nombre d'événements.
+     */
+    public long get() { return value.get(); }
+
+    /**
+     * Fonction qui résume le compteur.
+     * @return String, résumé du compteur.
+     */
+    @Override
+    public String toString() {
+        return name + ": " + get();
+    }
+}
@@ -0,0 +1,95 @@
+package com.vais.mavicmissions.services.metrics;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui décompose l'âge des commandes envoyées au drone, de l'arrivée de l'image qui les a causées jusqu'à leur envoi.
+ * L'âge est séparé en quatre étapes consécutives, dont la somme donne l'âge total de la commande:
+ * - affichage: de l'arrivée des données vidéo jusqu'à la capture de l'image affichée (décodage, affichage et capture);
+ * - vision: de la capture jusqu'à la fin de la détection (conversion, files d'attente et traitement d'image);
+ * - décision: de la fin de la détection jusqu'à la décision dans le thread d'affichage;
+ * - commande: de la décision jusqu'à l'envoi de la commande des virtuals sticks.
+ */
+public class LatencyBudget {
+    /**
+     * LatencyHistogram, temps entre l'arrivée des données vidéo et la capture de l'image.
+     */
+    private final LatencyHistogram display;
+    /**
+     * LatencyHistogram, temps entre la capture de l'image et la fin de sa détection.
+     */
+    private final LatencyHistogram vision;
+    /**
+     * LatencyHistogram, temps entre la fin de la détection et la décision.
+     */
+    private final LatencyHistogram decision;
+    /**
+     * LatencyHistogram, temps entre la décision et l'envoi de chaque commande.
+     */
+    private final LatencyHistogram command;
+    /**
+     * LatencyHistogram, âge de chaque commande envoyée, depuis l'arrivée des données vidéo.
+     */
+    private final LatencyHistogram total;
+
+    /**
+     * Long, âge en ns de la dernière commande envoyée.
+     */
+    private volatile long lastPacketAge;
+
+    /**
+     * Constructeur de la classe LatencyBudget, créé l'objet et initialise ses données membres.
+     * Les mesures sont enregistrées dans Metrics sous le préfixe "latency.<name>".
+     * @param name String, nom de la source des commandes, par exemple l'objectif.
+     */
+    public LatencyBudget(String name) {
+        String prefix = "latency." + name + ".";
+
+        display = Metrics.histogram(prefix + "display");
+        vision = Metrics.histogram(prefix + "vision");
+        decision = Metrics.histogram(prefix + "decision");
+        command = Metrics.histogram(prefix + "command");
+        total = Metrics.histogram(prefix + "total");
+    }
+
+    /**
+     * Méthode qui note les étapes d'une image jusqu'à la décision qu'elle a causée.
+     * @param arrival Long, moment en ns (System.nanoTime) de l'arrivée des données vidéo de l'image, 0 si inconnu.
+     * @param capture Long, moment en ns de la capture de l'image.
+     * @param detected Long, moment en ns de la fin de la détection.
+     * @param decided Long, moment en ns de la décision.
+     */
+    public void recordDecision(long arrival, long capture, long detected, long decided) {
+        if (arrival != 0)
+            display.record(capture - arrival);
+
+        vision.record(detected - capture);
+        decision.record(decided - detected);
+    }
+
+    /**
+     * Méthode qui note l'âge d'une commande envoyée au drone.
+     * @param arrival Long, moment en ns de l'arrivée des données vidéo de l'image qui a causé la commande.
+     * @param decided Long, moment en ns de la décision qui a causé la commande.
+     * @param sent Long, moment en ns de l'envoi de la commande.
+     */
+    public void recordPacket(long arrival, long decided, long sent) {
+        command.record(sent - decided);
+
+        lastPacketAge = sent - arrival;
+        total.record(lastPacketAge);
+    }
+
+    /**
+     * Fonction qui retourne l'âge de la dernière commande envoyée.
+     * @return Double, âge en ms.
+     */
+    public double getLastPacketAge() { return lastPacketAge / 1e6; }
+
+    /**
+     * Fonction qui retourne la distribution de l'âge des commandes envoyées.
+     * @return LatencyHistogram, âge des commandes.
+     */
+    public LatencyHistogram getTotal() { return total; }
+}
@@ -0,0 +1,207 @@
+package com.vais.mavicmissions.services.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui accumule des temps d'exécution dans un histogramme à intervalles fixes.
+ * Chaque puissance de 2 de ns est divisée en 8 intervalles, l'erreur sur les percentiles est donc d'au plus 12.5%.
+ * L'enregistrement ne bloque pas et n'alloue pas de mémoire, il peut donc être appelé dans le traitement de chaque image.
+ */
+public class LatencyHistogram {
+    /**
+     * Int, nombre de bits qui divisent chaque puissance de 2 en intervalles.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+    /**
+     * Int, nombre d'intervalles par puissance de 2.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Int, puissance de 2 de la plus petite valeur distinguée (1 µs). Les valeurs plus petites partagent le premier intervalle.
+     */
+    private static final int MIN_EXPONENT = 10;
+    /**
+     * Int, puissance de 2 de la plus grande valeur distinguée (environ 137 s). Les valeurs plus grandes partagent le dernier intervalle.
+     */
+    private static final int MAX_EXPONENT = 36;
+    /**
+     * Int, nombre total d'intervalles de l'histogramme.
+     */
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS + 1;
+
+    /**
+     * String, nom de la mesure.
+     */
+    private final String name;
+    /**
+     * AtomicLongArray, nombre de valeurs dans chaque intervalle.
+     */
+    private final AtomicLongArray buckets;
+    /**
+     * AtomicLong, nombre de valeurs enregistrées.
+     */
+    private final AtomicLong count;
+    /**
+     * AtomicLong, somme en ns des valeurs enregistrées.
+     */
+    private final AtomicLong total;
+    /**
+     * AtomicLong, plus grande valeur en ns enregistrée.
+     */
+    private final AtomicLong max;
+
+    /**
+     * Constructeur de la classe LatencyHistogram, créé l'objet et initialise ses données membres.
+     * @param name String, nom de la mesure.
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+
+        buckets = new AtomicLongArray(BUCKET_COUNT);
+        count = new AtomicLong();
+        total = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Méthode qui enregistre une durée.
+     * @param nanos Long, durée en ns.
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+
+        // Garder la plus grande valeur, même si plusieurs threads enregistrent en même temps.
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos))
+            current = max.get();
+    }
+
+    /**
+     * Méthode qui enregistre le temps écoulé depuis un moment donné.
+     * @param start Long, moment en ns (System.nanoTime) du début de la mesure.
+     */
+    public void recordSince(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    /**
+     * Méthode qui efface les valeurs enregistrées.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            buckets.set(i, 0);
+
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Fonction qui retourne le nom de la mesure.
+     * @return String, nom de la mesure.
+     */
+    public String getName() { return name; }
+
+    /**
+     * Fonction qui retourne le nombre de valeurs enregistrées.
+     * @return Long, nombre de valeurs.
+     */
+    public long getCount() { return count.get(); }
+
+    /**
+     * Fonction qui retourne la moyenne des valeurs enregistrées.
+     * @return Double, moyenne en ms.
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / 1e6 / n;
+    }
+
+    /**
+     * Fonction qui retourne la plus grande valeur enregistrée.
+     * @return Double, valeur maximum en ms.
+     */
+    public double getMax() { return max.get() / 1e6; }
+
+    /**
+     * Fonction qui estime un percentile des valeurs enregistrées.
+     * La borne supérieure de l'intervalle qui contient le percentile est retournée, sans dépasser le maximum.
+     * @param percentile Double, percentile recherché, entre 0 et 100.
+     * @return Double, valeur du percentile en ms.
+     */
+    public double getPercentile(double percentile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long n = 0;
+
+        // Copier les intervalles pour travailler sur un état cohérent.
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            n += counts[i];
+        }
+
+        if (n == 0)
+            return 0;
+
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100 * n));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(upperBound(i), max.get()) / 1e6;
+        }
+
+        return getMax();
+    }
+
+    /**
+     * Fonction qui trouve l'intervalle d'une durée.
+     * @param nanos Long, durée en ns, positive.
+     * @return Int, index de l'intervalle.
+     */
+    static int bucketOf(long nanos) {
+        if (nanos < 1L << MIN_EXPONENT)
+            return 0;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT)
+            return BUCKET_COUNT - 1;
+
+        // Les bits qui suivent le bit le plus significatif choisissent l'intervalle dans la puissance de 2.
+        int sub = (int)(nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - MIN_EXPONENT) * SUB_BUCKETS + sub + 1;
+    }
+
+    /**
+     * Fonction qui retourne la borne supérieure d'un intervalle.
+     * @param bucket Int, index de l'intervalle.
+     * @return Long, borne supérieure en ns.
+     */
+    static long upperBound(int bucket) {
+        if (bucket == 0)
+            return 1L << MIN_EXPONENT;
+
+        int exponent = (bucket - 1) / SUB_BUCKETS + MIN_EXPONENT;
+        int sub = (bucket - 1) % SUB_BUCKETS;
+        return (long)(SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Fonction qui résume la mesure.
+     * @return String, résumé de la mesure.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: %d mesures, moy. %.2f ms, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms",
+                name, getCount(), getMean(), getPercentile(50), getPercentile(90), getPercentile(99), getMax());
+    }
+}
@@ -0,0 +1,135 @@
+package com.vais.mavicmissions.services.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui regroupe les mesures de l'application: temps d'exécution et compteurs, par nom.
+ * Les mesures sont créées une seule fois et gardées dans des constantes, l'enregistrement ne passe donc jamais par le registre.
+ */
+public class Metrics {
+    /**
+     * ConcurrentHashMap<String, LatencyHistogram>, temps d'exécution selon leur nom.
+     */
+    private static final ConcurrentHashMap<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    /**
+     * ConcurrentHashMap<String, Counter>, compteurs selon leur nom.
+     */
+    private static final ConcurrentHashMap<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+
+    /**
+     * Fonction qui retourne l'histogramme d'une mesure, créé au premier besoin.
+     * @param name String, nom de la mesure.
+     * @return LatencyHistogram, histogramme de la mesure.
+     */
+    public static LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = HISTOGRAMS.get(name);
+
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram(name);
+            histogram = HISTOGRAMS.putIfAbsent(name, created);
+
+            if (histogram == null)
+                histogram = created;
+        }
+
+        return histogram;
+    }
+
+    /**
+     * Fonction qui retourne un compteur, créé au premier besoin.
+     * @param name String, nom du compteur.
+     * @return Counter, compteur.
+     */
+    public static Counter counter(String name) {
+        Counter counter = COUNTERS.get(name);
+
+        if (counter == null) {
+            Counter created = new Counter(name);
+            counter = COUNTERS.putIfAbsent(name, created);
+
+            if (counter == null)
+                counter = created;
+        }
+
+        return counter;
+    }
+
+    /**
+     * Fonction qui retourne les histogrammes, triés par nom.
+     * @return List<LatencyHistogram>, histogrammes enregistrés.
+     */
+    public static List<LatencyHistogram> getHistograms() {
+        return new ArrayList<>(new TreeMap<>(HISTOGRAMS).values());
+    }
+
+    /**
+     * Fonction qui retourne les compteurs, triés par nom.
+     * @return List<Counter>, compteurs enregistrés.
+     */
+    public static List<Counter> getCounters() {
+        return new ArrayList<>(new TreeMap<>(COUNTERS).values());
+    }
+
+    /**
+     * Méthode qui remet toutes les mesures à zéro, par exemple avant un vol.
+     */
+    public static void reset() {
+        for (Map.Entry<String, LatencyHistogram> entry : HISTOGRAMS.entrySet())
+            entry.getValue().reset();
+        for (Map.Entry<String, Counter> entry : COUNTERS.entrySet())
+            entry.getValue().reset();
+    }
+
+    /**
+     * Fonction qui résume toutes les mesures, une par ligne. Les mesures sans valeur sont omises.
+     * @return String, résumé des mesures.
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+
+        for (LatencyHistogram histogram : getHistograms())
+            if (histogram.getCount() > 0)
+                report.append(histogram).append('\n');
+
+        for (Counter counter : getCounters())
+            if (counter.get() > 0)
+                report.append(counter).append('\n');
+
+        return report.toString();
+    }
+
+    /**
+     * Méthode qui écrit toutes les mesures dans un fichier CSV, pour les analyser après un vol.
+     * @param file File, fichier à écrire.
+     * @throws IOException si le fichier ne peut pas être écrit.
+     */
+    public static void dump(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8")))) {
+            writer.println("type,name,count,mean_ms,p50_ms,p90_ms,p99_ms,max_ms");
+
+            for (LatencyHistogram h : getHistograms())
+                writer.println(String.format(Locale.US, "histogram,%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f",
+                        h.getName(), h.getCount(), h.getMean(), h.getPercentile(50), h.getPercentile(90), h.getPercentile(99), h.getMax()));
+
+            for (Counter c : getCounters())
+                writer.println(String.format(Locale.US, "counter,%s,%d,,,,,", c.getName(), c.get()));
+
+            if (writer.checkError())
+                throw new IOException("Impossible d'écrire " + file);
+        }
+    }
+}
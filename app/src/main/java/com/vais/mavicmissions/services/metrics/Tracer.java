@@ -0,0 +1,318 @@
+package com.vais.mavicmissions.services.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui trace le déroulement d'une mission dans un tampon circulaire alloué une seule fois.
+ * Les événements sont exportés au format Chrome Trace Event (JSON), lisible par chrome://tracing ou https://ui.perfetto.dev.
+ * Lorsque le tampon est plein, les événements les plus anciens sont écrasés. Un événement dont la position est encore
+ * en cours d'écriture par un autre thread est abandonné plutôt qu'entremêlé avec celui-ci.
+ * L'enregistrement ne bloque pas et n'alloue pas de mémoire, les noms doivent donc être des constantes.
+ */
+public class Tracer {
+    /**
+     * Int, nombre d'événements gardés, une puissance de 2.
+     */
+    private static final int CAPACITY = 1 << 15;
+    /**
+     * Int, masque qui donne la position d'un événement dans le tampon.
+     */
+    private static final int MASK = CAPACITY - 1;
+
+    /**
+     * String, catégorie des étapes des objectifs.
+     */
+    public static final String OBJECTIVE = "objectif";
+    /**
+     * String, catégorie des commandes envoyées au drone.
+     */
+    public static final String COMMAND = "commande";
+    /**
+     * String, catégorie des opérations de la caméra et du gimbal.
+     */
+    public static final String CAMERA = "caméra";
+    /**
+     * String, catégorie des étapes du pipeline de traitement d'image.
+     */
+    public static final String VISION = "vision";
+
+    /**
+     * Char, phase d'un événement qui a une durée, sur un seul thread.
+     */
+    private static final char COMPLETE = 'X';
+    /**
+     * Char, phase du début d'un événement asynchrone.
+     */
+    private static final char ASYNC_BEGIN = 'b';
+    /**
+     * Char, phase de la fin d'un événement asynchrone.
+     */
+    private static final char ASYNC_END = 'e';
+    /**
+     * Char, phase d'un événement instantané.
+     */
+    private static final char INSTANT = 'i';
+
+    /**
+     * String[], catégories des événements.
+     */
+    private static final String[] CATEGORIES = new String[CAPACITY];
+    /**
+     * String[], noms des événements.
+     */
+    private static final String[] NAMES = new String[CAPACITY];
+    /**
+     * Char[], phases des événements.
+     */
+    private static final char[] PHASES = new char[CAPACITY];
+    /**
+     * Long[], moments en ns (System.nanoTime) des événements.
+     */
+    private static final long[] TIMESTAMPS = new long[CAPACITY];
+    /**
+     * Long[], durées en ns des événements complets.
+     */
+    private static final long[] DURATIONS = new long[CAPACITY];
+    /**
+     * Long[], identifiants des événements asynchrones.
+     */
+    private static final long[] IDS = new long[CAPACITY];
+    /**
+     * Long[], identifiants des threads des événements.
+     */
+    private static final long[] THREADS = new long[CAPACITY];
+    /**
+     * AtomicLongArray, numéro de l'événement écrit à chaque position plus 1, négatif si la position est en cours d'écriture.
+     * Réserve chaque position à un seul thread à la fois et permet à l'exportation d'ignorer les événements incomplets ou écrasés.
+     */
+    private static final AtomicLongArray SEQUENCES = new AtomicLongArray(CAPACITY);
+
+    /**
+     * AtomicLong, numéro du prochain événement.
+     */
+    private static final AtomicLong NEXT = new AtomicLong();
+    /**
+     * AtomicLong, prochain identifiant d'événement asynchrone.
+     */
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+    /**
+     * ConcurrentHashMap<Long, String>, noms des threads qui ont enregistré des événements.
+     */
+    private static final ConcurrentHashMap<Long, String> THREAD_NAMES = new ConcurrentHashMap<>();
+    /**
+     * ThreadLocal<Boolean>, indique si le nom du thread est noté. Le nom n'est noté qu'au premier événement du thread.
+     */
+    private static final ThreadLocal<Boolean> THREAD_REGISTERED = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            Thread thread = Thread.currentThread();
+            THREAD_NAMES.put(thread.getId(), thread.getName());
+            return Boolean.TRUE;
+        }
+    };
+
+    /**
+     * Boolean, indique si les événements sont enregistrés.
+     */
+    private static volatile boolean enabled = true;
+
+    /**
+     * Méthode qui enregistre un événement qui a commencé et terminé sur le thread actuel.
+     * @param category String, catégorie de l'événement.
+     * @param name String, nom de l'événement.
+     * @param start Long, moment en ns (System.nanoTime) du début de l'événement.
+     */
+    public static void complete(String category, String name, long start) {
+        write(COMPLETE, category, name, start, System.nanoTime() - start, 0);
+    }
+
+    /**
+     * Fonction qui enregistre le début d'un événement qui peut se terminer sur un autre thread, par exemple dans un callback.
+     * @param category String, catégorie de l'événement.
+     * @param name String, nom de l'événement.
+     * @return Long, identifiant de l'événement, à donner à endAsync.
+     */
+    public static long beginAsync(String category, String name) {
+        long id = NEXT_ID.incrementAndGet();
+        write(ASYNC_BEGIN, category, name, System.nanoTime(), 0, id);
+        return id;
+    }
+
+    /**
+     * Méthode qui enregistre la fin d'un événement asynchrone.
+     * @param category String, catégorie de l'événement.
+     * @param name String, nom de l'événement.
+     * @param id Long, identifiant retourné par beginAsync.
+     */
+    public static void endAsync(String category, String name, long id) {
+        write(ASYNC_END, category, name, System.nanoTime(), 0, id);
+    }
+
+    /**
+     * Méthode qui enregistre un événement instantané, par exemple un changement d'état.
+     * @param category String, catégorie de l'événement.
+     * @param name String, nom de l'événement.
+     */
+    public static void instant(String category, String name) {
+        write(INSTANT, category, name, System.nanoTime(), 0, 0);
+    }
+
+    /**
+     * Méthode qui écrit un événement dans le tampon.
+     * @param phase Char, phase de l'événement.
+     * @param category String, catégorie de l'événement.
+     * @param name String, nom de l'événement.
+     * @param timestamp Long, moment en ns de l'événement.
+     * @param duration Long, durée en ns de l'événement.
+     * @param id Long, identifiant de l'événement asynchrone.
+     */
+    private static void write(char phase, String category, String name, long timestamp, long duration, long id) {
+        if (!enabled)
+            return;
+
+        THREAD_REGISTERED.get();
+
+        long index = NEXT.getAndIncrement();
+        int slot = (int)(index & MASK);
+
+        // Réserver la position. Un autre thread peut encore y écrire un événement d'un tour précédent, ou un thread
+        // d'un tour suivant peut déjà l'avoir prise, dans ces deux cas l'événement est abandonné.
+        long previous = SEQUENCES.get(slot);
+        if (previous < 0 || previous > index || !SEQUENCES.compareAndSet(slot, previous, -(index + 1)))
+            return;
+
+        // Publier l'événement une fois complet.
+        PHASES[slot] = phase;
+        CATEGORIES[slot] = category;
+        NAMES[slot] = name;
+        TIMESTAMPS[slot] = timestamp;
+        DURATIONS[slot] = duration;
+        IDS[slot] = id;
+        THREADS[slot] = Thread.currentThread().getId();
+        SEQUENCES.lazySet(slot, index + 1);
+    }
+
+    /**
+     * Méthode qui active ou désactive l'enregistrement des événements.
+     * @param enabled Boolean, vrai pour enregistrer les événements.
+     */
+    public static void setEnabled(boolean enabled) {
+        Tracer.enabled = enabled;
+    }
+
+    /**
+     * Méthode qui efface les événements enregistrés, par exemple avant un vol.
+     */
+    public static void reset() {
+        for (int i = 0; i < CAPACITY; i++)
+            SEQUENCES.set(i, 0);
+
+        NEXT.set(0);
+    }
+
+    /**
+     * Fonction qui retourne le nombre d'événements gardés dans le tampon.
+     * @return Int, nombre d'événements.
+     */
+    public static int size() {
+        return (int)Math.min(NEXT.get(), CAPACITY);
+    }
+
+    /**
+     * Méthode qui écrit les événements au format Chrome Trace Event (JSON).
+     * L'exportation peut se faire pendant l'enregistrement, mais les événements écrits ou écrasés pendant la lecture sont
+     * alors ignorés. Elle n'est exacte qu'une fois que plus aucun thread n'enregistre, par exemple après setEnabled(false).
+     * @param file File, fichier à écrire.
+     * @throws IOException si le fichier ne peut pas être écrit.
+     */
+    public static void export(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8")))) {
+            writer.println("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+            boolean first = true;
+
+            // Nommer les threads.
+            for (Map.Entry<Long, String> thread : THREAD_NAMES.entrySet()) {
+                writer.print(first ? "" : ",\n");
+                writer.print(String.format(Locale.US, "{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":1,\"tid\":%d,\"args\":{\"name\":\"%s\"}}",
+                        thread.getKey(), escape(thread.getValue())));
+                first = false;
+            }
+
+            long end = NEXT.get();
+            for (long index = Math.max(0, end - CAPACITY); index < end; index++) {
+                int slot = (int)(index & MASK);
+                if (SEQUENCES.get(slot) != index + 1)
+                    continue;
+
+                char phase = PHASES[slot];
+                String category = CATEGORIES[slot];
+                String name = NAMES[slot];
+                long timestamp = TIMESTAMPS[slot];
+                long duration = DURATIONS[slot];
+                long id = IDS[slot];
+                long thread = THREADS[slot];
+
+                // Ignorer l'événement s'il a été écrasé pendant sa lecture.
+                if (SEQUENCES.get(slot) != index + 1)
+                    continue;
+
+                StringBuilder event = new StringBuilder();
+                event.append(String.format(Locale.US, "{\"ph\":\"%c\",\"cat\":\"%s\",\"name\":\"%s\",\"pid\":1,\"tid\":%d,\"ts\":%.3f",
+                        phase, escape(category), escape(name), thread, timestamp / 1e3));
+
+                if (phase == COMPLETE)
+                    event.append(String.format(Locale.US, ",\"dur\":%.3f", duration / 1e3));
+                else if (phase == INSTANT)
+                    event.append(",\"s\":\"t\"");
+                else
+                    event.append(",\"id\":").append(id);
+
+                writer.print(first ? "" : ",\n");
+                writer.print(event.append('}'));
+                first = false;
+            }
+
+            writer.println("\n]}");
+
+            if (writer.checkError())
+                throw new IOException("Impossible d'écrire " + file);
+        }
+    }
+
+    /**
+     * Fonction qui protège une chaîne pour l'écrire en JSON.
+     * @param value String, chaîne à protéger.
+     * @return String, chaîne protégée.
+     */
+    private static String escape(String value) {
+        if (value == null)
+            return "";
+
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '"' || c == '\\')
+                result.append('\\').append(c);
+            else if (c < 0x20)
+                result.append(String.format(Locale.US, "\\u%04x", (int)c));
+            else
+                result.append(c);
+        }
+
+        return result.toString();
+    }
+}
@@ -0,0 +1,264 @@
+package com.vais.mavicmissions.services.mission;
+
+import com.vais.mavicmissions.services.Detector;
+import com.vais.mavicmissions.services.vision.ImageProcessor;
+import org.opencv.core.Point;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui contient la logique du sauvetage d'une balle (objectif 3).
+ * Le drone cherche la balle en réduisant le zoom, puis en tournant. Une fois la balle trouvée, il avance vers elle
+ * jusqu'à ce qu'il ne la voie plus au zoom minimum, puis attérit.
+ */
+public class BallRescueMission extends Mission {
+    /**
+     * Int, nombre maximum d'essaie pour la détection de la balle.
+     */
+    private static final int MAX_FAILED_ATTEMPT = 3;
+    /**
+     * Int, rotation à effectuer lorsque le drone doit ballayer une nouvelle zone.
+     */
+    private static final int CHANGE_ZONE_ROTATION = 25;
+    /**
+     * Int, zoom maximum utilisé pour chercher la balle.
+     */
+    private static final int MAX_ZOOM = 6;
+
+    /**
+     * Int, code d'une détection où la balle n'est pas localisée.
+     */
+    public static final int BALL_MISSING = 0;
+    /**
+     * Int, code d'une détection où la balle est localisée.
+     */
+    public static final int BALL_FOUND = 1;
+
+    /**
+     * Interface qui reçoit les points de la balle détectés dans une image.
+     */
+    public interface BallListener {
+        /**
+         * Méthode appelée avec le résultat de la détection.
+         * @param points Point[], points du contour de la balle.
+         * @param center Point, centre de l'image analysée.
+         */
+        void onBall(Point[] points, Point center);
+    }
+
+    /**
+     * Interface qui détecte la balle dans la prochaine image du flux vidéo.
+     */
+    public interface Vision {
+        /**
+         * Méthode qui détecte le contour de la balle.
+         * @param searching Boolean, vrai pendant la recherche de la balle, faux lorsque le drone avance vers elle.
+         * @param listener BallListener, objet qui reçoit le résultat.
+         */
+        void detectBall(boolean searching, BallListener listener);
+    }
+
+    /**
+     * Vision, détection de la balle.
+     */
+    private final Vision vision;
+    /**
+     * ImageProcessor, service de traitement d'image, qui fournit la taille minimum de la balle du profil actuel.
+     */
+    private final ImageProcessor processor;
+
+    /**
+     * Int, rotation actuelle du gimbal en degrée.
+     */
+    private int gimbalRotation;
+    /**
+     * Int, nombre d'essaie effectué pour la détection de la balle.
+     */
+    private int failedAttempt;
+    /**
+     * Int, angle de rotation total effectuée.
+     */
+    private int totalRotation;
+    /**
+     * Int, zoom actuelle de la caméra du drone.
+     */
+    private int zoom;
+
+    /**
+     * Constructeur de la classe BallRescueMission, créé l'objet et initialise ses données membres.
+     * @param drone DroneBackend, drone commandé par l'objectif.
+     * @param vision Vision, détection de la balle.
+     * @param processor ImageProcessor, service de traitement d'image.
+     * @param listener Listener, objet qui reçoit les événements de l'objectif.
+     */
+    public BallRescueMission(DroneBackend drone, Vision vision, ImageProcessor processor, Listener listener) {
+        super(drone, listener);
+        this.vision = vision;
+        this.processor = processor;
+    }
+
+    /**
+     * Méthode qui prépare la caméra, monte le drone et commence la recherche.
+     */
+    @Override
+    protected void begin() {
+        failedAttempt = 0;
+        totalRotation = 0;
+        zoom = MAX_ZOOM;
+        gimbalRotation = -55;
+
+        drone.lookAtAngle(gimbalRotation);
+        drone.setZoom(zoom, () -> drone.goUp(2000, this::search));
+    }
+
+    /**
+     * Fonction qui retourne le nom d'un résultat de la détection de la balle.
+     * @param code Int, BALL_FOUND ou BALL_MISSING.
+     * @return String, nom du résultat.
+     */
+    @Override
+    public String describe(int code) {
+        return code == BALL_FOUND ? "FOUND" : "MISSING";
+    }
+
+    /**
+     * Méthode qui permet de chercher la balle.
+     */
+    private void search() {
+        // Quitter si l'objectif n'est pas démarré.
+        if (!isRunning())
+            return;
+
+        traceStep("ballRescue.search");
+        vision.detectBall(true, this::onSearchResult);
+    }
+
+    /**
+     * Méthode qui décide de la suite de la recherche selon le résultat de la détection.
+     * @param points Point[], points du contour de la balle.
+     * @param center Point, centre de l'image analysée.
+     */
+    private void onSearchResult(Point[] points, Point center) {
+        Point ball = locate(points);
+
+        if (ball != null) {
+            traceStep("ballRescue.found");
+            rescue();
+        }
+        // Si le zoom est au minimum.
+        else if (zoom == 1) {
+            if (++failedAttempt > MAX_FAILED_ATTEMPT) {
+                failedAttempt = 0;
+                totalRotation += CHANGE_ZONE_ROTATION;
+
+                if (totalRotation < 360) {
+                    zoom = MAX_ZOOM;
+                    // Rotationner le drone pour chercher une nouvelle zone.
+                    drone.faceAngle(CHANGE_ZONE_ROTATION, this::search);
+                }
+                else if (!drone.isLookingDown()) {
+                    // Regarder directement en dessous du drone.
+                    drone.lookDown();
+                    totalRotation = 0;
+                    search();
+                }
+                else
+                    land();
+            }
+            else
+                drone.schedule("ballRescue.wait", this::search, 500);
+        }
+        else
+            setView(this::search);
+    }
+
+    /**
+     * Méthode qui permet de déplacer le drone jusqu'à la balle.
+     */
+    private void rescue() {
+        // Quitter si l'objectif n'est pas démarré.
+        if (!isRunning())
+            return;
+
+        traceStep("ballRescue.rescue");
+        vision.detectBall(false, this::onRescueResult);
+    }
+
+    /**
+     * Méthode qui déplace le drone selon la position de la balle détectée.
+     * @param points Point[], points du contour de la balle.
+     * @param center Point, centre de l'image analysée.
+     */
+    private void onRescueResult(Point[] points, Point center) {
+        Point ball = locate(points);
+
+        // Si le drone voit la balle.
+        if (ball != null) {
+            double angle = Detector.detectAngle(center, ball);
+            if (angle > 90)
+                angle = angle - 180;
+            else if (angle < -90)
+                angle = angle + 180;
+
+            drone.faceAngle((int)angle, () -> {
+                drone.setSpeed(DroneBackend.MAXIMUM_SPEED);
+                drone.goForward(2000, null);
+                rescue();
+            });
+        }
+        // Si le drone ne voit plus la balle.
+        else if (zoom > 2)
+            setView(this::rescue);
+        else
+            land();
+    }
+
+    /**
+     * Fonction qui localise la balle et note le résultat de la détection.
+     * @param points Point[], points du contour de la balle.
+     * @return Point, position de la balle, null si elle n'est pas localisée.
+     */
+    private Point locate(Point[] points) {
+        Point ball = Detector.locateBall(processor, points);
+
+        if (ball != null)
+            detected(BALL_FOUND, ball.x, ball.y, points.length);
+        else
+            detected(BALL_MISSING, 0, 0, points.length);
+
+        return ball;
+    }
+
+    /**
+     * Méthode qui réduit le zoom et ajuste le gimbal en conséquence.
+     * @param done Runnable, action à effectuer lorsque la caméra est prête.
+     */
+    private void setView(Runnable done) {
+        traceStep("ballRescue.setView");
+        zoom--;
+        switch (zoom) {
+            case 1:
+                gimbalRotation = -55;
+                break;
+            case 2:
+                gimbalRotation = -45;
+                break;
+            case 3:
+                gimbalRotation = -35;
+                break;
+            case 4:
+                gimbalRotation = -30;
+                break;
+            case 5:
+                gimbalRotation = -25;
+                break;
+            case 6:
+                gimbalRotation = -15;
+                break;
+        }
+
+        drone.lookAtAngle(gimbalRotation);
+        drone.setZoom(zoom, done);
+    }
+}
@@ -0,0 +1,129 @@
+package com.vais.mavicmissions.services.mission;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Interface qui représente le drone commandé par la logique d'un objectif.
+ * Sur le téléphone, les commandes sont envoyées au drone. Sur un ordinateur, elles sont appliquées à un drone simulé.
+ * Les actions de fin de commande peuvent être null et sont appelées lorsque le drone est prêt pour la prochaine commande.
+ */
+public interface DroneBackend {
+    /**
+     * Int, angle qui représente l'avant du drone.
+     */
+    int ROTATION_FRONT = 0;
+    /**
+     * Int, angle qui représente la gauche du drone.
+     */
+    int ROTATION_LEFT = -90;
+    /**
+     * Int, angle qui représente la droite du drone.
+     */
+    int ROTATION_RIGHT = 90;
+
+    /**
+     * Float, vitesse maximum en m/s du drone.
+     */
+    float MAXIMUM_SPEED = 1;
+    /**
+     * Float, vitesse en m/s du drone lorsqu'il cherche les pancartes du parcours.
+     */
+    float SEEKING_SPEED = 0.5f;
+    /**
+     * Float, vitesse en m/s du drone lorsqu'il suit la ligne.
+     */
+    float FOLLOW_SPEED = 0.25f;
+
+    /**
+     * Méthode qui déplace le drone vers l'avant.
+     * @param time Int, duré en ms du déplacement.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    void goForward(int time, Runnable done);
+
+    /**
+     * Méthode qui déplace le drone vers sa gauche.
+     * @param time Int, duré en ms du déplacement.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    void goLeft(int time, Runnable done);
+
+    /**
+     * Méthode qui déplace le drone vers sa droite.
+     * @param time Int, duré en ms du déplacement.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    void goRight(int time, Runnable done);
+
+    /**
+     * Méthode qui déplace le drone vers le haut.
+     * @param time Int, duré en ms du déplacement.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    void goUp(int time, Runnable done);
+
+    /**
+     * Méthode qui déplace le drone vers le bas.
+     * @param time Int, duré en ms du déplacement.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    void goDown(int time, Runnable done);
+
+    /**
+     * Méthode qui tourne le drone d'un angle par rapport à sa direction actuelle.
+     * @param angle Int, angle en degrés, positif vers la droite.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    void faceAngle(int angle, Runnable done);
+
+    /**
+     * Méthode qui arrête les mouvements du drone.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    void stop(Runnable done);
+
+    /**
+     * Méthode qui fait attérir le drone.
+     * @param done Runnable, action à effectuer lorsque le drone a attéri.
+     */
+    void land(Runnable done);
+
+    /**
+     * Méthode qui change la vitesse des déplacements du drone.
+     * @param speed Float, vitesse en m/s.
+     */
+    void setSpeed(float speed);
+
+    /**
+     * Méthode qui oriente le gimbal de la caméra.
+     * @param angle Int, angle en degrés, négatif vers le bas.
+     */
+    void lookAtAngle(int angle);
+
+    /**
+     * Méthode qui oriente le gimbal de la caméra directement vers le bas.
+     */
+    void lookDown();
+
+    /**
+     * Fonction qui indique si la caméra regarde directement vers le bas.
+     * @return Boolean, vrai si la caméra regarde vers le bas.
+     */
+    boolean isLookingDown();
+
+    /**
+     * Méthode qui change le zoom optique de la caméra.
+     * @param factor Double, facteur du zoom, 1 pour aucun zoom.
+     * @param done Runnable, action à effectuer lorsque le zoom est terminé.
+     */
+    void setZoom(double factor, Runnable done);
+
+    /**
+     * Méthode qui exécute une étape de l'objectif après un délai.
+     * @param name String, nom de l'attente dans la trace.
+     * @param step Runnable, étape à exécuter.
+     * @param delay Long, délai en ms.
+     */
+    void schedule(String name, Runnable step, long delay);
+}
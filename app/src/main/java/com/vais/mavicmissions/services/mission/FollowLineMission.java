@@ -0,0 +1,265 @@
+package com.vais.mavicmissions.services.mission;
+
+import com.vais.mavicmissions.Enum.LineDirection;
+import com.vais.mavicmissions.services.Detector;
+import com.vais.mavicmissions.services.metrics.Counter;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import com.vais.mavicmissions.services.vision.ImageProcessor;
+import org.opencv.core.Point;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui contient la logique du suivi d'une ligne verte (objectif 2).
+ * Le drone s'aligne sur la ligne, cherche sa direction, avance, puis recommence. L'objectif ne se termine pas de lui-même.
+ */
+public class FollowLineMission extends Mission {
+    /**
+     * Int, indique le nombre de coins à détecter lors de la détection de la direction de la ligne.
+     */
+    public static final int DIRECTION_DETECTION = 55;
+    /**
+     * Int, indique le nombre de coins à détecter lors de la détection de l'alignement du drone.
+     */
+    public static final int ALIGNEMENT_DETECTION = 2;
+    /**
+     * Int, écart horizontal en pixels permis entre la ligne et le centre de l'image.
+     */
+    private static final int CENTER_TOLERANCE = 100;
+    /**
+     * Float, vitesse en m/s des déplacements latéraux pour centrer le drone sur la ligne.
+     */
+    private static final float CENTERING_SPEED = 0.1f;
+
+    /**
+     * Counter, nombre de fois où la ligne tourne à droite.
+     */
+    private static final Counter DIRECTION_RIGHT = Metrics.counter("followLine.right");
+    /**
+     * Counter, nombre de fois où la ligne tourne à gauche.
+     */
+    private static final Counter DIRECTION_LEFT = Metrics.counter("followLine.left");
+    /**
+     * Counter, nombre de fois où la ligne continue tout droit.
+     */
+    private static final Counter DIRECTION_FRONT = Metrics.counter("followLine.front");
+    /**
+     * Counter, nombre de fois où la ligne est perdue et que le drone doit s'aligner.
+     */
+    private static final Counter DIRECTION_NONE = Metrics.counter("followLine.none");
+
+    /**
+     * Interface qui reçoit les points de la ligne détectés dans une image.
+     */
+    public interface LineListener {
+        /**
+         * Méthode appelée avec le résultat de la détection.
+         * @param points Point[], points de la ligne détectés.
+         * @param center Point, centre de l'image analysée.
+         */
+        void onLine(Point[] points, Point center);
+    }
+
+    /**
+     * Interface qui détecte la ligne dans la prochaine image du flux vidéo.
+     */
+    public interface Vision {
+        /**
+         * Méthode qui détecte des points sur la ligne.
+         * @param maxCorners Int, nombre maximum de points à détecter.
+         * @param minDistance Int, distance minimum entre les points.
+         * @param listener LineListener, objet qui reçoit le résultat.
+         */
+        void detectLine(int maxCorners, int minDistance, LineListener listener);
+    }
+
+    /**
+     * Vision, détection de la ligne.
+     */
+    private final Vision vision;
+    /**
+     * ImageProcessor, service de traitement d'image, qui fournit les distances des coins du profil actuel.
+     */
+    private final ImageProcessor processor;
+
+    /**
+     * Constructeur de la classe FollowLineMission, créé l'objet et initialise ses données membres.
+     * @param drone DroneBackend, drone commandé par l'objectif.
+     * @param vision Vision, détection de la ligne.
+     * @param processor ImageProcessor, service de traitement d'image.
+     * @param listener Listener, objet qui reçoit les événements de l'objectif.
+     */
+    public FollowLineMission(DroneBackend drone, Vision vision, ImageProcessor processor, Listener listener) {
+        super(drone, listener);
+        this.vision = vision;
+        this.processor = processor;
+    }
+
+    /**
+     * Fonction qui retourne le niveau de pyramide maximum des images de la ligne.
+     * La position des coins détectés change avec la résolution et fausse la direction de la ligne, les images restent donc en pleine résolution.
+     * @return Int, toujours 0.
+     */
+    @Override
+    public int getMaxProcessingLevel() {
+        return 0;
+    }
+
+    /**
+     * Méthode qui oriente la caméra vers la ligne et commence l'alignement.
+     */
+    @Override
+    protected void begin() {
+        drone.setSpeed(DroneBackend.FOLLOW_SPEED);
+        drone.lookAtAngle(-80);
+        align();
+    }
+
+    /**
+     * Fonction qui retourne le nom d'une direction de la ligne.
+     * @param code Int, position de la direction dans LineDirection.
+     * @return String, nom de la direction.
+     */
+    @Override
+    public String describe(int code) {
+        return LineDirection.values()[code].name();
+    }
+
+    /**
+     * Méthode qui permet de trouver la direction de la ligne verte.
+     */
+    private void followLine() {
+        // Quitter si l'objectif n'est pas démarré.
+        if (!isRunning())
+            return;
+
+        traceStep("followLine.followLine");
+        vision.detectLine(DIRECTION_DETECTION, processor.getProfile().getDirectionDistance(), this::onDirectionDetected);
+    }
+
+    /**
+     * Méthode qui détermine la direction de la ligne verte à partir des points détectés.
+     * @param points Point[], points de la ligne détectés.
+     * @param center Point, centre de l'image analysée.
+     */
+    private void onDirectionDetected(Point[] points, Point center) {
+        // Trouver la direction de la ligne.
+        int generalDirection = DroneBackend.ROTATION_FRONT;
+        LineDirection direction = Detector.detectLineDirection(points, center);
+        detected(direction.ordinal(), points.length, 0, 0);
+
+        // Déterminer la direction générale.
+        if (direction == LineDirection.RIGHT) {
+            generalDirection = DroneBackend.ROTATION_RIGHT;
+            DIRECTION_RIGHT.increment();
+        }
+        else if (direction == LineDirection.LEFT) {
+            generalDirection = DroneBackend.ROTATION_LEFT;
+            DIRECTION_LEFT.increment();
+        }
+        else if (direction == LineDirection.NONE) {
+            DIRECTION_NONE.increment();
+            align();
+            return;
+        }
+        else
+            DIRECTION_FRONT.increment();
+
+        // Effectuer l'action requise.
+        changeDirection(generalDirection);
+    }
+
+    /**
+     * Méthode qui aligne le drone par rapport à la ligne.
+     */
+    private void align() {
+        // Quitter si l'objectif n'est pas démarré.
+        if (!isRunning())
+            return;
+
+        // Détecter deux coins sur la ligne.
+        traceStep("followLine.align");
+        vision.detectLine(ALIGNEMENT_DETECTION, processor.getProfile().getAlignementDistance(), this::onAlignementDetected);
+    }
+
+    /**
+     * Méthode qui aligne le drone selon les points de la ligne détectés.
+     * @param corners Point[], points de la ligne détectés.
+     * @param center Point, centre de l'image analysée.
+     */
+    private void onAlignementDetected(Point[] corners, Point center) {
+        // S'il y a 2 coins.
+        if (corners.length == 2) {
+            // Vérifier que les points soient bien alignés.
+            Point[] alignement = Detector.detectPointAlignement(corners[1], corners[0]);
+
+            int angle = (int)Detector.detectAngle(alignement[0], alignement[1]);
+            if (angle > 90)
+                angle = angle - 180;
+            else if (angle < -90)
+                angle = angle + 180;
+
+            // Rotationner le drone, puis le centrer par rapport à la ligne.
+            drone.faceAngle(angle, () -> {
+                if (isRunning())
+                    vision.detectLine(ALIGNEMENT_DETECTION, processor.getProfile().getAlignementDistance(), this::center);
+            });
+        }
+        else
+            align();
+    }
+
+    /**
+     * Méthode qui centre le drone par rapport à la ligne.
+     * @param corners Point[], points de la ligne détectés après la rotation.
+     * @param center Point, centre de l'image analysée.
+     */
+    private void center(Point[] corners, Point center) {
+        int halfX = (int)center.x;
+
+        if (corners.length == 0)
+            align();
+        else if (corners[0].x >= halfX - CENTER_TOLERANCE && corners[0].x <= halfX + CENTER_TOLERANCE)
+            followLine();
+        else {
+            // Déplacer le drone vers la ligne.
+            drone.setSpeed(CENTERING_SPEED);
+            Runnable done = () -> {
+                drone.setSpeed(DroneBackend.FOLLOW_SPEED);
+                followLine();
+            };
+
+            if (corners[0].x < halfX)
+                drone.goLeft(500, done);
+            else
+                drone.goRight(500, done);
+        }
+    }
+
+    /**
+     * Méthode qui change la direction du drone selon la direction de la ligne.
+     * @param direction Int, rotation que le drone doit effectuer.
+     */
+    private void changeDirection(int direction) {
+        traceStep("followLine.changeDirection");
+
+        // Selon la direction reçue.
+        switch (direction) {
+            case DroneBackend.ROTATION_FRONT:
+                // Avancer et continuer à chercher la ligne.
+                drone.goForward(4000, null);
+                drone.schedule("followLine.wait", this::align, 1000);
+                break;
+            case DroneBackend.ROTATION_RIGHT:
+            case DroneBackend.ROTATION_LEFT:
+                // Arrêter le drone et effectuer la rotation.
+                drone.stop(() -> drone.faceAngle(direction, () -> {
+                    // Avancer et continuer à chercher la ligne.
+                    drone.goForward(4000, null);
+                    drone.schedule("followLine.wait", this::align, 1000);
+                }));
+                break;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.vais.mavicmissions.services.mission;
+
+import com.vais.mavicmissions.services.metrics.Tracer;
+import com.vais.mavicmissions.services.vision.ResolutionController;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui représente la logique d'un objectif, sans dépendance à Android ni au SDK du drone.
+ * La logique reçoit les résultats de la détection et commande le drone à travers un DroneBackend.
+ * L'objectif Android et l'exécution sur ordinateur (MissionRunner) partagent donc les mêmes décisions.
+ */
+public abstract class Mission {
+    /**
+     * Interface qui reçoit les événements d'un objectif.
+     */
+    public interface Listener {
+        /**
+         * Méthode appelée pour chaque résultat de détection utilisé par une décision.
+         * @param code Int, résultat de la détection, voir describe.
+         * @param value1 Double, première valeur propre à l'objectif.
+         * @param value2 Double, deuxième valeur propre à l'objectif.
+         * @param value3 Double, troisième valeur propre à l'objectif.
+         */
+        void onDetection(int code, double value1, double value2, double value3);
+
+        /**
+         * Méthode appelée lorsque le drone a attéri à la fin de l'objectif.
+         */
+        void onEnded();
+    }
+
+    /**
+     * DroneBackend, drone commandé par l'objectif.
+     */
+    protected final DroneBackend drone;
+    /**
+     * Listener, objet qui reçoit les événements de l'objectif.
+     */
+    private final Listener listener;
+    /**
+     * Boolean, indique si l'objectif est en cours.
+     */
+    private volatile boolean running;
+
+    /**
+     * Constructeur de la classe Mission, créé l'objet et initialise ses données membres.
+     * @param drone DroneBackend, drone commandé par l'objectif.
+     * @param listener Listener, objet qui reçoit les événements de l'objectif.
+     */
+    protected Mission(DroneBackend drone, Listener listener) {
+        this.drone = drone;
+        this.listener = listener;
+    }
+
+    /**
+     * Méthode qui commence l'objectif, une fois le drone en vol.
+     */
+    public void start() {
+        running = true;
+        begin();
+    }
+
+    /**
+     * Méthode qui arrête l'objectif. Les étapes en attente ne sont pas exécutées.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Fonction qui indique si l'objectif est en cours.
+     * @return Boolean, vrai si l'objectif est en cours.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Fonction qui retourne le nom d'un résultat de détection de l'objectif.
+     * @param code Int, résultat de la détection.
+     * @return String, nom du résultat.
+     */
+    public abstract String describe(int code);
+
+    /**
+     * Fonction qui retourne le niveau de pyramide maximum auquel les images de l'objectif peuvent être traitées.
+     * @return Int, niveau maximum, 0 si l'objectif doit toujours traiter ses images en pleine résolution.
+     */
+    public int getMaxProcessingLevel() {
+        return ResolutionController.MAX_LEVEL;
+    }
+
+    /**
+     * Méthode qui exécute la première étape de l'objectif.
+     */
+    protected abstract void begin();
+
+    /**
+     * Méthode qui note un résultat de détection utilisé par une décision.
+     * @param code Int, résultat de la détection.
+     * @param value1 Double, première valeur propre à l'objectif.
+     * @param value2 Double, deuxième valeur propre à l'objectif.
+     * @param value3 Double, troisième valeur propre à l'objectif.
+     */
+    protected void detected(int code, double value1, double value2, double value3) {
+        listener.onDetection(code, value1, value2, value3);
+    }
+
+    /**
+     * Méthode qui termine l'objectif et fait attérir le drone.
+     */
+    protected void land() {
+        running = false;
+
+        drone.land(() -> {
+            drone.lookDown();
+            listener.onEnded();
+        });
+    }
+
+    /**
+     * Méthode qui note une étape de l'objectif dans la trace.
+     * @param step String, nom de l'étape.
+     */
+    protected static void traceStep(String step) {
+        Tracer.instant(Tracer.OBJECTIVE, step);
+    }
+}
@@ -0,0 +1,270 @@
+package com.vais.mavicmissions.services.mission;
+
+import com.vais.mavicmissions.Enum.FlyInstruction;
+import com.vais.mavicmissions.Enum.Shape;
+import com.vais.mavicmissions.services.Detector;
+import com.vais.mavicmissions.services.drone.AircraftInstruction;
+import com.vais.mavicmissions.services.recorder.FlightRecord;
+import com.vais.mavicmissions.services.recorder.FlightRecorder;
+import com.vais.mavicmissions.services.vision.ArrowOrientation;
+import com.vais.mavicmissions.services.vision.ChangeDetector;
+import com.vais.mavicmissions.services.vision.Frame;
+import com.vais.mavicmissions.services.vision.ImageProcessor;
+import com.vais.mavicmissions.services.vision.SignTemplates;
+import org.opencv.core.MatOfPoint;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui contient la logique du suivi d'un parcours dynamique (objectif 1).
+ * Une instruction doit être lue deux fois de suite avant d'être exécutée. Après MAX_UNKNOWN_DETECTION lectures
+ * sans instruction exécutée, le drone attérit et le parcours est terminé.
+ */
+public class ParkourMission extends Mission {
+    /**
+     * Int, nombre de maximum de détection non-reconnue permis.
+     */
+    private static final int MAX_UNKNOWN_DETECTION = 25;
+
+    /**
+     * Interface qui contrôle la recherche des pancartes.
+     */
+    public interface Vision {
+        /**
+         * Méthode qui commence la lecture périodique des pancartes. Chaque instruction lue est donnée à onInstruction.
+         */
+        void startSeeking();
+
+        /**
+         * Méthode qui arrête la lecture des pancartes.
+         */
+        void stopSeeking();
+    }
+
+    /**
+     * Vision, recherche des pancartes.
+     */
+    private final Vision vision;
+
+    /**
+     * AircraftInstruction, dernière instruction détectée par le drone.
+     */
+    private AircraftInstruction lastInstruction;
+    /**
+     * Int, nombre actuelle de détection non-reconnue.
+     */
+    private int unknownDetectionCount;
+
+    /**
+     * Constructeur de la classe ParkourMission, créé l'objet et initialise ses données membres.
+     * @param drone DroneBackend, drone commandé par l'objectif.
+     * @param vision Vision, recherche des pancartes.
+     * @param listener Listener, objet qui reçoit les événements de l'objectif.
+     */
+    public ParkourMission(DroneBackend drone, Vision vision, Listener listener) {
+        super(drone, listener);
+        this.vision = vision;
+    }
+
+    /**
+     * Méthode qui avance au-dessus de la première pancarte et commence la recherche.
+     */
+    @Override
+    protected void begin() {
+        lastInstruction = null;
+        unknownDetectionCount = 0;
+
+        drone.setSpeed(DroneBackend.SEEKING_SPEED);
+        drone.goForward(1000, () -> {
+            drone.setSpeed(DroneBackend.SEEKING_SPEED);
+            seekInstructions();
+        });
+    }
+
+    /**
+     * Fonction qui retourne le nom d'une instruction.
+     * @param code Int, position de l'instruction dans FlyInstruction.
+     * @return String, nom de l'instruction.
+     */
+    @Override
+    public String describe(int code) {
+        return FlyInstruction.values()[code].name();
+    }
+
+    /**
+     * Méthode qui commence la lecture des pancartes.
+     */
+    private void seekInstructions() {
+        if (!isRunning())
+            return;
+
+        traceStep("dynamicParkour.seekInstructions");
+        vision.startSeeking();
+    }
+
+    /**
+     * Méthode qui décide de l'action à effectuer selon l'instruction détectée.
+     * @param detected AircraftInstruction, instruction détectée.
+     */
+    public void onInstruction(AircraftInstruction detected) {
+        if (!isRunning())
+            return;
+
+        boolean seek = true;
+        boolean stop = false;
+        detected(detected.getInstruction().ordinal(), detected.getAngle(), 0, 0);
+
+        // Exécuter l'action selon l'instruction.
+        if (detected.getInstruction() != FlyInstruction.NONE) {
+            if (lastInstruction == null)
+                lastInstruction = detected;
+            else if (detected.compare(lastInstruction)) {
+                seek = false;
+                vision.stopSeeking();
+                executeInstruction(lastInstruction);
+                lastInstruction = null;
+            }
+            else {
+                lastInstruction = null;
+                stop = true;
+            }
+        }
+
+        // Continuer la recherche si rien n'a été trouvé.
+        if (seek) {
+            if (++unknownDetectionCount > MAX_UNKNOWN_DETECTION) {
+                vision.stopSeeking();
+                land();
+            }
+            else if (stop)
+                drone.stop(null);
+            else
+                drone.goForward(2500, null);
+        }
+    }
+
+    /**
+     * Méthode qui exécute l'instruction détecté par le drone.
+     * @param instruction AircraftInstruction, instruction détecté par le drone.
+     */
+    private void executeInstruction(AircraftInstruction instruction) {
+        traceStep("dynamicParkour.executeInstruction");
+        FlightRecorder.recordState(FlightRecord.STATE_INSTRUCTION, instruction.getInstruction().ordinal(), instruction.getAngle());
+
+        // Arrêter le drone.
+        drone.stop(() -> {
+            // Aller en direction de la flèche.
+            if (instruction.getInstruction() == FlyInstruction.GO_TOWARDS) {
+                drone.faceAngle((int)instruction.getAngle(), () -> {
+                    drone.goForward(2500, null);
+                    drone.schedule("dynamicParkour.wait", this::seekInstructions, 2000);
+                });
+            }
+            // Monter l'altitude.
+            else if (instruction.getInstruction() == FlyInstruction.GO_UP) {
+                drone.stop(() -> drone.goUp(2000, () -> {
+                    drone.setZoom(3, () -> {
+                        drone.goForward(2500, null);
+                        drone.schedule("dynamicParkour.wait", this::seekInstructions, 2000);
+                    });
+                }));
+            }
+            // Descendre l'altitude.
+            else if (instruction.getInstruction() == FlyInstruction.GO_DOWN) {
+                drone.stop(() -> drone.goDown(1000, () -> {
+                    drone.setZoom(2.2, () -> {
+                        drone.goForward(2500, null);
+                        drone.schedule("dynamicParkour.wait", this::seekInstructions, 2000);
+                    });
+                }));
+            }
+            // Attérir.
+            else if (instruction.getInstruction() == FlyInstruction.TAKEOFF_LAND)
+                land();
+        });
+    }
+
+    /**
+     * Fonction qui lit l'instruction d'une pancarte. L'orientation de la flèche est estimée par arrows pendant que les pancartes U, D et H
+     * sont reconnues dans le thread appelant. Une pancarte reconnue a toujours priorité sur la flèche: Detector.isArrowShape accepte aussi
+     * les contours de U et de D, la flèche n'est donc gardée que si aucune pancarte n'est reconnue.
+     * @param processor ImageProcessor, service de traitement d'image.
+     * @param templates SignTemplates, contours des patrons des pancartes.
+     * @param contour MatOfPoint, contour de la pancarte potentielle.
+     * @param arrows Executor, exécute l'estimation de la flèche, Runnable::run pour lire l'un après l'autre.
+     * @return AircraftInstruction, instruction détectée, FlyInstruction.NONE si aucune instruction n'est détectée.
+     * @throws InterruptedException si le thread est interrompu en attendant l'estimation de la flèche.
+     */
+    public static AircraftInstruction readInstruction(ImageProcessor processor, SignTemplates templates, MatOfPoint contour, Executor arrows) throws InterruptedException {
+        FutureTask<AircraftInstruction> arrow = new FutureTask<>(() -> readArrow(contour));
+        arrows.execute(arrow);
+
+        // Une pancarte reconnue est gardée sans attendre la flèche, dont l'estimation se termine seule.
+        AircraftInstruction sign = readSign(processor, templates, contour);
+        if (sign.getInstruction() != FlyInstruction.NONE)
+            return sign;
+
+        try {
+            return arrow.get();
+        }
+        catch (ExecutionException e) {
+            return new AircraftInstruction(FlyInstruction.NONE);
+        }
+    }
+
+    /**
+     * Fonction qui reconnaît les pancartes U, D et H.
+     * @param processor ImageProcessor, service de traitement d'image.
+     * @param templates SignTemplates, contours des patrons des pancartes.
+     * @param contour MatOfPoint, contour de la pancarte potentielle.
+     * @return AircraftInstruction, instruction de la pancarte, FlyInstruction.NONE si aucune pancarte n'est reconnue.
+     */
+    public static AircraftInstruction readSign(ImageProcessor processor, SignTemplates templates, MatOfPoint contour) {
+        Shape detectedShape = Detector.detectSign(processor, templates, contour);
+
+        // Up.
+        if (detectedShape == Shape.U)
+            return new AircraftInstruction(FlyInstruction.GO_UP);
+        // Down.
+        else if (detectedShape == Shape.D)
+            return new AircraftInstruction(FlyInstruction.GO_DOWN);
+        // Attérir.
+        else if (detectedShape == Shape.H)
+            return new AircraftInstruction(FlyInstruction.TAKEOFF_LAND);
+
+        return new AircraftInstruction(FlyInstruction.NONE);
+    }
+
+    /**
+     * Fonction qui estime la direction d'une flèche.
+     * @param contour MatOfPoint, contour de la pancarte potentielle.
+     * @return AircraftInstruction, instruction de la flèche, FlyInstruction.NONE si l'orientation n'est pas fiable.
+     */
+    public static AircraftInstruction readArrow(MatOfPoint contour) {
+        if (!Detector.isArrowShape(contour))
+            return new AircraftInstruction(FlyInstruction.NONE);
+
+        // Une orientation peu fiable n'est pas une réponse sûre.
+        ArrowOrientation orientation = Detector.estimateArrowOrientation(contour);
+        if (orientation.getConfidence() < Detector.MIN_ARROW_CONFIDENCE)
+            return new AircraftInstruction(FlyInstruction.NONE);
+
+        return new AircraftInstruction(FlyInstruction.GO_TOWARDS, orientation.getAngle());
+    }
+
+    /**
+     * Méthode qui garde une lecture pour les prochaines images semblables, seulement si aucune instruction n'a été lue.
+     * Une instruction lue n'est jamais réutilisée, elle doit être confirmée par une nouvelle lecture.
+     * @param signs ChangeDetector<AircraftInstruction>, dernière lecture sans instruction.
+     * @param frame Frame, image lue.
+     * @param instruction AircraftInstruction, instruction lue.
+     */
+    public static void remember(ChangeDetector<AircraftInstruction> signs, Frame frame, AircraftInstruction instruction) {
+        if (instruction.getInstruction() == FlyInstruction.NONE)
+            signs.store(frame, instruction);
+    }
+}
@@ -0,0 +1,119 @@
+package com.vais.mavicmissions.services.recorder;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui décrit le format binaire des enregistrements de vol.
+ * Un fichier commence par un entête de HEADER_SIZE octets, suivi d'enregistrements de RECORD_SIZE octets, en big-endian:
+ * - entête: magic (int), version (int), taille d'un enregistrement (int), nombre d'enregistrements (int),
+ *   moment du début en ms depuis l'époque (long), moment du début en ns (System.nanoTime, long);
+ * - enregistrement: type (int), code (int), moment en ns (long), VALUE_COUNT valeurs (double).
+ * La signification du code et des valeurs dépend du type de l'enregistrement, voir getColumns.
+ */
+public class FlightRecord {
+    /**
+     * Int, identifiant des fichiers d'enregistrement ("MFR1").
+     */
+    public static final int MAGIC = 0x4D465231;
+    /**
+     * Int, version du format.
+     */
+    public static final int VERSION = 1;
+    /**
+     * Int, taille en octets de l'entête.
+     */
+    public static final int HEADER_SIZE = 64;
+    /**
+     * Int, nombre de valeurs d'un enregistrement.
+     */
+    public static final int VALUE_COUNT = 6;
+    /**
+     * Int, taille en octets d'un enregistrement.
+     */
+    public static final int RECORD_SIZE = 16 + VALUE_COUNT * 8;
+    /**
+     * Int, position dans l'entête du nombre d'enregistrements.
+     */
+    public static final int COUNT_OFFSET = 12;
+
+    /**
+     * Int, commande envoyée au drone. Valeurs: pitch, roll, yaw, throttle, âge en ms de l'image qui l'a causée (-1 si aucune).
+     */
+    public static final int SETPOINT = 1;
+    /**
+     * Int, état du drone. Valeurs: altitude en m, vitesses x, y et z en m/s, yaw en degrés, 1 si le drone vole.
+     */
+    public static final int TELEMETRY = 2;
+    /**
+     * Int, résultat d'une détection, le code dépend de l'objectif. Valeurs: âge en ms de l'image, puis valeurs propres à l'objectif.
+     */
+    public static final int DETECTION = 3;
+    /**
+     * Int, changement d'état de la mission, le code est l'un des STATE_*. Valeurs: propres au changement.
+     */
+    public static final int STATE = 4;
+
+    /**
+     * Int, l'objectif démarre.
+     */
+    public static final int STATE_START = 1;
+    /**
+     * Int, l'objectif est arrêté.
+     */
+    public static final int STATE_STOP = 2;
+    /**
+     * Int, le drone décolle.
+     */
+    public static final int STATE_TAKEOFF = 3;
+    /**
+     * Int, le drone commence son attérissage.
+     */
+    public static final int STATE_LANDING = 4;
+    /**
+     * Int, le drone a attéri.
+     */
+    public static final int STATE_LANDED = 5;
+    /**
+     * Int, une instruction est exécutée. Valeurs: code de l'instruction, angle.
+     */
+    public static final int STATE_INSTRUCTION = 6;
+
+    /**
+     * Fonction qui retourne le nom d'un type d'enregistrement.
+     * @param type Int, type de l'enregistrement.
+     * @return String, nom du type.
+     */
+    public static String getTypeName(int type) {
+        switch (type) {
+            case SETPOINT:
+                return "setpoint";
+            case TELEMETRY:
+                return "telemetry";
+            case DETECTION:
+                return "detection";
+            case STATE:
+                return "state";
+            default:
+                return "type" + type;
+        }
+    }
+
+    /**
+     * Fonction qui retourne le nom des valeurs d'un type d'enregistrement.
+     * @param type Int, type de l'enregistrement.
+     * @return String[], nom de chaque valeur.
+     */
+    public static String[] getColumns(int type) {
+        switch (type) {
+            case SETPOINT:
+                return new String[] { "pitch", "roll", "yaw", "throttle", "age_ms", "unused" };
+            case TELEMETRY:
+                return new String[] { "altitude_m", "velocity_x", "velocity_y", "velocity_z", "yaw_deg", "flying" };
+            case DETECTION:
+                return new String[] { "age_ms", "value1", "value2", "value3", "value4", "value5" };
+            default:
+                return new String[] { "value0", "value1", "value2", "value3", "value4", "value5" };
+        }
+    }
+}
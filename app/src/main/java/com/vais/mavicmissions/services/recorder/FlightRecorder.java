@@ -0,0 +1,376 @@
+package com.vais.mavicmissions.services.recorder;
+
+import com.vais.mavicmissions.services.metrics.Counter;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui enregistre le déroulement d'un vol dans un fichier binaire, au format décrit par FlightRecord.
+ * Les threads de contrôle et de vision déposent les enregistrements dans un tampon circulaire alloué une seule fois, sans bloquer.
+ * Un seul thread les écrit ensuite dans le fichier, projeté en mémoire par segments.
+ * Lorsque le tampon est plein, les nouveaux enregistrements sont abandonnés et comptés dans "recorder.dropped".
+ */
+public class FlightRecorder {
+    /**
+     * Int, nombre d'enregistrements en attente d'écriture, une puissance de 2.
+     */
+    private static final int CAPACITY = 1 << 13;
+    /**
+     * Int, masque qui donne la position d'un enregistrement dans le tampon.
+     */
+    private static final int MASK = CAPACITY - 1;
+    /**
+     * Int, nombre d'enregistrements de chaque segment projeté en mémoire.
+     */
+    private static final int SEGMENT_RECORDS = 1 << 14;
+    /**
+     * Long, temps en ns attendu par le thread d'écriture lorsqu'aucun enregistrement n'est en attente.
+     */
+    private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(5);
+
+    /**
+     * Int[], types des enregistrements en attente.
+     */
+    private static final int[] TYPES = new int[CAPACITY];
+    /**
+     * Int[], codes des enregistrements en attente.
+     */
+    private static final int[] CODES = new int[CAPACITY];
+    /**
+     * Long[], moments en ns (System.nanoTime) des enregistrements en attente.
+     */
+    private static final long[] TIMESTAMPS = new long[CAPACITY];
+    /**
+     * Double[], valeurs des enregistrements en attente, FlightRecord.VALUE_COUNT par enregistrement.
+     */
+    private static final double[] VALUES = new double[CAPACITY * FlightRecord.VALUE_COUNT];
+    /**
+     * AtomicLongArray, numéro de l'enregistrement publié à chaque position plus 1.
+     */
+    private static final AtomicLongArray SEQUENCES = new AtomicLongArray(CAPACITY);
+    /**
+     * AtomicLong, numéro du prochain enregistrement.
+     */
+    private static final AtomicLong NEXT = new AtomicLong();
+    /**
+     * Long, numéro du prochain enregistrement à écrire dans le fichier.
+     */
+    private static volatile long readPosition;
+
+    /**
+     * Counter, nombre d'enregistrements abandonnés parce que le tampon était plein.
+     */
+    private static final Counter DROPPED = Metrics.counter("recorder.dropped");
+    /**
+     * Counter, nombre d'enregistrements écrits.
+     */
+    private static final Counter WRITTEN = Metrics.counter("recorder.written");
+
+    /**
+     * Writer, thread d'écriture de l'enregistrement actuel, null si aucun vol n'est enregistré.
+     */
+    private static volatile Writer writer;
+
+    /**
+     * Classe qui écrit les enregistrements en attente dans le fichier.
+     */
+    private static class Writer extends Thread {
+        /**
+         * RandomAccessFile, fichier de l'enregistrement.
+         */
+        private final RandomAccessFile file;
+        /**
+         * FileChannel, canal du fichier.
+         */
+        private final FileChannel channel;
+        /**
+         * MappedByteBuffer, entête du fichier.
+         */
+        private final MappedByteBuffer header;
+        /**
+         * MappedByteBuffer, segment du fichier actuellement écrit, null avant le premier enregistrement.
+         */
+        private MappedByteBuffer segment;
+        /**
+         * Int, nombre d'enregistrements écrits.
+         */
+        private int count;
+        /**
+         * Boolean, faux lorsque l'enregistrement doit se terminer.
+         */
+        private volatile boolean running;
+        /**
+         * IOException, erreur survenue lors de l'écriture, null si aucune.
+         */
+        private volatile IOException error;
+
+        /**
+         * Constructeur de la classe Writer, créé l'objet, ouvre le fichier et écrit son entête.
+         * @param path File, fichier à écrire.
+         * @throws IOException si le fichier ne peut pas être ouvert.
+         */
+        private Writer(File path) throws IOException {
+            super("flight-recorder");
+            setDaemon(true);
+
+            file = new RandomAccessFile(path, "rw");
+            file.setLength(0);
+            channel = file.getChannel();
+
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, FlightRecord.HEADER_SIZE);
+            header.putInt(FlightRecord.MAGIC);
+            header.putInt(FlightRecord.VERSION);
+            header.putInt(FlightRecord.RECORD_SIZE);
+            header.putInt(0);
+            header.putLong(System.currentTimeMillis());
+            header.putLong(System.nanoTime());
+
+            running = true;
+        }
+
+        /**
+         * Méthode qui écrit les enregistrements jusqu'à la fin de l'enregistrement.
+         */
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    if (drain() == 0)
+                        LockSupport.parkNanos(IDLE_WAIT);
+                }
+
+                // Écrire les derniers enregistrements.
+                drain();
+            }
+            catch (IOException e) {
+                error = e;
+            }
+        }
+
+        /**
+         * Fonction qui écrit tous les enregistrements publiés dans le fichier.
+         * @return Int, nombre d'enregistrements écrits.
+         * @throws IOException si un segment ne peut pas être projeté.
+         */
+        private int drain() throws IOException {
+            int written = 0;
+            long index = readPosition;
+            int slot = (int)(index & MASK);
+
+            while (SEQUENCES.get(slot) == index + 1) {
+                // Projeter le prochain segment lorsque le segment actuel est plein.
+                if (segment == null || !segment.hasRemaining())
+                    segment = channel.map(FileChannel.MapMode.READ_WRITE,
+                            FlightRecord.HEADER_SIZE + (long)count * FlightRecord.RECORD_SIZE, (long)SEGMENT_RECORDS * FlightRecord.RECORD_SIZE);
+
+                segment.putInt(TYPES[slot]);
+                segment.putInt(CODES[slot]);
+                segment.putLong(TIMESTAMPS[slot]);
+                for (int i = 0; i < FlightRecord.VALUE_COUNT; i++)
+                    segment.putDouble(VALUES[slot * FlightRecord.VALUE_COUNT + i]);
+
+                count++;
+                written++;
+
+                // Libérer la position pour les producteurs.
+                readPosition = ++index;
+                slot = (int)(index & MASK);
+            }
+
+            // Garder l'entête à jour, le fichier reste donc lisible si l'application s'arrête brusquement.
+            if (written > 0) {
+                header.putInt(FlightRecord.COUNT_OFFSET, count);
+                WRITTEN.add(written);
+            }
+
+            return written;
+        }
+
+        /**
+         * Méthode qui termine l'écriture et ferme le fichier.
+         * @throws IOException si le fichier ne peut pas être écrit.
+         */
+        private void finish() throws IOException {
+            running = false;
+
+            // Si le thread n'a jamais été démarré, il écrit tous les enregistrements en attente avant de se terminer.
+            if (getState() == State.NEW)
+                start();
+            else
+                LockSupport.unpark(this);
+
+            try {
+                join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            try {
+                if (error != null)
+                    throw error;
+
+                if (segment != null)
+                    segment.force();
+                header.force();
+
+                // Retirer l'espace inutilisé du dernier segment.
+                file.setLength(FlightRecord.HEADER_SIZE + (long)count * FlightRecord.RECORD_SIZE);
+            }
+            finally {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Méthode qui commence l'enregistrement d'un vol. L'enregistrement en cours est terminé.
+     * @param file File, fichier à écrire.
+     * @throws IOException si le fichier ne peut pas être ouvert.
+     */
+    public static synchronized void start(File file) throws IOException {
+        open(file);
+        writer.start();
+    }
+
+    /**
+     * Méthode qui ouvre l'enregistrement d'un vol sans démarrer le thread d'écriture. Les enregistrements restent dans
+     * le tampon jusqu'à stop(), ce qui permet aux tests de le remplir. L'enregistrement en cours est terminé.
+     * @param file File, fichier à écrire.
+     * @throws IOException si le fichier ne peut pas être ouvert.
+     */
+    static synchronized void open(File file) throws IOException {
+        stop();
+
+        // Oublier les enregistrements abandonnés d'un vol précédent.
+        for (int i = 0; i < CAPACITY; i++)
+            SEQUENCES.set(i, 0);
+        NEXT.set(0);
+        readPosition = 0;
+
+        writer = new Writer(file);
+    }
+
+    /**
+     * Méthode qui termine l'enregistrement en cours, après avoir écrit les enregistrements en attente.
+     * Ne fait rien si aucun vol n'est enregistré.
+     * @throws IOException si le fichier ne peut pas être écrit.
+     */
+    public static synchronized void stop() throws IOException {
+        Writer current = writer;
+
+        if (current != null) {
+            writer = null;
+            current.finish();
+        }
+    }
+
+    /**
+     * Fonction qui indique si un vol est enregistré.
+     * @return Boolean, vrai si un vol est enregistré.
+     */
+    public static boolean isRecording() {
+        return writer != null;
+    }
+
+    /**
+     * Méthode qui enregistre une commande envoyée au drone.
+     * @param pitch Float, pitch de la commande.
+     * @param roll Float, roll de la commande.
+     * @param yaw Float, yaw de la commande.
+     * @param throttle Float, throttle de la commande.
+     * @param age Double, âge en ms de l'image qui a causé la commande, -1 si aucune.
+     */
+    public static void recordSetpoint(float pitch, float roll, float yaw, float throttle, double age) {
+        record(FlightRecord.SETPOINT, 0, pitch, roll, yaw, throttle, age, 0);
+    }
+
+    /**
+     * Méthode qui enregistre l'état du drone.
+     * @param altitude Double, altitude en m.
+     * @param velocityX Double, vitesse en m/s sur l'axe x.
+     * @param velocityY Double, vitesse en m/s sur l'axe y.
+     * @param velocityZ Double, vitesse en m/s sur l'axe z.
+     * @param yaw Double, yaw en degrés.
+     * @param flying Boolean, vrai si le drone vole.
+     */
+    public static void recordTelemetry(double altitude, double velocityX, double velocityY, double velocityZ, double yaw, boolean flying) {
+        record(FlightRecord.TELEMETRY, 0, altitude, velocityX, velocityY, velocityZ, yaw, flying ? 1 : 0);
+    }
+
+    /**
+     * Méthode qui enregistre le résultat d'une détection.
+     * @param code Int, résultat de la détection, propre à l'objectif.
+     * @param age Double, âge en ms de l'image au moment de la décision.
+     * @param value1 Double, première valeur propre à l'objectif.
+     * @param value2 Double, deuxième valeur propre à l'objectif.
+     * @param value3 Double, troisième valeur propre à l'objectif.
+     */
+    public static void recordDetection(int code, double age, double value1, double value2, double value3) {
+        record(FlightRecord.DETECTION, code, age, value1, value2, value3, 0, 0);
+    }
+
+    /**
+     * Méthode qui enregistre un changement d'état de la mission.
+     * @param state Int, nouvel état, l'un des FlightRecord.STATE_*.
+     * @param value1 Double, première valeur propre au changement.
+     * @param value2 Double, deuxième valeur propre au changement.
+     */
+    public static void recordState(int state, double value1, double value2) {
+        record(FlightRecord.STATE, state, value1, value2, 0, 0, 0, 0);
+    }
+
+    /**
+     * Méthode qui dépose un enregistrement dans le tampon, sans bloquer.
+     * @param type Int, type de l'enregistrement.
+     * @param code Int, code de l'enregistrement.
+     * @param v0 Double, première valeur.
+     * @param v1 Double, deuxième valeur.
+     * @param v2 Double, troisième valeur.
+     * @param v3 Double, quatrième valeur.
+     * @param v4 Double, cinquième valeur.
+     * @param v5 Double, sixième valeur.
+     */
+    private static void record(int type, int code, double v0, double v1, double v2, double v3, double v4, double v5) {
+        if (writer == null)
+            return;
+
+        // Réserver une position, sans dépasser les enregistrements pas encore écrits.
+        long index;
+        do {
+            index = NEXT.get();
+
+            if (index - readPosition >= CAPACITY) {
+                DROPPED.increment();
+                return;
+            }
+        } while (!NEXT.compareAndSet(index, index + 1));
+
+        int slot = (int)(index & MASK);
+        int values = slot * FlightRecord.VALUE_COUNT;
+
+        TYPES[slot] = type;
+        CODES[slot] = code;
+        TIMESTAMPS[slot] = System.nanoTime();
+        VALUES[values] = v0;
+        VALUES[values + 1] = v1;
+        VALUES[values + 2] = v2;
+        VALUES[values + 3] = v3;
+        VALUES[values + 4] = v4;
+        VALUES[values + 5] = v5;
+
+        // Publier l'enregistrement au thread d'écriture.
+        SEQUENCES.lazySet(slot, index + 1);
+    }
+}
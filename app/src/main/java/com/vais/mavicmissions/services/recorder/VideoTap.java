@@ -0,0 +1,220 @@
+package com.vais.mavicmissions.services.recorder;
+
+import com.vais.mavicmissions.services.metrics.Counter;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui enregistre le flux vidéo brut (H.264) reçu du drone, avec le moment d'arrivée de chaque paquet.
+ * Les paquets sont copiés dans des tampons alloués à l'ouverture, puis écrits dans le fichier par un thread dédié.
+ * Lorsque tous les tampons attendent l'écriture, les paquets sont abandonnés et comptés dans "videoTap.dropped".
+ * Format, en big-endian:
+ * - entête: magic (int), version (int), moment du début en ms depuis l'époque (long), moment du début en ns (System.nanoTime, long);
+ * - paquet: moment de l'arrivée en ns (long), taille (int), données H.264.
+ */
+public class VideoTap {
+    /**
+     * Int, identifiant des fichiers de flux vidéo ("MVT1").
+     */
+    public static final int MAGIC = 0x4D565431;
+    /**
+     * Int, version du format.
+     */
+    public static final int VERSION = 1;
+    /**
+     * Int, taille en octets de l'entête.
+     */
+    public static final int HEADER_SIZE = 24;
+    /**
+     * Int, taille en octets de l'entête d'un paquet.
+     */
+    public static final int PACKET_HEADER_SIZE = 12;
+
+    /**
+     * Int, taille en octets d'un tampon.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+    /**
+     * Int, nombre de tampons.
+     */
+    private static final int BUFFER_COUNT = 4;
+
+    /**
+     * Counter, nombre de paquets abandonnés parce qu'aucun tampon n'était libre.
+     */
+    private static final Counter DROPPED = Metrics.counter("videoTap.dropped");
+    /**
+     * Counter, nombre d'octets vidéo enregistrés.
+     */
+    private static final Counter BYTES = Metrics.counter("videoTap.bytes");
+
+    /**
+     * ByteBuffer, marque de fin donnée au thread d'écriture.
+     */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /**
+     * RandomAccessFile, fichier de l'enregistrement.
+     */
+    private final RandomAccessFile file;
+    /**
+     * FileChannel, canal du fichier.
+     */
+    private final FileChannel channel;
+    /**
+     * BlockingQueue<ByteBuffer>, tampons libres.
+     */
+    private final BlockingQueue<ByteBuffer> free;
+    /**
+     * BlockingQueue<ByteBuffer>, tampons pleins en attente d'écriture.
+     */
+    private final BlockingQueue<ByteBuffer> full;
+    /**
+     * Thread, thread d'écriture.
+     */
+    private final Thread writer;
+
+    /**
+     * ByteBuffer, tampon qui reçoit les paquets, null si aucun tampon n'était libre.
+     */
+    private ByteBuffer current;
+    /**
+     * Boolean, indique si l'enregistrement est terminé.
+     */
+    private boolean closed;
+    /**
+     * IOException, erreur survenue lors de l'écriture, null si aucune.
+     */
+    private volatile IOException error;
+
+    /**
+     * Constructeur de la classe VideoTap, créé l'objet, ouvre le fichier et démarre le thread d'écriture.
+     * @param path File, fichier à écrire.
+     * @throws IOException si le fichier ne peut pas être ouvert.
+     */
+    public VideoTap(File path) throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(System.currentTimeMillis());
+        header.putLong(System.nanoTime());
+        header.flip();
+        channel.write(header);
+
+        // Allouer les tampons une seule fois.
+        free = new ArrayBlockingQueue<>(BUFFER_COUNT);
+        full = new LinkedBlockingQueue<>();
+        for (int i = 0; i < BUFFER_COUNT; i++)
+            free.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        current = free.poll();
+
+        writer = new Thread(this::drain, "video-tap");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Méthode qui enregistre un paquet du flux vidéo. Ne bloque pas sur l'écriture du fichier.
+     * @param bytes Byte[], données du paquet.
+     * @param size Int, taille des données.
+     */
+    public synchronized void write(byte[] bytes, int size) {
+        long arrival = System.nanoTime();
+
+        if (closed)
+            return;
+
+        if (size + PACKET_HEADER_SIZE > BUFFER_SIZE) {
+            DROPPED.increment();
+            return;
+        }
+
+        // Passer au prochain tampon libre lorsque le paquet ne rentre pas.
+        if (current == null || current.remaining() < size + PACKET_HEADER_SIZE) {
+            if (current != null)
+                full.add(current);
+
+            current = free.poll();
+            if (current == null) {
+                DROPPED.increment();
+                return;
+            }
+        }
+
+        current.putLong(arrival);
+        current.putInt(size);
+        current.put(bytes, 0, size);
+        BYTES.add(size);
+    }
+
+    /**
+     * Méthode qui écrit les tampons pleins dans le fichier jusqu'à la fin de l'enregistrement.
+     */
+    private void drain() {
+        try {
+            ByteBuffer buffer;
+            while ((buffer = full.take()) != END) {
+                buffer.flip();
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+
+                buffer.clear();
+                free.add(buffer);
+            }
+        }
+        catch (IOException e) {
+            error = e;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Méthode qui termine l'enregistrement, après avoir écrit les paquets en attente, et ferme le fichier.
+     * @throws IOException si le fichier ne peut pas être écrit.
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed)
+                return;
+
+            closed = true;
+            if (current != null && current.position() > 0)
+                full.add(current);
+            current = null;
+            full.add(END);
+        }
+
+        try {
+            writer.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            if (error != null)
+                throw error;
+
+            channel.force(false);
+        }
+        finally {
+            file.close();
+        }
+    }
+}
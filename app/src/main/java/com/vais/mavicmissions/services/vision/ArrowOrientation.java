@@ -0,0 +1,40 @@
+package com.vais.mavicmissions.services.vision;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui représente l'orientation estimée d'une flèche.
+ */
+public class ArrowOrientation {
+    /**
+     * Double, angle en degrées de la flèche. 0 pointe vers le haut de l'image, 90 vers la droite et -90 vers la gauche.
+     */
+    private final double angle;
+    /**
+     * Double, confiance de l'estimation, entre 0 et 1.
+     */
+    private final double confidence;
+
+    /**
+     * Constructeur de la classe ArrowOrientation, créé l'objet et initialise ses données membres.
+     * @param angle Double, angle en degrées de la flèche.
+     * @param confidence Double, confiance de l'estimation, entre 0 et 1.
+     */
+    public ArrowOrientation(double angle, double confidence) {
+        this.angle = angle;
+        this.confidence = confidence;
+    }
+
+    /**
+     * Fonction qui retourne l'angle de la flèche.
+     * @return Double, angle en degrées de la flèche.
+     */
+    public double getAngle() { return angle; }
+
+    /**
+     * Fonction qui retourne la confiance de l'estimation.
+     * @return Double, confiance entre 0 et 1.
+     */
+    public double getConfidence() { return confidence; }
+}
@@ -0,0 +1,119 @@
+package com.vais.mavicmissions.services.vision;
+
+import com.vais.mavicmissions.services.metrics.Counter;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui réutilise le dernier résultat d'une détection tant que la scène ne change pas, par exemple pendant que le drone
+ * est immobile entre deux commandes.
+ * La miniature de chaque image est comparée à celle de la dernière image analysée. La scène a changé lorsqu'un pixel de la miniature
+ * diffère de plus que le seuil du VisionProfile: un objet qui entre dans un coin de l'image suffit, alors qu'une moyenne le diluerait.
+ * @param <T> type du résultat de la détection.
+ */
+public class ChangeDetector<T> {
+    /**
+     * Int, largeur en pixels de la miniature comparée, chaque pixel couvre environ 40 pixels de l'image affichée.
+     */
+    private static final int THUMBNAIL_WIDTH = 32;
+
+    /**
+     * ImageProcessor, service de traitement d'image, qui fournit le seuil du profil actuel.
+     */
+    private final ImageProcessor processor;
+    /**
+     * Counter, nombre d'images dont le résultat a été réutilisé.
+     */
+    private final Counter reused;
+    /**
+     * Counter, nombre d'images qui ont dû être analysées.
+     */
+    private final Counter computed;
+
+    /**
+     * Mat, miniature de la dernière image analysée, null si aucun résultat n'est gardé.
+     */
+    private Mat thumbnail;
+    /**
+     * T, résultat de la dernière image analysée.
+     */
+    private T result;
+
+    /**
+     * Constructeur de la classe ChangeDetector, créé l'objet et initialise ses données membres.
+     * @param processor ImageProcessor, service de traitement d'image.
+     * @param name String, nom de la détection dans les mesures (change.nom.reused et change.nom.computed).
+     */
+    public ChangeDetector(ImageProcessor processor, String name) {
+        this.processor = processor;
+        reused = Metrics.counter("change." + name + ".reused");
+        computed = Metrics.counter("change." + name + ".computed");
+    }
+
+    /**
+     * Fonction qui retourne le résultat gardé si l'image est semblable à la dernière image analysée.
+     * @param frame Frame, image à analyser.
+     * @return T, résultat gardé, null si l'image doit être analysée.
+     */
+    public synchronized T getCached(Frame frame) {
+        if (thumbnail != null && !changed(thumbnail, frame.getContext().getThumbnail(THUMBNAIL_WIDTH))) {
+            reused.increment();
+            return result;
+        }
+
+        computed.increment();
+        return null;
+    }
+
+    /**
+     * Méthode qui garde le résultat d'une image analysée, pour les prochaines images semblables.
+     * @param frame Frame, image analysée.
+     * @param result T, résultat de la détection, ne doit pas être null.
+     */
+    public synchronized void store(Frame frame, T result) {
+        thumbnail = frame.getContext().getThumbnail(THUMBNAIL_WIDTH);
+        this.result = result;
+    }
+
+    /**
+     * Méthode qui oublie le résultat gardé, lorsque la prochaine image doit être analysée peu importe la scène.
+     */
+    public synchronized void reset() {
+        thumbnail = null;
+        result = null;
+    }
+
+    /**
+     * Fonction qui indique si la scène a changé entre deux miniatures.
+     * @param previous Mat, miniature de la dernière image analysée.
+     * @param current Mat, miniature de l'image à analyser.
+     * @return Boolean, vrai si un pixel diffère de plus que le seuil, si les miniatures n'ont pas les mêmes dimensions ou si la
+     * réutilisation est désactivée.
+     */
+    private boolean changed(Mat previous, Mat current) {
+        double threshold = processor.getProfile().getChangeThreshold();
+        if (threshold <= 0 || !previous.size().equals(current.size()))
+            return true;
+
+        Mat difference = new Mat();
+        Core.absdiff(previous, current, difference);
+        double largest = Core.minMaxLoc(difference).maxVal;
+        difference.release();
+
+        return largest > threshold;
+    }
+
+    /**
+     * Fonction qui retourne la proportion des images dont le résultat a été réutilisé depuis la remise à zéro des mesures.
+     * @return Double, proportion entre 0 et 1, 0 si aucune image n'a été vérifiée.
+     */
+    public double getHitRate() {
+        long hits = reused.get();
+        long total = hits + computed.get();
+        return total == 0 ? 0 : (double)hits / total;
+    }
+}
@@ -0,0 +1,139 @@
+package com.vais.mavicmissions.services.vision;
+
+import com.vais.mavicmissions.Enum.Color;
+import org.opencv.core.Scalar;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui regroupe les limites HSV de chaque couleur filtrée par ImageProcessor.
+ * Les limites sont calibrées pour un lieu par ColorTuner (benchmark) et font partie du fichier de VisionProfile.
+ * Format: une ligne COULEUR.lower=h,s,v et une ligne COULEUR.upper=h,s,v par couleur. Une couleur absente garde ses limites par défaut.
+ */
+public class ColorProfile {
+    /**
+     * Map<Color, Scalar[]>, valeurs la plus basse et la plus haute acceptées pour chaque couleur.
+     */
+    private final Map<Color, Scalar[]> ranges;
+
+    /**
+     * Constructeur de la classe ColorProfile, créé l'objet et initialise ses données membres.
+     * @param ranges Map<Color, Scalar[]>, limites de chaque couleur.
+     */
+    private ColorProfile(Map<Color, Scalar[]> ranges) {
+        this.ranges = ranges;
+    }
+
+    /**
+     * Fonction qui retourne le profil par défaut, calibré à l'origine pour le lieu des essais.
+     * @return ColorProfile, profil par défaut.
+     */
+    public static ColorProfile defaults() {
+        Map<Color, Scalar[]> ranges = new EnumMap<>(Color.class);
+
+        // Définir les limites du vert.
+        ranges.put(Color.LINE_GREEN, new Scalar[] { new Scalar(32, 40, 40), new Scalar(82, 240, 240) });
+
+        // Définir les limites du jaune.
+        // Source: https://stackoverflow.com/questions/9179189/detect-yellow-color-in-opencv
+        ranges.put(Color.YELLOW, new Scalar[] { new Scalar(22, 100, 100), new Scalar(28, 255, 255) });
+
+        // Définir les limites du vert de la balle.
+        ranges.put(Color.BALL_GREEN, new Scalar[] { new Scalar(32, 100, 100), new Scalar(82, 255, 255) });
+
+        ranges.put(Color.BLACK, new Scalar[] { new Scalar(0, 0, 0), new Scalar(155, 255, 35) });
+
+        return new ColorProfile(ranges);
+    }
+
+    /**
+     * Fonction qui lit les limites des couleurs. Les couleurs absentes gardent leurs limites par défaut.
+     * @param properties Properties, paramètres lus du fichier de VisionProfile.
+     * @return ColorProfile, profil lu.
+     * @throws IOException si une limite est invalide.
+     */
+    public static ColorProfile load(Properties properties) throws IOException {
+        Map<Color, Scalar[]> ranges = new EnumMap<>(defaults().ranges);
+        for (Color color : Color.values()) {
+            String lower = properties.getProperty(color.name() + ".lower");
+            String upper = properties.getProperty(color.name() + ".upper");
+
+            if (lower != null && upper != null)
+                ranges.put(color, new Scalar[] { parse(lower), parse(upper) });
+        }
+
+        return new ColorProfile(ranges);
+    }
+
+    /**
+     * Méthode qui ajoute les limites des couleurs aux paramètres écrits dans le fichier de VisionProfile.
+     * @param properties Properties, paramètres à compléter.
+     */
+    public void store(Properties properties) {
+        for (Map.Entry<Color, Scalar[]> range : ranges.entrySet()) {
+            properties.setProperty(range.getKey().name() + ".lower", format(range.getValue()[0]));
+            properties.setProperty(range.getKey().name() + ".upper", format(range.getValue()[1]));
+        }
+    }
+
+    /**
+     * Fonction qui retourne un profil identique, sauf pour les limites d'une couleur.
+     * @param color Color, couleur à modifier.
+     * @param lower Scalar, valeur HSV la plus basse acceptée.
+     * @param upper Scalar, valeur HSV la plus haute acceptée.
+     * @return ColorProfile, nouveau profil.
+     */
+    public ColorProfile withRange(Color color, Scalar lower, Scalar upper) {
+        Map<Color, Scalar[]> copy = new EnumMap<>(ranges);
+        copy.put(color, new Scalar[] { lower, upper });
+
+        return new ColorProfile(copy);
+    }
+
+    /**
+     * Fonction qui retourne la valeur HSV la plus basse acceptée pour une couleur.
+     * @param color Color, couleur filtrée.
+     * @return Scalar, valeur la plus basse.
+     */
+    public Scalar getLower(Color color) { return ranges.get(color)[0]; }
+
+    /**
+     * Fonction qui retourne la valeur HSV la plus haute acceptée pour une couleur.
+     * @param color Color, couleur filtrée.
+     * @return Scalar, valeur la plus haute.
+     */
+    public Scalar getUpper(Color color) { return ranges.get(color)[1]; }
+
+    /**
+     * Fonction qui lit une valeur HSV.
+     * @param value String, valeur sous la forme h,s,v.
+     * @return Scalar, valeur lue.
+     * @throws IOException si la valeur n'a pas trois composantes numériques.
+     */
+    private static Scalar parse(String value) throws IOException {
+        String[] parts = value.split(",");
+        if (parts.length != 3)
+            throw new IOException("Valeur HSV invalide: " + value);
+
+        try {
+            return new Scalar(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()), Double.parseDouble(parts[2].trim()));
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Valeur HSV invalide: " + value, e);
+        }
+    }
+
+    /**
+     * Fonction qui formate une valeur HSV.
+     * @param value Scalar, valeur HSV.
+     * @return String, valeur sous la forme h,s,v.
+     */
+    private static String format(Scalar value) {
+        return (int)value.val[0] + "," + (int)value.val[1] + "," + (int)value.val[2];
+    }
+}
@@ -0,0 +1,55 @@
+package com.vais.mavicmissions.services.vision;
+
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui représente un contour trouvé par une ContourQuery, avec ses mesures.
+ */
+public class ContourMatch {
+    /**
+     * MatOfPoint, points du contour.
+     */
+    private final MatOfPoint contour;
+    /**
+     * Rect, rectangle englobant le contour.
+     */
+    private final Rect bounds;
+    /**
+     * Double, aire du contour.
+     */
+    private final double area;
+
+    /**
+     * Constructeur de la classe ContourMatch, créé l'objet et initialise ses données membres.
+     * @param contour MatOfPoint, points du contour.
+     * @param bounds Rect, rectangle englobant le contour.
+     * @param area Double, aire du contour.
+     */
+    public ContourMatch(MatOfPoint contour, Rect bounds, double area) {
+        this.contour = contour;
+        this.bounds = bounds;
+        this.area = area;
+    }
+
+    /**
+     * Fonction qui retourne les points du contour.
+     * @return MatOfPoint, points du contour.
+     */
+    public MatOfPoint getContour() { return contour; }
+
+    /**
+     * Fonction qui retourne le rectangle englobant le contour.
+     * @return Rect, rectangle englobant.
+     */
+    public Rect getBounds() { return bounds; }
+
+    /**
+     * Fonction qui retourne l'aire du contour.
+     * @return Double, aire du contour.
+     */
+    public double getArea() { return area; }
+}
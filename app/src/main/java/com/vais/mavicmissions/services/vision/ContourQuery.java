@@ -0,0 +1,176 @@
+package com.vais.mavicmissions.services.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui décrit une recherche de contours dans une image binaire.
+ * Par défaut, seuls les contours extérieurs sont gardés et leurs segments droits sont compressés,
+ * ce qui évite de construire la hiérarchie complète et de garder chaque pixel des contours.
+ */
+public class ContourQuery {
+    /**
+     * Int, mode de récupération des contours (Imgproc.RETR_*).
+     */
+    private int retrievalMode;
+    /**
+     * Int, méthode d'approximation des contours (Imgproc.CHAIN_APPROX_*).
+     */
+    private int approximation;
+    /**
+     * Double, aire minimum d'un contour gardé.
+     */
+    private double minArea;
+    /**
+     * Int, nombre maximum de contours gardés, les plus grands en premier.
+     */
+    private int limit;
+    /**
+     * Boolean, si les contours aussi grands que l'image sont ignorés.
+     */
+    private boolean excludeFrame;
+
+    /**
+     * Constructeur de la classe ContourQuery, créé l'objet et initialise ses données membres.
+     */
+    public ContourQuery() {
+        retrievalMode = Imgproc.RETR_EXTERNAL;
+        approximation = Imgproc.CHAIN_APPROX_SIMPLE;
+        minArea = 0;
+        limit = Integer.MAX_VALUE;
+        excludeFrame = false;
+    }
+
+    /**
+     * Fonction qui change le mode de récupération des contours.
+     * @param retrievalMode Int, mode de récupération (Imgproc.RETR_*).
+     * @return ContourQuery, la recherche modifiée.
+     */
+    public ContourQuery retrieval(int retrievalMode) {
+        this.retrievalMode = retrievalMode;
+        return this;
+    }
+
+    /**
+     * Fonction qui change la méthode d'approximation des contours.
+     * @param approximation Int, méthode d'approximation (Imgproc.CHAIN_APPROX_*).
+     * @return ContourQuery, la recherche modifiée.
+     */
+    public ContourQuery approximation(int approximation) {
+        this.approximation = approximation;
+        return this;
+    }
+
+    /**
+     * Fonction qui ignore les contours plus petits qu'une aire donnée.
+     * @param minArea Double, aire minimum d'un contour gardé.
+     * @return ContourQuery, la recherche modifiée.
+     */
+    public ContourQuery minArea(double minArea) {
+        this.minArea = minArea;
+        return this;
+    }
+
+    /**
+     * Fonction qui ne garde que les plus grands contours.
+     * @param limit Int, nombre maximum de contours gardés.
+     * @return ContourQuery, la recherche modifiée.
+     */
+    public ContourQuery top(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Fonction qui ignore les contours dont la largeur ou la hauteur est celle de l'image.
+     * @return ContourQuery, la recherche modifiée.
+     */
+    public ContourQuery excludeFrame() {
+        excludeFrame = true;
+        return this;
+    }
+
+    /**
+     * Fonction qui effectue la recherche de contours.
+     * L'aire et le rectangle englobant de chaque contour sont calculés une seule fois, et les contours rejetés sont libérés aussitôt.
+     * @param binary Mat, image binaire à analyser. Peut être modifiée selon la version d'OpenCV.
+     * @return List<ContourMatch>, contours trouvés, du plus grand au plus petit.
+     */
+    public List<ContourMatch> find(Mat binary) {
+        return find(binary, Collections.singletonList(new Rect(0, 0, binary.cols(), binary.rows())));
+    }
+
+    /**
+     * Fonction qui effectue la recherche de contours dans certaines régions de l'image seulement.
+     * Les contours sont retournés dans les coordonnées de l'image, et le cadre exclu reste celui de l'image entière.
+     * @param binary Mat, image binaire à analyser. Peut être modifiée selon la version d'OpenCV.
+     * @param regions List<Rect>, régions à analyser, qui ne se chevauchent pas.
+     * @return List<ContourMatch>, contours trouvés dans toutes les régions, du plus grand au plus petit.
+     */
+    public List<ContourMatch> find(Mat binary, List<Rect> regions) {
+        if (limit <= 0 || regions.isEmpty())
+            return new ArrayList<>();
+
+        // Garder les plus grands contours, le plus petit gardé en tête de la file.
+        PriorityQueue<ContourMatch> kept = new PriorityQueue<>(Math.max(1, Math.min(limit, 16)),
+                (a, b) -> Double.compare(a.getArea(), b.getArea()));
+
+        Mat hierarchy = new Mat();
+        for (Rect region : regions) {
+            boolean whole = region.width == binary.cols() && region.height == binary.rows();
+            Mat roi = whole ? binary : binary.submat(region);
+
+            List<MatOfPoint> contours = new ArrayList<>();
+            Imgproc.findContours(roi, contours, hierarchy, retrievalMode, approximation, region.tl());
+            keep(contours, binary, kept);
+
+            if (!whole)
+                roi.release();
+        }
+        hierarchy.release();
+
+        List<ContourMatch> result = new ArrayList<>(kept);
+        Collections.sort(result, (a, b) -> Double.compare(b.getArea(), a.getArea()));
+
+        return result;
+    }
+
+    /**
+     * Méthode qui ajoute aux contours gardés ceux qui respectent la recherche, puis libère les autres.
+     * @param contours List<MatOfPoint>, contours trouvés.
+     * @param binary Mat, image analysée, dont le cadre est exclu si demandé.
+     * @param kept PriorityQueue<ContourMatch>, plus grands contours gardés, le plus petit en tête.
+     */
+    private void keep(List<MatOfPoint> contours, Mat binary, PriorityQueue<ContourMatch> kept) {
+        for (MatOfPoint contour : contours) {
+            double area = Imgproc.contourArea(contour);
+
+            if (area < minArea || (kept.size() == limit && area <= kept.peek().getArea())) {
+                contour.release();
+                continue;
+            }
+
+            Rect bounds = Imgproc.boundingRect(contour);
+
+            if (excludeFrame && (bounds.width >= binary.width() || bounds.height >= binary.height())) {
+                contour.release();
+                continue;
+            }
+
+            kept.add(new ContourMatch(contour, bounds, area));
+
+            // Libérer le plus petit contour gardé s'il y en a trop.
+            if (kept.size() > limit)
+                kept.poll().getContour().release();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.vais.mavicmissions.services.vision;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui représente le résultat de la détection d'une image, avec les moments clés de son traitement.
+ * Permet de suivre l'âge de l'image jusqu'à la décision et aux commandes qu'elle cause.
+ */
+public class Detection<T> {
+    /**
+     * Long, moment en ns (System.nanoTime) où les données vidéo de l'image sont arrivées, 0 si inconnu.
+     */
+    private final long arrival;
+    /**
+     * Long, moment en ns où l'image a été capturée.
+     */
+    private final long capture;
+    /**
+     * Long, moment en ns de la fin de la détection.
+     */
+    private final long detected;
+    /**
+     * T, résultat de la détection.
+     */
+    private final T result;
+
+    /**
+     * Constructeur de la classe Detection, créé l'objet et initialise ses données membres.
+     * La fin de la détection est le moment de la création de l'objet.
+     * @param frame Frame, image analysée.
+     * @param result T, résultat de la détection.
+     */
+    public Detection(Frame frame, T result) {
+        arrival = frame.getArrival();
+        capture = frame.getTimestamp();
+        detected = System.nanoTime();
+        this.result = result;
+    }
+
+    /**
+     * Fonction qui retourne le moment de l'arrivée des données vidéo de l'image.
+     * @return Long, moment en ns, 0 si inconnu.
+     */
+    public long getArrival() { return arrival; }
+
+    /**
+     * Fonction qui retourne le moment de la capture de l'image.
+     * @return Long, moment en ns.
+     */
+    public long getCapture() { return capture; }
+
+    /**
+     * Fonction qui retourne le moment de la fin de la détection.
+     * @return Long, moment en ns.
+     */
+    public long getDetected() { return detected; }
+
+    /**
+     * Fonction qui retourne le moment le plus ancien connu de l'image: son arrivée, sinon sa capture.
+     * @return Long, moment en ns.
+     */
+    public long getSource() { return arrival != 0 ? arrival : capture; }
+
+    /**
+     * Fonction qui retourne le résultat de la détection.
+     * @return T, résultat de la détection.
+     */
+    public T getResult() { return result; }
+}
@@ -0,0 +1,173 @@
+package com.vais.mavicmissions.services.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui représente une image capturée du flux vidéo.
+ * La détection peut s'effectuer sur une version réduite de l'image (niveau de pyramide choisi par ResolutionController).
+ * Les coordonnées détectées sont alors ramenées à la pleine résolution avant d'être utilisées par la logique des objectifs.
+ */
+public class Frame {
+    /**
+     * Long, numéro de l'image dans le flux vidéo.
+     */
+    private final long id;
+    /**
+     * Long, moment en ns (System.nanoTime) où les données vidéo de l'image sont arrivées, 0 si inconnu.
+     */
+    private final long arrival;
+    /**
+     * Long, moment en ns (System.nanoTime) où l'image a été capturée.
+     */
+    private final long timestamp;
+    /**
+     * Mat, matrice de l'image, en pleine résolution.
+     */
+    private final Mat mat;
+    /**
+     * Int, niveau de pyramide du traitement, 0 pour la pleine résolution.
+     */
+    private final int level;
+    /**
+     * FrameContext, résultats intermédiaires du traitement de l'image, à la résolution du traitement.
+     */
+    private final FrameContext context;
+
+    /**
+     * Constructeur de la classe Frame, créé l'objet et initialise ses données membres.
+     * @param id Long, numéro de l'image dans le flux vidéo.
+     * @param arrival Long, moment en ns où les données vidéo de l'image sont arrivées, 0 si inconnu.
+     * @param timestamp Long, moment en ns où l'image a été capturée.
+     * @param mat Mat, matrice de l'image.
+     */
+    public Frame(long id, long arrival, long timestamp, Mat mat) {
+        this(id, arrival, timestamp, mat, 0);
+    }
+
+    /**
+     * Constructeur de la classe Frame, créé l'objet et réduit l'image pour le traitement.
+     * @param id Long, numéro de l'image dans le flux vidéo.
+     * @param arrival Long, moment en ns où les données vidéo de l'image sont arrivées, 0 si inconnu.
+     * @param timestamp Long, moment en ns où l'image a été capturée.
+     * @param mat Mat, matrice de l'image, en pleine résolution.
+     * @param level Int, niveau de pyramide du traitement, 0 pour la pleine résolution.
+     */
+    public Frame(long id, long arrival, long timestamp, Mat mat, int level) {
+        this.id = id;
+        this.arrival = arrival;
+        this.timestamp = timestamp;
+        this.mat = mat;
+        this.level = level;
+
+        // Réduire l'image de moitié pour chaque niveau.
+        Mat reduced = mat;
+        for (int i = 0; i < level; i++) {
+            Mat next = new Mat();
+            Imgproc.pyrDown(reduced, next);
+            reduced = next;
+        }
+
+        context = new FrameContext(reduced, level);
+    }
+
+    /**
+     * Fonction qui retourne le numéro de l'image.
+     * @return Long, numéro de l'image dans le flux vidéo.
+     */
+    public long getId() { return id; }
+
+    /**
+     * Fonction qui retourne le moment de l'arrivée des données vidéo de l'image.
+     * @return Long, moment en ns où les données vidéo sont arrivées, 0 si inconnu.
+     */
+    public long getArrival() { return arrival; }
+
+    /**
+     * Fonction qui retourne le moment de la capture de l'image.
+     * @return Long, moment en ns où l'image a été capturée.
+     */
+    public long getTimestamp() { return timestamp; }
+
+    /**
+     * Fonction qui retourne la matrice de l'image.
+     * @return Mat, matrice de l'image, en pleine résolution.
+     */
+    public Mat getMat() { return mat; }
+
+    /**
+     * Fonction qui retourne le niveau de pyramide du traitement.
+     * @return Int, niveau de pyramide, 0 pour la pleine résolution.
+     */
+    public int getLevel() { return level; }
+
+    /**
+     * Fonction qui convertit une distance en pixels de la pleine résolution à la résolution du traitement.
+     * @param length Int, distance en pixels, en pleine résolution.
+     * @return Int, distance en pixels à la résolution du traitement, au moins 1.
+     */
+    public int toProcessing(int length) {
+        return Math.max(1, length >> level);
+    }
+
+    /**
+     * Fonction qui ramène des points détectés à la pleine résolution.
+     * @param points Point[], points à la résolution du traitement.
+     * @return Point[], points en pleine résolution.
+     */
+    public Point[] toFull(Point[] points) {
+        if (level == 0)
+            return points;
+
+        int factor = 1 << level;
+        Point[] result = new Point[points.length];
+        for (int i = 0; i < points.length; i++)
+            result[i] = new Point(points[i].x * factor, points[i].y * factor);
+
+        return result;
+    }
+
+    /**
+     * Fonction qui ramène un contour fermé à la pleine résolution, en ajoutant des points entre ses points.
+     * Le contour garde ainsi environ autant de points qu'un contour détecté en pleine résolution, ce dont dépendent les seuils sur le nombre de points.
+     * @param contour Point[], points consécutifs du contour à la résolution du traitement.
+     * @return Point[], points du contour en pleine résolution.
+     */
+    public Point[] toFullContour(Point[] contour) {
+        if (level == 0)
+            return contour;
+
+        int factor = 1 << level;
+        Point[] result = new Point[contour.length * factor];
+        for (int i = 0; i < contour.length; i++) {
+            Point from = contour[i];
+            Point to = contour[(i + 1) % contour.length];
+
+            // Répartir les points ajoutés sur le segment jusqu'au point suivant.
+            for (int k = 0; k < factor; k++)
+                result[i * factor + k] = new Point((from.x + (to.x - from.x) * k / factor) * factor, (from.y + (to.y - from.y) * k / factor) * factor);
+        }
+
+        return result;
+    }
+
+    /**
+     * Fonction qui ramène un contour détecté à la pleine résolution.
+     * @param contour MatOfPoint, contour à la résolution du traitement.
+     * @return MatOfPoint, contour en pleine résolution.
+     */
+    public MatOfPoint toFull(MatOfPoint contour) {
+        return level == 0 ? contour : new MatOfPoint(toFull(contour.toArray()));
+    }
+
+    /**
+     * Fonction qui retourne les résultats intermédiaires du traitement de l'image.
+     * @return FrameContext, résultats intermédiaires de l'image.
+     */
+    public FrameContext getContext() { return context; }
+}
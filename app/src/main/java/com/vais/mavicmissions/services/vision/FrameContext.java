@@ -0,0 +1,208 @@
+package com.vais.mavicmissions.services.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui garde les résultats intermédiaires du traitement d'une image.
+ * Chaque résultat est calculé au premier besoin, puis réutilisé par toutes les étapes qui analysent la même image.
+ * Les matrices retournées sont partagées et ne doivent pas être modifiées.
+ */
+public class FrameContext {
+    /**
+     * Mat, matrice originale de l'image (RGBA), à la résolution du traitement.
+     */
+    private final Mat source;
+    /**
+     * Int, niveau de pyramide de l'image. Les dimensions des masques demandées pour la pleine résolution y sont réduites d'autant.
+     */
+    private final int level;
+    /**
+     * ConcurrentHashMap<String, Future<Mat>>, résultats intermédiaires selon l'opération et ses paramètres.
+     */
+    private final ConcurrentHashMap<String, Future<Mat>> cache;
+
+    /**
+     * Constructeur de la classe FrameContext, créé l'objet et initialise ses données membres.
+     * @param source Mat, matrice originale de l'image.
+     */
+    public FrameContext(Mat source) {
+        this(source, 0);
+    }
+
+    /**
+     * Constructeur de la classe FrameContext, créé l'objet et initialise ses données membres pour une image réduite.
+     * @param source Mat, matrice de l'image, réduite au niveau de pyramide.
+     * @param level Int, niveau de pyramide de l'image, 0 pour la pleine résolution.
+     */
+    public FrameContext(Mat source, int level) {
+        this.source = source;
+        this.level = level;
+        cache = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Fonction qui retourne la matrice originale de l'image.
+     * @return Mat, matrice originale.
+     */
+    public Mat getSource() {
+        return source;
+    }
+
+    /**
+     * Fonction qui retourne l'image en nuances de gris.
+     * @return Mat, image en nuances de gris.
+     */
+    public Mat getGray() {
+        return memoize("gray", () -> {
+            Mat result = new Mat();
+            Imgproc.cvtColor(source, result, Imgproc.COLOR_RGB2GRAY);
+            return result;
+        });
+    }
+
+    /**
+     * Fonction qui retourne une miniature de l'image en nuances de gris, chaque pixel étant la moyenne de la zone qu'il couvre.
+     * @param width Int, largeur de la miniature en pixels, la hauteur garde les proportions de l'image.
+     * @return Mat, miniature en nuances de gris, l'image elle-même si elle est plus petite.
+     */
+    public Mat getThumbnail(int width) {
+        return memoize("thumbnail:" + width, () -> {
+            Mat gray = getGray();
+            if (gray.cols() <= width)
+                return gray;
+
+            Mat result = new Mat();
+            Imgproc.resize(gray, result, new Size(width, Math.max(1, Math.round((double)width * gray.rows() / gray.cols()))), 0, 0, Imgproc.INTER_AREA);
+            return result;
+        });
+    }
+
+    /**
+     * Fonction qui retourne l'image originale lissée.
+     * @param maskSize Int, dimensions du masque de lissage.
+     * @return Mat, image lissée.
+     */
+    public Mat getBlurred(int maskSize) {
+        return memoize("blur:" + maskSize, () -> blur(source, scaled(maskSize)));
+    }
+
+    /**
+     * Fonction qui retourne l'image en nuances de gris lissée.
+     * @param maskSize Int, dimensions du masque de lissage.
+     * @return Mat, image en nuances de gris lissée.
+     */
+    public Mat getBlurredGray(int maskSize) {
+        return memoize("gray-blur:" + maskSize, () -> blur(getGray(), scaled(maskSize)));
+    }
+
+    /**
+     * Fonction qui retourne les arrêtes de l'image, dilatées.
+     * @param blurSize Int, dimensions du masque de lissage appliqué avant la détection.
+     * @param lowThreshold Int, threshold bas de Canny.
+     * @param highThreshold Int, threshold haut de Canny.
+     * @param kernel Mat, masque de dilatation, rectangulaire, pour la pleine résolution.
+     * @return Mat, arrêtes de l'image.
+     */
+    public Mat getEdges(int blurSize, int lowThreshold, int highThreshold, Mat kernel) {
+        return memoize("edges:" + blurSize + ":" + lowThreshold + ":" + highThreshold + ":" + kernel.cols(), () -> {
+            Mat result = new Mat();
+            Mat scaledKernel = level == 0 ? kernel : Morphology.rect(scaled(kernel.cols()));
+            Morphology.dilatedEdges(getBlurredGray(blurSize), result, lowThreshold, highThreshold, scaledKernel);
+            return result;
+        });
+    }
+
+    /**
+     * Fonction qui retourne l'image lissée en HSV.
+     * @param blurSize Int, dimensions du masque de lissage appliqué avant la conversion.
+     * @return Mat, image en HSV.
+     */
+    public Mat getHsv(int blurSize) {
+        return memoize("hsv:" + blurSize, () -> {
+            Mat result = new Mat();
+            Imgproc.cvtColor(getBlurred(blurSize), result, Imgproc.COLOR_RGB2HSV);
+            return result;
+        });
+    }
+
+    /**
+     * Fonction qui retourne le masque des pixels compris dans un intervalle HSV.
+     * @param blurSize Int, dimensions du masque de lissage appliqué avant la conversion.
+     * @param lower Scalar, valeur HSV la plus basse acceptée.
+     * @param upper Scalar, valeur HSV la plus haute acceptée.
+     * @return Mat, masque résultant.
+     */
+    public Mat getMask(int blurSize, Scalar lower, Scalar upper) {
+        return memoize("mask:" + blurSize + ":" + lower + ":" + upper, () -> {
+            Mat result = new Mat();
+            Core.inRange(getHsv(blurSize), lower, upper, result);
+            return result;
+        });
+    }
+
+    /**
+     * Fonction qui calcule un résultat intermédiaire une seule fois, même si plusieurs threads le demandent en même temps.
+     * @param key String, clé de l'opération et de ses paramètres.
+     * @param operation Callable<Mat>, opération qui calcule le résultat.
+     * @return Mat, résultat de l'opération.
+     */
+    private Mat memoize(String key, Callable<Mat> operation) {
+        Future<Mat> result = cache.get(key);
+
+        if (result == null) {
+            FutureTask<Mat> task = new FutureTask<>(operation);
+            result = cache.putIfAbsent(key, task);
+
+            // Calculer le résultat si aucun autre thread ne l'a demandé.
+            if (result == null) {
+                result = task;
+                task.run();
+            }
+        }
+
+        try {
+            return result.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        catch (ExecutionException e) {
+            cache.remove(key, result);
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Fonction qui réduit les dimensions d'un masque au niveau de pyramide de l'image.
+     * @param maskSize Int, dimensions du masque pour la pleine résolution.
+     * @return Int, dimensions impaires du masque pour l'image.
+     */
+    private int scaled(int maskSize) {
+        return level == 0 ? maskSize : (maskSize >> level) | 1;
+    }
+
+    /**
+     * Fonction qui applique une convolution gaussienne sur une matrice.
+     * @param src Mat, matrice à lisser.
+     * @param maskSize Int, dimensions du masque.
+     * @return Mat, matrice lissée.
+     */
+    private static Mat blur(Mat src, int maskSize) {
+        Mat result = new Mat();
+        Imgproc.GaussianBlur(src, result, new Size(maskSize, maskSize), 0, 0);
+        return result;
+    }
+}
@@ -0,0 +1,167 @@
+package com.vais.mavicmissions.services.vision;
+
+import com.vais.mavicmissions.services.metrics.Counter;
+import com.vais.mavicmissions.services.metrics.LatencyHistogram;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui écarte les images inutilisables avant la détection: celles prises pendant une rotation rapide du drone et celles floues.
+ * La netteté est la variance du laplacien de l'image en nuances de gris réduite. Elle dépend beaucoup de la scène (une ligne sur un
+ * plancher uni est moins texturée qu'une pancarte), une image est donc comparée à la netteté des dernières images acceptées plutôt
+ * qu'à une valeur fixe. Les seuils viennent du VisionProfile.
+ */
+public class FrameQualityGate {
+    /**
+     * Int, largeur en pixels de l'image réduite sur laquelle la netteté est mesurée.
+     */
+    private static final int SHARPNESS_WIDTH = 160;
+    /**
+     * Double, poids d'une image acceptée dans la netteté de référence.
+     */
+    private static final double BASELINE_SMOOTHING = 0.2;
+    /**
+     * Double, facteur appliqué à la netteté de référence à chaque image floue, pour suivre une scène moins texturée.
+     */
+    private static final double BASELINE_DECAY = 0.9;
+    /**
+     * Int, nombre d'images écartées de suite après lequel la prochaine image est acceptée, pour que la détection ne soit jamais bloquée.
+     */
+    private static final int MAX_CONSECUTIVE_SKIPS = 10;
+
+    /**
+     * Counter, nombre d'images acceptées.
+     */
+    private static final Counter ACCEPTED = Metrics.counter("quality.accepted");
+    /**
+     * Counter, nombre d'images écartées parce que le drone tournait.
+     */
+    private static final Counter MOVING = Metrics.counter("quality.moving");
+    /**
+     * Counter, nombre d'images écartées parce qu'elles sont floues.
+     */
+    private static final Counter BLURRED = Metrics.counter("quality.blurred");
+    /**
+     * Counter, nombre d'images acceptées malgré leur qualité après trop d'images écartées.
+     */
+    private static final Counter FORCED = Metrics.counter("quality.forced");
+    /**
+     * LatencyHistogram, temps d'exécution de la vérification d'une image.
+     */
+    private static final LatencyHistogram CHECK = Metrics.histogram("quality.check");
+
+    /**
+     * Interface qui fournit la vitesse de rotation du drone, mesurée par sa télémétrie.
+     */
+    public interface MotionSource {
+        /**
+         * Fonction qui retourne la vitesse de rotation actuelle du drone.
+         * @return Float, vitesse de rotation en degrés par seconde, sur l'axe le plus rapide.
+         */
+        float getAngularRate();
+    }
+
+    /**
+     * ImageProcessor, service de traitement d'image, qui fournit les seuils du profil actuel.
+     */
+    private final ImageProcessor processor;
+    /**
+     * MotionSource, vitesse de rotation du drone.
+     */
+    private final MotionSource motion;
+
+    /**
+     * Double, netteté de référence des dernières images acceptées, 0 si aucune image n'a été acceptée.
+     */
+    private double baseline;
+    /**
+     * Int, nombre d'images écartées depuis la dernière image acceptée.
+     */
+    private int skipped;
+
+    /**
+     * Constructeur de la classe FrameQualityGate, créé l'objet et initialise ses données membres.
+     * @param processor ImageProcessor, service de traitement d'image.
+     * @param motion MotionSource, vitesse de rotation du drone.
+     */
+    public FrameQualityGate(ImageProcessor processor, MotionSource motion) {
+        this.processor = processor;
+        this.motion = motion;
+    }
+
+    /**
+     * Fonction qui indique si une image peut être utilisée par la détection.
+     * La rotation est vérifiée en premier puisqu'elle ne coûte rien. L'image en nuances de gris calculée pour la netteté est gardée
+     * dans le FrameContext et réutilisée par la détection.
+     * @param frame Frame, image à vérifier.
+     * @return Boolean, vrai si l'image doit être analysée.
+     */
+    public synchronized boolean accept(Frame frame) {
+        long start = System.nanoTime();
+        VisionProfile profile = processor.getProfile();
+        boolean usable;
+
+        if (motion.getAngularRate() > profile.getMaxAngularRate()) {
+            MOVING.increment();
+            usable = false;
+        }
+        else {
+            double sharpness = sharpness(frame.getContext());
+            usable = sharpness >= Math.max(profile.getMinSharpness(), baseline * profile.getRelativeSharpness());
+
+            if (usable)
+                baseline = baseline == 0 ? sharpness : baseline + BASELINE_SMOOTHING * (sharpness - baseline);
+            else {
+                BLURRED.increment();
+                baseline *= BASELINE_DECAY;
+            }
+        }
+
+        // Ne jamais bloquer la détection trop longtemps.
+        if (!usable && ++skipped > MAX_CONSECUTIVE_SKIPS) {
+            FORCED.increment();
+            usable = true;
+        }
+
+        if (usable) {
+            ACCEPTED.increment();
+            skipped = 0;
+        }
+
+        CHECK.recordSince(start);
+        return usable;
+    }
+
+    /**
+     * Méthode qui oublie la netteté de référence, au début d'un objectif ou lorsque la scène change complètement.
+     */
+    public synchronized void reset() {
+        baseline = 0;
+        skipped = 0;
+    }
+
+    /**
+     * Fonction qui mesure la netteté d'une image: la variance du laplacien de sa miniature en nuances de gris.
+     * @param context FrameContext, résultats intermédiaires de l'image.
+     * @return Double, netteté de l'image, plus grande pour une image nette.
+     */
+    public static double sharpness(FrameContext context) {
+        Mat laplacian = new Mat();
+        Imgproc.Laplacian(context.getThumbnail(SHARPNESS_WIDTH), laplacian, CvType.CV_16S);
+
+        MatOfDouble mean = new MatOfDouble();
+        MatOfDouble deviation = new MatOfDouble();
+        Core.meanStdDev(laplacian, mean, deviation);
+        laplacian.release();
+
+        double sigma = deviation.get(0, 0)[0];
+        return sigma * sigma;
+    }
+}
@@ -0,0 +1,562 @@
+package com.vais.mavicmissions.services.vision;
+
+import com.vais.mavicmissions.Enum.Color;
+import com.vais.mavicmissions.services.metrics.LatencyHistogram;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui permet d'effectuer des opérations de traitement d'image.
+ * Ne dépend que d'OpenCV, elle peut donc être utilisée en dehors de l'application, par exemple pour les benchmarks.
+ * Le temps d'exécution de chaque opération est mesuré dans Metrics. Les versions qui utilisent FrameContext partagent la mesure de
+ * leur opération, les résultats déjà calculés y paraissent donc presque instantanés.
+ * Les paramètres viennent d'un VisionProfile, qui peut être remplacé pendant une mission. Chaque opération lit le profil une seule fois.
+ */
+public class ImageProcessor {
+    /**
+     * ContourQuery, recherche du plus gros contour qui n'est pas le cadre de l'image.
+     */
+    private static final ContourQuery SIGN_QUERY = new ContourQuery().excludeFrame().top(1);
+
+    /**
+     * LatencyHistogram, temps d'exécution de la conversion en nuances de gris.
+     */
+    private static final LatencyHistogram TO_GRAYSCALE = Metrics.histogram("vision.toGrayscale");
+    /**
+     * LatencyHistogram, temps d'exécution du lissage.
+     */
+    private static final LatencyHistogram SMOOTH = Metrics.histogram("vision.smooth");
+    /**
+     * LatencyHistogram, temps d'exécution de l'érosion.
+     */
+    private static final LatencyHistogram ERODE = Metrics.histogram("vision.erode");
+    /**
+     * LatencyHistogram, temps d'exécution de la dilatation.
+     */
+    private static final LatencyHistogram DILATE = Metrics.histogram("vision.dilate");
+    /**
+     * LatencyHistogram, temps d'exécution de la préparation à la détection de contours.
+     */
+    private static final LatencyHistogram PREPARE_CONTOURS = Metrics.histogram("vision.prepareContourDetection");
+    /**
+     * LatencyHistogram, temps d'exécution de la préparation à la détection de coins.
+     */
+    private static final LatencyHistogram PREPARE_CORNERS = Metrics.histogram("vision.prepareCornerDetection");
+    /**
+     * LatencyHistogram, temps d'exécution de la détection de coins.
+     */
+    private static final LatencyHistogram DETECT_CORNERS = Metrics.histogram("vision.detectCorners");
+    /**
+     * LatencyHistogram, temps d'exécution de la détection de contours.
+     */
+    private static final LatencyHistogram CONTOURS_DETECTION = Metrics.histogram("vision.contoursDetection");
+    /**
+     * LatencyHistogram, temps d'exécution de la recherche de contours.
+     */
+    private static final LatencyHistogram FIND_CONTOURS = Metrics.histogram("vision.findContours");
+    /**
+     * LatencyHistogram, temps d'exécution du filtre de couleur.
+     */
+    private static final LatencyHistogram FILTER_COLOR = Metrics.histogram("vision.filterColor");
+    /**
+     * LatencyHistogram, temps d'exécution de la comparaison à un patron.
+     */
+    private static final LatencyHistogram MATCH_TEMPLATE = Metrics.histogram("vision.matchTemplate");
+    /**
+     * LatencyHistogram, temps d'exécution de la comparaison de contours.
+     */
+    private static final LatencyHistogram MATCH_SHAPE = Metrics.histogram("vision.matchShape");
+
+    /**
+     * AtomicReference<VisionProfile>, paramètres actuels du traitement d'image.
+     */
+    private final AtomicReference<VisionProfile> profile;
+
+    /**
+     * Contructeur de la classe ImageProcessor, créé l'objet et initialise ses données membres avec le profil par défaut.
+     */
+    public ImageProcessor() {
+        this(VisionProfile.defaults());
+    }
+
+    /**
+     * Contructeur de la classe ImageProcessor, créé l'objet et initialise ses données membres.
+     * @param profile VisionProfile, paramètres du traitement d'image.
+     */
+    public ImageProcessor(VisionProfile profile) {
+        this.profile = new AtomicReference<>(profile);
+    }
+
+    /**
+     * Fonction qui permet de transformer une matrice en nuances de gris.
+     * @param src Mat, mat à transformer.
+     * @return Mat, matrice résultante.
+     */
+    public Mat toGrayscale(Mat src) {
+        long start = System.nanoTime();
+        Mat result = new Mat();
+        Imgproc.cvtColor(src, result, Imgproc.COLOR_RGB2GRAY);
+
+        TO_GRAYSCALE.recordSince(start);
+        return result;
+    }
+
+    /**
+     * Fonction qui applique une convolution sur une matrice.
+     * @param src Mat, matrice à transformer.
+     * @param maskSize Int, dimensions du masque à appliquer.
+     * @return Mat, matrice résultante.
+     */
+    public Mat smooth(Mat src, int maskSize) {
+        long start = System.nanoTime();
+        Mat result = new Mat();
+        Imgproc.GaussianBlur(src, result, new Size(maskSize, maskSize), 0, 0);
+
+        SMOOTH.recordSince(start);
+        return result;
+    }
+
+    /**
+     * Fonction qui applique une érosion sur une matrice.
+     * @param src Mat, matrice à transformer.
+     * @param maskSize Int, dimension du masque à appliquer.
+     * @return Mat, matrice résultante.
+     */
+    public Mat erode(Mat src, int maskSize) {
+        long start = System.nanoTime();
+        Mat result = new Mat();
+        Morphology.erode(src, result, maskSize);
+
+        ERODE.recordSince(start);
+        return result;
+    }
+
+    /**
+     * Fonction qui applique une dilattion sur une matrice.
+     * @param src Mat, matrice à transformer.
+     * @param maskSize Int, dimensions du masque à appliquer.
+     * @return Mat, matrice résultante.
+     */
+    public Mat dilate(Mat src, int maskSize) {
+        long start = System.nanoTime();
+        Mat result = new Mat();
+        Morphology.dilate(src, result, maskSize);
+
+        DILATE.recordSince(start);
+        return result;
+    }
+
+    /**
+     * Fonction qui prépare une matrice pour effectuer une détection de contours.
+     * Source: https://www.tutorialspoint.com/opencv/opencv_canny_edge_detection.htm
+     * @param src Mat, matrice à transformer.
+     * @return Mat, matrice résultante.
+     */
+    public Mat prepareContourDetection(Mat src) {
+        long start = System.nanoTime();
+        VisionProfile current = profile.get();
+        int blur = current.getContourBlur();
+
+        // Préparer l'image, chaque étape réécrit la même matrice.
+        Mat result = new Mat();
+        Imgproc.cvtColor(src, result, Imgproc.COLOR_RGB2GRAY);
+        Imgproc.GaussianBlur(result, result, new Size(blur, blur), 0, 0);
+        Morphology.dilatedEdges(result, result, current.getCannyLow(), current.getCannyHigh(), current.getEdgeKernel());
+
+        PREPARE_CONTOURS.recordSince(start);
+        return result;
+    }
+
+    /**
+     * Fonction qui prépare une image pour effectuer une détection de contours, à partir de ses résultats intermédiaires.
+     * @param context FrameContext, résultats intermédiaires de l'image.
+     * @return Mat, matrice résultante, partagée par les étapes qui analysent l'image.
+     */
+    public Mat prepareContourDetection(FrameContext context) {
+        long start = System.nanoTime();
+        VisionProfile current = profile.get();
+        Mat result = context.getEdges(current.getContourBlur(), current.getCannyLow(), current.getCannyHigh(), current.getEdgeKernel());
+
+        PREPARE_CONTOURS.recordSince(start);
+        return result;
+    }
+
+    /**
+     * Fonction qui prépare une matrice pour effectuer une détection de coins.
+     * @param src Mat, matrice à transformer.
+     * @return Mat, matrice résultante.
+     */
+    public Mat prepareCornerDetection(Mat src) {
+        long start = System.nanoTime();
+        Mat result = toGrayscale(src);
+        result = smooth(result, profile.get().getCornerBlur());
+
+        PREPARE_CORNERS.recordSince(start);
+        return result;
+    }
+
+    /**
+     * Fonction qui prépare une image pour effectuer une détection de coins, à partir de ses résultats intermédiaires.
+     * @param context FrameContext, résultats intermédiaires de l'image.
+     * @return Mat, matrice résultante, partagée par les étapes qui analysent l'image.
+     */
+    public Mat prepareCornerDetection(FrameContext context) {
+        long start = System.nanoTime();
+        Mat result = context.getBlurredGray(profile.get().getCornerBlur());
+
+        PREPARE_CORNERS.recordSince(start);
+        return result;
+    }
+
+    /**
+     * Fonction qui effectue une détection de coins.
+     * @param src Mat, matrice à analyzer.
+     * @param maxCorner Int, nombre de coins maximum à trouver.
+     * @param minDistance Int, distance maximum entre les coins.
+     * @return MatOfPoint, matrice contenant les points trouvés.
+     */
+    public MatOfPoint detectCorners(Mat src, int maxCorner, int minDistance) {
+        // Détecter les coins.
+        long start = System.nanoTime();
+        MatOfPoint corners = new MatOfPoint();
+        Imgproc.goodFeaturesToTrack(src, corners, maxCorner, 0.01, minDistance);
+
+        DETECT_CORNERS.recordSince(start);
+        return corners;
+    }
+
+    /**
+     * Fonction qui effectue une détection de coins.
+     * @param src Mat, matrice à analyzer.
+     * @param maxCorner Int, nombre de coins maximum à trouver.
+     * @param quality Int, qualité minimum des coins.
+     * @param minDistance Int, distance maximum entre les coins.
+     * @return MatOfPoint, matrice contenant les points trouvés.
+     */
+    public MatOfPoint detectCorners(Mat src, int maxCorner, float quality, int minDistance) {
+        // Détecter les coins.
+        long start = System.nanoTime();
+        MatOfPoint corners = new MatOfPoint();
+        Imgproc.goodFeaturesToTrack(src, corners, maxCorner, quality, minDistance);
+
+        DETECT_CORNERS.recordSince(start);
+        return corners;
+    }
+
+    /**
+     * Fonction qui effectue une détection de contours.
+     * @param src Mat, matrice à analyzer.
+     * @return List<MatOfPoint>, liste des contours trouvés.
+     */
+    public List<MatOfPoint> contoursDetection(Mat src) {
+        // Trouver les contours.
+        long start = System.nanoTime();
+        List<MatOfPoint> contours = new ArrayList<>();
+        Mat hierarchy = new Mat();
+        Mat binary = new Mat();
+        int threshold = profile.get().getContoursThreshold();
+        Imgproc.threshold(src, binary, threshold, threshold, Imgproc.THRESH_BINARY_INV);
+        Imgproc.findContours(binary, contours, hierarchy, Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_NONE);
+
+        CONTOURS_DETECTION.recordSince(start);
+        return contours;
+    }
+
+    /**
+     * Fonction qui effectue une recherche de contours.
+     * Contrairement à contoursDetection, les objets sont les pixels au-dessus du threshold, les contours extérieurs suffisent donc à les délimiter.
+     * @param src Mat, matrice à analyzer. N'est pas modifiée.
+     * @param query ContourQuery, paramètres de la recherche.
+     * @return List<ContourMatch>, contours trouvés, du plus grand au plus petit.
+     */
+    public List<ContourMatch> findContours(Mat src, ContourQuery query) {
+        return findContours(src, query, Collections.singletonList(new Rect(0, 0, src.cols(), src.rows())));
+    }
+
+    /**
+     * Fonction qui effectue une recherche de contours dans certaines régions de la matrice seulement.
+     * Les régions doivent couvrir tous les objets recherchés: ce qui les dépasse est ignoré.
+     * @param src Mat, matrice à analyzer. N'est pas modifiée.
+     * @param query ContourQuery, paramètres de la recherche.
+     * @param regions List<Rect>, régions à analyser, qui ne se chevauchent pas.
+     * @return List<ContourMatch>, contours trouvés, dans les coordonnées de la matrice, du plus grand au plus petit.
+     */
+    public List<ContourMatch> findContours(Mat src, ContourQuery query, List<Rect> regions) {
+        long start = System.nanoTime();
+        int threshold = profile.get().getContoursThreshold();
+        Mat binary = new Mat(src.size(), src.type());
+
+        // Seules les régions analysées sont binarisées, le reste de la matrice n'est jamais lu.
+        for (Rect region : regions) {
+            Mat from = src.submat(region);
+            Mat to = binary.submat(region);
+            Imgproc.threshold(from, to, threshold, 255, Imgproc.THRESH_BINARY);
+            from.release();
+            to.release();
+        }
+
+        List<ContourMatch> result = query.find(binary, regions);
+        binary.release();
+
+        FIND_CONTOURS.recordSince(start);
+        return result;
+    }
+
+    /**
+     * Fonction qui trouve le contour d'une pancarte: le plus grand contour extérieur qui n'est pas le cadre de l'image.
+     * Les patrons et les images du flux vidéo passent par cette même recherche, leurs contours sont donc comparables.
+     * @param filtered Mat, matrice préparée par prepareContourDetection. N'est pas modifiée.
+     * @return MatOfPoint, contour de la pancarte, null si aucun contour n'a été trouvé.
+     */
+    public MatOfPoint findSignContour(Mat filtered) {
+        List<ContourMatch> contours = findContours(filtered, SIGN_QUERY);
+        return contours.isEmpty() ? null : contours.get(0).getContour();
+    }
+
+    /**
+     * Fonction qui trouve le contours le plus grand d'une liste.
+     * @param contours List<MatOfPoint>, liste de contours à analyzer.
+     * @return MatOfPoint, contour le plus grand.
+     */
+    public MatOfPoint getBiggerContour(Mat source, List<MatOfPoint> contours) {
+        MatOfPoint biggerContour = null;
+        double biggestArea = 0;
+        double area;
+        Rect bounds;
+
+        // Parcourir les contours et noter le plus grand.
+        for (MatOfPoint contour : contours) {
+            bounds = Imgproc.boundingRect(contour);
+            area = Imgproc.contourArea(contour);
+
+            if (area > biggestArea && (bounds.width < source.width() && bounds.height < source.height())) {
+                biggestArea  = area;
+                biggerContour = contour;
+            }
+        }
+
+        return biggerContour;
+    }
+
+    /**
+     * Fonction qui combine des contours en un seul, en ignorant le contour de la matrice au complet.
+     * Source: https://stackoverflow.com/questions/44501723/how-to-merge-contours-in-opencv
+     * @param source Mat, matrice d'où viennent les contours.
+     * @param contours List<MatOfPoint>, contours à combiner.
+     * @return MatOfPoint, contour combiné.
+     */
+    public MatOfPoint combineContours(Mat source, List<MatOfPoint> contours) {
+        IntPointBuffer finalPoints = new IntPointBuffer();
+        MatOfPoint finalContour = new MatOfPoint();
+        Rect bounds;
+
+        for (MatOfPoint c : contours) {
+            bounds = Imgproc.boundingRect(c);
+
+            // Si le contour n'est pas le contour de la matrice au complet.
+            if (bounds.width < source.width() && bounds.height < source.height())
+                finalPoints.append(c);
+        }
+
+        finalPoints.copyTo(finalContour);
+        return finalContour;
+    }
+
+    /**
+     * Fonction qui filtre une matrice selon une couleur.
+     * @param src Matrice à transformer.
+     * @param color Color, couleur à filtrer.
+     * @return Mat, masque résultant.
+     */
+    public Mat filterColor(Mat src, Color color) {
+        long start = System.nanoTime();
+        Mat colorMask = new Mat();
+        VisionProfile current = profile.get();
+
+        src = smooth(src, current.getColorBlur());
+
+        // Transformer en HSV.
+        Mat hsv = new Mat();
+        Imgproc.cvtColor(src, hsv, Imgproc.COLOR_RGB2HSV);
+
+        // Définir les limites de couleurs.
+        ColorProfile colors = current.getColors();
+
+        Core.inRange(hsv, colors.getLower(color), colors.getUpper(color), colorMask);
+
+        FILTER_COLOR.recordSince(start);
+        return colorMask;
+    }
+
+    /**
+     * Fonction qui filtre une image selon une couleur, à partir de ses résultats intermédiaires.
+     * La conversion en HSV est partagée entre les couleurs filtrées sur la même image.
+     * @param context FrameContext, résultats intermédiaires de l'image.
+     * @param color Color, couleur à filtrer.
+     * @return Mat, masque résultant, partagé par les étapes qui analysent l'image.
+     */
+    public Mat filterColor(FrameContext context, Color color) {
+        long start = System.nanoTime();
+        VisionProfile current = profile.get();
+        ColorProfile colors = current.getColors();
+        Mat result = context.getMask(current.getColorBlur(), colors.getLower(color), colors.getUpper(color));
+
+        FILTER_COLOR.recordSince(start);
+        return result;
+    }
+
+    /**
+     * Fonction qui retourne les paramètres actuels du traitement d'image.
+     * @return VisionProfile, profil actuel.
+     */
+    public VisionProfile getProfile() { return profile.get(); }
+
+    /**
+     * Fonction qui remplace les paramètres du traitement d'image. Les opérations déjà commencées terminent avec l'ancien profil.
+     * @param profile VisionProfile, nouveau profil, avec ses objets dérivés déjà construits.
+     * @return VisionProfile, profil remplacé.
+     */
+    public VisionProfile setProfile(VisionProfile profile) {
+        return this.profile.getAndSet(profile);
+    }
+
+    /**
+     * Fonction qui rétressit une matrice par rapport à un ROI.
+     * @param source Mat, matrice à transformer.
+     * @param contour MatOfPoint, contour à délimiter.
+     * @return Mat, matrice résultante.
+     */
+    public Mat cropToContour(Mat source, MatOfPoint contour) {
+        Rect bounds = Imgproc.boundingRect(contour);
+        return new Mat(source, bounds);
+    }
+
+    /**
+     * Fonction qui affiche des contours sur un fond noir.
+     * @param source Mat, matrice à transformer.
+     * @param contours List<MatOfPoint>, liste des contours à afficher.
+     * @return Mat, matrice résultante.
+     */
+    public Mat drawContour(Mat source, List<MatOfPoint> contours) {
+        // Remplir le fond de la matrice.
+        List<Point> points = new ArrayList<>();
+        points.add(new Point(0, 0));
+        points.add(new Point(source.width(), 0));
+        points.add(new Point(source.width(), source.height()));
+        points.add(new Point(0, source.height()));
+        MatOfPoint collection = new MatOfPoint();
+        collection.fromList(points);
+        List<MatOfPoint> pointMats = new ArrayList<>();
+        pointMats.add(collection);
+
+        Imgproc.fillPoly(source, pointMats, new Scalar(0, 0, 0, 255));
+        Random r = new Random();
+
+        for (int i = 0; i < contours.size(); i++)
+            Imgproc.drawContours(source, contours, i, new Scalar(r.nextInt(255), r.nextInt(255), r.nextInt(255), 255), 5);
+
+        return source;
+    }
+
+    /**
+     * Fonction qui affiche des contours sur un fond noir.
+     * @param source Mat, matrice à transformer.
+     * @param contour MatOfPoint, contour à afficher.
+     * @return Mat, matrice résultante.
+     */
+    public Mat drawContour(Mat source, MatOfPoint contour) {
+        // Remplir le fond de la matrice.
+        List<Point> points = new ArrayList<>();
+        points.add(new Point(0, 0));
+        points.add(new Point(source.width(), 0));
+        points.add(new Point(source.width(), source.height()));
+        points.add(new Point(0, source.height()));
+        MatOfPoint collection = new MatOfPoint();
+        collection.fromList(points);
+        List<MatOfPoint> pointMats = new ArrayList<>();
+        pointMats.add(collection);
+
+        Imgproc.fillPoly(source, pointMats, new Scalar(0, 0, 0, 255));
+        Random r = new Random();
+
+        List<MatOfPoint> contours = new ArrayList<>();
+        contours.add(contour);
+        for (int i = 0; i < contours.size(); i++)
+            Imgproc.drawContours(source, contours, i, new Scalar(r.nextInt(255), r.nextInt(255), r.nextInt(255), 255), 5);
+
+        return source;
+    }
+
+    /**
+     * Fonction qui trouve le contour d'un patron, avec la même recherche que les pancartes du flux vidéo.
+     * Les pixels transparents du patron sont d'abord rendus blancs: ils sont noirs dans un bitmap prémultiplié, et le contour extérieur
+     * serait sinon celui de la zone opaque, identique pour U et D, plutôt que celui du symbole.
+     * @param template Mat, image du patron (RGBA).
+     * @return MatOfPoint, contour du patron.
+     * @throws IllegalArgumentException si aucun contour n'est trouvé dans le patron.
+     */
+    public MatOfPoint getTemplateContour(Mat template) {
+        Mat opaque = template.clone();
+        Mat transparent = new Mat();
+        Core.extractChannel(template, transparent, 3);
+        Core.compare(transparent, new Scalar(0), transparent, Core.CMP_EQ);
+        opaque.setTo(new Scalar(255, 255, 255, 255), transparent);
+
+        Mat filteredTemplate = prepareContourDetection(opaque);
+        MatOfPoint contour = findSignContour(filteredTemplate);
+        opaque.release();
+        transparent.release();
+        filteredTemplate.release();
+
+        if (contour == null)
+            throw new IllegalArgumentException("Aucun contour dans le patron.");
+
+        return contour;
+    }
+
+    /**
+     * Fonction qui permet de comparer une matrice à un patron.
+     * Source: https://www.tabnine.com/code/java/methods/org.opencv.imgproc.Imgproc/matchTemplate
+     * @param gray Mat, matrice à analyzer, en nuances de gris.
+     * @param template Mat, patron, en nuances de gris.
+     * @return Double, valeur de comparaison maximum détectée.
+     */
+    public double matchTemplate(Mat gray, Mat template) {
+        long start = System.nanoTime();
+        Mat result = new Mat();
+        Imgproc.matchTemplate(gray, template, result, Imgproc.TM_CCORR);
+        Core.MinMaxLocResult locResult = Core.minMaxLoc(result);
+
+        MATCH_TEMPLATE.recordSince(start);
+        return locResult.maxVal;
+    }
+
+    /**
+     * Fonction qui permet de comparer des contours.
+     * @param srcContour MatOfPoint, contour à analyzer.
+     * @param templateContour MatOfPoint, contour du patron.
+     * @return Double, valeur de comparaison des formes.
+     */
+    public double matchShape(MatOfPoint srcContour, MatOfPoint templateContour) {
+        long start = System.nanoTime();
+        double similarity = Imgproc.matchShapes(templateContour, srcContour, Imgproc.TM_CCORR, 0);
+
+        MATCH_SHAPE.recordSince(start);
+        return similarity;
+    }
+}
@@ -0,0 +1,224 @@
+package com.vais.mavicmissions.services.vision;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui garde les points d'un contour dans un tableau d'entiers réutilisé.
+ * Les points sont lus directement de la mémoire de la matrice, sans créer d'objets Point,
+ * et les calculs géométriques n'allouent rien une fois le tableau assez grand.
+ * Une instance ne doit être utilisée que par un seul thread à la fois.
+ */
+public class IntPointBuffer {
+    /**
+     * Int, nombre de points que le tableau peut contenir à sa création.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Int[], coordonnées des points, x et y en alternance.
+     */
+    private int[] coords;
+    /**
+     * Int[], tableau de lecture utilisé lorsque des points sont ajoutés à la suite des autres.
+     */
+    private int[] scratch;
+    /**
+     * Int, nombre de points dans le tableau.
+     */
+    private int size;
+
+    /**
+     * Constructeur de la classe IntPointBuffer, créé l'objet et initialise ses données membres.
+     */
+    public IntPointBuffer() {
+        coords = new int[INITIAL_CAPACITY * 2];
+        scratch = new int[0];
+        size = 0;
+    }
+
+    /**
+     * Fonction qui remplace les points du tableau par ceux d'un contour.
+     * @param contour Mat, contour à lire (CV_32SC2, comme un MatOfPoint).
+     * @return IntPointBuffer, le tableau rempli.
+     */
+    public IntPointBuffer load(Mat contour) {
+        size = 0;
+        return append(contour);
+    }
+
+    /**
+     * Fonction qui ajoute les points d'un contour à la suite de ceux du tableau.
+     * @param contour Mat, contour à lire (CV_32SC2, comme un MatOfPoint).
+     * @return IntPointBuffer, le tableau rempli.
+     */
+    public IntPointBuffer append(Mat contour) {
+        int count = (int)contour.total();
+
+        if (count == 0)
+            return this;
+
+        ensureCapacity(size + count);
+
+        // Lire les points du contour directement dans le tableau.
+        if (size == 0)
+            contour.get(0, 0, coords);
+        else {
+            if (scratch.length < count * 2)
+                scratch = new int[count * 2];
+
+            contour.get(0, 0, scratch);
+            System.arraycopy(scratch, 0, coords, size * 2, count * 2);
+        }
+
+        size += count;
+        return this;
+    }
+
+    /**
+     * Méthode qui écrit les points du tableau dans une matrice.
+     * @param destination Mat, matrice qui reçoit les points (CV_32SC2, comme un MatOfPoint).
+     */
+    public void copyTo(Mat destination) {
+        destination.create(size, 1, CvType.CV_32SC2);
+
+        if (size > 0)
+            destination.put(0, 0, coords);
+    }
+
+    /**
+     * Méthode qui vide le tableau, sans libérer sa mémoire.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Fonction qui retourne le nombre de points dans le tableau.
+     * @return Int, nombre de points.
+     */
+    public int size() { return size; }
+
+    /**
+     * Fonction qui retourne la coordonnée x d'un point.
+     * @param index Int, index du point.
+     * @return Int, coordonnée x.
+     */
+    public int getX(int index) { return coords[index * 2]; }
+
+    /**
+     * Fonction qui retourne la coordonnée y d'un point.
+     * @param index Int, index du point.
+     * @return Int, coordonnée y.
+     */
+    public int getY(int index) { return coords[index * 2 + 1]; }
+
+    /**
+     * Fonction qui calcule la moyenne des coordonnées x des points.
+     * @return Double, x du point moyen, 0 si le tableau est vide.
+     */
+    public double averageX() {
+        return average(0);
+    }
+
+    /**
+     * Fonction qui calcule la moyenne des coordonnées y des points.
+     * @return Double, y du point moyen, 0 si le tableau est vide.
+     */
+    public double averageY() {
+        return average(1);
+    }
+
+    /**
+     * Fonction qui calcule la variance de la distance entre les points et un centre.
+     * Une variance faible indique que les points forment un cercle autour du centre.
+     * @param centerX Double, x du centre.
+     * @param centerY Double, y du centre.
+     * @return Double, variance du rayon, 0 si le tableau est vide.
+     */
+    public double radiusVariance(double centerX, double centerY) {
+        if (size == 0)
+            return 0;
+
+        // Accumuler la somme et la somme des carrés des rayons.
+        double sum = 0, sumOfSquares = 0;
+        for (int i = 0; i < size * 2; i += 2) {
+            double radius = distance(centerX, centerY, coords[i], coords[i + 1]);
+            sum += radius;
+            sumOfSquares += radius * radius;
+        }
+
+        double mean = sum / size;
+        return Math.max(0, sumOfSquares / size - mean * mean);
+    }
+
+    /**
+     * Méthode qui calcule le rectangle englobant les points.
+     * @param bounds Int[], reçoit x minimum, y minimum, x maximum et y maximum. Doit contenir au moins 4 éléments.
+     * @return Boolean, faux si le tableau est vide.
+     */
+    public boolean bounds(int[] bounds) {
+        if (size == 0)
+            return false;
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < size * 2; i += 2) {
+            minX = Math.min(minX, coords[i]);
+            maxX = Math.max(maxX, coords[i]);
+            minY = Math.min(minY, coords[i + 1]);
+            maxY = Math.max(maxY, coords[i + 1]);
+        }
+
+        bounds[0] = minX;
+        bounds[1] = minY;
+        bounds[2] = maxX;
+        bounds[3] = maxY;
+        return true;
+    }
+
+    /**
+     * Fonction qui trouve la distance entre deux points.
+     * @param x1 Double, x du premier point.
+     * @param y1 Double, y du premier point.
+     * @param x2 Double, x du deuxième point.
+     * @param y2 Double, y du deuxième point.
+     * @return Double, distance entre les deux points.
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Fonction qui calcule la moyenne d'une des coordonnées des points.
+     * @param offset Int, 0 pour x, 1 pour y.
+     * @return Double, moyenne de la coordonnée.
+     */
+    private double average(int offset) {
+        if (size == 0)
+            return 0;
+
+        long sum = 0;
+        for (int i = offset; i < size * 2; i += 2)
+            sum += coords[i];
+
+        return (double)sum / size;
+    }
+
+    /**
+     * Méthode qui agrandit le tableau s'il ne peut pas contenir un nombre de points.
+     * @param capacity Int, nombre de points à contenir.
+     */
+    private void ensureCapacity(int capacity) {
+        if (coords.length < capacity * 2) {
+            int[] larger = new int[Math.max(capacity * 2, coords.length * 2)];
+            System.arraycopy(coords, 0, larger, 0, size * 2);
+            coords = larger;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.vais.mavicmissions.services.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui compte les pixels allumés d'un masque par tuile carrée, pour limiter une recherche de contours aux zones qui en contiennent.
+ * Chaque bande de tuiles est additionnée par colonne avec Core.reduce, puis les colonnes sont regroupées en tuiles: le masque n'est
+ * parcouru qu'une fois et seules les sommes des colonnes sont copiées.
+ */
+public class MaskTiles {
+    /**
+     * Int, côté d'une tuile en pixels.
+     */
+    private final int tileSize;
+    /**
+     * Int, nombre de colonnes de tuiles.
+     */
+    private final int columns;
+    /**
+     * Int, nombre de rangées de tuiles.
+     */
+    private final int rows;
+    /**
+     * Int, largeur du masque en pixels.
+     */
+    private final int width;
+    /**
+     * Int, hauteur du masque en pixels.
+     */
+    private final int height;
+    /**
+     * Int[], nombre de pixels allumés de chaque tuile, rangée par rangée.
+     */
+    private final int[] counts;
+    /**
+     * Int, nombre de pixels allumés du masque.
+     */
+    private int total;
+
+    /**
+     * Constructeur de la classe MaskTiles, créé l'objet et compte les pixels de chaque tuile.
+     * @param mask Mat, masque binaire (CV_8UC1, pixels à 0 ou 255).
+     * @param tileSize Int, côté d'une tuile en pixels. Les tuiles de la dernière colonne et de la dernière rangée peuvent être plus petites.
+     */
+    public MaskTiles(Mat mask, int tileSize) {
+        this.tileSize = tileSize;
+        width = mask.cols();
+        height = mask.rows();
+        columns = (width + tileSize - 1) / tileSize;
+        rows = (height + tileSize - 1) / tileSize;
+        counts = new int[columns * rows];
+
+        Mat sums = new Mat();
+        int[] columnSums = new int[width];
+
+        for (int row = 0; row < rows; row++) {
+            // Additionner chaque colonne de la bande de tuiles.
+            Mat band = mask.submat(row * tileSize, Math.min(height, (row + 1) * tileSize), 0, width);
+            Core.reduce(band, sums, 0, Core.REDUCE_SUM, CvType.CV_32S);
+            sums.get(0, 0, columnSums);
+            band.release();
+
+            // Regrouper les colonnes par tuile, les pixels allumés valent 255.
+            for (int column = 0; column < columns; column++) {
+                int sum = 0;
+                for (int x = column * tileSize; x < Math.min(width, (column + 1) * tileSize); x++)
+                    sum += columnSums[x];
+
+                counts[row * columns + column] = sum / 255;
+            }
+        }
+
+        sums.release();
+
+        for (int count : counts)
+            total += count;
+    }
+
+    /**
+     * Fonction qui retourne le nombre de pixels allumés du masque.
+     * @return Int, nombre de pixels.
+     */
+    public int getTotal() { return total; }
+
+    /**
+     * Fonction qui retourne le nombre de pixels allumés d'une tuile.
+     * @param column Int, colonne de la tuile.
+     * @param row Int, rangée de la tuile.
+     * @return Int, nombre de pixels.
+     */
+    public int getCount(int column, int row) {
+        return counts[row * columns + column];
+    }
+
+    /**
+     * Fonction qui retourne les tuiles qui contiennent assez de pixels allumés pour faire partie d'une cible.
+     * @param minPixels Int, nombre minimum de pixels d'une tuile candidate.
+     * @return List<Rect>, tuiles candidates, en pixels.
+     */
+    public List<Rect> getCandidates(int minPixels) {
+        List<Rect> candidates = new ArrayList<>();
+
+        for (int row = 0; row < rows; row++)
+            for (int column = 0; column < columns; column++)
+                if (counts[row * columns + column] >= minPixels)
+                    candidates.add(toPixels(column, row, column, row));
+
+        return candidates;
+    }
+
+    /**
+     * Fonction qui regroupe les tuiles candidates voisines en régions à analyser.
+     * Chaque région est agrandie d'une tuile de chaque côté pour garder les bords d'une cible qui débordent dans des tuiles
+     * presque vides, et les régions qui se chevauchent sont fusionnées pour qu'aucun contour ne soit trouvé deux fois.
+     * @param minPixels Int, nombre minimum de pixels d'une tuile candidate.
+     * @return List<Rect>, régions à analyser, en pixels, vide si aucune tuile n'est candidate.
+     */
+    public List<Rect> getRegions(int minPixels) {
+        boolean[] visited = new boolean[counts.length];
+        int[] pending = new int[counts.length];
+        List<int[]> groups = new ArrayList<>();
+
+        for (int start = 0; start < counts.length; start++) {
+            if (visited[start] || counts[start] < minPixels)
+                continue;
+
+            // Parcourir les tuiles candidates qui se touchent, en diagonale aussi.
+            int[] group = { columns, rows, -1, -1 };
+            int size = 0;
+            pending[size++] = start;
+            visited[start] = true;
+
+            while (size > 0) {
+                int tile = pending[--size];
+                int column = tile % columns;
+                int row = tile / columns;
+                group[0] = Math.min(group[0], column);
+                group[1] = Math.min(group[1], row);
+                group[2] = Math.max(group[2], column);
+                group[3] = Math.max(group[3], row);
+
+                for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++)
+                    for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+                        int neighbour = r * columns + c;
+
+                        if (!visited[neighbour] && counts[neighbour] >= minPixels) {
+                            visited[neighbour] = true;
+                            pending[size++] = neighbour;
+                        }
+                    }
+            }
+
+            // Agrandir le groupe d'une tuile.
+            group[0] = Math.max(0, group[0] - 1);
+            group[1] = Math.max(0, group[1] - 1);
+            group[2] = Math.min(columns - 1, group[2] + 1);
+            group[3] = Math.min(rows - 1, group[3] + 1);
+            groups.add(group);
+        }
+
+        // Fusionner les groupes qui se chevauchent, jusqu'à ce qu'il n'y en ait plus.
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+
+            for (int i = 0; i < groups.size() && !merged; i++)
+                for (int j = i + 1; j < groups.size() && !merged; j++) {
+                    int[] a = groups.get(i);
+                    int[] b = groups.get(j);
+
+                    if (a[0] <= b[2] && b[0] <= a[2] && a[1] <= b[3] && b[1] <= a[3]) {
+                        a[0] = Math.min(a[0], b[0]);
+                        a[1] = Math.min(a[1], b[1]);
+                        a[2] = Math.max(a[2], b[2]);
+                        a[3] = Math.max(a[3], b[3]);
+                        groups.remove(j);
+                        merged = true;
+                    }
+                }
+        }
+
+        List<Rect> regions = new ArrayList<>();
+        for (int[] group : groups)
+            regions.add(toPixels(group[0], group[1], group[2], group[3]));
+
+        return regions;
+    }
+
+    /**
+     * Fonction qui convertit un rectangle de tuiles en rectangle de pixels, limité au masque.
+     * @param firstColumn Int, première colonne.
+     * @param firstRow Int, première rangée.
+     * @param lastColumn Int, dernière colonne, incluse.
+     * @param lastRow Int, dernière rangée, incluse.
+     * @return Rect, rectangle en pixels.
+     */
+    private Rect toPixels(int firstColumn, int firstRow, int lastColumn, int lastRow) {
+        int x = firstColumn * tileSize;
+        int y = firstRow * tileSize;
+        return new Rect(x, y, Math.min(width, (lastColumn + 1) * tileSize) - x, Math.min(height, (lastRow + 1) * tileSize) - y);
+    }
+}
@@ -0,0 +1,108 @@
+package com.vais.mavicmissions.services.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui regroupe les opérations morphologiques du traitement d'image.
+ * Les masques sont construits une seule fois par forme et par dimensions, puis partagés par tous les threads.
+ * Chaque opération écrit dans une matrice fournie par l'appelant, qui peut être la matrice source: une chaîne d'opérations
+ * n'alloue donc aucune matrice intermédiaire.
+ */
+public class Morphology {
+    /**
+     * ConcurrentHashMap<Long, Mat>, masques déjà construits selon leur forme et leurs dimensions.
+     */
+    private static final ConcurrentHashMap<Long, Mat> KERNELS = new ConcurrentHashMap<>();
+
+    /**
+     * Fonction qui retourne un masque morphologique, construit au premier besoin.
+     * @param shape Int, forme du masque (Imgproc.MORPH_RECT, MORPH_ELLIPSE ou MORPH_CROSS).
+     * @param size Int, dimensions du masque.
+     * @return Mat, masque partagé, ne doit pas être modifié.
+     */
+    public static Mat kernel(int shape, int size) {
+        Long key = ((long)shape << 32) | size;
+        Mat kernel = KERNELS.get(key);
+
+        if (kernel == null) {
+            kernel = Imgproc.getStructuringElement(shape, new Size(size, size));
+            Mat existing = KERNELS.putIfAbsent(key, kernel);
+
+            // Un autre thread a construit le même masque en premier.
+            if (existing != null) {
+                kernel.release();
+                kernel = existing;
+            }
+        }
+
+        return kernel;
+    }
+
+    /**
+     * Fonction qui retourne un masque rectangulaire, la forme utilisée par le traitement d'image.
+     * @param size Int, dimensions du masque.
+     * @return Mat, masque partagé, ne doit pas être modifié.
+     */
+    public static Mat rect(int size) {
+        return kernel(Imgproc.MORPH_RECT, size);
+    }
+
+    /**
+     * Méthode qui applique une érosion.
+     * @param src Mat, matrice à transformer.
+     * @param dst Mat, matrice résultante, peut être src.
+     * @param size Int, dimensions du masque rectangulaire.
+     */
+    public static void erode(Mat src, Mat dst, int size) {
+        Imgproc.erode(src, dst, rect(size));
+    }
+
+    /**
+     * Méthode qui applique une dilatation.
+     * @param src Mat, matrice à transformer.
+     * @param dst Mat, matrice résultante, peut être src.
+     * @param size Int, dimensions du masque rectangulaire.
+     */
+    public static void dilate(Mat src, Mat dst, int size) {
+        Imgproc.dilate(src, dst, rect(size));
+    }
+
+    /**
+     * Méthode qui applique une ouverture (érosion puis dilatation), qui retire les petits objets d'un masque.
+     * @param src Mat, matrice à transformer.
+     * @param dst Mat, matrice résultante, peut être src.
+     * @param size Int, dimensions du masque rectangulaire.
+     */
+    public static void open(Mat src, Mat dst, int size) {
+        Imgproc.morphologyEx(src, dst, Imgproc.MORPH_OPEN, rect(size));
+    }
+
+    /**
+     * Méthode qui applique une fermeture (dilatation puis érosion), qui bouche les petits trous d'un masque.
+     * @param src Mat, matrice à transformer.
+     * @param dst Mat, matrice résultante, peut être src.
+     * @param size Int, dimensions du masque rectangulaire.
+     */
+    public static void close(Mat src, Mat dst, int size) {
+        Imgproc.morphologyEx(src, dst, Imgproc.MORPH_CLOSE, rect(size));
+    }
+
+    /**
+     * Méthode qui détecte les arrêtes d'une image en nuances de gris et les dilate, dans la même matrice.
+     * @param gray Mat, image en nuances de gris, lissée.
+     * @param dst Mat, matrice résultante, peut être gray.
+     * @param lowThreshold Int, threshold bas de Canny.
+     * @param highThreshold Int, threshold haut de Canny.
+     * @param kernel Mat, masque de dilatation.
+     */
+    public static void dilatedEdges(Mat gray, Mat dst, int lowThreshold, int highThreshold, Mat kernel) {
+        Imgproc.Canny(gray, dst, lowThreshold, highThreshold);
+        Imgproc.dilate(dst, dst, kernel);
+    }
+}
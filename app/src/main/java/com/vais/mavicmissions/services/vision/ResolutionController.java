@@ -0,0 +1,143 @@
+package com.vais.mavicmissions.services.vision;
+
+import com.vais.mavicmissions.services.metrics.Counter;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import com.vais.mavicmissions.services.metrics.Tracer;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui choisit la résolution de traitement des images selon le temps réel de traitement.
+ * La résolution est un niveau de pyramide: chaque niveau divise la largeur et la hauteur par deux, donc le coût du traitement par environ quatre.
+ * Le temps moyen des images est comparé au budget. Le niveau monte lorsque le budget est dépassé et redescend lorsque la résolution
+ * supérieure tiendrait dans le budget avec une marge, ce qui évite d'osciller entre deux niveaux.
+ */
+public class ResolutionController {
+    /**
+     * Int, niveau de pyramide maximum, soit le quart de la résolution affichée.
+     */
+    public static final int MAX_LEVEL = 2;
+
+    /**
+     * Double, poids de la dernière image dans la moyenne mobile du temps de traitement.
+     */
+    private static final double SMOOTHING = 0.3;
+    /**
+     * Double, facteur de coût estimé entre deux niveaux de pyramide.
+     */
+    private static final double LEVEL_COST = 4;
+    /**
+     * Double, fraction du budget que la résolution supérieure doit respecter pour y revenir.
+     */
+    private static final double UPSCALE_MARGIN = 0.8;
+    /**
+     * Int, nombre d'images mesurées après un changement de niveau avant d'en permettre un autre.
+     */
+    private static final int SETTLE_FRAMES = 4;
+
+    /**
+     * Counter, nombre de baisses de résolution.
+     */
+    private static final Counter DOWNSCALES = Metrics.counter("resolution.down");
+    /**
+     * Counter, nombre de hausses de résolution.
+     */
+    private static final Counter UPSCALES = Metrics.counter("resolution.up");
+
+    /**
+     * Long, temps de traitement visé par image en ns.
+     */
+    private final long budget;
+    /**
+     * Int, niveau de pyramide maximum de l'objectif en cours.
+     */
+    private int maxLevel;
+
+    /**
+     * Int, niveau de pyramide actuel, 0 pour la pleine résolution.
+     */
+    private volatile int level;
+    /**
+     * Double, moyenne mobile du temps de traitement en ns au niveau actuel, 0 si aucune image n'a été mesurée.
+     */
+    private double average;
+    /**
+     * Int, nombre d'images mesurées depuis le dernier changement de niveau.
+     */
+    private int measured;
+
+    /**
+     * Constructeur de la classe ResolutionController, créé l'objet et initialise ses données membres.
+     * La pleine résolution est utilisée jusqu'à ce que le budget soit dépassé.
+     * @param budget Long, temps de traitement visé par image en ms.
+     */
+    public ResolutionController(long budget) {
+        this.budget = budget * 1000000;
+        maxLevel = MAX_LEVEL;
+    }
+
+    /**
+     * Méthode qui note le temps de traitement d'une image, puis ajuste le niveau si nécessaire.
+     * Le temps des images traitées à un autre niveau que le niveau actuel est ignoré.
+     * @param frameLevel Int, niveau de pyramide auquel l'image a été traitée.
+     * @param frameTime Long, temps de traitement de l'image en ns, de la capture jusqu'à la fin de la détection.
+     */
+    public synchronized void record(int frameLevel, long frameTime) {
+        if (frameLevel != level)
+            return;
+
+        average = measured == 0 ? frameTime : average + SMOOTHING * (frameTime - average);
+        if (++measured < SETTLE_FRAMES)
+            return;
+
+        // Baisser la résolution si le budget est dépassé.
+        if (average > budget && level < maxLevel) {
+            DOWNSCALES.increment();
+            setLevel(level + 1);
+        }
+        // Monter la résolution si elle respecte le budget avec une marge.
+        else if (average * LEVEL_COST < budget * UPSCALE_MARGIN && level > 0) {
+            UPSCALES.increment();
+            setLevel(level - 1);
+        }
+    }
+
+    /**
+     * Méthode qui change le niveau et recommence la mesure.
+     * @param level Int, nouveau niveau de pyramide.
+     */
+    private void setLevel(int level) {
+        this.level = level;
+        average = 0;
+        measured = 0;
+        Tracer.instant(Tracer.VISION, "resolution.niveau" + level);
+    }
+
+    /**
+     * Méthode qui revient à la pleine résolution au début d'un objectif.
+     * @param maxLevel Int, niveau de pyramide maximum de l'objectif, au plus MAX_LEVEL.
+     */
+    public synchronized void reset(int maxLevel) {
+        this.maxLevel = Math.min(maxLevel, MAX_LEVEL);
+
+        if (level != 0)
+            setLevel(0);
+        else {
+            average = 0;
+            measured = 0;
+        }
+    }
+
+    /**
+     * Fonction qui retourne le niveau de pyramide à utiliser pour la prochaine image.
+     * @return Int, niveau de pyramide, 0 pour la pleine résolution.
+     */
+    public int getLevel() { return level; }
+
+    /**
+     * Fonction qui retourne le temps de traitement visé par image.
+     * @return Double, budget en ms.
+     */
+    public double getBudget() { return budget / 1e6; }
+}
@@ -0,0 +1,54 @@
+package com.vais.mavicmissions.services.vision;
+
+import org.opencv.core.MatOfPoint;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui regroupe les contours des patrons des pancartes U, D et H.
+ */
+public class SignTemplates {
+    /**
+     * MatOfPoint, contour du patron de la pancarte D.
+     */
+    private final MatOfPoint d;
+    /**
+     * MatOfPoint, contour du patron de la pancarte U.
+     */
+    private final MatOfPoint u;
+    /**
+     * MatOfPoint, contour du patron de la pancarte H.
+     */
+    private final MatOfPoint h;
+
+    /**
+     * Constructeur de la classe SignTemplates, créé l'objet et initialise ses données membres.
+     * @param d MatOfPoint, contour du patron de la pancarte D.
+     * @param u MatOfPoint, contour du patron de la pancarte U.
+     * @param h MatOfPoint, contour du patron de la pancarte H.
+     */
+    public SignTemplates(MatOfPoint d, MatOfPoint u, MatOfPoint h) {
+        this.d = d;
+        this.u = u;
+        this.h = h;
+    }
+
+    /**
+     * Fonction qui retourne le contour du patron de la pancarte D.
+     * @return MatOfPoint, contour du patron.
+     */
+    public MatOfPoint getD() { return d; }
+
+    /**
+     * Fonction qui retourne le contour du patron de la pancarte U.
+     * @return MatOfPoint, contour du patron.
+     */
+    public MatOfPoint getU() { return u; }
+
+    /**
+     * Fonction qui retourne le contour du patron de la pancarte H.
+     * @return MatOfPoint, contour du patron.
+     */
+    public MatOfPoint getH() { return h; }
+}
@@ -0,0 +1,386 @@
+package com.vais.mavicmissions.services.vision;
+
+import org.opencv.core.Mat;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui regroupe les paramètres du traitement d'image: tailles des masques, thresholds, limites des couleurs et tolérances de la détection.
+ * Un profil est immuable. ImageProcessor le remplace d'un seul coup, une détection en cours garde donc des paramètres cohérents.
+ * Les objets dérivés des paramètres (masque de dilatation, patrons des pancartes) sont construits par VisionHelper
+ * avant de remplacer le profil, en dehors du traitement des images. Les paramètres absents du fichier gardent leur valeur par défaut.
+ */
+public class VisionProfile {
+    /**
+     * String, nom du fichier du profil dans le dossier de l'application.
+     */
+    public static final String FILE_NAME = "vision-profile.properties";
+
+    /**
+     * Int, dimensions du masque de lissage avant la détection des arrêtes.
+     */
+    private final int contourBlur;
+    /**
+     * Int, threshold bas de Canny.
+     */
+    private final int cannyLow;
+    /**
+     * Int, threshold haut de Canny.
+     */
+    private final int cannyHigh;
+    /**
+     * Int, dimensions du masque de dilatation des arrêtes.
+     */
+    private final int edgeDilate;
+    /**
+     * Int, theshold de la détection de contours.
+     */
+    private final int contoursThreshold;
+    /**
+     * Int, dimensions du masque de lissage avant la détection de coins.
+     */
+    private final int cornerBlur;
+    /**
+     * Int, dimensions du masque de lissage avant le filtre de couleur.
+     */
+    private final int colorBlur;
+    /**
+     * Double, limite maximum pour la comparaison de contours des pancartes.
+     */
+    private final double matchShapeThreshold;
+    /**
+     * Int, nombre de points minimum du contour de la balle.
+     */
+    private final int ballDetectionThreshold;
+    /**
+     * Int, distance minimum des coins lors de la détection de la direction de la ligne.
+     */
+    private final int directionDistance;
+    /**
+     * Int, distance minimum des coins lors de l'alignement du drone sur la ligne.
+     */
+    private final int alignementDistance;
+    /**
+     * Double, netteté minimum d'une image analysée, quelle que soit la scène.
+     */
+    private final double minSharpness;
+    /**
+     * Double, fraction de la netteté des dernières images acceptées qu'une image doit atteindre pour être analysée.
+     */
+    private final double relativeSharpness;
+    /**
+     * Double, vitesse de rotation maximum du drone en degrés par seconde pour qu'une image soit analysée.
+     */
+    private final double maxAngularRate;
+    /**
+     * Double, différence maximum en niveaux de gris d'un pixel de la miniature pour que la scène soit considérée inchangée.
+     */
+    private final double changeThreshold;
+    /**
+     * Boolean, indique si le flux vidéo brut est enregistré avec le vol, pour rejouer le vol sur un ordinateur.
+     */
+    private final boolean recordVideo;
+    /**
+     * ColorProfile, limites HSV des couleurs filtrées.
+     */
+    private final ColorProfile colors;
+
+    /**
+     * SignTemplates, contours des patrons des pancartes obtenus avec ce profil, null s'ils n'ont pas été construits.
+     */
+    private final SignTemplates templates;
+
+    /**
+     * Constructeur de la classe VisionProfile, créé l'objet et initialise ses données membres.
+     * @param properties Properties, paramètres du profil.
+     * @param colors ColorProfile, limites HSV des couleurs filtrées.
+     * @param templates SignTemplates, contours des patrons des pancartes, null s'ils n'ont pas été construits.
+     * @throws IllegalArgumentException si un paramètre n'est pas un nombre valide.
+     */
+    private VisionProfile(Properties properties, ColorProfile colors, SignTemplates templates) {
+        contourBlur = odd(properties, "contour.blur", 25);
+        cannyLow = integer(properties, "contour.cannyLow", 60);
+        cannyHigh = integer(properties, "contour.cannyHigh", 60 * 3);
+        edgeDilate = integer(properties, "contour.dilate", 5);
+        contoursThreshold = integer(properties, "contour.threshold", 150);
+        cornerBlur = odd(properties, "corner.blur", 15);
+        colorBlur = odd(properties, "color.blur", 3);
+        matchShapeThreshold = decimal(properties, "sign.matchShapeThreshold", 1.3);
+        ballDetectionThreshold = integer(properties, "ball.minimumPoints", 55);
+        directionDistance = integer(properties, "line.directionDistance", 25);
+        alignementDistance = integer(properties, "line.alignementDistance", 175);
+        minSharpness = decimal(properties, "quality.minSharpness", 20);
+        relativeSharpness = decimal(properties, "quality.relativeSharpness", 0.5);
+        maxAngularRate = decimal(properties, "quality.maxAngularRate", 40);
+        changeThreshold = decimal(properties, "change.threshold", 12);
+        recordVideo = bool(properties, "recorder.video", false);
+        this.colors = colors;
+        this.templates = templates;
+    }
+
+    /**
+     * Fonction qui retourne le profil par défaut, celui avec lequel l'application a été calibrée à l'origine.
+     * @return VisionProfile, profil par défaut.
+     */
+    public static VisionProfile defaults() {
+        return new VisionProfile(new Properties(), ColorProfile.defaults(), null);
+    }
+
+    /**
+     * Fonction qui lit un profil.
+     * @param in InputStream, fichier du profil.
+     * @return VisionProfile, profil lu.
+     * @throws IOException si le fichier ne peut pas être lu ou qu'un paramètre est invalide.
+     */
+    public static VisionProfile load(InputStream in) throws IOException {
+        Properties properties = new Properties();
+        properties.load(in);
+
+        try {
+            return new VisionProfile(properties, ColorProfile.load(properties), null);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Méthode qui écrit tous les paramètres du profil, y compris ceux qui ont leur valeur par défaut.
+     * @param out OutputStream, fichier du profil.
+     * @param comment String, commentaire écrit au début du fichier.
+     * @throws IOException si le fichier ne peut pas être écrit.
+     */
+    public void store(OutputStream out, String comment) throws IOException {
+        Properties properties = toProperties();
+        colors.store(properties);
+        properties.store(out, comment);
+    }
+
+    /**
+     * Fonction qui retourne un profil identique, sauf pour les limites des couleurs.
+     * @param colors ColorProfile, nouvelles limites des couleurs.
+     * @return VisionProfile, nouveau profil. Les patrons des pancartes ne dépendent pas des couleurs et sont gardés.
+     */
+    public VisionProfile withColors(ColorProfile colors) {
+        return new VisionProfile(toProperties(), colors, templates);
+    }
+
+    /**
+     * Fonction qui retourne un profil identique, avec les patrons des pancartes obtenus avec ses paramètres.
+     * @param templates SignTemplates, contours des patrons des pancartes.
+     * @return VisionProfile, nouveau profil.
+     */
+    public VisionProfile withTemplates(SignTemplates templates) {
+        return new VisionProfile(toProperties(), colors, templates);
+    }
+
+    /**
+     * Fonction qui retourne les paramètres numériques du profil.
+     * @return Properties, paramètres sous forme de texte.
+     */
+    private Properties toProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("contour.blur", String.valueOf(contourBlur));
+        properties.setProperty("contour.cannyLow", String.valueOf(cannyLow));
+        properties.setProperty("contour.cannyHigh", String.valueOf(cannyHigh));
+        properties.setProperty("contour.dilate", String.valueOf(edgeDilate));
+        properties.setProperty("contour.threshold", String.valueOf(contoursThreshold));
+        properties.setProperty("corner.blur", String.valueOf(cornerBlur));
+        properties.setProperty("color.blur", String.valueOf(colorBlur));
+        properties.setProperty("sign.matchShapeThreshold", String.valueOf(matchShapeThreshold));
+        properties.setProperty("ball.minimumPoints", String.valueOf(ballDetectionThreshold));
+        properties.setProperty("line.directionDistance", String.valueOf(directionDistance));
+        properties.setProperty("line.alignementDistance", String.valueOf(alignementDistance));
+        properties.setProperty("quality.minSharpness", String.valueOf(minSharpness));
+        properties.setProperty("quality.relativeSharpness", String.valueOf(relativeSharpness));
+        properties.setProperty("quality.maxAngularRate", String.valueOf(maxAngularRate));
+        properties.setProperty("change.threshold", String.valueOf(changeThreshold));
+        properties.setProperty("recorder.video", String.valueOf(recordVideo));
+        return properties;
+    }
+
+    /**
+     * Fonction qui lit un paramètre entier.
+     * @param properties Properties, paramètres du profil.
+     * @param key String, nom du paramètre.
+     * @param defaultValue Int, valeur si le paramètre est absent.
+     * @return Int, valeur du paramètre.
+     */
+    private static int integer(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+
+        try {
+            return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Paramètre invalide: " + key + "=" + value);
+        }
+    }
+
+    /**
+     * Fonction qui lit la taille d'un masque de lissage, qui doit être impaire pour GaussianBlur.
+     * @param properties Properties, paramètres du profil.
+     * @param key String, nom du paramètre.
+     * @param defaultValue Int, valeur si le paramètre est absent.
+     * @return Int, taille du masque.
+     */
+    private static int odd(Properties properties, String key, int defaultValue) {
+        int value = integer(properties, key, defaultValue);
+
+        if (value <= 0 || value % 2 == 0)
+            throw new IllegalArgumentException("Le masque " + key + " doit être impair: " + value);
+
+        return value;
+    }
+
+    /**
+     * Fonction qui lit un paramètre décimal.
+     * @param properties Properties, paramètres du profil.
+     * @param key String, nom du paramètre.
+     * @param defaultValue Double, valeur si le paramètre est absent.
+     * @return Double, valeur du paramètre.
+     */
+    private static double decimal(Properties properties, String key, double defaultValue) {
+        String value = properties.getProperty(key);
+
+        try {
+            return value != null ? Double.parseDouble(value.trim()) : defaultValue;
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Paramètre invalide: " + key + "=" + value);
+        }
+    }
+
+    /**
+     * Fonction qui lit un paramètre booléen.
+     * @param properties Properties, paramètres du profil.
+     * @param key String, nom du paramètre.
+     * @param defaultValue Boolean, valeur si le paramètre est absent.
+     * @return Boolean, valeur du paramètre.
+     */
+    private static boolean bool(Properties properties, String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+
+        if (value == null)
+            return defaultValue;
+        else if (value.trim().equalsIgnoreCase("true"))
+            return true;
+        else if (value.trim().equalsIgnoreCase("false"))
+            return false;
+
+        throw new IllegalArgumentException("Paramètre invalide: " + key + "=" + value);
+    }
+
+    /**
+     * Fonction qui retourne les dimensions du masque de lissage avant la détection des arrêtes.
+     * @return Int, dimensions du masque.
+     */
+    public int getContourBlur() { return contourBlur; }
+
+    /**
+     * Fonction qui retourne le threshold bas de Canny.
+     * @return Int, threshold bas.
+     */
+    public int getCannyLow() { return cannyLow; }
+
+    /**
+     * Fonction qui retourne le threshold haut de Canny.
+     * @return Int, threshold haut.
+     */
+    public int getCannyHigh() { return cannyHigh; }
+
+    /**
+     * Fonction qui retourne le masque de dilatation des arrêtes.
+     * @return Mat, masque de dilatation, partagé par Morphology et ne doit pas être modifié.
+     */
+    public Mat getEdgeKernel() { return Morphology.rect(edgeDilate); }
+
+    /**
+     * Fonction qui retourne le threshold de la détection de contours.
+     * @return Int, threshold.
+     */
+    public int getContoursThreshold() { return contoursThreshold; }
+
+    /**
+     * Fonction qui retourne les dimensions du masque de lissage avant la détection de coins.
+     * @return Int, dimensions du masque.
+     */
+    public int getCornerBlur() { return cornerBlur; }
+
+    /**
+     * Fonction qui retourne les dimensions du masque de lissage avant le filtre de couleur.
+     * @return Int, dimensions du masque.
+     */
+    public int getColorBlur() { return colorBlur; }
+
+    /**
+     * Fonction qui retourne la limite maximum pour la comparaison de contours des pancartes.
+     * @return Double, limite de la comparaison.
+     */
+    public double getMatchShapeThreshold() { return matchShapeThreshold; }
+
+    /**
+     * Fonction qui retourne le nombre de points minimum du contour de la balle.
+     * @return Int, nombre de points.
+     */
+    public int getBallDetectionThreshold() { return ballDetectionThreshold; }
+
+    /**
+     * Fonction qui retourne la distance minimum des coins lors de la détection de la direction de la ligne.
+     * @return Int, distance en pixels.
+     */
+    public int getDirectionDistance() { return directionDistance; }
+
+    /**
+     * Fonction qui retourne la distance minimum des coins lors de l'alignement du drone sur la ligne.
+     * @return Int, distance en pixels.
+     */
+    public int getAlignementDistance() { return alignementDistance; }
+
+    /**
+     * Fonction qui retourne la netteté minimum d'une image analysée.
+     * @return Double, variance du laplacien minimum.
+     */
+    public double getMinSharpness() { return minSharpness; }
+
+    /**
+     * Fonction qui retourne la fraction de la netteté des dernières images acceptées qu'une image doit atteindre.
+     * @return Double, fraction entre 0 et 1.
+     */
+    public double getRelativeSharpness() { return relativeSharpness; }
+
+    /**
+     * Fonction qui retourne la vitesse de rotation maximum du drone pour qu'une image soit analysée.
+     * @return Double, vitesse en degrés par seconde.
+     */
+    public double getMaxAngularRate() { return maxAngularRate; }
+
+    /**
+     * Fonction qui retourne la différence maximum d'un pixel de la miniature pour que la scène soit considérée inchangée.
+     * @return Double, différence en niveaux de gris, 0 pour toujours analyser les images.
+     */
+    public double getChangeThreshold() { return changeThreshold; }
+
+    /**
+     * Fonction qui indique si le flux vidéo brut est enregistré avec le vol. Désactivé par défaut, les fichiers ne sont jamais supprimés.
+     * @return Boolean, vrai si le flux vidéo est enregistré.
+     */
+    public boolean isRecordVideo() { return recordVideo; }
+
+    /**
+     * Fonction qui retourne les limites HSV des couleurs filtrées.
+     * @return ColorProfile, limites des couleurs.
+     */
+    public ColorProfile getColors() { return colors; }
+
+    /**
+     * Fonction qui retourne les contours des patrons des pancartes obtenus avec ce profil.
+     * @return SignTemplates, contours des patrons, null s'ils n'ont pas été construits.
+     */
+    public SignTemplates getTemplates() { return templates; }
+}
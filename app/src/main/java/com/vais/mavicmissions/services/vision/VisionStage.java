@@ -0,0 +1,172 @@
+package com.vais.mavicmissions.services.vision;
+
+import com.vais.mavicmissions.services.metrics.LatencyHistogram;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import com.vais.mavicmissions.services.metrics.Tracer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableTransformer;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.Function;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui représente une étape du pipeline de traitement d'image.
+ * Chaque étape s'exécute sur son propre thread et reçoit ses éléments par une file bornée à un seul producteur et un seul consommateur.
+ */
+public class VisionStage {
+    /**
+     * String, nom de l'étape.
+     */
+    private final String name;
+    /**
+     * Scheduler, thread sur lequel l'étape s'exécute.
+     */
+    private final Scheduler scheduler;
+    /**
+     * Int, nombre maximum d'éléments en attente dans la file de l'étape.
+     */
+    private final int queueCapacity;
+
+    /**
+     * AtomicInteger, nombre d'éléments actuellement en attente dans la file de l'étape.
+     */
+    private final AtomicInteger queueDepth;
+    /**
+     * AtomicLong, nombre d'éléments traités par l'étape.
+     */
+    private final AtomicLong processedCount;
+    /**
+     * AtomicLong, temps de service total en ns de l'étape.
+     */
+    private final AtomicLong totalServiceTime;
+    /**
+     * Long, temps de service en ns du dernier élément traité.
+     */
+    private volatile long lastServiceTime;
+    /**
+     * LatencyHistogram, distribution des temps de service de l'étape.
+     */
+    private final LatencyHistogram serviceTimes;
+
+    /**
+     * Constructeur de la classe VisionStage, créé l'objet et initialise ses données membres.
+     * @param name String, nom de l'étape.
+     * @param scheduler Scheduler, thread sur lequel l'étape s'exécute. Doit être à un seul thread.
+     * @param queueCapacity Int, nombre maximum d'éléments en attente dans la file de l'étape.
+     */
+    public VisionStage(String name, Scheduler scheduler, int queueCapacity) {
+        this.name = name;
+        this.scheduler = scheduler;
+        this.queueCapacity = queueCapacity;
+
+        queueDepth = new AtomicInteger();
+        processedCount = new AtomicLong();
+        totalServiceTime = new AtomicLong();
+        serviceTimes = Metrics.histogram("stage." + name);
+    }
+
+    /**
+     * Fonction qui créé l'opérateur qui exécute une étape de traitement sur le thread de l'étape.
+     * La file est bornée, un producteur plus rapide que l'étape est donc ralenti par la contre-pression.
+     * @param step Function, traitement à appliquer à chaque élément.
+     * @return FlowableTransformer, opérateur de l'étape.
+     */
+    public <T, R> FlowableTransformer<T, R> apply(Function<? super T, ? extends R> step) {
+        return upstream -> Flowable.defer(() -> {
+            // Éléments en attente pour cet abonnement, retirés de la profondeur de la file lors de l'annulation.
+            AtomicInteger pending = new AtomicInteger();
+
+            return upstream
+                    .doOnNext(item -> {
+                        pending.incrementAndGet();
+                        queueDepth.incrementAndGet();
+                    })
+                    .observeOn(scheduler, false, queueCapacity)
+                    .map(item -> {
+                        pending.decrementAndGet();
+                        queueDepth.decrementAndGet();
+
+                        // Mesurer le temps de service.
+                        long start = System.nanoTime();
+                        R result = step.apply(item);
+                        record(System.nanoTime() - start);
+                        Tracer.complete(Tracer.VISION, name, start);
+
+                        return result;
+                    })
+                    .doFinally(() -> queueDepth.addAndGet(-pending.getAndSet(0)));
+        });
+    }
+
+    /**
+     * Méthode qui exécute une tâche sur le thread de l'étape, après le traitement en cours.
+     * @param task Runnable, tâche à exécuter.
+     */
+    public void schedule(Runnable task) {
+        scheduler.scheduleDirect(task);
+    }
+
+    /**
+     * Méthode qui note le temps de service d'un élément.
+     * @param serviceTime Long, temps de service en ns.
+     */
+    private void record(long serviceTime) {
+        lastServiceTime = serviceTime;
+        totalServiceTime.addAndGet(serviceTime);
+        processedCount.incrementAndGet();
+        serviceTimes.record(serviceTime);
+    }
+
+    /**
+     * Fonction qui retourne le nom de l'étape.
+     * @return String, nom de l'étape.
+     */
+    public String getName() { return name; }
+
+    /**
+     * Fonction qui retourne la capacité de la file de l'étape.
+     * @return Int, nombre maximum d'éléments en attente.
+     */
+    public int getQueueCapacity() { return queueCapacity; }
+
+    /**
+     * Fonction qui retourne la profondeur actuelle de la file de l'étape.
+     * @return Int, nombre d'éléments en attente.
+     */
+    public int getQueueDepth() { return queueDepth.get(); }
+
+    /**
+     * Fonction qui retourne le nombre d'éléments traités par l'étape.
+     * @return Long, nombre d'éléments traités.
+     */
+    public long getProcessedCount() { return processedCount.get(); }
+
+    /**
+     * Fonction qui retourne le temps de service du dernier élément traité.
+     * @return Double, temps de service en ms.
+     */
+    public double getLastServiceTime() { return lastServiceTime / 1e6; }
+
+    /**
+     * Fonction qui retourne le temps de service moyen de l'étape.
+     * @return Double, temps de service moyen en ms.
+     */
+    public double getAverageServiceTime() {
+        long count = processedCount.get();
+        return count == 0 ? 0 : totalServiceTime.get() / 1e6 / count;
+    }
+
+    /**
+     * Fonction qui résume l'état de l'étape.
+     * @return String, résumé de l'étape.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: file %d/%d, %.1f ms (moy. %.1f ms), %d traités",
+                name, getQueueDepth(), queueCapacity, getLastServiceTime(), getAverageServiceTime(), getProcessedCount());
+    }
+}
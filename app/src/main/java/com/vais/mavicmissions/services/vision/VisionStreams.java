@@ -0,0 +1,108 @@
+package com.vais.mavicmissions.services.vision;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableTransformer;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui regroupe les étapes et les opérateurs du flux de traitement d'image.
+ * La capture, la préparation, la détection et la décision s'exécutent chacune sur leur thread, le débit est donc celui de l'étape la plus lente.
+ * Chaque étape ne garde qu'une image en attente, les images plus anciennes sont abandonnées à la source.
+ */
+public class VisionStreams {
+    /**
+     * Int, nombre d'éléments gardés en attente entre deux étapes.
+     */
+    private static final int STAGE_BUFFER = 1;
+
+    /**
+     * VisionStage, étape qui convertit les captures du flux vidéo en matrices.
+     */
+    private static final VisionStage DECODE = new VisionStage("décodage", singleThread("vision-decode"), STAGE_BUFFER);
+    /**
+     * VisionStage, étape qui prépare les matrices avant la détection.
+     */
+    private static final VisionStage PREPROCESSING = new VisionStage("préparation", singleThread("vision-preprocessing"), STAGE_BUFFER);
+    /**
+     * VisionStage, étape qui effectue la détection.
+     */
+    private static final VisionStage DETECTION = new VisionStage("détection", singleThread("vision-detection"), STAGE_BUFFER);
+
+    /**
+     * Fonction qui retourne les étapes du pipeline de traitement d'image, dans l'ordre.
+     * @return List<VisionStage>, étapes du pipeline.
+     */
+    public static List<VisionStage> getStages() {
+        return Arrays.asList(DECODE, PREPROCESSING, DETECTION);
+    }
+
+    /**
+     * Fonction qui échantillonne un flux d'images à une période donnée.
+     * Une seule image est capturée par période et les périodes manquées lorsque la détection est occupée sont ignorées.
+     * @param frames Flowable<Frame>, flux d'images à échantillonner.
+     * @param period Long, période en ms entre deux images.
+     * @return Flowable<Frame>, flux d'images échantillonné.
+     */
+    public static Flowable<Frame> sample(Flowable<Frame> frames, long period) {
+        return Flowable.interval(0, period, TimeUnit.MILLISECONDS)
+                .onBackpressureDrop()
+                .concatMap(tick -> frames.take(1), STAGE_BUFFER);
+    }
+
+    /**
+     * Fonction qui créé l'opérateur de conversion des captures en matrices.
+     * @param step Function, conversion à appliquer.
+     * @return FlowableTransformer, opérateur de conversion.
+     */
+    public static <T, R> FlowableTransformer<T, R> decode(Function<? super T, ? extends R> step) {
+        return DECODE.apply(step);
+    }
+
+    /**
+     * Méthode qui exécute une tâche sur le thread de conversion des captures, après la conversion en cours.
+     * @param task Runnable, tâche à exécuter.
+     */
+    public static void onDecodeThread(Runnable task) {
+        DECODE.schedule(task);
+    }
+
+    /**
+     * Fonction qui créé l'opérateur de préparation des matrices.
+     * @param step Function, étape de préparation à appliquer.
+     * @return FlowableTransformer, opérateur de préparation.
+     */
+    public static <T, R> FlowableTransformer<T, R> preprocess(Function<? super T, ? extends R> step) {
+        return PREPROCESSING.apply(step);
+    }
+
+    /**
+     * Fonction qui créé l'opérateur de détection.
+     * @param step Function, étape de détection à appliquer.
+     * @return FlowableTransformer, opérateur de détection.
+     */
+    public static <T, R> FlowableTransformer<T, R> detect(Function<? super T, ? extends R> step) {
+        return DETECTION.apply(step);
+    }
+
+    /**
+     * Fonction qui créé un scheduler à un seul thread nommé pour le traitement d'image.
+     * @param name String, nom du thread.
+     * @return Scheduler, scheduler à un seul thread.
+     */
+    private static Scheduler singleThread(String name) {
+        return Schedulers.from(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+}
@@ -0,0 +1,154 @@
+package com.vais.mavicmissions.services.metrics;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Tests des intervalles et des percentiles de LatencyHistogram.
+ */
+public class LatencyHistogramTest {
+    /**
+     * Int, index du dernier intervalle, celui des valeurs de 2^37 ns et plus.
+     */
+    private static final int LAST_BUCKET = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+
+    @Test
+    public void valuesBelowOneMicrosecondShareTheFirstBucket() {
+        assertEquals(0, LatencyHistogram.bucketOf(0));
+        assertEquals(0, LatencyHistogram.bucketOf(1));
+        assertEquals(0, LatencyHistogram.bucketOf((1L << 10) - 1));
+        assertEquals(1, LatencyHistogram.bucketOf(1L << 10));
+    }
+
+    @Test
+    public void valuesPastTheLargestPowerShareTheLastBucket() {
+        assertEquals(LAST_BUCKET, LatencyHistogram.bucketOf(1L << 37));
+        assertEquals(LAST_BUCKET, LatencyHistogram.bucketOf(1L << 40));
+        assertEquals(LAST_BUCKET, LatencyHistogram.bucketOf((1L << 37) - 1));
+
+        // Au-dessus de 2^36, les valeurs sont encore distinguées jusqu'au dernier huitième de la puissance.
+        assertTrue(LatencyHistogram.bucketOf((1L << 36) + 1) < LAST_BUCKET);
+    }
+
+    @Test
+    public void upperBoundContainsEveryPowerOfTwoEdge() {
+        for (int exponent = 0; exponent <= 37; exponent++) {
+            long power = 1L << exponent;
+
+            for (long value : new long[] { power - 1, power, power + 1 }) {
+                if (value < 0 || value >= 1L << 37)
+                    continue;
+
+                int bucket = LatencyHistogram.bucketOf(value);
+                assertTrue("2^" + exponent + ": " + value, LatencyHistogram.upperBound(bucket) >= value);
+
+                // L'intervalle précédent se termine sous la valeur, sauf pour le premier.
+                if (bucket > 0)
+                    assertTrue("2^" + exponent + ": " + value, LatencyHistogram.upperBound(bucket - 1) <= value);
+            }
+        }
+    }
+
+    @Test
+    public void bucketsIncreaseWithTheValue() {
+        int previous = 0;
+        for (long value = 1; value < 1L << 37; value += value / 7 + 1) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(String.valueOf(value), bucket >= previous);
+            previous = bucket;
+        }
+    }
+
+    @Test
+    public void percentilesOfAKnownDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+
+        // 1 ms à 100 ms.
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i * 1_000_000L);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50.5, histogram.getMean(), 1e-9);
+        assertEquals(100, histogram.getMax(), 1e-9);
+
+        // La borne supérieure de l'intervalle est au plus 12.5% au-dessus de la valeur, et jamais au-dessus du maximum.
+        assertInBucket(1, histogram.getPercentile(0));
+        assertInBucket(1, histogram.getPercentile(1));
+        assertInBucket(50, histogram.getPercentile(50));
+        assertInBucket(99, histogram.getPercentile(99));
+        assertEquals(100, histogram.getPercentile(100), 1e-9);
+    }
+
+    @Test
+    public void emptyAndResetHistogramsReportZero() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        assertEquals(0, histogram.getPercentile(50), 0);
+
+        histogram.record(5_000_000L);
+        histogram.record(-1);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax(), 0);
+        assertEquals(0, histogram.getPercentile(99), 0);
+    }
+
+    @Test
+    public void maxIsKeptUnderConcurrentRecords() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        int threads = 8;
+        int records = 20_000;
+        AtomicLong expectedMax = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(t);
+            Thread writer = new Thread(() -> {
+                long localMax = 0;
+                try {
+                    start.await();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+
+                for (int i = 0; i < records; i++) {
+                    long value = random.nextInt(1_000_000_000);
+                    localMax = Math.max(localMax, value);
+                    histogram.record(value);
+                }
+                expectedMax.accumulateAndGet(localMax, Math::max);
+            });
+            writers.add(writer);
+            writer.start();
+        }
+
+        start.countDown();
+        for (Thread writer : writers)
+            writer.join();
+
+        assertEquals((long)threads * records, histogram.getCount());
+        assertEquals(expectedMax.get() / 1e6, histogram.getMax(), 0);
+        assertEquals(histogram.getMax(), histogram.getPercentile(100), 0);
+    }
+
+    /**
+     * Méthode qui vérifie qu'un percentile est la borne supérieure de l'intervalle d'une valeur.
+     * @param expected Double, valeur attendue en ms.
+     * @param actual Double, percentile obtenu en ms.
+     */
+    private static void assertInBucket(double expected, double actual) {
+        assertTrue(expected + " <= " + actual, actual >= expected);
+        assertTrue(actual + " <= " + expected * 1.125, actual <= expected * 1.125);
+    }
+}
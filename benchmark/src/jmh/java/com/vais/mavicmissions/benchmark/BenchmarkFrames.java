@@ -0,0 +1,156 @@
+package com.vais.mavicmissions.benchmark;
+
+import com.vais.mavicmissions.services.vision.ImageProcessor;
+import com.vais.mavicmissions.services.vision.SignTemplates;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui charge les images analysées par les benchmarks.
+ * Les images capturées sont lues dans frames/<catégorie>/ (png ou jpg), converties en RGBA comme celles du flux vidéo.
+ * Une catégorie sans image capturée utilise des images synthétiques étiquetées, pour que les benchmarks puissent toujours s'exécuter.
+ */
+public class BenchmarkFrames {
+    /**
+     * String[], catégories d'images: pancartes, ligne verte et balle.
+     */
+    public static final String[] CATEGORIES = { "arrow", "u", "d", "h", "line", "ball" };
+
+    /**
+     * Fonction qui charge les images d'une catégorie.
+     * @param category String, catégorie des images.
+     * @return List<Mat>, images de la catégorie (RGBA).
+     */
+    public static List<Mat> load(String category) {
+        List<Mat> frames = new ArrayList<>();
+
+        for (LabelledFrame frame : loadLabelled(category))
+            frames.add(frame.getMat());
+
+        return frames;
+    }
+
+    /**
+     * Fonction qui charge les images d'une catégorie avec leurs étiquettes.
+     * Les étiquettes des images capturées sont lues dans frames/labels.csv (catégorie/fichier,étiquette).
+     * @param category String, catégorie des images.
+     * @return List<LabelledFrame>, images de la catégorie.
+     */
+    public static List<LabelledFrame> loadLabelled(String category) {
+        List<LabelledFrame> frames = new ArrayList<>();
+        File root = new File(System.getProperty("benchmark.frames", "frames"));
+        File[] files = new File(root, category).listFiles();
+
+        if (files != null) {
+            Map<String, String> labels = loadLabels(new File(root, "labels.csv"));
+            Arrays.sort(files);
+
+            for (File file : files) {
+                String name = file.getName().toLowerCase();
+                if (!name.endsWith(".png") && !name.endsWith(".jpg") && !name.endsWith(".jpeg"))
+                    continue;
+
+                Mat bgr = Imgcodecs.imread(file.getPath(), Imgcodecs.IMREAD_COLOR);
+                if (bgr.empty())
+                    continue;
+
+                Mat rgba = new Mat();
+                Imgproc.cvtColor(bgr, rgba, Imgproc.COLOR_BGR2RGBA);
+
+                String key = category + "/" + file.getName();
+                frames.add(new LabelledFrame(key, rgba, labels.get(key)));
+            }
+        }
+
+        if (frames.isEmpty())
+            frames.addAll(SyntheticFrames.render(category, loadTemplate(category)));
+
+        return frames;
+    }
+
+    /**
+     * Fonction qui lit le fichier des étiquettes des images capturées.
+     * @param file File, fichier CSV des étiquettes. Les lignes qui commencent par # sont ignorées.
+     * @return Map<String, String>, étiquette de chaque image.
+     */
+    private static Map<String, String> loadLabels(File file) {
+        Map<String, String> labels = new HashMap<>();
+
+        if (!file.isFile())
+            return labels;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+
+                String[] parts = line.split(",", 2);
+                if (parts.length == 2)
+                    labels.put(parts[0].trim(), parts[1].trim());
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Impossible de lire les étiquettes: " + file.getPath(), e);
+        }
+
+        return labels;
+    }
+
+    /**
+     * Fonction qui charge les contours des patrons des pancartes, comme VisionHelper.getSignTemplates.
+     * @param processor ImageProcessor, service de traitement d'image.
+     * @return SignTemplates, contours des patrons.
+     */
+    public static SignTemplates loadTemplates(ImageProcessor processor) {
+        return new SignTemplates(
+                processor.getTemplateContour(loadTemplate("d")),
+                processor.getTemplateContour(loadTemplate("u")),
+                processor.getTemplateContour(loadTemplate("h")));
+    }
+
+    /**
+     * Fonction qui charge le patron d'une pancarte à partir des ressources de l'application.
+     * Les pixels transparents sont mis à zéro, comme dans un bitmap Android prémultiplié.
+     * @param sign String, lettre de la pancarte (u, d ou h).
+     * @return Mat, patron (RGBA), null si la catégorie n'a pas de patron.
+     */
+    public static Mat loadTemplate(String sign) {
+        if (!sign.equals("u") && !sign.equals("d") && !sign.equals("h"))
+            return null;
+
+        File file = new File(System.getProperty("benchmark.templates", "../app/src/main/res/mipmap-xxhdpi"), "ic_" + sign + "_foreground.png");
+        Mat bgra = Imgcodecs.imread(file.getPath(), Imgcodecs.IMREAD_UNCHANGED);
+
+        if (bgra.empty())
+            throw new IllegalStateException("Patron introuvable: " + file.getPath());
+
+        Mat rgba = new Mat();
+        Imgproc.cvtColor(bgra, rgba, Imgproc.COLOR_BGRA2RGBA);
+
+        // Effacer les pixels transparents.
+        List<Mat> channels = new ArrayList<>();
+        Core.split(rgba, channels);
+        Mat transparent = new Mat();
+        Core.compare(channels.get(3), new Scalar(0), transparent, Core.CMP_EQ);
+        rgba.setTo(new Scalar(0, 0, 0, 0), transparent);
+
+        return rgba;
+    }
+}
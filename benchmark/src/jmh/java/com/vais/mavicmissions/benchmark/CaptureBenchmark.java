@@ -0,0 +1,150 @@
+package com.vais.mavicmissions.benchmark;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import java.util.concurrent.TimeUnit;
+import nu.pattern.OpenCV;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui mesure la capture d'une image du flux vidéo et sa conversion en matrice, avec et sans réutilisation des tampons.
+ * Le Bitmap de TextureView est représenté par un tableau de pixels sur le tas Java, comme avant Android 8, et son dessin par une copie
+ * d'une image enregistrée. Le profileur gc de JMH donne l'allocation par capture et le nombre de passages du ramasse-miettes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CaptureBenchmark {
+    /**
+     * Int, nombre de tampons du réservoir, comme CameraController.
+     */
+    private static final int POOL_SIZE = 3;
+
+    /**
+     * String, dimensions de l'affichage capturé (largeurxhauteur).
+     */
+    @Param({ "1280x720", "1920x1080" })
+    public String size;
+
+    /**
+     * Int, largeur de l'affichage en pixels.
+     */
+    private int width;
+    /**
+     * Int, hauteur de l'affichage en pixels.
+     */
+    private int height;
+    /**
+     * Byte[], pixels RGBA de l'image affichée.
+     */
+    private byte[] displayed;
+    /**
+     * Byte[][], tampons réutilisés par les captures.
+     */
+    private byte[][] pool;
+    /**
+     * Mat, matrice réutilisée par les conversions.
+     */
+    private Mat persistent;
+    /**
+     * Int, compteur des captures.
+     */
+    private int next;
+
+    /**
+     * Méthode qui charge OpenCV et prépare l'image affichée aux dimensions demandées.
+     */
+    @Setup
+    public void setup() {
+        OpenCV.loadLocally();
+
+        String[] dimensions = size.split("x");
+        width = Integer.parseInt(dimensions[0]);
+        height = Integer.parseInt(dimensions[1]);
+
+        Mat frame = new Mat();
+        Imgproc.resize(BenchmarkFrames.load("line").get(0), frame, new Size(width, height));
+        displayed = new byte[width * height * 4];
+        frame.get(0, 0, displayed);
+        frame.release();
+
+        pool = new byte[POOL_SIZE][];
+        for (int i = 0; i < POOL_SIZE; i++)
+            pool[i] = new byte[displayed.length];
+
+        persistent = new Mat(height, width, CvType.CV_8UC4);
+    }
+
+    /**
+     * Méthode qui libère la matrice réutilisée.
+     */
+    @TearDown
+    public void tearDown() {
+        persistent.release();
+    }
+
+    /**
+     * Fonction qui convertit une capture dans une matrice, comme Utils.bitmapToMat.
+     * @param pixels Byte[], pixels de la capture.
+     * @param mat Mat, matrice à remplir (CV_8UC4).
+     * @return Mat, matrice remplie.
+     */
+    private static Mat convert(byte[] pixels, Mat mat) {
+        mat.put(0, 0, pixels);
+        return mat;
+    }
+
+    /**
+     * Fonction qui capture comme TextureView.getBitmap(): un nouveau Bitmap et une nouvelle matrice à chaque image.
+     * @return Mat, image capturée.
+     */
+    @Benchmark
+    public Mat allocated() {
+        byte[] pixels = new byte[displayed.length];
+        System.arraycopy(displayed, 0, pixels, 0, pixels.length);
+
+        Mat mat = convert(pixels, new Mat(height, width, CvType.CV_8UC4));
+        mat.release();
+        return mat;
+    }
+
+    /**
+     * Fonction qui capture comme CameraController: un Bitmap du réservoir et une nouvelle matrice, gardée par l'image.
+     * @return Mat, image capturée.
+     */
+    @Benchmark
+    public Mat pooled() {
+        byte[] pixels = pool[next++ % POOL_SIZE];
+        System.arraycopy(displayed, 0, pixels, 0, pixels.length);
+
+        Mat mat = convert(pixels, new Mat(height, width, CvType.CV_8UC4));
+        mat.release();
+        return mat;
+    }
+
+    /**
+     * Fonction qui capture sans aucune allocation: un Bitmap du réservoir et une matrice réutilisée.
+     * Borne inférieure, possible seulement si l'image n'est plus utilisée à la capture suivante.
+     * @return Mat, image capturée.
+     */
+    @Benchmark
+    public Mat persistent() {
+        byte[] pixels = pool[next++ % POOL_SIZE];
+        System.arraycopy(displayed, 0, pixels, 0, pixels.length);
+
+        return convert(pixels, persistent);
+    }
+}
@@ -0,0 +1,302 @@
+package com.vais.mavicmissions.benchmark;
+
+import com.vais.mavicmissions.Enum.Color;
+import com.vais.mavicmissions.services.vision.ColorProfile;
+import com.vais.mavicmissions.services.vision.ImageProcessor;
+import com.vais.mavicmissions.services.vision.VisionProfile;
+import org.opencv.core.Scalar;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import nu.pattern.OpenCV;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui calibre les limites HSV des couleurs d'un objectif sur les images étiquetées d'un lieu.
+ * La recherche est évolutive (1 + λ): à chaque génération, des variantes du meilleur profil sont évaluées en parallèle sur tous
+ * les coeurs, et la meilleure le remplace si sa précision est au moins égale. La précision est celle de RegressionHarness.
+ * Seules les limites des couleurs sont modifiées, les autres paramètres du profil de vision sont repris tels quels.
+ * Le profil obtenu est écrit dans un fichier à copier dans le dossier de l'application (VisionProfile.FILE_NAME).
+ * Usage: ./gradlew :benchmark:tuneColors -Pobjective=followLine|ballRescue [-Pprofile=vision-profile.properties] [-Pgenerations=40]
+ */
+public class ColorTuner {
+    /**
+     * Int, teinte maximum dans OpenCV.
+     */
+    private static final int HUE_MAX = 180;
+    /**
+     * Int, saturation et valeur maximum.
+     */
+    private static final int VALUE_MAX = 255;
+    /**
+     * Double, écart type d'une mutation de la teinte.
+     */
+    private static final double HUE_STEP = 4;
+    /**
+     * Double, écart type d'une mutation de la saturation ou de la valeur.
+     */
+    private static final double VALUE_STEP = 16;
+    /**
+     * Double, probabilité qu'une composante soit modifiée par une mutation.
+     */
+    private static final double MUTATION_RATE = 0.3;
+
+    /**
+     * Interface qui vérifie la détection d'un objectif sur une image étiquetée.
+     */
+    private interface Check {
+        /**
+         * Fonction qui exécute la détection et compare le résultat à l'étiquette.
+         * @param processor ImageProcessor, service de traitement d'image, avec le profil évalué.
+         * @param frame LabelledFrame, image étiquetée.
+         * @return Boolean, vrai si la détection est correcte.
+         */
+        boolean run(ImageProcessor processor, LabelledFrame frame);
+    }
+
+    /**
+     * Check, vérification de la détection de l'objectif.
+     */
+    private final Check check;
+    /**
+     * Color[], couleurs calibrées.
+     */
+    private final Color[] colors;
+    /**
+     * List<LabelledFrame>, images étiquetées de l'objectif.
+     */
+    private final List<LabelledFrame> frames;
+    /**
+     * Random, générateur des mutations.
+     */
+    private final Random random;
+
+    /**
+     * Constructeur de la classe ColorTuner, créé l'objet et initialise ses données membres.
+     * @param check Check, vérification de la détection de l'objectif.
+     * @param colors Color[], couleurs calibrées.
+     * @param frames List<LabelledFrame>, images étiquetées de l'objectif.
+     * @param seed Long, germe du générateur des mutations.
+     */
+    private ColorTuner(Check check, Color[] colors, List<LabelledFrame> frames, long seed) {
+        this.check = check;
+        this.colors = colors;
+        this.frames = frames;
+        random = new Random(seed);
+    }
+
+    /**
+     * Méthode qui calibre les couleurs d'un objectif et écrit le profil. Un profil existant est repris comme point de départ,
+     * ce qui permet de calibrer les objectifs l'un après l'autre dans le même fichier.
+     * @param args String[], objectif (followLine ou ballRescue) et fichier du profil.
+     * @throws Exception si le profil ne peut pas être lu ou écrit, ou qu'une évaluation échoue.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ColorTuner <followLine|ballRescue> [vision-profile.properties]");
+            System.exit(2);
+        }
+
+        OpenCV.loadLocally();
+
+        File file = new File(args.length > 1 ? args[1] : VisionProfile.FILE_NAME);
+        int generations = Integer.getInteger("tune.generations", 40);
+        long seed = Long.getLong("tune.seed", 1);
+
+        ColorTuner tuner;
+        switch (args[0]) {
+            case "followLine":
+                tuner = new ColorTuner(RegressionHarness::followLine, new Color[] { Color.LINE_GREEN }, labelled("line"), seed);
+                break;
+            case "ballRescue":
+                tuner = new ColorTuner(RegressionHarness::ballRescue, new Color[] { Color.YELLOW, Color.BALL_GREEN }, labelled("ball"), seed);
+                break;
+            default:
+                throw new IllegalArgumentException("Objectif inconnu: " + args[0]);
+        }
+
+        VisionProfile start = VisionProfile.defaults();
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                start = VisionProfile.load(in);
+            }
+        }
+
+        VisionProfile best = start.withColors(tuner.tune(start, generations));
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            best.store(out, "Limites HSV calibrées par ColorTuner (" + args[0] + ")");
+        }
+        System.out.println("Profil enregistré: " + file.getPath());
+    }
+
+    /**
+     * Fonction qui charge les images étiquetées d'une catégorie.
+     * @param category String, catégorie des images.
+     * @return List<LabelledFrame>, images étiquetées.
+     */
+    private static List<LabelledFrame> labelled(String category) {
+        List<LabelledFrame> frames = new ArrayList<>();
+
+        for (LabelledFrame frame : BenchmarkFrames.loadLabelled(category))
+            if (frame.getLabel() != null)
+                frames.add(frame);
+
+        return frames;
+    }
+
+    /**
+     * Fonction qui exécute la recherche évolutive.
+     * @param start VisionProfile, profil de départ, dont les autres paramètres sont gardés pendant l'évaluation.
+     * @param generations Int, nombre de générations.
+     * @return ColorProfile, meilleures limites trouvées.
+     * @throws InterruptedException si le thread est interrompu.
+     * @throws ExecutionException si une évaluation échoue.
+     */
+    private ColorProfile tune(VisionProfile start, int generations) throws InterruptedException, ExecutionException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        try {
+            ColorProfile best = start.getColors();
+            int bestScore = evaluate(start, best);
+            System.out.println(String.format(Locale.ROOT, "Départ: %d/%d images correctes", bestScore, frames.size()));
+
+            for (int generation = 1; generation <= generations && bestScore < frames.size(); generation++) {
+                // Évaluer deux variantes par coeur.
+                List<ColorProfile> offspring = new ArrayList<>();
+                List<Callable<Integer>> evaluations = new ArrayList<>();
+                for (int i = 0; i < threads * 2; i++) {
+                    ColorProfile candidate = mutate(best);
+                    offspring.add(candidate);
+                    evaluations.add(() -> evaluate(start, candidate));
+                }
+
+                List<Future<Integer>> scores = pool.invokeAll(evaluations);
+
+                // Garder la meilleure variante si elle est au moins aussi précise, pour traverser les plateaux.
+                int improved = -1;
+                for (int i = 0; i < scores.size(); i++) {
+                    int score = scores.get(i).get();
+                    if (score >= bestScore && (improved < 0 || score > scores.get(improved).get()))
+                        improved = i;
+                }
+
+                if (improved >= 0) {
+                    int score = scores.get(improved).get();
+                    if (score > bestScore)
+                        System.out.println(String.format(Locale.ROOT, "Génération %d: %d/%d images correctes %s",
+                                generation, score, frames.size(), describe(offspring.get(improved))));
+
+                    best = offspring.get(improved);
+                    bestScore = score;
+                }
+            }
+
+            System.out.println(String.format(Locale.ROOT, "Résultat: %d/%d images correctes %s", bestScore, frames.size(), describe(best)));
+            return best;
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Fonction qui compte les images correctement détectées avec des limites de couleurs.
+     * @param profile VisionProfile, profil de départ.
+     * @param colors ColorProfile, limites évaluées.
+     * @return Int, nombre d'images correctes.
+     */
+    private int evaluate(VisionProfile profile, ColorProfile colors) {
+        ImageProcessor processor = new ImageProcessor(profile.withColors(colors));
+        int correct = 0;
+
+        for (LabelledFrame frame : frames)
+            if (check.run(processor, frame))
+                correct++;
+
+        return correct;
+    }
+
+    /**
+     * Fonction qui créé une variante d'un profil en modifiant aléatoirement les limites des couleurs calibrées.
+     * @param profile ColorProfile, profil d'origine.
+     * @return ColorProfile, variante.
+     */
+    private ColorProfile mutate(ColorProfile profile) {
+        for (Color color : colors) {
+            double[] lower = profile.getLower(color).val.clone();
+            double[] upper = profile.getUpper(color).val.clone();
+
+            for (int i = 0; i < 3; i++) {
+                int max = i == 0 ? HUE_MAX : VALUE_MAX;
+                double step = i == 0 ? HUE_STEP : VALUE_STEP;
+
+                lower[i] = mutate(lower[i], step, max);
+                upper[i] = mutate(upper[i], step, max);
+
+                // Une limite basse plus haute que la limite haute ne laisse passer aucun pixel.
+                if (lower[i] > upper[i]) {
+                    double swap = lower[i];
+                    lower[i] = upper[i];
+                    upper[i] = swap;
+                }
+            }
+
+            profile = profile.withRange(color, new Scalar(lower[0], lower[1], lower[2]), new Scalar(upper[0], upper[1], upper[2]));
+        }
+
+        return profile;
+    }
+
+    /**
+     * Fonction qui modifie aléatoirement une composante.
+     * @param value Double, valeur actuelle.
+     * @param step Double, écart type de la modification.
+     * @param max Int, valeur maximum.
+     * @return Double, nouvelle valeur entière, entre 0 et max.
+     */
+    private double mutate(double value, double step, int max) {
+        if (random.nextDouble() >= MUTATION_RATE)
+            return value;
+
+        return Math.max(0, Math.min(max, Math.round(value + random.nextGaussian() * step)));
+    }
+
+    /**
+     * Fonction qui décrit les limites des couleurs calibrées.
+     * @param profile ColorProfile, profil à décrire.
+     * @return String, limites de chaque couleur.
+     */
+    private String describe(ColorProfile profile) {
+        StringBuilder description = new StringBuilder();
+
+        for (Color color : colors)
+            description.append(String.format(Locale.ROOT, "%s [%s - %s] ", color, format(profile.getLower(color)), format(profile.getUpper(color))));
+
+        return description.toString().trim();
+    }
+
+    /**
+     * Fonction qui formate une valeur HSV.
+     * @param value Scalar, valeur HSV.
+     * @return String, valeur sous la forme h,s,v.
+     */
+    private static String format(Scalar value) {
+        return (int)value.val[0] + "," + (int)value.val[1] + "," + (int)value.val[2];
+    }
+}
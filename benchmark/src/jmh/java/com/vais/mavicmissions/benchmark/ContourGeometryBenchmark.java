@@ -0,0 +1,208 @@
+package com.vais.mavicmissions.benchmark;
+
+import com.vais.mavicmissions.services.vision.IntPointBuffer;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import nu.pattern.OpenCV;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui compare les calculs géométriques sur des Point[] à ceux sur un IntPointBuffer.
+ * Les méthodes "boxed" reprennent le code de Detector et VisionHelper avant l'utilisation d'IntPointBuffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContourGeometryBenchmark {
+    /**
+     * Int, rayon en pixels du cercle dont le contour est analysé.
+     */
+    @Param({ "50", "200" })
+    public int radius;
+
+    /**
+     * MatOfPoint, contour d'un cercle, avec tous ses points.
+     */
+    private MatOfPoint contour;
+    /**
+     * List<MatOfPoint>, contours à combiner.
+     */
+    private List<MatOfPoint> contours;
+    /**
+     * Mat, image d'où viennent les contours.
+     */
+    private Mat source;
+    /**
+     * IntPointBuffer, tableau de points réutilisé.
+     */
+    private IntPointBuffer buffer;
+    /**
+     * Int[], rectangle englobant réutilisé.
+     */
+    private int[] bounds;
+
+    /**
+     * Méthode qui charge OpenCV et prépare les contours analysés.
+     */
+    @Setup
+    public void setup() {
+        OpenCV.loadLocally();
+
+        // Dessiner deux cercles et trouver leurs contours.
+        source = Mat.zeros(radius * 6, radius * 6, CvType.CV_8UC1);
+        Imgproc.circle(source, new Point(radius * 2, radius * 3), radius, new Scalar(255), -1);
+        Imgproc.circle(source, new Point(radius * 4, radius * 3), radius / 2, new Scalar(255), -1);
+
+        contours = new ArrayList<>();
+        Imgproc.findContours(source.clone(), contours, new Mat(), Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_NONE);
+        contour = contours.get(0);
+
+        buffer = new IntPointBuffer();
+        bounds = new int[4];
+    }
+
+    @Benchmark
+    public Point averagePointBoxed() {
+        Point[] points = contour.toArray();
+
+        int avgX = 0, avgY = 0;
+        for (Point p : points) {
+            avgX += p.x;
+            avgY += p.y;
+        }
+
+        return new Point(avgX / points.length, avgY / points.length);
+    }
+
+    @Benchmark
+    public double averagePointBuffer() {
+        buffer.load(contour);
+        return buffer.averageX() + buffer.averageY();
+    }
+
+    @Benchmark
+    public boolean detectCircleBoxed() {
+        double radius = -1;
+        double actualRadius;
+        Point center = averagePointBoxed();
+
+        for (Point p : contour.toArray()) {
+            actualRadius = Math.round(Math.sqrt(Math.pow(center.x - p.x, 2) + Math.pow(center.y - p.y, 2)));
+
+            if (radius == -1)
+                radius = actualRadius;
+            else if (actualRadius < radius - 10 || actualRadius > radius + 10)
+                return false;
+        }
+
+        return true;
+    }
+
+    @Benchmark
+    public boolean detectCircleBuffer() {
+        buffer.load(contour);
+        int centerX = (int)buffer.averageX();
+        int centerY = (int)buffer.averageY();
+
+        double radius = -1;
+        double actualRadius;
+        for (int i = 0; i < buffer.size(); i++) {
+            actualRadius = Math.round(IntPointBuffer.distance(centerX, centerY, buffer.getX(i), buffer.getY(i)));
+
+            if (radius == -1)
+                radius = actualRadius;
+            else if (actualRadius < radius - 10 || actualRadius > radius + 10)
+                return false;
+        }
+
+        return true;
+    }
+
+    @Benchmark
+    public double radiusVarianceBoxed() {
+        Point[] points = contour.toArray();
+        Point center = averagePointBoxed();
+
+        double sum = 0, sumOfSquares = 0;
+        for (Point p : points) {
+            double r = Math.sqrt(Math.pow(center.x - p.x, 2) + Math.pow(center.y - p.y, 2));
+            sum += r;
+            sumOfSquares += r * r;
+        }
+
+        double mean = sum / points.length;
+        return sumOfSquares / points.length - mean * mean;
+    }
+
+    @Benchmark
+    public double radiusVarianceBuffer() {
+        buffer.load(contour);
+        return buffer.radiusVariance(buffer.averageX(), buffer.averageY());
+    }
+
+    @Benchmark
+    public int boundsBoxed() {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (Point p : contour.toList()) {
+            minX = Math.min(minX, (int)p.x);
+            minY = Math.min(minY, (int)p.y);
+            maxX = Math.max(maxX, (int)p.x);
+            maxY = Math.max(maxY, (int)p.y);
+        }
+
+        return maxX - minX + maxY - minY;
+    }
+
+    @Benchmark
+    public int boundsBuffer() {
+        buffer.load(contour).bounds(bounds);
+        return bounds[2] - bounds[0] + bounds[3] - bounds[1];
+    }
+
+    @Benchmark
+    public MatOfPoint combineContoursBoxed() {
+        List<Point> finalPoints = new ArrayList<>();
+        MatOfPoint finalContour = new MatOfPoint();
+
+        for (MatOfPoint c : contours) {
+            org.opencv.core.Rect bounds = Imgproc.boundingRect(c);
+            if (bounds.width < source.width() && bounds.height < source.height())
+                finalPoints.addAll(c.toList());
+        }
+
+        finalContour.fromList(finalPoints);
+        return finalContour;
+    }
+
+    @Benchmark
+    public MatOfPoint combineContoursBuffer() {
+        MatOfPoint finalContour = new MatOfPoint();
+        buffer.clear();
+
+        for (MatOfPoint c : contours) {
+            org.opencv.core.Rect bounds = Imgproc.boundingRect(c);
+            if (bounds.width < source.width() && bounds.height < source.height())
+                buffer.append(c);
+        }
+
+        buffer.copyTo(finalContour);
+        return finalContour;
+    }
+}
@@ -0,0 +1,56 @@
+package com.vais.mavicmissions.benchmark;
+
+import org.opencv.core.Mat;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui représente une image du corpus et le résultat attendu de sa détection.
+ * Étiquettes selon la catégorie: U, D ou H pour les pancartes, ARROW:angle pour les flèches,
+ * FRONT, RIGHT, LEFT ou NONE pour la ligne et x:y ou NONE pour la balle.
+ */
+public class LabelledFrame {
+    /**
+     * String, nom de l'image (catégorie/fichier).
+     */
+    private final String name;
+    /**
+     * Mat, image (RGBA).
+     */
+    private final Mat mat;
+    /**
+     * String, résultat attendu, null si l'image n'est pas étiquetée.
+     */
+    private final String label;
+
+    /**
+     * Constructeur de la classe LabelledFrame, créé l'objet et initialise ses données membres.
+     * @param name String, nom de l'image.
+     * @param mat Mat, image (RGBA).
+     * @param label String, résultat attendu, null si l'image n'est pas étiquetée.
+     */
+    public LabelledFrame(String name, Mat mat, String label) {
+        this.name = name;
+        this.mat = mat;
+        this.label = label;
+    }
+
+    /**
+     * Fonction qui retourne le nom de l'image.
+     * @return String, nom de l'image.
+     */
+    public String getName() { return name; }
+
+    /**
+     * Fonction qui retourne l'image.
+     * @return Mat, image (RGBA).
+     */
+    public Mat getMat() { return mat; }
+
+    /**
+     * Fonction qui retourne le résultat attendu.
+     * @return String, étiquette de l'image, null si l'image n'est pas étiquetée.
+     */
+    public String getLabel() { return label; }
+}
@@ -0,0 +1,555 @@
+package com.vais.mavicmissions.benchmark;
+
+import com.vais.mavicmissions.Enum.FlyInstruction;
+import com.vais.mavicmissions.services.Detector;
+import com.vais.mavicmissions.services.drone.AircraftInstruction;
+import com.vais.mavicmissions.services.metrics.LatencyHistogram;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import com.vais.mavicmissions.services.mission.BallRescueMission;
+import com.vais.mavicmissions.services.mission.FollowLineMission;
+import com.vais.mavicmissions.services.mission.Mission;
+import com.vais.mavicmissions.services.mission.ParkourMission;
+import com.vais.mavicmissions.services.vision.ChangeDetector;
+import com.vais.mavicmissions.services.vision.Frame;
+import com.vais.mavicmissions.services.vision.FrameQualityGate;
+import com.vais.mavicmissions.services.vision.ImageProcessor;
+import com.vais.mavicmissions.services.vision.ResolutionController;
+import com.vais.mavicmissions.services.vision.SignTemplates;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import nu.pattern.OpenCV;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui exécute la logique d'un objectif sur ordinateur, sans drone ni téléphone, pour évaluer des enregistrements en lot.
+ * Les images viennent d'un flux vidéo enregistré par VideoTap (ffmpeg doit être installé) ou d'un dossier d'images,
+ * le drone est simulé par SimulatedDrone. Le temps de chaque détection est mesuré réellement et ajouté à l'horloge virtuelle,
+ * le reste de la mission s'exécute sans attente, donc plus vite que le vol. Avec un budget (mission.budget, en ms), la résolution de
+ * traitement est ajustée par ResolutionController comme sur le téléphone. Les images floues sont écartées par FrameQualityGate, sans
+ * télémétrie de rotation puisque le drone est simulé. Comme sur le téléphone, les pancartes et la balle ne sont pas recherchées
+ * de nouveau tant que la scène ne change pas.
+ * Usage: ./gradlew :benchmark:mission -Pmission=dynamicParkour -Precordings=video.h264v,images/ [-Psummary=summary.csv] [-Plimit=600] [-Pbudget=150]
+ */
+public class MissionRunner implements Mission.Listener, ParkourMission.Vision, FollowLineMission.Vision, BallRescueMission.Vision {
+    /**
+     * Int, temps en ms entre deux tentatives de détection des pancartes, comme DynamicParkour.
+     */
+    private static final int DETECTION_PERIOD = 250;
+    /**
+     * LatencyHistogram, temps réel de la détection de chaque image utilisée par la mission.
+     */
+    private static final LatencyHistogram DETECTION = Metrics.histogram("mission.detection");
+
+    /**
+     * Interface qui fournit les images analysées par la mission.
+     */
+    private interface FrameSource {
+        /**
+         * Fonction qui retourne l'image vue par le drone à un moment de la mission.
+         * @param time Long, moment en ms depuis le début de l'enregistrement.
+         * @return Frame, image (RGBA), null à la fin de l'enregistrement.
+         * @throws Exception si l'enregistrement ne peut pas être lu.
+         */
+        Frame next(long time) throws Exception;
+
+        /**
+         * Méthode qui libère l'enregistrement.
+         */
+        void close();
+    }
+
+    /**
+     * Classe qui lit les images d'un dossier dans l'ordre de leur nom, une image par détection.
+     */
+    private static class ImageSource implements FrameSource {
+        /**
+         * File[], images du dossier.
+         */
+        private final File[] files;
+        /**
+         * Int, position de la prochaine image.
+         */
+        private int position;
+
+        /**
+         * Constructeur de la classe ImageSource, créé l'objet et initialise ses données membres.
+         * @param directory File, dossier des images (png ou jpg).
+         */
+        private ImageSource(File directory) {
+            File[] listed = directory.listFiles((dir, name) -> {
+                String lower = name.toLowerCase();
+                return lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".jpeg");
+            });
+
+            files = listed != null ? listed : new File[0];
+            Arrays.sort(files);
+        }
+
+        /**
+         * Fonction qui retourne la prochaine image du dossier, peu importe le moment.
+         * @param time Long, moment en ms depuis le début de l'enregistrement.
+         * @return Frame, image (RGBA), null lorsque toutes les images ont été lues.
+         */
+        @Override
+        public Frame next(long time) {
+            while (position < files.length) {
+                Mat bgr = Imgcodecs.imread(files[position].getPath(), Imgcodecs.IMREAD_COLOR);
+                position++;
+
+                if (!bgr.empty()) {
+                    Mat rgba = new Mat();
+                    Imgproc.cvtColor(bgr, rgba, Imgproc.COLOR_BGR2RGBA);
+                    bgr.release();
+
+                    long now = System.nanoTime();
+                    return new Frame(position, now, now, rgba);
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Méthode qui libère l'enregistrement, rien à libérer pour un dossier.
+         */
+        @Override
+        public void close() { }
+    }
+
+    /**
+     * Classe qui lit les images d'un flux vidéo enregistré, selon le moment de leur arrivée pendant le vol.
+     */
+    private static class VideoSource implements FrameSource {
+        /**
+         * VideoReplay, décodeur du flux vidéo.
+         */
+        private final VideoReplay replay;
+
+        /**
+         * Constructeur de la classe VideoSource, créé l'objet et démarre le décodeur.
+         * @param log File, enregistrement du flux vidéo.
+         * @param width Int, largeur en pixels des images décodées.
+         * @param height Int, hauteur en pixels des images décodées.
+         * @throws IOException si ffmpeg ne peut pas être démarré.
+         */
+        private VideoSource(File log, int width, int height) throws IOException {
+            replay = new VideoReplay(log, width, height).open();
+        }
+
+        /**
+         * Fonction qui retourne la première image arrivée à partir du moment demandé. Les images précédentes sont
+         * abandonnées, comme celles que le drone reçoit pendant une commande.
+         * @param time Long, moment en ms depuis le début de l'enregistrement.
+         * @return Frame, image (RGBA), null à la fin de l'enregistrement.
+         * @throws IOException si le décodeur ne peut pas être lu.
+         * @throws InterruptedException si le thread est interrompu.
+         */
+        @Override
+        public Frame next(long time) throws IOException, InterruptedException {
+            Frame frame;
+
+            while ((frame = replay.next(false)) != null && replay.elapsed() < time)
+                frame.getMat().release();
+
+            return frame;
+        }
+
+        /**
+         * Méthode qui arrête le décodeur.
+         */
+        @Override
+        public void close() {
+            replay.close();
+        }
+    }
+
+    /**
+     * SimulatedDrone, drone simulé.
+     */
+    private final SimulatedDrone drone = new SimulatedDrone();
+    /**
+     * ImageProcessor, service de traitement d'image.
+     */
+    private final ImageProcessor processor;
+    /**
+     * SignTemplates, contours des patrons des pancartes.
+     */
+    private final SignTemplates templates;
+    /**
+     * FrameSource, images de l'enregistrement.
+     */
+    private final FrameSource source;
+    /**
+     * ResolutionController, choix de la résolution de traitement, null pour toujours traiter en pleine résolution.
+     */
+    private final ResolutionController resolution;
+    /**
+     * FrameQualityGate, filtre des images floues.
+     */
+    private final FrameQualityGate quality;
+    /**
+     * ChangeDetector<AircraftInstruction>, dernière lecture sans instruction, réutilisée tant que la scène ne change pas, comme DynamicParkour.
+     */
+    private final ChangeDetector<AircraftInstruction> signs;
+    /**
+     * ChangeDetector<Point[]>, dernier contour de la balle détecté, réutilisé tant que la scène ne change pas.
+     */
+    private final ChangeDetector<Point[]> balls;
+    /**
+     * Mission, logique de l'objectif exécutée.
+     */
+    private Mission mission;
+
+    /**
+     * List<String>, décisions de la mission, avec leur moment.
+     */
+    private final List<String> decisions = new ArrayList<>();
+    /**
+     * Map<String, Integer>, nombre de décisions par résultat de détection.
+     */
+    private final Map<String, Integer> decisionCounts = new TreeMap<>();
+    /**
+     * Int, génération de la recherche des pancartes, incrémentée à chaque arrêt pour ignorer les tentatives en attente.
+     */
+    private int seeking;
+    /**
+     * Boolean, indique si le drone a attéri à la fin de la mission.
+     */
+    private boolean ended;
+    /**
+     * Boolean, indique si toutes les images de l'enregistrement ont été lues.
+     */
+    private boolean exhausted;
+
+    /**
+     * Constructeur de la classe MissionRunner, créé l'objet et initialise ses données membres.
+     * @param processor ImageProcessor, service de traitement d'image.
+     * @param templates SignTemplates, contours des patrons des pancartes.
+     * @param source FrameSource, images de l'enregistrement.
+     * @param budget Long, temps de traitement visé par image en ms, 0 pour toujours traiter en pleine résolution.
+     */
+    private MissionRunner(ImageProcessor processor, SignTemplates templates, FrameSource source, long budget) {
+        this.processor = processor;
+        this.templates = templates;
+        this.source = source;
+        resolution = budget > 0 ? new ResolutionController(budget) : null;
+        quality = new FrameQualityGate(processor, () -> 0);
+        signs = new ChangeDetector<>(processor, "dynamicParkour");
+        balls = new ChangeDetector<>(processor, "ballRescue");
+    }
+
+    /**
+     * Méthode qui exécute une mission sur chaque enregistrement et affiche les résultats.
+     * Le résumé est aussi écrit en CSV si la propriété mission.summary est définie.
+     * @param args String[], nom de l'objectif (dynamicParkour, followLine ou ballRescue), puis les enregistrements (.h264v ou dossier d'images).
+     * @throws IOException si le résumé ne peut pas être écrit.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: MissionRunner <objectif> <enregistrement>...");
+            System.exit(2);
+        }
+
+        OpenCV.loadLocally();
+
+        String objective = args[0];
+        long limit = Long.parseLong(System.getProperty("mission.limit", "600")) * 1000;
+        String[] size = System.getProperty("mission.size", "1280x720").split("x");
+        String summary = System.getProperty("mission.summary", "");
+        long budget = Long.getLong("mission.budget", 0);
+
+        ImageProcessor processor = new ImageProcessor();
+        SignTemplates templates = BenchmarkFrames.loadTemplates(processor);
+
+        PrintWriter csv = null;
+        if (!summary.isEmpty()) {
+            csv = new PrintWriter(new FileWriter(summary));
+            csv.println("enregistrement,objectif,fin,duree_s,execution_s,acceleration,decisions,commandes");
+        }
+
+        try {
+            for (int i = 1; i < args.length; i++) {
+                File recording = new File(args[i]);
+                FrameSource source;
+
+                try {
+                    source = recording.isDirectory() ? new ImageSource(recording)
+                            : new VideoSource(recording, Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+                }
+                catch (IOException e) {
+                    System.err.println("Impossible de lire " + recording + ": " + e.getMessage());
+                    continue;
+                }
+
+                MissionRunner runner = new MissionRunner(processor, templates, source, budget);
+                String line = runner.run(objective, limit, recording.getName());
+
+                if (csv != null)
+                    csv.println(line);
+            }
+        }
+        finally {
+            if (csv != null)
+                csv.close();
+        }
+    }
+
+    /**
+     * Fonction qui exécute la mission jusqu'à l'attérissage, la fin de l'enregistrement ou la limite de temps, puis affiche le résultat.
+     * @param objective String, nom de l'objectif.
+     * @param limit Long, duré maximum de la mission en ms.
+     * @param name String, nom de l'enregistrement.
+     * @return String, ligne du résumé CSV.
+     */
+    private String run(String objective, long limit, String name) {
+        Metrics.reset();
+        mission = create(objective);
+        if (resolution != null)
+            resolution.reset(mission.getMaxProcessingLevel());
+        quality.reset();
+
+        // Décoller et ajuster le zoom comme Objectif.startObjectif, puis commencer la mission.
+        drone.takeOff(() -> drone.setZoom(2, mission::start));
+
+        long start = System.nanoTime();
+        while (!ended && !exhausted && drone.now() < limit && drone.step());
+        double seconds = (System.nanoTime() - start) / 1e9;
+        source.close();
+
+        String end = ended ? "attéri" : exhausted ? "fin des images" : drone.now() >= limit ? "limite de temps" : "bloquée";
+        double duration = drone.now() / 1000.0;
+
+        System.out.println(String.format(Locale.ROOT, "%s, %s: %s après %.1f s simulées, exécutée en %.1f s (x%.0f)",
+                name, objective, end, duration, seconds, duration / seconds));
+        for (String decision : decisions)
+            System.out.println("  " + decision);
+        System.out.println("Décisions: " + decisionCounts);
+        System.out.println("Drone: " + drone.describe());
+        System.out.println(Metrics.report());
+
+        return String.format(Locale.ROOT, "%s,%s,%s,%.1f,%.2f,%.1f,\"%s\",\"%s\"",
+                name, objective, end, duration, seconds, duration / seconds, decisionCounts, drone.getCommands());
+    }
+
+    /**
+     * Fonction qui créé la logique d'un objectif.
+     * @param objective String, nom de l'objectif.
+     * @return Mission, logique de l'objectif.
+     */
+    private Mission create(String objective) {
+        switch (objective) {
+            case "dynamicParkour":
+                return new ParkourMission(drone, this, this);
+            case "followLine":
+                return new FollowLineMission(drone, this, processor, this);
+            case "ballRescue":
+                return new BallRescueMission(drone, this, processor, this);
+            default:
+                throw new IllegalArgumentException("Objectif inconnu: " + objective);
+        }
+    }
+
+    /**
+     * Méthode qui note une décision de la mission.
+     * @param code Int, résultat de la détection, voir Mission.describe.
+     * @param value1 Double, première valeur propre à l'objectif.
+     * @param value2 Double, deuxième valeur propre à l'objectif.
+     * @param value3 Double, troisième valeur propre à l'objectif.
+     */
+    @Override
+    public void onDetection(int code, double value1, double value2, double value3) {
+        String result = mission.describe(code);
+        Integer count = decisionCounts.get(result);
+        decisionCounts.put(result, count == null ? 1 : count + 1);
+
+        decisions.add(String.format(Locale.ROOT, "%8.2f s  %-12s %.1f %.1f %.1f", drone.now() / 1000.0, result, value1, value2, value3));
+    }
+
+    /**
+     * Méthode appelée lorsque le drone simulé a attéri à la fin de la mission.
+     */
+    @Override
+    public void onEnded() {
+        ended = true;
+    }
+
+    /**
+     * Méthode qui commence les tentatives périodiques de lecture des pancartes.
+     */
+    @Override
+    public void startSeeking() {
+        signs.reset();
+        seek(++seeking);
+    }
+
+    /**
+     * Méthode qui arrête la lecture des pancartes. Une lecture en cours n'est pas donnée à la mission.
+     */
+    @Override
+    public void stopSeeking() {
+        seeking++;
+    }
+
+    /**
+     * Méthode qui lit une pancarte dans l'image du moment, donne l'instruction à la mission une fois la lecture terminée,
+     * puis prévoit la prochaine tentative.
+     * @param generation Int, génération de la recherche qui a prévu la tentative.
+     */
+    private void seek(int generation) {
+        if (generation != seeking)
+            return;
+
+        Frame frame = nextFrame();
+        if (frame == null)
+            return;
+
+        long start = System.nanoTime();
+        AircraftInstruction instruction = readInstruction(frame);
+        long elapsed = detected(frame, start);
+
+        drone.schedule("dynamicParkour.detection", () -> {
+            if (generation == seeking)
+                ((ParkourMission)mission).onInstruction(instruction);
+        }, elapsed);
+        drone.schedule("dynamicParkour.sample", () -> seek(generation), Math.max(DETECTION_PERIOD, elapsed));
+    }
+
+    /**
+     * Fonction qui lit l'instruction d'une pancarte. Contrairement à DynamicParkour, la flèche est estimée avant la reconnaissance
+     * des pancartes dans le même thread, avec la même priorité.
+     * @param frame Frame, image analysée.
+     * @return AircraftInstruction, instruction détectée, FlyInstruction.NONE si aucune instruction n'est détectée.
+     */
+    private AircraftInstruction readInstruction(Frame frame) {
+        AircraftInstruction instruction = signs.getCached(frame);
+        if (instruction != null)
+            return instruction;
+
+        MatOfPoint contour = Detector.findSign(processor, frame.getContext());
+        if (contour == null)
+            instruction = new AircraftInstruction(FlyInstruction.NONE);
+        else {
+            try {
+                // La flèche est déjà estimée quand les pancartes sont reconnues, la lecture n'attend donc jamais.
+                instruction = ParkourMission.readInstruction(processor, templates, contour, Runnable::run);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+
+        // Une instruction lue n'est jamais réutilisée, ParkourMission doit la confirmer avec une nouvelle lecture.
+        ParkourMission.remember(signs, frame, instruction);
+
+        return instruction;
+    }
+
+    /**
+     * Méthode qui détecte des points sur la ligne dans l'image du moment.
+     * @param maxCorners Int, nombre maximum de points à détecter.
+     * @param minDistance Int, distance minimum entre les points.
+     * @param listener LineListener, objet qui reçoit le résultat une fois la détection terminée.
+     */
+    @Override
+    public void detectLine(int maxCorners, int minDistance, FollowLineMission.LineListener listener) {
+        Frame frame = nextFrame();
+        if (frame == null)
+            return;
+
+        long start = System.nanoTime();
+        Point[] points = frame.toFull(Detector.detectLine(processor, frame.getContext(), maxCorners, frame.toProcessing(minDistance)));
+        Point center = Detector.getCenterPoint(frame.getMat());
+
+        drone.schedule("followLine.detection", () -> listener.onLine(points, center), detected(frame, start));
+    }
+
+    /**
+     * Méthode qui détecte la balle dans l'image du moment.
+     * @param searching Boolean, vrai pendant la recherche de la balle.
+     * @param listener BallListener, objet qui reçoit le résultat une fois la détection terminée.
+     */
+    @Override
+    public void detectBall(boolean searching, BallRescueMission.BallListener listener) {
+        Frame frame = nextFrame();
+        if (frame == null)
+            return;
+
+        long start = System.nanoTime();
+        Point[] cached = balls.getCached(frame);
+        Point[] points = cached != null ? cached : frame.toFullContour(Detector.detectBall(processor, Detector.filterBall(processor, frame.getContext()), frame.getLevel()));
+        if (cached == null)
+            balls.store(frame, points);
+        Point center = Detector.getCenterPoint(frame.getMat());
+
+        drone.schedule("ballRescue.detection", () -> listener.onBall(points, center), detected(frame, start));
+    }
+
+    /**
+     * Fonction qui retourne l'image vue par le drone au moment actuel de la mission.
+     * @return Frame, image (RGBA), null à la fin de l'enregistrement.
+     */
+    private Frame nextFrame() {
+        Frame frame;
+
+        do {
+            frame = null;
+
+            try {
+                frame = source.next(drone.now());
+            }
+            catch (Exception e) {
+                System.err.println("Impossible de lire l'enregistrement: " + e.getMessage());
+            }
+
+            if (frame == null) {
+                exhausted = true;
+                return null;
+            }
+
+            // Réduire l'image au niveau choisi selon le temps des détections précédentes.
+            if (resolution != null && resolution.getLevel() > 0)
+                frame = new Frame(frame.getId(), frame.getArrival(), frame.getTimestamp(), frame.getMat(), resolution.getLevel());
+
+            // Passer à l'image suivante si celle-ci est floue.
+            if (!quality.accept(frame)) {
+                frame.getMat().release();
+                frame = null;
+            }
+        } while (frame == null);
+
+        return frame;
+    }
+
+    /**
+     * Fonction qui note le temps d'une détection et libère son image.
+     * @param frame Frame, image analysée.
+     * @param start Long, moment en ns du début de la détection.
+     * @return Long, temps de la détection en ms, ajouté à l'horloge virtuelle.
+     */
+    private long detected(Frame frame, long start) {
+        long elapsed = System.nanoTime() - start;
+        DETECTION.record(elapsed);
+        frame.getMat().release();
+
+        if (resolution != null)
+            resolution.record(frame.getLevel(), elapsed);
+
+        return elapsed / 1000000;
+    }
+}
@@ -0,0 +1,130 @@
+package com.vais.mavicmissions.benchmark;
+
+import com.vais.mavicmissions.Enum.Shape;
+import com.vais.mavicmissions.services.Detector;
+import com.vais.mavicmissions.services.vision.ArrowOrientation;
+import com.vais.mavicmissions.services.vision.FrameContext;
+import com.vais.mavicmissions.services.vision.ImageProcessor;
+import com.vais.mavicmissions.services.vision.SignTemplates;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import nu.pattern.OpenCV;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui mesure le traitement complet d'une image par chaque objectif.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ObjectiveFrameBenchmark {
+    /**
+     * Int, nombre de coins cherchés par FollowLine pour trouver la direction de la ligne.
+     */
+    private static final int DIRECTION_DETECTION = 55;
+
+    /**
+     * ImageProcessor, service de traitement d'image.
+     */
+    private ImageProcessor processor;
+    /**
+     * SignTemplates, contours des patrons des pancartes.
+     */
+    private SignTemplates templates;
+    /**
+     * List<Mat>, images des pancartes et des flèches.
+     */
+    private List<Mat> signFrames;
+    /**
+     * List<Mat>, images de la ligne verte.
+     */
+    private List<Mat> lineFrames;
+    /**
+     * List<Mat>, images de la balle.
+     */
+    private List<Mat> ballFrames;
+    /**
+     * Int, compteur des images analysées.
+     */
+    private int next;
+
+    /**
+     * Méthode qui charge OpenCV, les patrons et les images.
+     */
+    @Setup
+    public void setup() {
+        OpenCV.loadLocally();
+
+        processor = new ImageProcessor();
+        templates = BenchmarkFrames.loadTemplates(processor);
+
+        signFrames = new ArrayList<>();
+        for (String sign : new String[] { "arrow", "u", "d", "h" })
+            signFrames.addAll(BenchmarkFrames.load(sign));
+
+        lineFrames = BenchmarkFrames.load("line");
+        ballFrames = BenchmarkFrames.load("ball");
+    }
+
+    /**
+     * Fonction qui retourne la prochaine image d'une liste, en boucle.
+     * @param frames List<Mat>, images à parcourir.
+     * @return FrameContext, résultats intermédiaires de la nouvelle image.
+     */
+    private FrameContext nextFrame(List<Mat> frames) {
+        next++;
+        return new FrameContext(frames.get(next % frames.size()));
+    }
+
+    /**
+     * Lecture d'une pancarte par DynamicParkour: contour, reconnaissance U/D/H, puis orientation de la flèche.
+     */
+    @Benchmark
+    public double dynamicParkour() {
+        MatOfPoint contour = Detector.findSign(processor, nextFrame(signFrames));
+
+        if (contour == null)
+            return Double.NaN;
+
+        Shape shape = Detector.detectShape(processor, templates, contour);
+
+        if (shape == Shape.ARROW) {
+            ArrowOrientation orientation = Detector.estimateArrowOrientation(contour);
+            return orientation.getAngle();
+        }
+
+        return shape.ordinal();
+    }
+
+    /**
+     * Recherche de la direction de la ligne verte par FollowLine.
+     */
+    @Benchmark
+    public Point[] followLine() {
+        return Detector.detectLine(processor, nextFrame(lineFrames), DIRECTION_DETECTION, processor.getProfile().getDirectionDistance());
+    }
+
+    /**
+     * Recherche de la balle par BallRescue.
+     */
+    @Benchmark
+    public Point ballRescue() {
+        Mat ballMask = Detector.filterBall(processor, nextFrame(ballFrames));
+        Point[] points = Detector.detectBall(processor, ballMask);
+
+        return points.length == 0 ? null : Detector.getAveragePoint(points);
+    }
+}
@@ -0,0 +1,350 @@
+package com.vais.mavicmissions.benchmark;
+
+import com.vais.mavicmissions.Enum.FlyInstruction;
+import com.vais.mavicmissions.Enum.LineDirection;
+import com.vais.mavicmissions.Enum.Shape;
+import com.vais.mavicmissions.services.Detector;
+import com.vais.mavicmissions.services.drone.AircraftInstruction;
+import com.vais.mavicmissions.services.mission.ParkourMission;
+import com.vais.mavicmissions.services.vision.FrameContext;
+import com.vais.mavicmissions.services.vision.ImageProcessor;
+import com.vais.mavicmissions.services.vision.SignTemplates;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import nu.pattern.OpenCV;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui vérifie que la précision et la latence de la détection ne régressent pas.
+ * Le traitement complet d'une image par chaque objectif est exécuté sur le corpus étiqueté,
+ * puis la précision et les latences p50 et p99 sont comparées à une référence enregistrée.
+ * La référence est remplacée avec -Dregression.update=true. Sans référence, la vérification échoue.
+ */
+public class RegressionHarness {
+    /**
+     * Double, écart maximum en degrées entre l'angle attendu et l'angle estimé d'une flèche.
+     */
+    private static final double ARROW_TOLERANCE = 20;
+    /**
+     * Double, écart maximum en pixels entre la position attendue et la position détectée de la balle.
+     */
+    private static final double BALL_TOLERANCE = 20;
+    /**
+     * Int, nombre de coins cherchés par FollowLine pour trouver la direction de la ligne.
+     */
+    private static final int DIRECTION_DETECTION = 55;
+    /**
+     * Int, nombre de passages sur le corpus avant les mesures.
+     */
+    private static final int WARMUP_PASSES = 5;
+    /**
+     * Int, nombre de passages mesurés sur le corpus.
+     */
+    private static final int MEASURED_PASSES = 20;
+    /**
+     * ForkJoinPool, thread qui estime l'orientation des flèches pendant la reconnaissance des pancartes, comme dans DynamicParkour.
+     */
+    private static final ForkJoinPool ARROWS = new ForkJoinPool(1);
+
+    /**
+     * Interface qui représente le traitement d'une image par un objectif.
+     */
+    private interface ObjectivePath {
+        /**
+         * Fonction qui traite une image et vérifie le résultat.
+         * @param frame LabelledFrame, image à traiter.
+         * @return Boolean, vrai si le résultat correspond à l'étiquette.
+         */
+        boolean run(LabelledFrame frame);
+    }
+
+    /**
+     * Classe qui représente le résultat d'un objectif sur le corpus.
+     */
+    private static class Result {
+        /**
+         * Int, nombre d'images étiquetées.
+         */
+        private int frames;
+        /**
+         * Double, proportion des images correctement détectées.
+         */
+        private double accuracy;
+        /**
+         * Double, latence médiane en ms.
+         */
+        private double p50;
+        /**
+         * Double, 99e centile de la latence en ms.
+         */
+        private double p99;
+    }
+
+    /**
+     * ImageProcessor, service de traitement d'image.
+     */
+    private final ImageProcessor processor;
+    /**
+     * SignTemplates, contours des patrons des pancartes.
+     */
+    private final SignTemplates templates;
+
+    /**
+     * Constructeur de la classe RegressionHarness, créé l'objet et initialise ses données membres.
+     */
+    private RegressionHarness() {
+        processor = new ImageProcessor();
+        templates = BenchmarkFrames.loadTemplates(processor);
+    }
+
+    /**
+     * Méthode qui exécute la vérification et termine avec un code d'erreur si une mesure a régressé.
+     * @param args String[], arguments ignorés.
+     */
+    public static void main(String[] args) throws IOException {
+        OpenCV.loadLocally();
+        RegressionHarness harness = new RegressionHarness();
+
+        // Exécuter chaque objectif sur ses images.
+        Properties measured = new Properties();
+        harness.measure(measured, "dynamicParkour", harness::dynamicParkour, "arrow", "u", "d", "h");
+        harness.measure(measured, "followLine", frame -> followLine(harness.processor, frame), "line");
+        harness.measure(measured, "ballRescue", frame -> ballRescue(harness.processor, frame), "ball");
+
+        File baselineFile = new File(System.getProperty("regression.baseline", "regression-baseline.properties"));
+
+        if (Boolean.getBoolean("regression.update")) {
+            // Garder les tolérances choisies pour la référence précédente.
+            if (baselineFile.isFile()) {
+                Properties previous = new Properties();
+                try (InputStream in = new FileInputStream(baselineFile)) {
+                    previous.load(in);
+                }
+                for (String key : previous.stringPropertyNames())
+                    if (key.startsWith("tolerance."))
+                        measured.setProperty(key, previous.getProperty(key));
+            }
+
+            try (OutputStream out = new FileOutputStream(baselineFile)) {
+                measured.store(out, "Référence de la vérification de régression de la détection");
+            }
+            System.out.println("Référence enregistrée: " + baselineFile.getPath());
+            return;
+        }
+
+        // Une référence absente ne doit pas devenir celle des mesures actuelles sans être revue.
+        if (!baselineFile.isFile()) {
+            System.out.println("Référence introuvable: " + baselineFile.getPath() + ", la créer avec -PupdateBaseline.");
+            System.exit(1);
+        }
+
+        Properties baseline = new Properties();
+        try (InputStream in = new FileInputStream(baselineFile)) {
+            baseline.load(in);
+        }
+
+        if (!compare(baseline, measured))
+            System.exit(1);
+    }
+
+    /**
+     * Méthode qui mesure la précision et la latence d'un objectif sur les images étiquetées de ses catégories.
+     * @param measured Properties, reçoit les mesures de l'objectif.
+     * @param objective String, nom de l'objectif.
+     * @param path ObjectivePath, traitement d'une image par l'objectif.
+     * @param categories String[], catégories des images de l'objectif.
+     */
+    private void measure(Properties measured, String objective, ObjectivePath path, String... categories) {
+        List<LabelledFrame> frames = new ArrayList<>();
+        for (String category : categories)
+            for (LabelledFrame frame : BenchmarkFrames.loadLabelled(category))
+                if (frame.getLabel() != null)
+                    frames.add(frame);
+
+        if (frames.isEmpty())
+            return;
+
+        for (int i = 0; i < WARMUP_PASSES; i++)
+            for (LabelledFrame frame : frames)
+                path.run(frame);
+
+        // Mesurer chaque image, la précision est prise au premier passage puisque la détection est déterministe.
+        long[] latencies = new long[frames.size() * MEASURED_PASSES];
+        int correct = 0, n = 0;
+        for (int pass = 0; pass < MEASURED_PASSES; pass++) {
+            for (LabelledFrame frame : frames) {
+                long start = System.nanoTime();
+                boolean success = path.run(frame);
+                latencies[n++] = System.nanoTime() - start;
+
+                if (pass == 0 && success)
+                    correct++;
+            }
+        }
+
+        Arrays.sort(latencies);
+        Result result = new Result();
+        result.frames = frames.size();
+        result.accuracy = (double)correct / frames.size();
+        result.p50 = latencies[(int)(latencies.length * 0.50)] / 1e6;
+        result.p99 = latencies[Math.min(latencies.length - 1, (int)(latencies.length * 0.99))] / 1e6;
+
+        measured.setProperty(objective + ".frames", String.valueOf(result.frames));
+        measured.setProperty(objective + ".accuracy", format(result.accuracy));
+        measured.setProperty(objective + ".p50", format(result.p50));
+        measured.setProperty(objective + ".p99", format(result.p99));
+    }
+
+    /**
+     * Fonction qui compare les mesures à la référence et affiche le rapport.
+     * @param baseline Properties, mesures de référence et tolérances.
+     * @param measured Properties, mesures actuelles.
+     * @return Boolean, faux si une mesure a régressé au-delà de la tolérance.
+     */
+    private static boolean compare(Properties baseline, Properties measured) {
+        double accuracyTolerance = Double.parseDouble(baseline.getProperty("tolerance.accuracy", "0.02"));
+        double latencyTolerance = Double.parseDouble(baseline.getProperty("tolerance.latency", "0.25"));
+        boolean passed = true;
+
+        System.out.println(String.format(Locale.ROOT, "%-16s %-9s %10s %10s %8s", "objectif", "mesure", "référence", "actuel", ""));
+        for (String objective : new String[] { "dynamicParkour", "followLine", "ballRescue" }) {
+            if (measured.getProperty(objective + ".accuracy") == null || baseline.getProperty(objective + ".accuracy") == null)
+                continue;
+
+            passed &= check(baseline, measured, objective, "accuracy", -accuracyTolerance, false);
+            passed &= check(baseline, measured, objective, "p50", latencyTolerance, true);
+            passed &= check(baseline, measured, objective, "p99", latencyTolerance, true);
+        }
+
+        System.out.println(passed ? "Aucune régression." : "Régression détectée.");
+        return passed;
+    }
+
+    /**
+     * Fonction qui vérifie une mesure par rapport à sa référence.
+     * @param baseline Properties, mesures de référence.
+     * @param measured Properties, mesures actuelles.
+     * @param objective String, nom de l'objectif.
+     * @param metric String, nom de la mesure.
+     * @param tolerance Double, écart permis, absolu pour la précision, relatif pour la latence.
+     * @param relative Boolean, si la tolérance est relative à la référence.
+     * @return Boolean, faux si la mesure a régressé.
+     */
+    private static boolean check(Properties baseline, Properties measured, String objective, String metric, double tolerance, boolean relative) {
+        double reference = Double.parseDouble(baseline.getProperty(objective + "." + metric));
+        double actual = Double.parseDouble(measured.getProperty(objective + "." + metric));
+
+        // La précision ne doit pas baisser, la latence ne doit pas augmenter.
+        boolean passed = relative ? actual <= reference * (1 + tolerance) : actual >= reference + tolerance;
+
+        System.out.println(String.format(Locale.ROOT, "%-16s %-9s %10.3f %10.3f %8s", objective, metric, reference, actual, passed ? "" : "ÉCHEC"));
+        return passed;
+    }
+
+    /**
+     * Fonction qui formate une mesure.
+     * @param value Double, mesure.
+     * @return String, mesure avec trois décimales.
+     */
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Lecture d'une pancarte par DynamicParkour: contour, puis ParkourMission.readInstruction, qui donne priorité aux pancartes U/D/H sur la flèche.
+     * @param frame LabelledFrame, image étiquetée U, D, H ou ARROW:angle.
+     * @return Boolean, vrai si l'instruction lue correspond à l'étiquette.
+     */
+    private boolean dynamicParkour(LabelledFrame frame) {
+        MatOfPoint contour = Detector.findSign(processor, new FrameContext(frame.getMat()));
+        String[] label = frame.getLabel().split(":");
+
+        if (contour == null)
+            return false;
+
+        AircraftInstruction instruction;
+        try {
+            instruction = ParkourMission.readInstruction(processor, templates, contour, ARROWS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+
+        if (instruction.getInstruction() != FlyInstruction.GO_TOWARDS)
+            return toShape(instruction.getInstruction()).name().equals(label[0]);
+        if (!label[0].equals(Shape.ARROW.name()))
+            return false;
+
+        double error = Math.abs(instruction.getAngle() - Double.parseDouble(label[1])) % 360;
+        return Math.min(error, 360 - error) <= ARROW_TOLERANCE;
+    }
+
+    /**
+     * Fonction qui retourne la pancarte qui donne une instruction.
+     * @param instruction FlyInstruction, instruction lue.
+     * @return Shape, pancarte de l'instruction, Shape.UNKNOWN si aucune instruction n'a été lue.
+     */
+    private static Shape toShape(FlyInstruction instruction) {
+        switch (instruction) {
+            case GO_UP:
+                return Shape.U;
+            case GO_DOWN:
+                return Shape.D;
+            case TAKEOFF_LAND:
+                return Shape.H;
+            case GO_TOWARDS:
+                return Shape.ARROW;
+            default:
+                return Shape.UNKNOWN;
+        }
+    }
+
+    /**
+     * Recherche de la direction de la ligne verte par FollowLine.
+     * @param processor ImageProcessor, service de traitement d'image, avec les limites de couleurs à évaluer.
+     * @param frame LabelledFrame, image étiquetée FRONT, RIGHT, LEFT ou NONE.
+     * @return Boolean, vrai si la direction détectée correspond à l'étiquette.
+     */
+    static boolean followLine(ImageProcessor processor, LabelledFrame frame) {
+        Mat mat = frame.getMat();
+        Point[] points = Detector.detectLine(processor, new FrameContext(mat), DIRECTION_DETECTION, processor.getProfile().getDirectionDistance());
+        LineDirection direction = Detector.detectLineDirection(points, Detector.getCenterPoint(mat));
+
+        return direction.name().equals(frame.getLabel());
+    }
+
+    /**
+     * Recherche de la balle par BallRescue.
+     * @param processor ImageProcessor, service de traitement d'image, avec les limites de couleurs à évaluer.
+     * @param frame LabelledFrame, image étiquetée x:y ou NONE.
+     * @return Boolean, vrai si la balle est trouvée à la position attendue, ou absente si elle est attendue absente.
+     */
+    static boolean ballRescue(ImageProcessor processor, LabelledFrame frame) {
+        Mat ballMask = Detector.filterBall(processor, new FrameContext(frame.getMat()));
+        Point ball = Detector.locateBall(processor, Detector.detectBall(processor, ballMask));
+
+        if (frame.getLabel().equals("NONE"))
+            return ball == null;
+        if (ball == null)
+            return false;
+
+        String[] label = frame.getLabel().split(":");
+        return Detector.getLength(ball, new Point(Double.parseDouble(label[0]), Double.parseDouble(label[1]))) <= BALL_TOLERANCE;
+    }
+}
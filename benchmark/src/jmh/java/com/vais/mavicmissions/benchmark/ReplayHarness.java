@@ -0,0 +1,95 @@
+package com.vais.mavicmissions.benchmark;
+
+import com.vais.mavicmissions.Enum.Shape;
+import com.vais.mavicmissions.services.Detector;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import com.vais.mavicmissions.services.vision.Frame;
+import com.vais.mavicmissions.services.vision.ImageProcessor;
+import com.vais.mavicmissions.services.vision.SignTemplates;
+import com.vais.mavicmissions.services.vision.VisionStreams;
+import org.opencv.core.MatOfPoint;
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import io.reactivex.functions.Function;
+import nu.pattern.OpenCV;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui rejoue un flux vidéo enregistré pendant un vol dans le pipeline de traitement d'image d'un objectif.
+ * Permet de reproduire et de mesurer un problème rencontré sur le terrain sans faire voler le drone.
+ * Usage: ./gradlew :benchmark:replay -Pvideo=video.h264v [-Pobjective=dynamicParkour|followLine|ballRescue] [-Pmax] [-Psize=1280x720]
+ */
+public class ReplayHarness {
+    /**
+     * Int, nombre de coins cherchés par FollowLine pour trouver la direction de la ligne.
+     */
+    private static final int DIRECTION_DETECTION = 55;
+
+    /**
+     * Méthode qui rejoue l'enregistrement et affiche le débit et les mesures du pipeline.
+     * @param args String[], enregistrement, objectif, "max" pour rejouer à vitesse maximum, taille des images (largeurxhauteur).
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: ReplayHarness <video.h264v> [objectif] [max|realtime] [1280x720]");
+            System.exit(2);
+        }
+
+        OpenCV.loadLocally();
+
+        File log = new File(args[0]);
+        String objective = args.length > 1 ? args[1] : "dynamicParkour";
+        boolean realTime = args.length <= 2 || !args[2].equals("max");
+        String[] size = (args.length > 3 ? args[3] : "1280x720").split("x");
+
+        Function<Frame, Object> detection = detection(objective);
+        AtomicLong decoded = new AtomicLong();
+        AtomicLong detected = new AtomicLong();
+
+        long start = System.nanoTime();
+        VideoReplay.frames(log, Integer.parseInt(size[0]), Integer.parseInt(size[1]), realTime)
+                .doOnNext(frame -> decoded.incrementAndGet())
+                .compose(VisionStreams.detect(frame -> {
+                    Object result = detection.apply(frame);
+                    frame.getMat().release();
+                    return result;
+                }))
+                .blockingSubscribe(result -> detected.incrementAndGet(), Throwable::printStackTrace);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format(Locale.ROOT, "%s, %s: %d images rejouées, %d détectées en %.1f s (%.1f images/s)",
+                objective, realTime ? "temps réel" : "vitesse maximum", decoded.get(), detected.get(), seconds, detected.get() / seconds));
+        System.out.println(Metrics.report());
+    }
+
+    /**
+     * Fonction qui retourne la détection d'un objectif, telle qu'exécutée sur chaque image pendant le vol.
+     * @param objective String, nom de l'objectif.
+     * @return Function<Frame, Object>, détection de l'objectif.
+     */
+    private static Function<Frame, Object> detection(String objective) {
+        ImageProcessor processor = new ImageProcessor();
+
+        switch (objective) {
+            case "followLine":
+                return frame -> Detector.detectLine(processor, frame.getContext(), DIRECTION_DETECTION, processor.getProfile().getDirectionDistance());
+            case "ballRescue":
+                return frame -> Detector.detectBall(processor, Detector.filterBall(processor, frame.getContext()));
+            case "dynamicParkour":
+                SignTemplates templates = BenchmarkFrames.loadTemplates(processor);
+                return frame -> {
+                    MatOfPoint contour = Detector.findSign(processor, frame.getContext());
+                    if (contour == null)
+                        return Shape.UNKNOWN;
+
+                    Shape shape = Detector.detectShape(processor, templates, contour);
+                    return shape == Shape.ARROW ? Detector.estimateArrowOrientation(contour) : shape;
+                };
+            default:
+                throw new IllegalArgumentException("Objectif inconnu: " + objective);
+        }
+    }
+}
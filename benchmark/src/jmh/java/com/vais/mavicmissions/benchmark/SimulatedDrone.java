@@ -0,0 +1,443 @@
+package com.vais.mavicmissions.benchmark;
+
+import com.vais.mavicmissions.services.mission.DroneBackend;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui simule le drone commandé par la logique d'un objectif, sur une horloge virtuelle.
+ * Les délais des commandes reprennent ceux d'AircraftController et de CameraController, mais aucune attente réelle n'est faite:
+ * l'horloge avance directement au prochain événement. Une mission de plusieurs minutes s'exécute donc en quelques secondes.
+ */
+public class SimulatedDrone implements DroneBackend {
+    /**
+     * Int, temps en ms attendu entre deux commandes (AircraftController.COMMAND_RESET).
+     */
+    private static final int COMMAND_RESET = 500;
+    /**
+     * Int, duré en ms d'une rotation du drone (AircraftController.ROTATION_DURATION).
+     */
+    private static final int ROTATION_DURATION = 1500;
+    /**
+     * Int, duré en ms du décollage (AircraftController.TAKEOFF_TIMEOUT).
+     */
+    private static final int TAKEOFF_DURATION = 7500;
+    /**
+     * Int, duré en ms de l'attérissage, deux fois AircraftController.COMMAND_TIMEOUT.
+     */
+    private static final int LANDING_DURATION = 10000;
+    /**
+     * Int, duré en ms d'un changement de zoom (CameraController.ZOOM_OPERATION_DELAY).
+     */
+    private static final int ZOOM_DURATION = 2500;
+    /**
+     * Float, hauteur en mètres du drone après le décollage.
+     */
+    private static final float TAKEOFF_HEIGHT = 1.2f;
+    /**
+     * Float, vitesse verticale en m/s du drone (AircraftController.MAXIMUM_VERTICAL_SPEED).
+     */
+    private static final float VERTICAL_SPEED = 1;
+
+    /**
+     * Classe qui représente une action à exécuter à un moment de l'horloge virtuelle.
+     */
+    private static class Event implements Comparable<Event> {
+        /**
+         * Long, moment en ms de l'action.
+         */
+        private final long time;
+        /**
+         * Long, ordre de création, départage les actions prévues au même moment.
+         */
+        private final long order;
+        /**
+         * Runnable, action à exécuter.
+         */
+        private final Runnable action;
+
+        /**
+         * Constructeur de la classe Event, créé l'objet et initialise ses données membres.
+         * @param time Long, moment en ms de l'action.
+         * @param order Long, ordre de création.
+         * @param action Runnable, action à exécuter.
+         */
+        private Event(long time, long order, Runnable action) {
+            this.time = time;
+            this.order = order;
+            this.action = action;
+        }
+
+        /**
+         * Fonction qui compare le moment de deux actions.
+         * @param other Event, autre action.
+         * @return Int, négatif si l'action est avant l'autre.
+         */
+        @Override
+        public int compareTo(Event other) {
+            int compare = Long.compare(time, other.time);
+            return compare != 0 ? compare : Long.compare(order, other.order);
+        }
+    }
+
+    /**
+     * PriorityQueue<Event>, actions en attente, triées par moment.
+     */
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    /**
+     * Map<String, Integer>, nombre de commandes reçues par nom de commande.
+     */
+    private final Map<String, Integer> commands = new TreeMap<>();
+
+    /**
+     * Long, moment actuel de l'horloge virtuelle en ms.
+     */
+    private long now;
+    /**
+     * Long, nombre d'actions créées.
+     */
+    private long eventCount;
+
+    /**
+     * Double, position en mètres du drone vers l'est.
+     */
+    private double x;
+    /**
+     * Double, position en mètres du drone vers le nord.
+     */
+    private double y;
+    /**
+     * Double, hauteur en mètres du drone.
+     */
+    private double height;
+    /**
+     * Int, direction du drone en degrés par rapport au nord.
+     */
+    private int heading;
+    /**
+     * Double, distance parcourue en mètres.
+     */
+    private double distance;
+    /**
+     * Float, vitesse en m/s des déplacements.
+     */
+    private float speed = SEEKING_SPEED;
+    /**
+     * Int, direction du déplacement en cours par rapport au drone, en degrés.
+     */
+    private int movingAngle;
+    /**
+     * Int, sens du déplacement en cours: 1 horizontal, 0 arrêté.
+     */
+    private int moving;
+    /**
+     * Int, sens du déplacement vertical en cours: 1 vers le haut, -1 vers le bas, 0 arrêté.
+     */
+    private int climbing;
+    /**
+     * Long, moment en ms de la dernière mise à jour de la position.
+     */
+    private long lastUpdate;
+
+    /**
+     * Int, angle du gimbal en degrés.
+     */
+    private int gimbal;
+    /**
+     * Double, facteur du zoom de la caméra.
+     */
+    private double zoom = 1;
+    /**
+     * Boolean, indique si le drone est en vol.
+     */
+    private boolean flying;
+
+    /**
+     * Méthode qui fait décoller le drone.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    public void takeOff(Runnable done) {
+        count("takeOff");
+        height = TAKEOFF_HEIGHT;
+        flying = true;
+        at(TAKEOFF_DURATION, done);
+    }
+
+    /**
+     * Méthode qui déplace le drone vers l'avant.
+     * @param time Int, duré en ms du déplacement.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    @Override
+    public void goForward(int time, Runnable done) {
+        count("goForward");
+        move(0, 0, time, done);
+    }
+
+    /**
+     * Méthode qui déplace le drone vers sa gauche.
+     * @param time Int, duré en ms du déplacement.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    @Override
+    public void goLeft(int time, Runnable done) {
+        count("goLeft");
+        move(ROTATION_LEFT, 0, time, done);
+    }
+
+    /**
+     * Méthode qui déplace le drone vers sa droite.
+     * @param time Int, duré en ms du déplacement.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    @Override
+    public void goRight(int time, Runnable done) {
+        count("goRight");
+        move(ROTATION_RIGHT, 0, time, done);
+    }
+
+    /**
+     * Méthode qui déplace le drone vers le haut.
+     * @param time Int, duré en ms du déplacement.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    @Override
+    public void goUp(int time, Runnable done) {
+        count("goUp");
+        move(0, 1, time, done);
+    }
+
+    /**
+     * Méthode qui déplace le drone vers le bas.
+     * @param time Int, duré en ms du déplacement.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    @Override
+    public void goDown(int time, Runnable done) {
+        count("goDown");
+        move(0, -1, time, done);
+    }
+
+    /**
+     * Méthode qui tourne le drone d'un angle par rapport à sa direction actuelle. Le déplacement en cours est arrêté.
+     * @param angle Int, angle en degrés.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    @Override
+    public void faceAngle(int angle, Runnable done) {
+        count("faceAngle");
+        halt();
+        heading = Math.floorMod(heading + angle + 180, 360) - 180;
+        at(ROTATION_DURATION, done);
+    }
+
+    /**
+     * Méthode qui arrête les mouvements du drone.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    @Override
+    public void stop(Runnable done) {
+        count("stop");
+        halt();
+        at(COMMAND_RESET, done);
+    }
+
+    /**
+     * Méthode qui fait attérir le drone.
+     * @param done Runnable, action à effectuer lorsque le drone a attéri.
+     */
+    @Override
+    public void land(Runnable done) {
+        count("land");
+        halt();
+        at(LANDING_DURATION, () -> {
+            height = 0;
+            flying = false;
+            if (done != null)
+                done.run();
+        });
+    }
+
+    /**
+     * Méthode qui change la vitesse des déplacements du drone.
+     * @param speed Float, vitesse en m/s.
+     */
+    @Override
+    public void setSpeed(float speed) {
+        update();
+        this.speed = speed;
+    }
+
+    /**
+     * Méthode qui oriente le gimbal de la caméra.
+     * @param angle Int, angle en degrés.
+     */
+    @Override
+    public void lookAtAngle(int angle) {
+        count("lookAtAngle");
+        gimbal = angle;
+    }
+
+    /**
+     * Méthode qui oriente le gimbal de la caméra directement vers le bas.
+     */
+    @Override
+    public void lookDown() {
+        lookAtAngle(-90);
+    }
+
+    /**
+     * Fonction qui indique si la caméra regarde directement vers le bas.
+     * @return Boolean, vrai si la caméra regarde vers le bas.
+     */
+    @Override
+    public boolean isLookingDown() {
+        return gimbal == -90;
+    }
+
+    /**
+     * Méthode qui change le zoom optique de la caméra.
+     * @param factor Double, facteur du zoom.
+     * @param done Runnable, action à effectuer lorsque le zoom est terminé.
+     */
+    @Override
+    public void setZoom(double factor, Runnable done) {
+        count("setZoom");
+        zoom = factor;
+        at(ZOOM_DURATION, done);
+    }
+
+    /**
+     * Méthode qui exécute une étape de l'objectif après un délai de l'horloge virtuelle.
+     * @param name String, nom de l'attente.
+     * @param step Runnable, étape à exécuter.
+     * @param delay Long, délai en ms.
+     */
+    @Override
+    public void schedule(String name, Runnable step, long delay) {
+        at(delay, step);
+    }
+
+    /**
+     * Fonction qui exécute la prochaine action en attente et avance l'horloge jusqu'à son moment.
+     * @return Boolean, faux s'il n'y a plus d'action en attente.
+     */
+    public boolean step() {
+        Event event = events.poll();
+        if (event == null)
+            return false;
+
+        now = Math.max(now, event.time);
+        event.action.run();
+        return true;
+    }
+
+    /**
+     * Méthode qui prévoit une action après un délai.
+     * @param delay Long, délai en ms.
+     * @param action Runnable, action à exécuter, ignorée si null.
+     */
+    private void at(long delay, Runnable action) {
+        if (action != null)
+            events.add(new Event(now + delay, eventCount++, action));
+    }
+
+    /**
+     * Méthode qui commence un déplacement. Comme sur le drone, les axes sont remis à zéro à la fin de la duré,
+     * même si une autre commande a été envoyée entre temps.
+     * @param angle Int, direction horizontale du déplacement par rapport au drone, en degrés.
+     * @param vertical Int, 1 vers le haut, -1 vers le bas, 0 pour un déplacement horizontal.
+     * @param time Int, duré en ms du déplacement.
+     * @param done Runnable, action à effectuer lorsque le drone est prêt.
+     */
+    private void move(int angle, int vertical, int time, Runnable done) {
+        update();
+
+        if (vertical != 0)
+            climbing = vertical;
+        else {
+            moving = 1;
+            movingAngle = angle;
+        }
+
+        events.add(new Event(now + time, eventCount++, () -> {
+            halt();
+            at(COMMAND_RESET, done);
+        }));
+    }
+
+    /**
+     * Méthode qui arrête le déplacement en cours.
+     */
+    private void halt() {
+        update();
+        moving = 0;
+        climbing = 0;
+    }
+
+    /**
+     * Méthode qui met à jour la position du drone selon le déplacement en cours depuis la dernière mise à jour.
+     */
+    private void update() {
+        double seconds = (now - lastUpdate) / 1000.0;
+        lastUpdate = now;
+
+        if (moving != 0) {
+            double direction = Math.toRadians(heading + movingAngle);
+            x += Math.sin(direction) * speed * seconds;
+            y += Math.cos(direction) * speed * seconds;
+            distance += speed * seconds;
+        }
+
+        if (climbing != 0)
+            height = Math.max(0, height + climbing * VERTICAL_SPEED * seconds);
+    }
+
+    /**
+     * Méthode qui compte une commande reçue.
+     * @param command String, nom de la commande.
+     */
+    private void count(String command) {
+        Integer count = commands.get(command);
+        commands.put(command, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Fonction qui retourne le moment actuel de l'horloge virtuelle.
+     * @return Long, moment en ms.
+     */
+    public long now() { return now; }
+
+    /**
+     * Fonction qui indique si le drone est en vol.
+     * @return Boolean, vrai si le drone est en vol.
+     */
+    public boolean isFlying() { return flying; }
+
+    /**
+     * Fonction qui retourne le facteur du zoom de la caméra.
+     * @return Double, facteur du zoom.
+     */
+    public double getZoom() { return zoom; }
+
+    /**
+     * Fonction qui résume l'état du drone et les commandes reçues.
+     * @return String, position, hauteur, direction, distance parcourue et nombre de commandes.
+     */
+    public String describe() {
+        update();
+        return String.format(Locale.ROOT, "position (%.1f, %.1f) m, hauteur %.1f m, direction %d°, distance %.1f m, commandes %s",
+                x, y, height, heading, distance, commands);
+    }
+
+    /**
+     * Fonction qui retourne le nombre de commandes reçues par nom de commande.
+     * @return Map<String, Integer>, nombre de commandes.
+     */
+    public Map<String, Integer> getCommands() { return commands; }
+}
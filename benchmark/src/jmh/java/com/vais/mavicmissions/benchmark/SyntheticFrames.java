@@ -0,0 +1,178 @@
+package com.vais.mavicmissions.benchmark;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui dessine des images étiquetées semblables à celles du flux vidéo, lorsqu'aucune image capturée n'est disponible.
+ * Le fond est bruité pour que les détections d'arrêtes et de contours aient un coût réaliste.
+ */
+public class SyntheticFrames {
+    /**
+     * Int, largeur des images.
+     */
+    private static final int WIDTH = 1280;
+    /**
+     * Int, hauteur des images.
+     */
+    private static final int HEIGHT = 720;
+    /**
+     * Int, nombre d'images par catégorie.
+     */
+    private static final int VARIANTS = 4;
+
+    /**
+     * Fonction qui dessine les images d'une catégorie.
+     * @param category String, catégorie des images.
+     * @param template Mat, patron de la pancarte à dessiner, null si la catégorie n'est pas une pancarte U, D ou H.
+     * @return List<LabelledFrame>, images de la catégorie (RGBA), étiquetées.
+     */
+    public static List<LabelledFrame> render(String category, Mat template) {
+        List<LabelledFrame> frames = new ArrayList<>();
+        Random random = new Random(category.hashCode());
+
+        for (int i = 0; i < VARIANTS; i++) {
+            Mat frame = background(random);
+            String label = null;
+
+            if (template != null) {
+                drawSign(frame, template, 220 + i * 40, random);
+                label = category.toUpperCase();
+            }
+            else if (category.equals("arrow"))
+                label = "ARROW:" + drawArrow(frame, 90 * i - 45 + random.nextInt(30), 200 + i * 20);
+            else if (category.equals("line"))
+                label = drawLine(frame, i, random);
+            else if (category.equals("ball"))
+                label = drawBall(frame, 40 + i * 25, random);
+
+            frames.add(new LabelledFrame(category + "/synthetic-" + i, frame, label));
+        }
+
+        return frames;
+    }
+
+    /**
+     * Fonction qui dessine un fond gris bruité.
+     * @param random Random, générateur de nombres aléatoires.
+     * @return Mat, fond de l'image (RGBA).
+     */
+    private static Mat background(Random random) {
+        Mat noise = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+        Core.setRNGSeed(random.nextInt());
+        Core.randn(noise, 110, 25);
+        Imgproc.GaussianBlur(noise, noise, new Size(3, 3), 0);
+
+        // Bruit gris, pour ne pas ajouter de couleurs détectées par les filtres HSV.
+        Mat frame = new Mat();
+        Imgproc.cvtColor(noise, frame, Imgproc.COLOR_GRAY2RGBA);
+        return frame;
+    }
+
+    /**
+     * Méthode qui dessine une pancarte blanche portant un patron.
+     * @param frame Mat, image à modifier.
+     * @param template Mat, patron de la pancarte (RGBA).
+     * @param size Int, côté de la pancarte en pixels.
+     * @param random Random, générateur de nombres aléatoires.
+     */
+    private static void drawSign(Mat frame, Mat template, int size, Random random) {
+        int x = 100 + random.nextInt(WIDTH - size - 200);
+        int y = 50 + random.nextInt(HEIGHT - size - 100);
+        Rect board = new Rect(x, y, size, size);
+        Imgproc.rectangle(frame, board, new Scalar(235, 235, 235, 255), -1);
+
+        // Copier les pixels opaques du patron sur la pancarte.
+        Mat scaled = new Mat();
+        Imgproc.resize(template, scaled, new Size(size, size));
+        List<Mat> channels = new ArrayList<>();
+        Core.split(scaled, channels);
+        scaled.copyTo(frame.submat(board), channels.get(3));
+    }
+
+    /**
+     * Méthode qui dessine une flèche noire sur une pancarte blanche.
+     * @param frame Mat, image à modifier.
+     * @param angle Int, angle de la flèche en degrées, 0 pointe vers le haut.
+     * @param size Int, longueur de la flèche en pixels.
+     * @return Int, angle de la flèche dessinée.
+     */
+    private static int drawArrow(Mat frame, int angle, int size) {
+        Point center = new Point(WIDTH / 2.0, HEIGHT / 2.0);
+        Imgproc.rectangle(frame, new Point(center.x - size * 0.75, center.y - size * 0.75),
+                new Point(center.x + size * 0.75, center.y + size * 0.75), new Scalar(235, 235, 235, 255), -1);
+
+        // Flèche pointant vers le haut, centrée sur l'origine.
+        double[][] shape = { { 0, -0.5 }, { 0.3, -0.1 }, { 0.1, -0.1 }, { 0.1, 0.5 }, { -0.1, 0.5 }, { -0.1, -0.1 }, { -0.3, -0.1 } };
+        double radians = Math.toRadians(angle);
+        Point[] points = new Point[shape.length];
+        for (int i = 0; i < shape.length; i++) {
+            double x = shape[i][0] * size, y = shape[i][1] * size;
+            points[i] = new Point(center.x + x * Math.cos(radians) - y * Math.sin(radians),
+                    center.y + x * Math.sin(radians) + y * Math.cos(radians));
+        }
+
+        Imgproc.fillPoly(frame, Collections.singletonList(new MatOfPoint(points)), new Scalar(15, 15, 15, 255));
+        return angle;
+    }
+
+    /**
+     * Méthode qui dessine une ligne verte qui traverse l'image et tourne.
+     * @param frame Mat, image à modifier.
+     * @param variant Int, numéro de l'image, change la direction du virage.
+     * @param random Random, générateur de nombres aléatoires.
+     * @return String, direction de la ligne après le virage.
+     */
+    private static String drawLine(Mat frame, int variant, Random random) {
+        Point start = new Point(WIDTH / 2.0 + random.nextInt(100) - 50, HEIGHT);
+        Point turn = new Point(WIDTH / 2.0, HEIGHT / 2.0);
+        Point end;
+        String direction;
+
+        if (variant % 3 == 0) {
+            end = new Point(WIDTH / 2.0, 0);
+            direction = "FRONT";
+        }
+        else if (variant % 3 == 1) {
+            end = new Point(WIDTH, HEIGHT / 2.0);
+            direction = "RIGHT";
+        }
+        else {
+            end = new Point(0, HEIGHT / 2.0);
+            direction = "LEFT";
+        }
+
+        Scalar green = new Scalar(40, 170, 70, 255);
+        Imgproc.line(frame, start, turn, green, 40);
+        Imgproc.line(frame, turn, end, green, 40);
+        return direction;
+    }
+
+    /**
+     * Méthode qui dessine une balle jaune.
+     * @param frame Mat, image à modifier.
+     * @param radius Int, rayon de la balle en pixels.
+     * @param random Random, générateur de nombres aléatoires.
+     * @return String, position du centre de la balle (x:y).
+     */
+    private static String drawBall(Mat frame, int radius, Random random) {
+        Point center = new Point(radius + random.nextInt(WIDTH - radius * 2), radius + random.nextInt(HEIGHT - radius * 2));
+        Imgproc.circle(frame, center, radius, new Scalar(225, 205, 35, 255), -1);
+        Imgproc.circle(frame, center, radius, new Scalar(170, 200, 40, 255), 4);
+        return (int)center.x + ":" + (int)center.y;
+    }
+}
@@ -0,0 +1,293 @@
+package com.vais.mavicmissions.benchmark;
+
+import com.vais.mavicmissions.services.recorder.VideoTap;
+import com.vais.mavicmissions.services.vision.Frame;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import io.reactivex.Flowable;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui rejoue un flux vidéo enregistré par VideoTap sous la forme d'un flux d'images, comme celui de CameraController.
+ * Le flux H.264 est décodé par ffmpeg, qui doit être installé: la version d'OpenCV pour ordinateur ne décode pas le H.264.
+ * En temps réel, les images sont émises au rythme de leur arrivée pendant le vol et celles que le pipeline ne peut pas
+ * recevoir sont abandonnées, comme sur le drone. Sinon, chaque image est décodée dès que le pipeline la demande.
+ */
+public class VideoReplay {
+    /**
+     * Long, marque de fin des moments d'arrivée des images.
+     */
+    private static final long END = Long.MIN_VALUE;
+
+    /**
+     * File, enregistrement du flux vidéo.
+     */
+    private final File log;
+    /**
+     * Int, largeur en pixels des images décodées.
+     */
+    private final int width;
+    /**
+     * Int, hauteur en pixels des images décodées.
+     */
+    private final int height;
+
+    /**
+     * Process, processus ffmpeg qui décode le flux.
+     */
+    private Process decoder;
+    /**
+     * DataInputStream, images décodées par ffmpeg, en RGBA.
+     */
+    private DataInputStream decoded;
+    /**
+     * BlockingQueue<Long>, moments en ns de l'arrivée pendant le vol de chaque image envoyée au décodeur.
+     */
+    private final BlockingQueue<Long> arrivals;
+    /**
+     * Byte[], pixels de l'image en cours de lecture.
+     */
+    private final byte[] pixels;
+    /**
+     * Long, numéro de la dernière image émise.
+     */
+    private long frameCount;
+    /**
+     * Long, moment en ns de l'arrivée pendant le vol de la première image, 0 avant la première image.
+     */
+    private long firstArrival;
+    /**
+     * Long, moment en ns de l'arrivée pendant le vol de la dernière image émise.
+     */
+    private long lastArrival;
+    /**
+     * Long, moment en ns de l'émission de la première image.
+     */
+    private long firstEmission;
+
+    /**
+     * Constructeur de la classe VideoReplay, créé l'objet et initialise ses données membres.
+     * @param log File, enregistrement du flux vidéo.
+     * @param width Int, largeur en pixels des images décodées.
+     * @param height Int, hauteur en pixels des images décodées.
+     */
+    VideoReplay(File log, int width, int height) {
+        this.log = log;
+        this.width = width;
+        this.height = height;
+
+        arrivals = new LinkedBlockingQueue<>();
+        pixels = new byte[width * height * 4];
+    }
+
+    /**
+     * Fonction qui créé le flux des images d'un enregistrement. Le décodage commence à l'abonnement.
+     * @param log File, enregistrement du flux vidéo.
+     * @param width Int, largeur en pixels des images décodées.
+     * @param height Int, hauteur en pixels des images décodées.
+     * @param realTime Boolean, vrai pour émettre les images au rythme du vol, faux pour les émettre dès qu'elles sont demandées.
+     * @return Flowable<Frame>, flux des images (RGBA).
+     */
+    public static Flowable<Frame> frames(File log, int width, int height, boolean realTime) {
+        Flowable<Frame> frames = Flowable.using(
+                () -> new VideoReplay(log, width, height).open(),
+                replay -> Flowable.generate(emitter -> {
+                    Frame frame = replay.next(realTime);
+
+                    if (frame != null)
+                        emitter.onNext(frame);
+                    else
+                        emitter.onComplete();
+                }),
+                VideoReplay::close);
+
+        // En temps réel, la source n'attend pas le pipeline.
+        return realTime ? frames.onBackpressureLatest() : frames;
+    }
+
+    /**
+     * Fonction qui démarre ffmpeg et le thread qui lui envoie le flux enregistré.
+     * @return VideoReplay, l'objet lui-même.
+     * @throws IOException si ffmpeg ne peut pas être démarré.
+     */
+    VideoReplay open() throws IOException {
+        decoder = new ProcessBuilder("ffmpeg", "-loglevel", "error", "-f", "h264", "-i", "pipe:0",
+                "-vsync", "0", "-f", "rawvideo", "-pix_fmt", "rgba", "-s", width + "x" + height, "pipe:1")
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        decoded = new DataInputStream(new BufferedInputStream(decoder.getInputStream(), pixels.length));
+
+        Thread feeder = new Thread(this::feed, "video-replay");
+        feeder.setDaemon(true);
+        feeder.start();
+
+        return this;
+    }
+
+    /**
+     * Méthode qui envoie les paquets enregistrés au décodeur et note le moment d'arrivée de chaque image.
+     */
+    private void feed() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(log)));
+             OutputStream out = decoder.getOutputStream()) {
+            // Lire l'entête.
+            if (in.readInt() != VideoTap.MAGIC || in.readInt() != VideoTap.VERSION)
+                throw new IOException(log + " n'est pas un enregistrement du flux vidéo");
+            in.skipBytes(VideoTap.HEADER_SIZE - 8);
+
+            FrameSplitter splitter = new FrameSplitter();
+            byte[] packet = new byte[0];
+
+            try {
+                while (true) {
+                    long arrival = in.readLong();
+                    int size = in.readInt();
+
+                    if (packet.length < size)
+                        packet = new byte[size];
+                    in.readFully(packet, 0, size);
+
+                    // Chaque image commencée dans le paquet arrive au moment du paquet.
+                    for (int i = splitter.count(packet, size); i > 0; i--)
+                        arrivals.add(arrival);
+
+                    out.write(packet, 0, size);
+                }
+            }
+            catch (EOFException e) {
+                // Fin de l'enregistrement.
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Impossible de lire " + log + ": " + e.getMessage());
+        }
+        finally {
+            arrivals.add(END);
+        }
+    }
+
+    /**
+     * Fonction qui lit la prochaine image décodée.
+     * @param realTime Boolean, vrai pour attendre le moment d'arrivée de l'image pendant le vol.
+     * @return Frame, image décodée, null à la fin de l'enregistrement.
+     * @throws IOException si le décodeur ne peut pas être lu.
+     * @throws InterruptedException si le thread est interrompu.
+     */
+    Frame next(boolean realTime) throws IOException, InterruptedException {
+        try {
+            decoded.readFully(pixels);
+        }
+        catch (EOFException e) {
+            return null;
+        }
+
+        // Le décodeur peut produire une image dont le début n'a pas été reconnu, elle garde alors le moment de la précédente.
+        Long next = arrivals.poll();
+        long arrival = next == null || next == END ? lastArrival : next;
+        lastArrival = arrival;
+
+        if (firstArrival == 0) {
+            firstArrival = arrival;
+            firstEmission = System.nanoTime();
+        }
+
+        // Attendre le moment de l'image, relatif à la première image.
+        if (realTime) {
+            long wait = firstEmission + (arrival - firstArrival) - System.nanoTime();
+            if (wait > 0)
+                TimeUnit.NANOSECONDS.sleep(wait);
+        }
+
+        Mat mat = new Mat(height, width, CvType.CV_8UC4);
+        mat.put(0, 0, pixels);
+
+        long now = System.nanoTime();
+        return new Frame(++frameCount, now, now, mat);
+    }
+
+    /**
+     * Fonction qui retourne le temps écoulé pendant le vol entre la première image et la dernière image lue.
+     * @return Long, temps écoulé en ms.
+     */
+    long elapsed() {
+        return (lastArrival - firstArrival) / 1000000;
+    }
+
+    /**
+     * Méthode qui arrête le décodeur.
+     */
+    void close() {
+        decoder.destroy();
+
+        try {
+            decoded.close();
+        }
+        catch (IOException e) {
+            // Le décodeur est déjà arrêté.
+        }
+    }
+
+    /**
+     * Classe qui compte les images qui commencent dans les paquets d'un flux H.264 Annex B.
+     * Une image commence par une tranche (NAL 1 ou 5) dont le premier macrobloc est 0.
+     * Les codes de début coupés entre deux paquets sont reconnus.
+     */
+    private static class FrameSplitter {
+        /**
+         * Int, nombre d'octets nuls consécutifs lus.
+         */
+        private int zeros;
+        /**
+         * Int, octet attendu: 0 aucun, 1 entête d'un NAL, 2 premier octet d'une tranche.
+         */
+        private int expected;
+
+        /**
+         * Fonction qui compte les images qui commencent dans un paquet.
+         * @param bytes Byte[], données du paquet.
+         * @param size Int, taille des données.
+         * @return Int, nombre d'images commencées.
+         */
+        private int count(byte[] bytes, int size) {
+            int frames = 0;
+
+            for (int i = 0; i < size; i++) {
+                int b = bytes[i] & 0xFF;
+
+                if (expected == 1) {
+                    int type = b & 0x1F;
+                    expected = type == 1 || type == 5 ? 2 : 0;
+                    zeros = 0;
+                }
+                else if (expected == 2) {
+                    // first_mb_in_slice vaut 0 si son code Exp-Golomb commence par 1.
+                    if ((b & 0x80) != 0)
+                        frames++;
+                    expected = 0;
+                    zeros = b == 0 ? 1 : 0;
+                }
+                else if (b == 0)
+                    zeros++;
+                else {
+                    if (b == 1 && zeros >= 2)
+                        expected = 1;
+                    zeros = 0;
+                }
+            }
+
+            return frames;
+        }
+    }
+}
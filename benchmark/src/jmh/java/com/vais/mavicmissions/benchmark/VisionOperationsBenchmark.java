@@ -0,0 +1,115 @@
+package com.vais.mavicmissions.benchmark;
+
+import com.vais.mavicmissions.Enum.Color;
+import com.vais.mavicmissions.Enum.Shape;
+import com.vais.mavicmissions.services.Detector;
+import com.vais.mavicmissions.services.vision.FrameContext;
+import com.vais.mavicmissions.services.vision.ImageProcessor;
+import com.vais.mavicmissions.services.vision.SignTemplates;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import nu.pattern.OpenCV;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui mesure chaque opération de traitement d'image sur les images d'une catégorie.
+ * Chaque appel utilise un nouveau FrameContext, les résultats intermédiaires ne sont donc pas réutilisés d'un appel à l'autre.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VisionOperationsBenchmark {
+    /**
+     * String, catégorie des images analysées.
+     */
+    @Param({ "arrow", "u", "d", "h", "line", "ball" })
+    public String category;
+
+    /**
+     * ImageProcessor, service de traitement d'image.
+     */
+    private ImageProcessor processor;
+    /**
+     * SignTemplates, contours des patrons des pancartes.
+     */
+    private SignTemplates templates;
+    /**
+     * List<Mat>, images de la catégorie.
+     */
+    private List<Mat> frames;
+    /**
+     * List<MatOfPoint>, plus gros contour de chaque image, pour mesurer la reconnaissance seule.
+     */
+    private List<MatOfPoint> contours;
+    /**
+     * Int, index de la prochaine image analysée.
+     */
+    private int next;
+
+    /**
+     * Méthode qui charge OpenCV, les patrons et les images.
+     */
+    @Setup
+    public void setup() {
+        OpenCV.loadLocally();
+
+        processor = new ImageProcessor();
+        templates = BenchmarkFrames.loadTemplates(processor);
+        frames = BenchmarkFrames.load(category);
+
+        contours = new ArrayList<>();
+        for (Mat frame : frames) {
+            MatOfPoint contour = Detector.findSign(processor, new FrameContext(frame));
+            if (contour != null)
+                contours.add(contour);
+        }
+    }
+
+    /**
+     * Fonction qui retourne la prochaine image à analyser, en boucle.
+     * @return Mat, image à analyser.
+     */
+    private Mat nextFrame() {
+        next = (next + 1) % frames.size();
+        return frames.get(next);
+    }
+
+    @Benchmark
+    public Mat prepareContourDetection() {
+        return processor.prepareContourDetection(new FrameContext(nextFrame()));
+    }
+
+    @Benchmark
+    public Mat filterColor() {
+        return processor.filterColor(new FrameContext(nextFrame()), Color.LINE_GREEN);
+    }
+
+    @Benchmark
+    public Shape detectShape() {
+        if (contours.isEmpty())
+            return Shape.UNKNOWN;
+
+        next = (next + 1) % contours.size();
+        return Detector.detectShape(processor, templates, contours.get(next));
+    }
+
+    @Benchmark
+    public Point[] detectBall() {
+        Mat ballMask = Detector.filterBall(processor, new FrameContext(nextFrame()));
+        return Detector.detectBall(processor, ballMask);
+    }
+}
@@ -0,0 +1,109 @@
+package com.vais.mavicmissions.services.recorder;
+
+import java.io.DataInputStream;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Classe qui convertit un enregistrement de vol en fichiers CSV, un par type d'enregistrement.
+ * S'exécute sur un ordinateur: java FlightLogDecoder flight.bin [dossier], ou ./gradlew :benchmark:decodeFlight -Pflight=flight.bin.
+ * Gardée dans le module benchmark, avec le même paquet que FlightRecord, pour ne pas être livrée dans l'application.
+ */
+public class FlightLogDecoder {
+    /**
+     * Méthode principale, convertit le fichier donné en CSV.
+     * @param args String[], fichier d'enregistrement, puis dossier de sortie (par défaut, le dossier du fichier).
+     * @throws IOException si un fichier ne peut pas être lu ou écrit.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: FlightLogDecoder <flight.bin> [dossier]");
+            System.exit(2);
+        }
+
+        File input = new File(args[0]);
+        File output = args.length > 1 ? new File(args[1]) : input.getAbsoluteFile().getParentFile();
+
+        for (File file : decode(input, output))
+            System.out.println(file);
+    }
+
+    /**
+     * Fonction qui convertit un enregistrement de vol en fichiers CSV nommés <enregistrement>-<type>.csv.
+     * Le temps de chaque ligne est donné en secondes depuis le début de l'enregistrement et en ms depuis l'époque.
+     * @param input File, enregistrement de vol.
+     * @param output File, dossier où écrire les fichiers CSV.
+     * @return File[], fichiers écrits.
+     * @throws IOException si l'enregistrement n'est pas valide ou qu'un fichier ne peut pas être écrit.
+     */
+    public static File[] decode(File input, File output) throws IOException {
+        String base = input.getName().replaceFirst("\\.[^.]*$", "");
+        Map<Integer, PrintWriter> writers = new TreeMap<>();
+        Map<Integer, File> files = new TreeMap<>();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(input)))) {
+            // Lire l'entête.
+            if (in.readInt() != FlightRecord.MAGIC)
+                throw new IOException(input + " n'est pas un enregistrement de vol");
+
+            int version = in.readInt();
+            int recordSize = in.readInt();
+            int count = in.readInt();
+            long startMillis = in.readLong();
+            long startNanos = in.readLong();
+
+            if (version != FlightRecord.VERSION || recordSize != FlightRecord.RECORD_SIZE)
+                throw new IOException("Version " + version + " du format non supportée");
+
+            in.skipBytes(FlightRecord.HEADER_SIZE - 32);
+
+            // Lire les enregistrements. Le nombre de l'entête limite la lecture aux enregistrements complets.
+            try {
+                for (int i = 0; i < count; i++) {
+                    int type = in.readInt();
+                    int code = in.readInt();
+                    long timestamp = in.readLong();
+
+                    PrintWriter writer = writers.get(type);
+                    if (writer == null) {
+                        File file = new File(output, base + "-" + FlightRecord.getTypeName(type) + ".csv");
+                        writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8")));
+                        writer.println("time_s,epoch_ms,code," + String.join(",", FlightRecord.getColumns(type)));
+
+                        writers.put(type, writer);
+                        files.put(type, file);
+                    }
+
+                    double elapsed = (timestamp - startNanos) / 1e9;
+                    StringBuilder line = new StringBuilder(String.format(Locale.US, "%.6f,%d,%d", elapsed, startMillis + (long)(elapsed * 1000), code));
+                    for (int v = 0; v < FlightRecord.VALUE_COUNT; v++)
+                        line.append(String.format(Locale.US, ",%.6g", in.readDouble()));
+
+                    writer.println(line);
+                }
+            }
+            catch (EOFException e) {
+                System.err.println("Enregistrement tronqué, les derniers enregistrements sont ignorés");
+            }
+        }
+        finally {
+            for (PrintWriter writer : writers.values())
+                writer.close();
+        }
+
+        return files.values().toArray(new File[0]);
+    }
+}
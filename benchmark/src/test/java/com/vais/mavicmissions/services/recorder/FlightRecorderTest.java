@@ -0,0 +1,210 @@
+package com.vais.mavicmissions.services.recorder;
+
+import com.vais.mavicmissions.services.metrics.Counter;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Tests aller-retour de FlightRecorder et FlightLogDecoder: enregistrements écrits, puis relus dans les fichiers CSV.
+ */
+public class FlightRecorderTest {
+    /**
+     * Int, nombre d'enregistrements du tampon de FlightRecorder.
+     */
+    private static final int CAPACITY = 1 << 13;
+    /**
+     * Int, nombre d'enregistrements d'un segment du fichier.
+     */
+    private static final int SEGMENT_RECORDS = 1 << 14;
+
+    /**
+     * Counter, enregistrements abandonnés par FlightRecorder.
+     */
+    private final Counter dropped = Metrics.counter("recorder.dropped");
+    /**
+     * Counter, enregistrements écrits par FlightRecorder.
+     */
+    private final Counter written = Metrics.counter("recorder.written");
+    /**
+     * File, dossier temporaire du test.
+     */
+    private File folder;
+
+    @Before
+    public void createFolder() throws IOException {
+        folder = Files.createTempDirectory("flight").toFile();
+    }
+
+    @After
+    public void deleteFolder() throws IOException {
+        FlightRecorder.stop();
+
+        File[] files = folder.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        folder.delete();
+    }
+
+    @Test
+    public void recordingLargerThanASegmentIsDecoded() throws IOException, InterruptedException {
+        File flight = new File(folder, "flight.bin");
+        int records = SEGMENT_RECORDS + SEGMENT_RECORDS / 4;
+        long droppedBefore = dropped.get();
+        long writtenBefore = written.get();
+
+        FlightRecorder.start(flight);
+        for (int i = 0; i < records; i++) {
+            FlightRecorder.recordSetpoint(i, -i, 0.5f, 0, i % 100);
+
+            // Laisser le thread d'écriture rattraper le tampon pour ne rien abandonner.
+            if (i % (CAPACITY / 2) == CAPACITY / 2 - 1)
+                awaitWritten(writtenBefore + i + 1);
+        }
+        FlightRecorder.recordState(FlightRecord.STATE_LANDED, 1.5, 0);
+        FlightRecorder.stop();
+
+        assertEquals(droppedBefore, dropped.get());
+        assertFalse(FlightRecorder.isRecording());
+
+        // L'entête compte tous les enregistrements, et le dernier segment est coupé après le dernier.
+        assertEquals(records + 1, readHeaderCount(flight));
+        assertEquals(FlightRecord.HEADER_SIZE + (long)(records + 1) * FlightRecord.RECORD_SIZE, flight.length());
+
+        File[] files = FlightLogDecoder.decode(flight, folder);
+        assertEquals(2, files.length);
+
+        List<String> setpoints = readLines(new File(folder, "flight-setpoint.csv"));
+        assertEquals("time_s,epoch_ms,code,pitch,roll,yaw,throttle,age_ms,unused", setpoints.get(0));
+        assertEquals(records + 1, setpoints.size());
+
+        double previous = 0;
+        for (int i = 0; i < records; i++) {
+            String[] columns = setpoints.get(i + 1).split(",");
+            assertEquals(9, columns.length);
+
+            double time = Double.parseDouble(columns[0]);
+            assertTrue("Temps croissant à " + i, time >= previous);
+            previous = time;
+
+            assertEquals(i, Double.parseDouble(columns[3]), 0);
+            assertEquals(-i, Double.parseDouble(columns[4]), 0);
+            assertEquals(0.5, Double.parseDouble(columns[5]), 0);
+            assertEquals(i % 100, Double.parseDouble(columns[7]), 0);
+        }
+
+        List<String> states = readLines(new File(folder, "flight-state.csv"));
+        assertEquals(2, states.size());
+        String[] state = states.get(1).split(",");
+        assertEquals(FlightRecord.STATE_LANDED, Integer.parseInt(state[2]));
+        assertEquals(1.5, Double.parseDouble(state[3]), 0);
+    }
+
+    @Test
+    public void fullBufferDropsNewRecords() throws IOException {
+        File flight = new File(folder, "full.bin");
+        int extra = 17;
+        long droppedBefore = dropped.get();
+
+        // Sans thread d'écriture, rien ne libère le tampon avant stop().
+        FlightRecorder.open(flight);
+        for (int i = 0; i < CAPACITY + extra; i++)
+            FlightRecorder.recordDetection(i, 0, 0, 0, 0);
+        FlightRecorder.stop();
+
+        assertEquals(droppedBefore + extra, dropped.get());
+        assertEquals(CAPACITY, readHeaderCount(flight));
+
+        FlightLogDecoder.decode(flight, folder);
+        List<String> detections = readLines(new File(folder, "full-detection.csv"));
+        assertEquals(CAPACITY + 1, detections.size());
+
+        // Les premiers enregistrements sont gardés, les derniers sont abandonnés.
+        assertEquals(0, Integer.parseInt(detections.get(1).split(",")[2]));
+        assertEquals(CAPACITY - 1, Integer.parseInt(detections.get(CAPACITY).split(",")[2]));
+    }
+
+    @Test
+    public void recordsAreIgnoredWhenNotRecording() throws IOException {
+        File flight = new File(folder, "empty.bin");
+
+        FlightRecorder.recordTelemetry(10, 0, 0, 0, 0, true);
+        FlightRecorder.start(flight);
+        FlightRecorder.stop();
+        FlightRecorder.recordTelemetry(10, 0, 0, 0, 0, true);
+
+        assertEquals(0, readHeaderCount(flight));
+        assertEquals(FlightRecord.HEADER_SIZE, flight.length());
+        assertEquals(0, FlightLogDecoder.decode(flight, folder).length);
+    }
+
+    @Test
+    public void truncatedFileKeepsCompleteRecords() throws IOException {
+        File flight = new File(folder, "cut.bin");
+
+        FlightRecorder.open(flight);
+        for (int i = 0; i < 10; i++)
+            FlightRecorder.recordState(FlightRecord.STATE_INSTRUCTION, i, 0);
+        FlightRecorder.stop();
+
+        // Couper le fichier au milieu du huitième enregistrement, l'entête compte toujours 10 enregistrements.
+        try (RandomAccessFile file = new RandomAccessFile(flight, "rw")) {
+            file.setLength(FlightRecord.HEADER_SIZE + 7L * FlightRecord.RECORD_SIZE + FlightRecord.RECORD_SIZE / 2);
+        }
+
+        FlightLogDecoder.decode(flight, folder);
+        List<String> states = readLines(new File(folder, "cut-state.csv"));
+        assertEquals(8, states.size());
+        assertEquals(6, Double.parseDouble(states.get(7).split(",")[3]), 0);
+    }
+
+    /**
+     * Méthode qui attend que le thread d'écriture ait écrit un nombre d'enregistrements.
+     * @param count Long, valeur attendue du compteur "recorder.written".
+     * @throws InterruptedException si le test est interrompu.
+     */
+    private void awaitWritten(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+
+        while (written.get() < count) {
+            assertTrue("Le thread d'écriture ne progresse pas", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Fonction qui lit le nombre d'enregistrements noté dans l'entête d'un fichier.
+     * @param flight File, enregistrement de vol.
+     * @return Int, nombre d'enregistrements.
+     * @throws IOException si le fichier ne peut pas être lu.
+     */
+    private static int readHeaderCount(File flight) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(flight, "r")) {
+            file.seek(FlightRecord.COUNT_OFFSET);
+            return file.readInt();
+        }
+    }
+
+    /**
+     * Fonction qui lit les lignes d'un fichier CSV.
+     * @param file File, fichier à lire.
+     * @return List<String>, lignes du fichier, entête comprise.
+     * @throws IOException si le fichier ne peut pas être lu.
+     */
+    private static List<String> readLines(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+}
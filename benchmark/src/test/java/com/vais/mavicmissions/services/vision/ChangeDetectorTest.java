@@ -0,0 +1,126 @@
+package com.vais.mavicmissions.services.vision;
+
+import com.vais.mavicmissions.Enum.FlyInstruction;
+import com.vais.mavicmissions.services.drone.AircraftInstruction;
+import com.vais.mavicmissions.services.metrics.Metrics;
+import com.vais.mavicmissions.services.mission.ParkourMission;
+import nu.pattern.OpenCV;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Tests de la réutilisation des résultats de ChangeDetector, avec des images dont la miniature change sous ou au-dessus du seuil
+ * du profil (12 par défaut).
+ */
+public class ChangeDetectorTest {
+    /**
+     * Int, niveau de gris de l'image de référence.
+     */
+    private static final int GRAY = 100;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        OpenCV.loadLocally();
+    }
+
+    @Test
+    public void similarFrameReusesTheStoredResult() {
+        ChangeDetector<String> detector = new ChangeDetector<>(new ImageProcessor(), "test.similar");
+
+        assertNull(detector.getCached(frame(GRAY, false)));
+        detector.store(frame(GRAY, false), "résultat");
+
+        // Toute l'image est plus claire, mais de moins que le seuil.
+        assertEquals("résultat", detector.getCached(frame(GRAY + 8, false)));
+        assertEquals("résultat", detector.getCached(frame(GRAY, false)));
+
+        assertEquals(2, Metrics.counter("change.test.similar.reused").get());
+        assertEquals(1, Metrics.counter("change.test.similar.computed").get());
+        assertEquals(2.0 / 3, detector.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void localChangeAboveTheThresholdIsComputed() {
+        ChangeDetector<String> detector = new ChangeDetector<>(new ImageProcessor(), "test.changed");
+        detector.store(frame(GRAY, false), "résultat");
+
+        // Un objet dans un coin suffit, même si la moyenne de l'image change peu.
+        assertNull(detector.getCached(frame(GRAY, true)));
+        assertNull(detector.getCached(frame(GRAY + 20, false)));
+
+        assertEquals(0, Metrics.counter("change.test.changed.reused").get());
+        assertEquals(2, Metrics.counter("change.test.changed.computed").get());
+        assertEquals(0, detector.getHitRate(), 0);
+    }
+
+    @Test
+    public void resetForgetsTheStoredResult() {
+        ChangeDetector<String> detector = new ChangeDetector<>(new ImageProcessor(), "test.reset");
+        detector.store(frame(GRAY, false), "résultat");
+
+        detector.reset();
+
+        assertNull(detector.getCached(frame(GRAY, false)));
+        assertEquals(1, Metrics.counter("change.test.reset.computed").get());
+    }
+
+    @Test
+    public void thresholdOfZeroDisablesReuse() throws IOException {
+        VisionProfile profile = VisionProfile.load(new ByteArrayInputStream("change.threshold=0".getBytes(StandardCharsets.UTF_8)));
+        ChangeDetector<String> detector = new ChangeDetector<>(new ImageProcessor(profile), "test.disabled");
+        detector.store(frame(GRAY, false), "résultat");
+
+        assertNull(detector.getCached(frame(GRAY, false)));
+        assertEquals(0, detector.getHitRate(), 0);
+    }
+
+    @Test
+    public void emptyDetectorHasNoHitRate() {
+        assertEquals(0, new ChangeDetector<String>(new ImageProcessor(), "test.empty").getHitRate(), 0);
+    }
+
+    @Test
+    public void onlyReadsWithoutInstructionAreRemembered() {
+        ChangeDetector<AircraftInstruction> signs = new ChangeDetector<>(new ImageProcessor(), "test.signs");
+
+        // Une instruction lue doit être confirmée par une nouvelle lecture, elle n'est donc pas gardée.
+        ParkourMission.remember(signs, frame(GRAY, false), new AircraftInstruction(FlyInstruction.GO_UP));
+        assertNull(signs.getCached(frame(GRAY, false)));
+
+        AircraftInstruction none = new AircraftInstruction(FlyInstruction.NONE);
+        ParkourMission.remember(signs, frame(GRAY, false), none);
+        assertSame(none, signs.getCached(frame(GRAY, false)));
+
+        // Une instruction lue ensuite ne remplace pas la dernière lecture sans instruction.
+        ParkourMission.remember(signs, frame(GRAY, true), new AircraftInstruction(FlyInstruction.GO_DOWN));
+        assertSame(none, signs.getCached(frame(GRAY, false)));
+    }
+
+    /**
+     * Fonction qui crée une image grise uniforme, avec un carré blanc dans le coin supérieur gauche si demandé.
+     * @param gray Int, niveau de gris de l'image.
+     * @param object Boolean, vrai pour ajouter le carré.
+     * @return Frame, image créée.
+     */
+    private static Frame frame(int gray, boolean object) {
+        Mat mat = new Mat(240, 320, CvType.CV_8UC3, new Scalar(gray, gray, gray));
+
+        if (object)
+            Imgproc.rectangle(mat, new Point(0, 0), new Point(39, 39), new Scalar(255, 255, 255), -1);
+
+        return new Frame(0, 0, 0, mat);
+    }
+}
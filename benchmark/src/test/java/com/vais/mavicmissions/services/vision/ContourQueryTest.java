@@ -0,0 +1,142 @@
+package com.vais.mavicmissions.services.vision;
+
+import nu.pattern.OpenCV;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Tests de ContourQuery sur des images binaires synthétiques.
+ */
+public class ContourQueryTest {
+    /**
+     * Int, largeur des images de test.
+     */
+    private static final int WIDTH = 200;
+    /**
+     * Int, hauteur des images de test.
+     */
+    private static final int HEIGHT = 100;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        OpenCV.loadLocally();
+    }
+
+    @Test
+    public void topKeepsTheLargestContoursInOrder() {
+        Mat binary = image(new Rect(10, 10, 11, 11), new Rect(40, 10, 31, 31), new Rect(90, 10, 21, 21), new Rect(130, 10, 6, 6));
+
+        List<ContourMatch> matches = new ContourQuery().top(2).find(binary);
+
+        assertEquals(2, matches.size());
+        assertEquals(new Rect(40, 10, 31, 31), matches.get(0).getBounds());
+        assertEquals(new Rect(90, 10, 21, 21), matches.get(1).getBounds());
+        assertEquals(30 * 30, matches.get(0).getArea(), 0);
+        assertEquals(20 * 20, matches.get(1).getArea(), 0);
+
+        release(binary, matches);
+    }
+
+    @Test
+    public void minAreaAndEmptyLimitFilterContours() {
+        Mat binary = image(new Rect(10, 10, 11, 11), new Rect(40, 10, 31, 31), new Rect(130, 10, 6, 6));
+
+        List<ContourMatch> matches = new ContourQuery().minArea(100).find(binary);
+        assertEquals(2, matches.size());
+        assertTrue(matches.get(1).getArea() >= 100);
+
+        assertTrue(new ContourQuery().top(0).find(binary).isEmpty());
+        assertTrue(new ContourQuery().find(binary, Collections.<Rect>emptyList()).isEmpty());
+
+        release(binary, matches);
+    }
+
+    @Test
+    public void excludeFrameIgnoresContoursAsLargeAsTheImage() {
+        // Une bande sur toute la largeur, et un carré qui touche le bord gauche sans couvrir l'image.
+        Mat binary = image(new Rect(0, 70, WIDTH, 20), new Rect(0, 10, 21, 21));
+
+        List<ContourMatch> all = new ContourQuery().find(binary);
+        assertEquals(2, all.size());
+        assertEquals(WIDTH, all.get(0).getBounds().width);
+
+        List<ContourMatch> matches = new ContourQuery().excludeFrame().find(binary);
+        assertEquals(1, matches.size());
+        assertEquals(new Rect(0, 10, 21, 21), matches.get(0).getBounds());
+
+        release(binary, all);
+        release(binary, matches);
+    }
+
+    @Test
+    public void regionContoursAreInImageCoordinates() {
+        Mat binary = image(new Rect(120, 30, 20, 20), new Rect(10, 10, 20, 20), new Rect(150, 70, 10, 10));
+        List<Rect> regions = Arrays.asList(new Rect(100, 20, 80, 40), new Rect(140, 60, 40, 30));
+
+        List<ContourMatch> matches = new ContourQuery().excludeFrame().find(binary, regions);
+
+        // Le carré hors des régions est ignoré, les autres gardent leur position dans l'image entière.
+        assertEquals(2, matches.size());
+        assertEquals(new Rect(120, 30, 20, 20), matches.get(0).getBounds());
+        assertEquals(new Rect(150, 70, 10, 10), matches.get(1).getBounds());
+
+        for (Point point : matches.get(0).getContour().toArray()) {
+            assertTrue(point.x >= 120 && point.x < 140);
+            assertTrue(point.y >= 30 && point.y < 50);
+        }
+
+        release(binary, matches);
+    }
+
+    @Test
+    public void regionFilledByAContourIsNotTheFrame() {
+        // Le cadre exclu reste celui de l'image, même si le contour couvre toute sa région.
+        Mat binary = image(new Rect(50, 20, 30, 30));
+
+        List<ContourMatch> matches = new ContourQuery().excludeFrame().find(binary, Collections.singletonList(new Rect(50, 20, 30, 30)));
+
+        assertEquals(1, matches.size());
+        assertEquals(new Rect(50, 20, 30, 30), matches.get(0).getBounds());
+
+        release(binary, matches);
+    }
+
+    /**
+     * Fonction qui crée une image binaire noire avec des rectangles blancs pleins.
+     * @param rects Rect[], rectangles à dessiner.
+     * @return Mat, image binaire.
+     */
+    private static Mat image(Rect... rects) {
+        Mat binary = Mat.zeros(HEIGHT, WIDTH, CvType.CV_8UC1);
+
+        for (Rect rect : rects)
+            Imgproc.rectangle(binary, rect.tl(), new Point(rect.x + rect.width - 1, rect.y + rect.height - 1), new Scalar(255), -1);
+
+        return binary;
+    }
+
+    /**
+     * Méthode qui libère une image et les contours trouvés.
+     * @param binary Mat, image à libérer.
+     * @param matches List<ContourMatch>, contours à libérer.
+     */
+    private static void release(Mat binary, List<ContourMatch> matches) {
+        for (ContourMatch match : matches)
+            match.getContour().release();
+        binary.release();
+    }
+}
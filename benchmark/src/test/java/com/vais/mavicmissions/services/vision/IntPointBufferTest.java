@@ -0,0 +1,112 @@
+package com.vais.mavicmissions.services.vision;
+
+import nu.pattern.OpenCV;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+
+import static org.junit.Assert.*;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Tests de IntPointBuffer: agrandissement au-delà de la capacité initiale et réutilisation après clear.
+ */
+public class IntPointBufferTest {
+    @BeforeClass
+    public static void loadOpenCV() {
+        OpenCV.loadLocally();
+    }
+
+    @Test
+    public void loadGrowsPastTheInitialCapacity() {
+        MatOfPoint contour = line(0, 1000);
+        IntPointBuffer buffer = new IntPointBuffer().load(contour);
+
+        assertEquals(1000, buffer.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, buffer.getX(i));
+            assertEquals(2 * i, buffer.getY(i));
+        }
+
+        contour.release();
+    }
+
+    @Test
+    public void appendKeepsEarlierPointsWhileGrowing() {
+        MatOfPoint first = line(0, 200);
+        MatOfPoint second = line(200, 300);
+        IntPointBuffer buffer = new IntPointBuffer().load(first).append(second).append(new MatOfPoint());
+
+        assertEquals(500, buffer.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, buffer.getX(i));
+            assertEquals(2 * i, buffer.getY(i));
+        }
+        assertEquals(249.5, buffer.averageX(), 1e-9);
+        assertEquals(499, buffer.averageY(), 1e-9);
+
+        first.release();
+        second.release();
+    }
+
+    @Test
+    public void clearReusesTheBufferWithoutStalePoints() {
+        MatOfPoint large = line(0, 600);
+        MatOfPoint small = new MatOfPoint(new Point(5, 7), new Point(9, 3), new Point(6, 11));
+        IntPointBuffer buffer = new IntPointBuffer().load(large);
+
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertFalse(buffer.bounds(new int[4]));
+        assertEquals(0, buffer.averageX(), 0);
+        assertEquals(0, buffer.radiusVariance(0, 0), 0);
+
+        // Les points du contour précédent restent dans le tableau, mais ne doivent plus compter.
+        buffer.append(small);
+        int[] bounds = new int[4];
+        assertTrue(buffer.bounds(bounds));
+        assertArrayEquals(new int[] { 5, 3, 9, 11 }, bounds);
+        assertEquals(3, buffer.size());
+        assertEquals(20 / 3.0, buffer.averageX(), 1e-9);
+
+        MatOfPoint copy = new MatOfPoint();
+        buffer.copyTo(copy);
+        assertArrayEquals(small.toArray(), copy.toArray());
+
+        // load remplace aussi les points sans clear.
+        buffer.load(large).load(small);
+        assertEquals(3, buffer.size());
+
+        large.release();
+        small.release();
+        copy.release();
+    }
+
+    @Test
+    public void radiusVarianceOfPointsOnACircleIsZero() {
+        MatOfPoint square = new MatOfPoint(new Point(10, 0), new Point(0, 10), new Point(-10, 0), new Point(0, -10));
+        IntPointBuffer buffer = new IntPointBuffer().load(square);
+
+        assertEquals(0, buffer.radiusVariance(0, 0), 1e-9);
+        assertTrue(buffer.radiusVariance(5, 0) > 0);
+
+        square.release();
+    }
+
+    /**
+     * Fonction qui crée un contour de points (x, 2x) consécutifs.
+     * @param first Int, x du premier point.
+     * @param count Int, nombre de points.
+     * @return MatOfPoint, contour créé.
+     */
+    private static MatOfPoint line(int first, int count) {
+        Point[] points = new Point[count];
+        for (int i = 0; i < count; i++)
+            points[i] = new Point(first + i, 2 * (first + i));
+
+        return new MatOfPoint(points);
+    }
+}
@@ -0,0 +1,140 @@
+package com.vais.mavicmissions.services.vision;
+
+import nu.pattern.OpenCV;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Simon-Olivier Vaillancourt
+ * 2022-05-20
+ * DJI Mavic 2 Entreprise
+ * Tests du regroupement des tuiles de MaskTiles, sur un masque dont les dimensions ne sont pas des multiples des tuiles.
+ */
+public class MaskTilesTest {
+    /**
+     * Int, côté d'une tuile en pixels.
+     */
+    private static final int TILE = 10;
+    /**
+     * Int, largeur du masque, la dernière colonne de tuiles a 5 pixels.
+     */
+    private static final int WIDTH = 95;
+    /**
+     * Int, hauteur du masque, la dernière rangée de tuiles a 3 pixels.
+     */
+    private static final int HEIGHT = 73;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        OpenCV.loadLocally();
+    }
+
+    @Test
+    public void countsIncludePartialEdgeTiles() {
+        Mat mask = mask(new Rect(0, 0, TILE, TILE), new Rect(90, 70, 5, 3), new Rect(42, 31, 4, 2));
+        MaskTiles tiles = new MaskTiles(mask, TILE);
+
+        assertEquals(100, tiles.getCount(0, 0));
+        assertEquals(15, tiles.getCount(9, 7));
+        assertEquals(8, tiles.getCount(4, 3));
+        assertEquals(0, tiles.getCount(5, 5));
+        assertEquals(123, tiles.getTotal());
+
+        mask.release();
+    }
+
+    @Test
+    public void candidatesAreClampedToTheMask() {
+        Mat mask = mask(new Rect(90, 70, 5, 3), new Rect(42, 31, 2, 2));
+        MaskTiles tiles = new MaskTiles(mask, TILE);
+
+        // La tuile de 4 pixels est sous le seuil, celle du coin est coupée au bord du masque.
+        List<Rect> candidates = tiles.getCandidates(5);
+        assertEquals(Collections.singletonList(new Rect(90, 70, 5, 3)), candidates);
+
+        mask.release();
+    }
+
+    @Test
+    public void regionsAreGrownByOneTileAndClamped() {
+        Mat mask = mask(new Rect(2, 2, 5, 5), new Rect(90, 70, 5, 3));
+        List<Rect> regions = new MaskTiles(mask, TILE).getRegions(1);
+
+        assertEquals(2, regions.size());
+        assertTrue(regions.contains(new Rect(0, 0, 2 * TILE, 2 * TILE)));
+        assertTrue(regions.contains(new Rect(80, 60, 15, 13)));
+
+        mask.release();
+    }
+
+    @Test
+    public void diagonalTilesFormOneRegion() {
+        // Tuiles (2, 2) et (3, 3), qui ne se touchent que par un coin.
+        Mat mask = mask(new Rect(25, 25, 5, 5), new Rect(30, 30, 5, 5));
+        List<Rect> regions = new MaskTiles(mask, TILE).getRegions(1);
+
+        assertEquals(Collections.singletonList(new Rect(10, 10, 4 * TILE, 4 * TILE)), regions);
+
+        mask.release();
+    }
+
+    @Test
+    public void groupsThatOverlapOnceGrownAreMerged() {
+        // Tuiles (2, 2) et (4, 2): séparées d'une tuile vide, leurs régions agrandies se chevauchent.
+        Mat mask = mask(new Rect(22, 22, 5, 5), new Rect(42, 22, 5, 5));
+        List<Rect> regions = new MaskTiles(mask, TILE).getRegions(1);
+
+        assertEquals(Collections.singletonList(new Rect(10, 10, 5 * TILE, 3 * TILE)), regions);
+
+        mask.release();
+    }
+
+    @Test
+    public void groupsTwoTilesApartStaySeparate() {
+        // Tuiles (2, 2) et (5, 2): les régions agrandies se touchent sans se chevaucher.
+        Mat mask = mask(new Rect(22, 22, 5, 5), new Rect(52, 22, 5, 5));
+        List<Rect> regions = new MaskTiles(mask, TILE).getRegions(1);
+
+        assertEquals(2, regions.size());
+        assertTrue(regions.contains(new Rect(10, 10, 3 * TILE, 3 * TILE)));
+        assertTrue(regions.contains(new Rect(40, 10, 3 * TILE, 3 * TILE)));
+
+        mask.release();
+    }
+
+    @Test
+    public void emptyMaskHasNoRegion() {
+        Mat mask = mask();
+        MaskTiles tiles = new MaskTiles(mask, TILE);
+
+        assertEquals(0, tiles.getTotal());
+        assertTrue(tiles.getCandidates(1).isEmpty());
+        assertTrue(tiles.getRegions(1).isEmpty());
+
+        mask.release();
+    }
+
+    /**
+     * Fonction qui crée un masque noir avec des rectangles allumés.
+     * @param rects Rect[], rectangles à allumer.
+     * @return Mat, masque binaire.
+     */
+    private static Mat mask(Rect... rects) {
+        Mat mask = Mat.zeros(HEIGHT, WIDTH, CvType.CV_8UC1);
+
+        for (Rect rect : rects)
+            Imgproc.rectangle(mask, rect.tl(), new Point(rect.x + rect.width - 1, rect.y + rect.height - 1), new Scalar(255), -1);
+
+        return mask;
+    }
+}